@@ -346,6 +346,32 @@
             return;
         }
 
+        /*
+         * @commandpath apicachecom [command] [seconds] - Sets how long the response of a (customapi) or (customapijson) tag is reused for that command. Use 0 to disable
+         */
+        if (command.equalsIgnoreCase('apicachecom')) {
+            if (action === undefined || subAction === undefined || isNaN(parseInt(subAction)) || parseInt(subAction) < 0) {
+                $.say($.whisperPrefix(sender) + $.lang.get('customcommands.apicache.usage'));
+                return;
+            }
+
+            action = action.replace('!', '').toLowerCase();
+
+            if (!$.commandExists(action)) {
+                $.say($.whisperPrefix(sender) + $.lang.get('cmd.404', action));
+                return;
+            }
+
+            if (parseInt(subAction) === 0) {
+                $.inidb.del('commandapicache', action);
+            } else {
+                $.inidb.set('commandapicache', action, parseInt(subAction));
+            }
+
+            $.say($.whisperPrefix(sender) + $.lang.get('customcommands.apicache.success', action, parseInt(subAction)));
+            return;
+        }
+
         /*
          * @commandpath delcom [command] - Delete that custom command
          */
@@ -374,6 +400,7 @@
             $.inidb.del('disabledCommands', action);
             $.inidb.del('hiddenCommands', action);
             $.inidb.del('commandtoken', action);
+            $.inidb.del('commandapicache', action);
             $.unregisterChatCommand(action);
             delete customCommands[action];
             return;
@@ -892,6 +919,7 @@
         $.registerChatCommand('./commands/customCommands.js', 'delcom', 2);
         $.registerChatCommand('./commands/customCommands.js', 'editcom', 2);
         $.registerChatCommand('./commands/customCommands.js', 'tokencom', 2);
+        $.registerChatCommand('./commands/customCommands.js', 'apicachecom', 1);
         $.registerChatCommand('./commands/customCommands.js', 'permcom', 1);
         $.registerChatCommand('./commands/customCommands.js', 'commands', 7);
         $.registerChatCommand('./commands/customCommands.js', 'disablecom', 1);
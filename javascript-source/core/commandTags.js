@@ -20,10 +20,11 @@
      * @function getCustomAPIValue
      *
      * @param {string} url
+     * @param {string} cmd
      * @returns {string}
      */
-    function getCustomAPIValue(url) {
-        return $.customAPI.get(url).content;
+    function getCustomAPIValue(url, cmd) {
+        return $.customAPI.getCached(url, $.getIniDbNumber('commandapicache', cmd, $.getIniDbNumber('settings', 'customApiCacheTTL', 0))).content;
     }
 
     /*
@@ -344,6 +345,7 @@
          * @notes the command tag (token) can be placed in the url for a secret token saved via !tokencom or the panel
          * @notes if any args, $1-$9, are used in the url, they are required to be provided by the user issuing the command or the tag will abort and return an error message instead
          * @notes this will output the full response from the remote url, so be careful not to cause spam or lock up the bot with a webpage
+         * @notes responses are reused for the number of seconds set with !apicachecom, identical requests that are already running are always shared
          * @example Caster: !addcom !joke (customapi http://not.real.com/joke.php?name=$1)
          * User: !joke bear
          * Bot: These jokes are un-bear-able
@@ -368,7 +370,7 @@
                     return {result: $.lang.get('customcommands.customapi.404', cmd)};
                 }
                 return {
-                    result: String(getCustomAPIValue(encodeURI(match[1]))),
+                    result: String(getCustomAPIValue(encodeURI(match[1]), cmd)),
                     cache: false
                 };
             }
@@ -381,6 +383,7 @@
          * @notes if any args, $1-$9, are used in the url, they are required to be provided by the user issuing the command or the tag will abort and return an error message instead
          * @notes the response must be a JSONObject. arrays are only supported with a known index, walking arrays is not supported
          * @notes multiple specs can be provided, separated by spaces; curly braces can be used to enclose literal strings
+         * @notes responses are reused for the number of seconds set with !apicachecom, identical requests that are already running are always shared
          * @example Caster: !addcom !weather (customapijson http://api.apixu.com/v1/current.json?key=NOT_PROVIDED&q=$1 {Weather for} location.name {:} current.condition.text {Temps:} current.temp_f {F} current.temp_c {C})
          * User: !weather 80314
          * Bot: Weather for Boulder, CO : Sunny Temps: 75 F 24 C
@@ -415,7 +418,7 @@
                 }
 
                 result = '';
-                response = getCustomAPIValue(encodeURI(match[1]));
+                response = getCustomAPIValue(encodeURI(match[1]), cmd);
                 jsonItems = match[2].split(' ');
                 for (j = 0; j < jsonItems.length; j++) {
                     if (jsonItems[j].startsWith('{') && jsonItems[j].endsWith('}')) {
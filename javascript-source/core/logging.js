@@ -27,10 +27,12 @@
         logs = {
             file: $.getSetIniDbBoolean('settings', 'log.file', true),
             event: $.getSetIniDbBoolean('settings', 'log.event', true),
-            error: $.getSetIniDbBoolean('settings', 'log.error', true)
+            error: $.getSetIniDbBoolean('settings', 'log.error', true),
+            compress: $.getSetIniDbBoolean('settings', 'log.compress', false)
         },
         cmdLogEnabled = $.getSetIniDbBoolean('discordSettings', 'customCommandLogs', false),
-        cmdDiscordLogChannel = $.getSetIniDbString('discordSettings', 'modLogChannel', '');
+        cmdDiscordLogChannel = $.getSetIniDbString('discordSettings', 'modLogChannel', ''),
+        logWriter = Packages.com.gmt2001.ChatLogWriter.instance();
 
     /*
      * @event webPanelSocketUpdate
@@ -50,6 +52,7 @@
         logs.file = $.getIniDbBoolean('settings', 'log.file');
         logs.event = $.getIniDbBoolean('settings', 'log.event');
         logs.error = $.getIniDbBoolean('settings', 'log.error');
+        logs.compress = $.getIniDbBoolean('settings', 'log.compress');
     }
 
     /*
@@ -107,7 +110,7 @@
         });
         $.log.file('customCommands', lines.join('\r\n'));
         if (!$.hasDiscordToken && cmdLogEnabled && cmdDiscordLogChannel) {
-            $.discordAPI.sendMessageEmbed(cmdDiscordLogChannel, 'blue', lines.join('\r\n\r\n'));
+            $.discordAPI.queueMessageEmbed(cmdDiscordLogChannel, 'blue', lines.join('\r\n\r\n'));
         }
     }
 
@@ -124,14 +127,7 @@
             return;
         }
 
-        if (!$.isDirectory('./logs/' + filePrefix + '/')) {
-            if (!$.isDirectory('./logs/')) {
-                $.mkDir('./logs');
-            }
-            $.mkDir('./logs/' + filePrefix);
-        }
-
-        $.writeToFile('[' + getLogEntryTimeDateString() + '] ' + message, './logs/' + filePrefix + '/' + getLogDateString() + '.txt', true);
+        logWriter.log(filePrefix, message);
     }
 
     /*
@@ -145,20 +141,13 @@
             return;
         }
 
-        if (!$.isDirectory('./logs/events')) {
-            if (!$.isDirectory('./logs/')) {
-                $.mkDir('./logs');
-            }
-            $.mkDir('./logs/event');
-        }
-
         try {
             throw new Error('eventlog');
         } catch (e) {
             sourceFile = e.stack.split('\n')[1].split('@')[1];
         }
 
-        $.writeToFile('[' + getLogEntryTimeDateString() + '] [' + sourceFile.trim() + '] ' + message, './logs/event/' + getLogDateString() + '.txt', true);
+        logWriter.log('event', '[' + sourceFile.trim() + '] ' + message);
     }
 
     /*
@@ -172,20 +161,13 @@
             return;
         }
 
-        if (!$.isDirectory('./logs/error/')) {
-            if (!$.isDirectory('./logs/')) {
-                $.mkDir('./logs');
-            }
-            $.mkDir('./logs/error');
-        }
-
         try {
             throw new Error('errorlog');
         } catch (e) {
             sourceFile = e.stack.split('\n')[1].split('@')[1];
         }
 
-        $.writeToFile('[' + getLogEntryTimeDateString() + '] [' + sourceFile.trim() + '] ' + message, './logs/error/' + getLogDateString() + '.txt', true);
+        logWriter.log('error', '[' + sourceFile.trim() + '] ' + message);
         Packages.com.gmt2001.Console.err.printlnRhino(java.util.Objects.toString('[' + sourceFile.trim() + '] ' + message));
     }
 
@@ -200,20 +182,13 @@
             return;
         }
 
-        if (!$.isDirectory('./logs/warning/')) {
-            if (!$.isDirectory('./logs/')) {
-                $.mkDir('./logs');
-            }
-            $.mkDir('./logs/warning');
-        }
-
         try {
             throw new Error('warninglog');
         } catch (e) {
             sourceFile = e.stack.split('\n')[1].split('@')[1];
         }
 
-        $.writeToFile('[' + getLogEntryTimeDateString() + '] [' + sourceFile.trim() + '] ' + message, './logs/warning/' + getLogDateString() + '.txt', true);
+        logWriter.log('warning', '[' + sourceFile.trim() + '] ' + message);
         Packages.com.gmt2001.Console.warn.printlnRhino(java.util.Objects.toString(message));
     }
 
@@ -368,6 +343,16 @@
                 logs.error = !logs.error;
                 $.setIniDbBoolean('settings', 'log.error', logs.error);
                 $.say($.whisperPrefix(sender) + (logs.error ? $.lang.get('logging.enabled.error') : $.lang.get('logging.disabled.error')));
+                return;
+            }
+
+            /**
+             * @commandpath log compress - Toggle the gzip compression of the logs of previous days
+             */
+            if (action.equalsIgnoreCase('compress')) {
+                logs.compress = !logs.compress;
+                $.setIniDbBoolean('settings', 'log.compress', logs.compress);
+                $.say($.whisperPrefix(sender) + (logs.compress ? $.lang.get('logging.enabled.compress') : $.lang.get('logging.disabled.compress')));
             }
         }
     });
@@ -98,16 +98,17 @@
      * @export $.discord
      * @param {string} channel
      * @param {string} message
+     * @return {CompletableFuture} completes with the sent message
      */
     function say(channel, message) {
         if (embedReg.test(message)) {
-            return $.discordAPI.sendMessageEmbed(channel, message.match(embedReg)[1], message.match(embedReg)[2]);
+            return $.discordAPI.queueMessageEmbed(channel, message.match(embedReg)[1], message.match(embedReg)[2]);
         } else if (fileRegMsg.test(message)) {
-            return $.discordAPI.sendFile(channel, message.match(fileRegMsg)[2], message.match(fileRegMsg)[1]);
+            return $.discordAPI.queueFile(channel, message.match(fileRegMsg)[2], message.match(fileRegMsg)[1]);
         } else if (fileReg.test(message)) {
-            return $.discordAPI.sendFile(channel, message.match(fileReg)[1]);
+            return $.discordAPI.queueFile(channel, message.match(fileReg)[1]);
         } else {
-            return $.discordAPI.sendMessage(channel, message);
+            return $.discordAPI.queueMessage(channel, message);
         }
     }
 
@@ -32,9 +32,6 @@
      */
     function roleUpdateCheck() {
         if ($.discord.isConnected()) {
-            var users = $.inidb.GetKeyList('discordToTwitch', ''),
-                i;
-
             // If both options are disabled, stop here.
             if (autoSetPermissions === false && autoSetRanks === false) {
                 return;
@@ -43,57 +40,13 @@
             // Create our default roles.
             createRoles();
 
-            // Wait a bit to create the roles.
+            // Wait a bit to create the roles, then queue the role changes of linked users.
             setTimeout(function() {
-                for (i in users) {
-                    try {
-                        if (hasRankOrPermission($.getIniDbString('discordToTwitch', users[i]))) {
-                            updateRoles(users[i], getRanksAndPermissions($.getIniDbString('discordToTwitch', users[i])));
-                        }
-                    } catch (e){
-                        $.log.error(e);
-                    }
-                }
+                $.discordRoleSync.sync(autoSetPermissions, autoSetRanks);
             }, 5e3);
         }
     }
 
-    /*
-     * @function updateRoles
-     *
-     * @param {Number} id
-     * @param {Array}  roles
-     */
-    function updateRoles(id, roles) {
-        var oldRoles = $.getIniDbString('discordRoles', id, ',').split(','),
-            currentRoles = $.discordAPI.getUserRoles(id),
-            newRoles = roles.join(','),
-            idx,
-            i;
-
-        // Build our roles list.
-        for (i in currentRoles) {
-            // If the user's current Discord role list contains an old role, and the new list does not have it, don't add it to the list.
-            if ((oldRoles.length > 0 && hasRole(oldRoles, currentRoles[i].getName())) && newRoles.indexOf(currentRoles[i].getName()) === -1) {
-                continue;
-            } else {
-                if (!hasRole(roles, currentRoles[i].getName())) {
-                    roles.push(currentRoles[i].getName());
-                }
-            }
-        }
-
-        // Only update the user's role if there's a new one.
-        for (i in roles) {
-            if (!hasRole(currentRoles, roles[i], true)) {
-                var roleObjs = $.discordAPI.getRoleObjects(roles);
-                $.discordAPI.editUserRoles(id, roleObjs);
-                $.setIniDbString('discordRoles', id, newRoles);
-                return;
-            }
-        }
-    }
-
     /*
      * @function createRoles
      */
@@ -148,29 +101,6 @@
         }
     }
 
-    /*
-     * @function hasRole
-     *
-     * @param  {Array}  array
-     * @param  {String} role
-     * @param  {Boolean} getName
-     * @return {Boolean}
-     */
-    function hasRole(array, role, getName) {
-        for (var i in array) {
-            if (!getName) {
-                if (array[i].equalsIgnoreCase(role)) {
-                    return true;
-                }
-            } else {
-                if (array[i].getName().equalsIgnoreCase(role)) {
-                    return true;
-                }
-            }
-        }
-        return false;
-    }
-
     /*
      * @function cleanOldRanks
      */
@@ -186,41 +116,6 @@
         }
     }
 
-    /*
-     * @function hasRankOrPermission
-     *
-     * @param  {String} username
-     * @return {Boolean}
-     */
-    function hasRankOrPermission(username) {
-        return (getRanksAndPermissions(username).length > 0);
-    }
-
-    /*
-     * @function getRanksAndPermissions
-     *
-     * @param  {String} username
-     * @return {Array}
-     */
-    function getRanksAndPermissions(username) {
-        var roles = [],
-            role;
-
-        if (autoSetPermissions === true) {
-            if ($.inidb.exists('group', username) && !$.inidb.exists('blacklistedDiscordRoles', $.getIniDbString('group', username).toLowerCase())) {
-                roles.push($.getIniDbString('groups', $.getIniDbString('group', username)));
-            }
-        }
-
-        if (autoSetRanks === true) {
-            if ($.hasRank(username) && !$.inidb.exists('blacklistedDiscordRoles', $.getRank(username).toLowerCase())) {
-                roles.push($.getRank(username));
-            }
-        }
-
-        return roles;
-    }
-
     /*
      * @event discordChannelCommand
      */
@@ -70,7 +70,7 @@
         if (message.indexOf('(embedurl)') !== -1) {
             $.discord.say(channelName, s);
         } else {
-            $.discordAPI.sendMessageEmbed(channelName, new Packages.tv.phantombot.discord.util.EmbedBuilder()
+            $.discordAPI.queueMessageEmbed(channelName, new Packages.tv.phantombot.discord.util.EmbedBuilder()
                         .withColor(100, 65, 164)
                         .withThumbnail('https://raw.githubusercontent.com/PhantomBot/Miscellaneous/master/Discord-Embed-Icons/clip-embed-icon.png')
                         .withTitle($.lang.get('discord.cliphandler.clip.embedtitle'))
@@ -86,7 +86,7 @@
             s = $.replace(s, '(message)', donationMsg);
         }
 
-        $.discordAPI.sendMessageEmbed(channelName, new Packages.tv.phantombot.discord.util.EmbedBuilder()
+        $.discordAPI.queueMessageEmbed(channelName, new Packages.tv.phantombot.discord.util.EmbedBuilder()
                     .withColor(49, 196, 162)
                     .withThumbnail('https://raw.githubusercontent.com/PhantomBot/Miscellaneous/master/Discord-Embed-Icons/streamlabs-embed-icon.png')
                     .withTitle($.lang.get('discord.streamlabshandler.embed.title'))
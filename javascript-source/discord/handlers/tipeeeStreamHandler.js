@@ -92,7 +92,7 @@
             s = $.replace(s, '(formattedamount)', donationFormattedAmount);
         }
 
-        $.discordAPI.sendMessageEmbed(channelName, new Packages.tv.phantombot.discord.util.EmbedBuilder()
+        $.discordAPI.queueMessageEmbed(channelName, new Packages.tv.phantombot.discord.util.EmbedBuilder()
                     .withColor(216, 67, 89)
                     .withThumbnail('https://raw.githubusercontent.com/PhantomBot/Miscellaneous/master/Discord-Embed-Icons/tipeeestream-embed-icon.png')
                     .withTitle($.lang.get('discord.tipeeestreamhandler.embed.title'))
@@ -16,89 +16,73 @@
  */
 
 (function() {
-    var keywords = [];
+    var keywords = [],
+        matcher = new Packages.tv.phantombot.scripts.handler.KeywordMatcher();
 
     /*
      * @function loadKeywords
      */
     function loadKeywords() {
         var keys = $.inidb.GetKeyList('keywords', ''),
+            list = [],
             i;
 
-        keywords = [];
+        matcher.clear();
 
         for (i = 0; i < keys.length; i++) {
             var json = JSON.parse($.inidb.get('keywords', keys[i]));
 
-            if (json.isRegex) {
-                try {
-                    json.regexKey = new RegExp(json.keyword, json.isCaseSensitive ? '' : 'i');
-                } catch (ex) {
-                    $.log.error('Bad regex detected in keyword [' + keys[i] + ']: ' + ex.message);
-                    continue;
-                }
+            if (!json.isRegex && !json.isCaseSensitive) {
+                json.keyword = json.keyword.toLowerCase();
+            }
+
+            if (!matcher.add(list.length, json.keyword, json.isRegex, json.isCaseSensitive)) {
+                $.log.error('Bad regex detected in keyword [' + keys[i] + ']');
+                continue;
             }
 
-            keywords.push(json);
+            list.push(json);
         }
+
+        matcher.build();
+        keywords = list;
     }
 
     /*
      * @event ircChannelMessage
      */
     $.bind('ircChannelMessage', function(event) {
-        function executeKeyword(json, event) {
-            // Make sure the keyword isn't on cooldown.
-            if ($.coolDownKeywords.get(json.keyword, sender) > 0) {
-                return;
-            }
-            // If the keyword is a command, we need to send that command.
-            else if (json.response.startsWith('command:')) {
-                $.command.run(sender, json.response.substring(8), '', event.getTags());
-            }
-            // Keyword just has a normal response.
-            else {
-                json.response = $.replace(json.response, '(keywordcount)', '(keywordcount ' + $.escapeTags(json.keyword) + ')');
-                $.say($.tags(event, json.response, false));
-            }
-        }
-
         var message = event.getMessage(),
             sender = event.getSender(),
-            messagePartsLower = message.toLowerCase().split(' '),
-            messageParts = message.split(' '),
-            json;
+            json,
+            i;
 
         // Don't say the keyword if someone tries to remove it.
         if (message.startsWith('!keyword')) {
             return;
         }
 
-        for (var i = 0; i < keywords.length; i++) {
-            json = keywords[i];
+        i = matcher.match(message);
+        if (i < 0) {
+            return;
+        }
 
-            if (json.isRegex) {
-                if (json.regexKey.test(message)) {
-                    executeKeyword(json, event);
-                    break;
-                }
-            } else {
-                var str = '',
-                  caseAdjustedMessageParts = messageParts;
-                if (!json.isCaseSensitive) {
-                    json.keyword = json.keyword.toLowerCase();
-                    caseAdjustedMessageParts = messagePartsLower;
-                }
-                for (var idx = 0; idx < caseAdjustedMessageParts.length; idx++) {
-                    // Create a string to match on the keyword.
-                    str += (caseAdjustedMessageParts[idx] + ' ');
-                    // Either match on the exact word or phrase if it contains it.
-                    if ((json.keyword.includes(' ') && str.includes(json.keyword)) || (caseAdjustedMessageParts[idx] + '') === (json.keyword + '')) {
-                        executeKeyword(json, event);
-                        break;
-                    }
-                }
-            }
+        json = keywords[i];
+        if (json === undefined) {
+            return;
+        }
+
+        // Make sure the keyword isn't on cooldown.
+        if ($.coolDownKeywords.get(json.keyword, sender) > 0) {
+            return;
+        }
+        // If the keyword is a command, we need to send that command.
+        else if (json.response.startsWith('command:')) {
+            $.command.run(sender, json.response.substring(8), '', event.getTags());
+        }
+        // Keyword just has a normal response.
+        else {
+            $.say($.tags(event, $.replace(json.response, '(keywordcount)', '(keywordcount ' + $.escapeTags(json.keyword) + ')'), false));
         }
     });
 
@@ -16,6 +16,7 @@
  */
 
 (function() {
+    var wordCounter = Packages.tv.phantombot.scripts.handler.WordCounter.instance();
 
     /**
      * @event command
@@ -47,6 +48,7 @@
 
                 subAction = subAction.replace(action, '').toLowerCase();
                 $.inidb.set('wordCounter', subAction, 0);
+                wordCounter.reload();
                 $.say(subAction + $.lang.get('wordcounter.added'));
                 $.log.event(sender + ' added "' + subAction + '" to the word counter list');
             }
@@ -64,7 +66,7 @@
                 }
 
                 subAction = subAction.replace(action, '').toLowerCase();
-                $.inidb.del('wordCounter', subAction);
+                wordCounter.remove(subAction);
                 $.say(subAction + $.lang.get('wordcounter.removed'));
                 $.log.event(sender + ' removed "' + subAction + '" from the word counter list');
             }
@@ -79,7 +81,7 @@
                 return;
             }
 
-            $.say($.lang.get('wordcounter.count', action, $.inidb.get('wordCounter', action.toLowerCase())));
+            $.say($.lang.get('wordcounter.count', action, wordCounter.getCount(action)));
         }
     });
 
@@ -88,20 +90,8 @@
      * @event ircChannelMessage
      */
     $.bind('ircChannelMessage', function(event) {
-        var message = event.getMessage().toLowerCase(),
-            keys = $.inidb.GetKeyList('wordCounter', ''),
-            word,
-            key;
-
         if ($.bot.isModuleEnabled('./handlers/wordCounter.js')) {
-            for (i in keys) {
-                key = keys[i].toLowerCase();
-                word = new RegExp('\\b' + key + '\\b', 'ig');
-                if (word.exec(message)) {
-                    $.inidb.incr('wordCounter', key, 1);
-                    break;
-                }
-            }
+            wordCounter.count(event.getMessage());
         }
     });
 
@@ -111,5 +101,6 @@
     $.bind('initReady', function() {
         $.registerChatCommand('./handlers/wordCounter.js', 'wordcounter', 1);
         $.registerChatCommand('./handlers/wordCounter.js', 'count', 7);
+        wordCounter.reload();
     });
 })();
@@ -22,7 +22,9 @@
 (function () {
     var isReady = false,
             modules = [],
-            hooks = [];
+            hooks = [],
+            hookMetrics = Packages.tv.phantombot.script.HookMetrics.instance(),
+            timeHooks = hookMetrics.isEnabled();
 
     /*
      * @class Module
@@ -293,6 +295,7 @@
      */
     function callHook(hookName, event, force) {
         var hook = hooks[hookName],
+                start,
                 i;
 
         if (hook === undefined) {
@@ -301,6 +304,7 @@
 
         if (hookName === 'command') {
             i = getHookIndex($.getCommandScript(event.getCommand()), hookName);
+            start = (timeHooks ? hookMetrics.start() : 0);
 
             try {
                 hook.handlers[i].handler(event);
@@ -310,10 +314,15 @@
                     $.consoleLn("Sending stack trace to error log...");
                     Packages.com.gmt2001.Console.err.printStackTrace(ex.javaException);
                 }
+            } finally {
+                if (timeHooks) {
+                    hookMetrics.record(hook.handlers[i].scriptName, hookName, start);
+                }
             }
         } else {
             for (i in hook.handlers) {
                 if (isModuleEnabled(hook.handlers[i].scriptName) || force) {
+                    start = (timeHooks ? hookMetrics.start() : 0);
                     try {
                         hook.handlers[i].handler(event);
                     } catch (ex) {
@@ -322,6 +331,10 @@
                             $.consoleLn("Sending stack trace to error log...");
                             Packages.com.gmt2001.Console.err.printStackTrace(ex.javaException);
                         }
+                    } finally {
+                        if (timeHooks) {
+                            hookMetrics.record(hook.handlers[i].scriptName, hookName, start);
+                        }
                     }
                 }
             }
@@ -807,20 +820,6 @@
             callHook('yTPlayerCurrentId', event, false);
         });
 
-        /*
-         * @event yTPlayerRequestSonglist
-         */
-        $api.on($script, 'yTPlayerRequestSonglist', function (event) {
-            callHook('yTPlayerRequestSonglist', event, false);
-        });
-
-        /*
-         * @event yTPlayerRequestPlaylist
-         */
-        $api.on($script, 'yTPlayerRequestPlaylist', function (event) {
-            callHook('yTPlayerRequestPlaylist', event, false);
-        });
-
         /*
          * @event yTPlayerDeleteSREvent
          */
@@ -863,13 +862,6 @@
             callHook('yTPlayerDeletePlaylistByID', event, false);
         });
 
-        /*
-         * @event yTPlayerRequestCurrentSongEvent
-         */
-        $api.on($script, 'yTPlayerRequestCurrentSong', function (event) {
-            callHook('yTPlayerRequestCurrentSong', event, false);
-        });
-
         /*
          * @event yTPlayerRandomizeEvent
          */
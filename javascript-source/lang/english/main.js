@@ -336,7 +336,9 @@ $.lang.register('logging.enabled.event', 'Event logging has been enabled!');
 $.lang.register('logging.disabled.event', 'Event logging has been disabled!');
 $.lang.register('logging.enabled.error', 'Error logging has been enabled!');
 $.lang.register('logging.disabled.error', 'Error logging has been disabled!');
-$.lang.register('logging.usage', 'Usage: !log [files / errors / events]');
+$.lang.register('logging.enabled.compress', 'Logs of previous days will now be compressed!');
+$.lang.register('logging.disabled.compress', 'Logs of previous days will no longer be compressed!');
+$.lang.register('logging.usage', 'Usage: !log [files / errors / events / compress]');
 $.lang.register('logging.rotatedays.usage', 'usage: !log rotatedays [days]. 0 to keep all logs. Currently: $1');
 $.lang.register('logging.rotatedays.success', 'Logs will rotate every $1 days.');
 $.lang.register('logging.rotatedays.success.off', 'Logs will not be rotated');
@@ -25,21 +25,15 @@
         running = false;
 
     function cleanUp(table, amount, sender) {
-        if (table.equalsIgnoreCase('time')) {
-            var keys = $.inidb.GetKeyList('time', ''),
-                time = parseInt(amount),
-                count = 0,
-                i;
+        /* The amount itself is removed as well, while the datastore only removes values below it */
+        var below = parseInt(amount) + 1,
+            count,
+            keys;
 
+        if (table.equalsIgnoreCase('time')) {
             $.consoleLn('>>> Process is starting this might take a few minutes...');
             running = true;
-            for (i in keys) {
-                if (parseInt($.inidb.get('time', keys[i])) <= time) {
-                    $.consoleLn('>> Removing ' + keys[i] + ' from the time table with ' + $.inidb.get('time', keys[i]) + ' time.');
-                    $.inidb.del('time', keys[i]);
-                    count++;
-                }
-            }
+            count = $.inidb.RemoveKeysByNumberValueBelow('time', '', below);
             $.consoleLn('> Process done. ' + count + ' users have been removed from the times table.');
             $.log.file(logName, '' + 'Cleanup ran for the time table by ' + sender + '. (Removed ' + count + ' users from the time table)');
             running = false;
@@ -47,20 +41,9 @@
         }
 
         if (table.equalsIgnoreCase('points')) {
-            var keys = $.inidb.GetKeyList('points', ''),
-                points = parseInt(amount),
-                count = 0,
-                i;
-
             $.consoleLn('>>> Process is starting this might take a few minutes...');
             running = true;
-            for (i in keys) {
-                if (parseInt($.inidb.get('points', keys[i])) <= points) {
-                    $.consoleLn('>> Removing ' + keys[i] + ' from the points table with ' + $.inidb.get('points', keys[i]) + ' points.');
-                    $.inidb.del('points', keys[i]);
-                    count++;
-                }
-            }
+            count = $.inidb.RemoveKeysByNumberValueBelow('points', '', below);
             $.consoleLn('> Process done. ' + count + ' users have been removed from the points table.');
             $.log.file(logName, '' + 'Cleanup ran for the points table by ' + sender + '. (Removed ' + count + ' users from the points table)');
             running = false;
@@ -68,27 +51,11 @@
         }
 
         if (table.equalsIgnoreCase('all')) {
-            var keys = $.inidb.GetKeyList('visited', ''),
-                time = parseInt(amount),
-                count = 0,
-                t,
-                i;
-
             $.consoleLn('>>> Process is starting this might take a few minutes...');
             running = true;
-            for (i in keys) {
-                t = ($.inidb.exists('time', keys[i]) ? parseInt($.inidb.get('time', keys[i])) : 0);
-                if (t <= time) {
-                    $.inidb.del('time', keys[i]);
-                    $.inidb.del('points', keys[i]);
-                    $.inidb.del('heistPayouts', keys[i]);
-                    $.inidb.del('lastseen', keys[i]);
-                    $.inidb.del('followed', keys[i]);
-                    $.inidb.del('visited', keys[i]);
-                    $.consoleLn('>> Removed ' + keys[i] + ' from the database.');
-                    count++;
-                }
-            }
+            keys = $.inidb.GetKeysByNumberValueBelow('visited', '', below, 'time');
+            $.inidb.RemoveKeysFromFiles(['time', 'points', 'heistPayouts', 'lastseen', 'followed', 'visited'], '', keys);
+            count = keys.length;
             $.consoleLn('> Process done. ' + count + ' users have been removed from the database.');
             $.log.file(logName, '' + 'Cleanup ran by ' + sender + '. (Removed ' + count + ' users from the database)');
             running = false;
@@ -20,8 +20,7 @@
  *
  */
 (function() {
-    var entries = [],
-        entered = [],
+    var raffle = new Packages.tv.phantombot.scripts.handler.Raffle('raffleList', 'raffleEntries', false),
         keyword = '',
         entryFee = 0,
         timerTime = 0,
@@ -147,15 +146,13 @@
 
         if (parseInt(messageInterval) !== 0) {
             interval = setInterval(function() {
-                $.say(raffleMessage.replace('(keyword)', keyword).replace('(entries)', String(Object.keys(entered).length)));
+                $.say(raffleMessage.replace('(keyword)', keyword).replace('(entries)', String(raffle.size())));
             }, messageInterval * 6e4);
         }
 
         /* Clear the old raffle data */
-        entries = [];
+        raffle.clear();
         $.raffleCommand = keyword;
-        $.inidb.RemoveFile('raffleList');
-        $.inidb.set('raffleresults', 'raffleEntries', 0);
         // Mark the raffle as on for the panel.
         $.inidb.set('raffleSettings', 'isActive', 'true');
 
@@ -194,12 +191,12 @@
      */
     function draw(sender) {
         /* Check if anyone entered the raffle */
-        if (entries.length === 0) {
+        if (raffle.size() === 0) {
             $.say($.lang.get('rafflesystem.winner.404'));
             return;
         }
 
-        var username = $.randElement(entries),
+        var username = String(raffle.draw()),
             isFollowing = $.user.isFollower(username.toLowerCase()),
             followMsg = (isFollowing ? $.lang.get('rafflesystem.isfollowing') : $.lang.get('rafflesystem.isnotfollowing'));
 
@@ -211,15 +208,9 @@
             $.say($.whisperPrefix(username, true) + $.lang.get('rafflesystem.whisper.winner', $.channelName));
         }
 
-        /* Remove the user from the array if we are not allowed to have multiple repicks. */
+        /* Remove the user from the raffle if we are not allowed to have multiple repicks. */
         if (allowRepick) {
-            for (var i in entries) {
-                if (entries[i].equalsIgnoreCase(username)) {
-                    entries.splice(i, 1);
-                }
-            }
-            $.inidb.del('raffleList', username);
-            $.inidb.decr('raffleresults', 'raffleEntries', 1);
+            raffle.remove(username);
         }
     }
 
@@ -244,7 +235,7 @@
      */
     function enter(username, tags) {
         /* Check if the user already entered the raffle */
-        if (entered[username] !== undefined) {
+        if (raffle.contains(username)) {
             message(username, $.lang.get('rafflesystem.enter.404'));
             return;
         }
@@ -279,22 +270,14 @@
             }
         }
 
-        /* Push the user into the array */
-        entered[username] = true;
-        entries.push(username);
+        /* Enter the user, the bonus counts as extra entries. The panel stats are saved by the raffle. */
         if (subscriberBonus > 0 && $.isSubv3(username, tags)) {
-            for (var i = 0; i < subscriberBonus; i++) {
-                entries.push(username);
-            }
+            raffle.enter(username, 1 + subscriberBonus);
         } else if (regularBonus > 0 && $.isReg(username)) {
-            for (var i = 0; i < regularBonus; i++) {
-                entries.push(username);
-            }
+            raffle.enter(username, 1 + regularBonus);
+        } else {
+            raffle.enter(username, 1);
         }
-
-        /* Push the panel stats */
-            $.inidb.set('raffleList', username, true);
-            $.inidb.set('raffleresults', 'raffleEntries', Object.keys(entered).length);
     }
 
     /**
@@ -314,11 +297,8 @@
         status = false;
         entryFee = 0;
         timerTime = 0;
-        entered = [];
-        entries = [];
+        raffle.clear();
         $.raffleCommand = null;
-        $.inidb.RemoveFile('raffleList');
-        $.inidb.set('raffleresults', 'raffleEntries', 0);
         // Mark the raffle as off for the panel.
         $.inidb.set('raffleSettings', 'isActive', 'false');
     }
@@ -393,7 +373,7 @@
              */
             if (action.equalsIgnoreCase('results')) {
                 if (status) {
-                    $.say($.lang.get('rafflesystem.results', keyword + (usePoints ? $.lang.get('rafflesystem.fee', $.getPointsString(entryFee)) : ''), Object.keys(entered).length))
+                    $.say($.lang.get('rafflesystem.results', keyword + (usePoints ? $.lang.get('rafflesystem.fee', $.getPointsString(entryFee)) : ''), raffle.size()))
                 }
                 return;
             }
@@ -508,8 +488,7 @@
 
         // Mark the raffle as off for the panel.
         $.inidb.set('raffleSettings', 'isActive', 'false');
-        $.inidb.set('raffleresults', 'raffleEntries', 0);
-        $.inidb.RemoveFile('raffleList');
+        raffle.clear();
     });
 
     $.reloadRaffle = reloadRaffle;
@@ -17,7 +17,7 @@
 
 (function() {
     var cost = 0,
-        entries = [],
+        raffle = new Packages.tv.phantombot.scripts.handler.Raffle('ticketsList', 'ticketRaffleEntries', true),
         subTMulti = 1,
         regTMulti = 1,
         maxEntries = 0,
@@ -26,9 +26,6 @@
         msgToggle = $.getSetIniDbBoolean('settings', 'tRaffleMSGToggle', false),
         raffleMessage = $.getSetIniDbString('settings', 'traffleMessage', 'A raffle is still opened! Type !tickets (amount) to enter. (entries) users have entered so far.'),
         messageInterval = $.getSetIniDbNumber('settings', 'traffleMessageInterval', 0),
-        totalEntries = 0,
-        lastTotalEntries = 0,
-        totalTickets = 0,
         a = '',
         interval;
 
@@ -80,15 +77,11 @@
     function openRaffle(maxEntries, followers, cost, a, user) {
         $.say($.lang.get('ticketrafflesystem.raffle.opened', maxEntries, $.getPointsString(cost), a));
         raffleStatus = true;
-        $.inidb.RemoveFile('ticketsList');
-        $.inidb.RemoveFile('entered');
-        $.inidb.set('raffleresults', 'ticketRaffleEntries', 0);
-        entries = "";
-        entries = [];
+        raffle.clear();
 
         if (messageInterval != 0) {
             interval = setInterval(function() {
-                $.say(raffleMessage.replace('(entries)', String(totalEntries))); //can't use regex here. why? who knows.
+                $.say(raffleMessage.replace('(entries)', String(raffle.size()))); //can't use regex here. why? who knows.
             }, messageInterval * 6e4);
         }
 
@@ -116,21 +109,18 @@
         maxEntries = 0;
         cost = 0;
         a = '';
-        totalEntries = 0;
-        lastTotalEntries = 0;
-        totalTickets = 0;
         regTMulti = 1;
         subTMulti = 1;
         $.inidb.set('traffleSettings', 'isActive', 'false');
     };
 
     function winner(force) {
-        if (entries.length == 0) {
+        if (raffle.size() == 0) {
             $.say($.lang.get('ticketrafflesystem.raffle.close.err'));
             return;
         }
 
-        var Winner = $.randElement(entries),
+        var Winner = String(raffle.draw()),
             isFollowing = $.user.isFollower(Winner.toLowerCase()),
             followMsg = (isFollowing ? $.lang.get('rafflesystem.isfollowing') : $.lang.get('rafflesystem.isnotfollowing'));
 
@@ -161,16 +151,11 @@
             return;
         }
 
-        for (var i = 0, t = 0; i < entries.length; i++) {
-            if (entries[i].equalsIgnoreCase(user)) {
-                t++;
-                if ((t + times) > maxEntries) {
-                    if (msgToggle) {
-                        $.say($.whisperPrefix(user) + $.lang.get('ticketrafflesystem.limit.hit', maxEntries));
-                    }
-                    return;
-                }
+        if ((raffle.getWeight(user) + times) > maxEntries) {
+            if (msgToggle) {
+                $.say($.whisperPrefix(user) + $.lang.get('ticketrafflesystem.limit.hit', maxEntries));
             }
+            return;
         }
 
         if (cost > 0) {
@@ -182,32 +167,13 @@
             }
         }
 
-        if (!$.inidb.exists('entered', user.toLowerCase())) {
-            totalEntries++;
-        }
-
-        totalTickets += times;
         $.inidb.decr('points', user, (otimes * cost));
-        incr(user.toLowerCase(), times);
-
-        for (var i = 0; i < times; i++) {
-            entries.push(user);
-        }
+        /* The tickets and the entrant count are saved by the raffle in batches */
+        raffle.addWeight(user, times);
     };
 
-    function incr(user, times) {
-        if (!$.inidb.exists('entered', user.toLowerCase())) {
-            $.inidb.set('entered', user.toLowerCase(), 'true');
-            $.inidb.incr('raffleresults', 'ticketRaffleEntries', 1);
-        }
-        $.inidb.incr('ticketsList', user.toLowerCase(), times);
-    }
-
     function getTickets(user) {
-        if (!$.inidb.exists('ticketsList', user.toLowerCase())) {
-            return 0;
-        }
-        return $.inidb.get('ticketsList', user.toLowerCase());
+        return raffle.getWeight(user);
     };
 
     /**
@@ -259,10 +225,7 @@
              */
             if (action.equalsIgnoreCase('reset')) {
                 clear();
-                $.inidb.RemoveFile('ticketsList');
-                $.inidb.RemoveFile('entered');
-                $.inidb.set('raffleresults', 'ticketRaffleEntries', 0);
-                entries = [];
+                raffle.clear();
                 if (sender != $.botName.toLowerCase()) {
                     $.say($.whisperPrefix(sender) + $.lang.get('ticketrafflesystem.reset'));
                 }
@@ -337,9 +300,7 @@
         $.registerChatCommand('./systems/ticketraffleSystem.js', 'ticket', 7);
 
         $.inidb.set('traffleSettings', 'isActive', 'false');
-        $.inidb.set('raffleresults', 'ticketRaffleEntries', 0);
-        $.inidb.RemoveFile('ticketsList');
-        $.inidb.RemoveFile('entered');
+        raffle.clear();
     });
 
     $.reloadTRaffle = reloadTRaffle;
@@ -72,25 +72,20 @@
      * @function loadPanelPlaylist
      */
     function loadPanelPlaylist() {
-        var keys = $.inidb.GetKeyList('yt_playlists_registry', ''),
-            count = 0;
-        $.inidb.RemoveFile('ytPanelPlaylist');
-
-        for (var i in keys) {
-            count++;
-            $.inidb.set('ytPanelPlaylist', count, keys[i].replace('ytPlaylist_', ''));
-        }
+        $.ytPlaylists.syncPanelTable();
     }
 
     /**
      * @function createDefaultPl
      */
     function createDefaultPl() {
-        $.inidb.set('ytPlaylist_default', '1', 'vY_kyk8yL9U');
-        $.inidb.set('ytPlaylist_default', '2', 'q_Wk_dn-jEg');
-        $.inidb.set('ytPlaylist_default', '3', '5WRZ-bC5XzE');
-        $.inidb.set('ytPlaylist_default', '4', '9Y5CCHacHfk');
-        $.inidb.set('ytPlaylist_default', 'lastkey', '4');
+        var ids = new java.util.ArrayList();
+
+        ids.add('vY_kyk8yL9U');
+        ids.add('q_Wk_dn-jEg');
+        ids.add('5WRZ-bC5XzE');
+        ids.add('9Y5CCHacHfk');
+        $.ytPlaylists.get('default').replace(ids);
     }
 
     /**
@@ -100,6 +95,7 @@
         if (currentPlaylist === null && connectedPlayerClient !== null) {
             /** Pre-load last activated playlist */
             currentPlaylist = new BotPlayList(activePlaylistname, true);
+            $.ytPlaylists.setActive(activePlaylistname);
             /** if the current playlist is "default" and it's empty, add some default songs. */
             if (currentPlaylist.getPlaylistname().equals('default') && currentPlaylist.getplaylistLength() == 0) {
                 /** whatfunk - Waves FREE CC0 No Copyright Royalty Free Music */
@@ -171,40 +167,9 @@
          * @returns {number}
          */
         this.getVideoLength = function() {
-            var attempts = 0;
-            if (videoLength != -1) {
-                return videoLength;
-            }
-
-            var lengthData = $.youtube.GetVideoLength(videoId);
-
-            if (lengthData[0] == 123 && lengthData[1] == 456 && lengthData[2] === 7899) {
-                throw 'Live Stream Detected';
-            }
-            // only try 2 times.
-            // No point in spamming the API, we'll hit the limit.
-            // If we try more than 2 times, that's 2 times on each song.
-            while (lengthData[0] == 0 && lengthData[1] == 0 && lengthData[2] == 0 && attempts <= 2) {
-                lengthData = $.youtube.GetVideoLength(videoId);
-                attempts++;
-            }
-            if (lengthData[0] == 0 && lengthData[1] == 0 && lengthData[2] == 0) {
-                return 0;
-            }
-            videoLength = lengthData[2];
-            return lengthData[2];
+            return videoLength;
         };
 
-        /**
-         * @function getVideoInfo
-         * Sets the member values for embeddable and license.
-         */
-        this.getVideoInfo = function() {
-            var videoInfo = $.youtube.GetVideoInfo(videoId);
-            license = videoInfo[0];
-            embeddable = videoInfo[1];
-        }
-
         /**
          * @function getVideoLengthMMSS
          * @returns {String}
@@ -213,10 +178,6 @@
             var min,
                 sec;
 
-            if (videoLength == -1) {
-                videoLength = this.getVideoLength();
-            }
-
             min = (videoLength / 60 < 10 ? "0" : "") + Math.floor(videoLength / 60);
             sec = (videoLength % 60 < 10 ? "0" : "") + Math.floor(videoLength % 60);
 
@@ -251,64 +212,24 @@
             owner = owner.toLowerCase();
         }
 
-        /* Redefine searchQuery to check the cache, if it doesn't exist in the cache,
-         * this is simply extracting the ID from the searchString which is one way
-         * of looking up videos via the YouTube API. Also, strip any query parameters
-         * from what should be URLs.  We do not wish to do this at the non-URL level
-         * as someone might be searching for a song using an ampersand.
-         */
-        if (searchQuery.includes('watch?v=')) {
-            searchQuery = searchQuery.split('=', 2)[1];
-            if (searchQuery.includes('&')) {
-                searchQuery = searchQuery.split('&', 2)[0];
-            }
-        }
-        if (searchQuery.startsWith('https://youtu.be/')) {
-            searchQuery = searchQuery.split('/', 4)[3];
-            if (searchQuery.includes('&')) {
-                searchQuery = searchQuery.split('&', 2)[0];
-            }
+        // The cache extracts the ID from URLs and only hits the API for videos it has not seen recently.
+        var lookup = $.youtubeCache.lookup(searchQuery),
+            video = lookup.getVideo();
+
+        if (video == null) {
+            throw lookup.getError() + '';
         }
 
-        if ($.inidb.exists('ytcache', searchQuery)) {
-            var jsonString = $.inidb.get('ytcache', searchQuery);
-            var jsonData = JSON.parse(jsonString);
-            videoId = jsonData["id"];
-            videoTitle = jsonData["title"];
-            videoLength = jsonData["time"];
-        } else {
-            var data = null;
-            var attempts = 0;
-            // We do not need an infinite loop here. 2 attempts is enough.
-            // If we loop more we might hit the limit.
-            // Since we need to look x times for each songs.
-            do {
-                data = $.youtube.SearchForVideo(searchQuery);
-                attempts++;
-            } while (data[0].length() < 11 && data[1] != "No Search Results Found" && attempts <= 2);
-
-            // Hit 5 trys and nothing was found
-            if (data[0].length() < 11) {
-                throw 'No data returned.';
-            }
-
-            videoId = data[0];
-            videoTitle = data[1];
-
-            if (videoTitle.equalsIgnoreCase('video marked private') || videoTitle.equalsIgnoreCase('no search results found')) {
-                throw videoTitle;
-            }
-
-            this.getVideoLength();
-            var jsonData = {};
-            jsonData["id"] = videoId + '';
-            jsonData["title"] = videoTitle + '';
-            jsonData["time"] = videoLength;
-            var jsonString = JSON.stringify(jsonData);
-            $.inidb.set('ytcache', videoId, jsonString);
+        if (video.isLive()) {
+            throw 'Live Stream Detected';
         }
 
-        this.getVideoInfo();
+        videoId = video.getId() + '';
+        videoTitle = video.getTitle() + '';
+        videoLength = video.getLength();
+        license = video.isCreativeCommons() ? 1 : 0;
+        embeddable = video.isEmbeddable() ? 1 : 0;
+
         if (license == 0 && playCCOnly) {
             throw 'Video is not licensed as Creative Commons (ID: ' + videoId + ')';
         }
@@ -330,9 +251,7 @@
     function BotPlayList(playlistName, loadDefault) {
         var previousVideo = null,
             currentVideo = null,
-            playListDbId = playlistDbPrefix + playlistName,
-            defaultPlaylist = [], // @type { Integer[] }
-            defaultPlaylistReadOnly = [], // @type { Integer[] }
+            playlist = null, // @type { PlaylistStore.Playlist }
             requests = new java.util.concurrent.ConcurrentLinkedQueue, // @type { YoutubeVideo[] }
             requestFailReason = '';
 
@@ -347,15 +266,26 @@
          */
         this.importPlaylistFile = function(listName, fileName, sender) {
             var importedList = [],
+                importedIds = new java.util.ArrayList(),
                 importCount = 0,
                 failCount = 0,
                 playlistFailCount = 0,
                 spaceMacther = new RegExp('\\s');
 
-            if ($.inidb.exists('yt_playlists_registry', 'ytPlaylist_' + listName)) {
+            if ($.ytPlaylists.exists(listName)) {
                 if ($.fileExists("./addons/youtubePlayer/" + fileName)) {
                     $.say($.whisperPrefix(sender) + $.lang.get('ytplayer.command.importpl.file.start'));
                     importedList = $.readFile("./addons/youtubePlayer/" + fileName);
+
+                    // Resolve every entry up front: searches run in parallel and lengths are fetched in batches.
+                    var queries = new java.util.ArrayList();
+                    for (var i = 0; i < importedList.length; i++) {
+                        if (!importedList[i].contains('&list') && !spaceMacther.test(importedList[i]) && !importedList[i].isEmpty()) {
+                            queries.add(importedList[i]);
+                        }
+                    }
+                    $.youtubeCache.lookupAll(queries);
+
                     for (var i = 0; i < importedList.length; i++) {
                         if (importedList[i].contains('&list')) {
                             playlistFailCount++;
@@ -367,14 +297,14 @@
 
                         try {
                             var youtubeVideo = new YoutubeVideo(importedList[i], 'importPlaylistFile');
-                            $.inidb.set(playlistDbPrefix + listName, importCount, youtubeVideo.getVideoId());
-                            importCount++;
+                            importedIds.add(youtubeVideo.getVideoId());
                         } catch (ex) {
                             $.log.error("importPlaylistFile::skipped [" + importedList[i] + "]: " + ex);
                             failCount++;
                         }
                     }
-                    $.inidb.set(playlistDbPrefix + listName, 'lastkey', importCount);
+                    // Repeated videos are only written once, so report what was actually written.
+                    importCount = $.ytPlaylists.get(listName).replace(importedIds);
 
                     if (playlistFailCount > 0) {
                         return $.lang.get('ytplayer.command.importpl.file.success.plerror', importCount, failCount, fileName, listName, playlistFailCount);
@@ -393,22 +323,15 @@
          * @return {Boolean}
          */
         this.loadNewPlaylist = function(listName) {
-            if ($.inidb.exists('yt_playlists_registry', 'ytPlaylist_' + listName)) {
+            if ($.ytPlaylists.exists(listName)) {
                 this.playlistName = listName;
-                playListDbId = playlistDbPrefix + listName;
+                playlist = $.ytPlaylists.get(listName);
+                $.ytPlaylists.setActive(listName);
                 this.loadPlaylistKeys();
                 connectedPlayerClient.pushPlayList();
             }
         };
 
-        /**
-         * @function getplayListDbId
-         * @return {String}
-         */
-        this.getplayListDbId = function() {
-            return playListDbId;
-        };
-
         /**
          * @function getRequestFailReason
          * @return {String}
@@ -441,15 +364,10 @@
                 return -2;
             }
             if (targetPlaylistName) {
-                newKey = (!$.inidb.exists(playlistDbPrefix + targetPlaylistName, 'lastkey') ? 0 : parseInt($.inidb.get(playlistDbPrefix + targetPlaylistName, 'lastkey')) + 1);
-                $.inidb.set(playlistDbPrefix + targetPlaylistName, newKey, youtubeVideo.getVideoId());
-                $.inidb.set(playlistDbPrefix + targetPlaylistName, 'lastkey', newKey);
-            }
-            if (targetPlaylistName.equals(this.playlistName)) {
-                this.loadPlaylistKeys();
-                connectedPlayerClient.pushPlayList();
+                // The store sends the new entry to the player when it is added to the loaded playlist.
+                newKey = $.ytPlaylists.get(targetPlaylistName).add(youtubeVideo.getVideoId());
             }
-            return newKey;
+            return (newKey < 0 ? -2 : newKey);
         };
 
         /**
@@ -457,23 +375,10 @@
          * @returns {Number}
          */
         this.deleteCurrentVideo = function() {
-            var keyList = $.inidb.GetKeyList(playListDbId, ''),
-                i;
+            playlist.remove(currentVideo.getVideoId());
 
-            for (i = 0; i < keyList.length; i++) {
-                if (!keyList[i].equals("lastkey")) {
-                    if ($.inidb.get(playListDbId, keyList[i]) == currentVideo.getVideoId()) {
-                        $.inidb.del(playListDbId, keyList[i]);
-                        break;
-                    }
-                }
-            }
-
-            if (this.loadPlaylistKeys() > 0) {
-                connectedPlayerClient.pushPlayList();
+            if (playlist.size() > 0) {
                 this.nextVideo();
-            } else {
-                connectedPlayerClient.pushPlayList();
             }
 
             return this.getplaylistLength();
@@ -485,17 +390,7 @@
          * @returns {Number}
          */
         this.deleteVideoByID = function(videoId) {
-            var keyList = $.inidb.GetKeyList(playListDbId, ''),
-                i;
-
-            for (i = 0; i < keyList.length; i++) {
-                if ($.inidb.get(playListDbId, keyList[i]).equals(videoId)) {
-                    $.inidb.del(playListDbId, keyList[i]);
-                    break;
-                }
-            }
-            this.loadPlaylistKeys();
-            connectedPlayerClient.pushPlayList();
+            playlist.remove(videoId);
         }
 
         /**
@@ -503,12 +398,7 @@
          * @returns {boolean}
          */
         this.deletePlaylist = function(listName) {
-            if ($.inidb.exists('yt_playlists_registry', 'ytPlaylist_' + listName)) {
-                $.inidb.del('yt_playlists_registry', 'ytPlaylist_' + listName);
-                $.inidb.RemoveFile('ytPlaylist_' + listName);
-                return true;
-            }
-            return false;
+            return $.ytPlaylists['delete'](listName);
         };
 
         /**
@@ -532,17 +422,9 @@
          * @returns {Number}
          */
         this.getplaylistLength = function() {
-            return defaultPlaylist.length;
+            return playlist.size();
         };
 
-        /**
-         * @function getReadOnlyPlaylistData
-         * @returns {String}[]
-         */
-        this.getReadOnlyPlaylistData = function() {
-            return defaultPlaylistReadOnly;
-        }
-
         /**
          * @function getPreviousVideo
          * @returns {YoutubeVideo}
@@ -599,14 +481,14 @@
                     return false;
                 }
             } else {
-                if (defaultPlaylistReadOnly.length == 0 || defaultPlaylistReadOnly.length < playlistPosition) {
+                var videoId = playlist.get(playlistPosition);
+                if (videoId == null) {
                     return false;
                 }
 
                 previousVideo = currentVideo;
                 try {
-                    var playListIndex = defaultPlaylistReadOnly[playlistPosition];
-                    currentVideo = new YoutubeVideo($.inidb.get(playListDbId, playListIndex), playlistDJname);
+                    currentVideo = new YoutubeVideo(videoId, playlistDJname);
                 } catch (ex) {
                     $.log.error("YoutubeVideo::exception: " + ex);
                     return false;
@@ -651,22 +533,26 @@
                     }
                 }
             } else {
-                if (defaultPlaylistReadOnly.length == 0) {
+                var videoIds = playlist.list(),
+                    videos = $.youtubeCache.getAll(videoIds),
+                    video;
+
+                if (videoIds.isEmpty()) {
                     return false;
                 }
 
-                for (var i in defaultPlaylistReadOnly) {
-                    try {
-                        examineVideo = new YoutubeVideo($.inidb.get(playListDbId, defaultPlaylistReadOnly[i]), playlistDJname);
-                        if (examineVideo.getVideoTitle().toLowerCase().indexOf(songTitle.toLowerCase()) >= 0) {
-                            previousVideo = currentVideo;
-                            currentVideo = new YoutubeVideo($.inidb.get(playListDbId, defaultPlaylistReadOnly[i]), playlistDJname);
+                for (var i = 0; i < videoIds.size(); i++) {
+                    video = videos.get(videoIds.get(i));
+                    if (video != null && video.getTitle().toLowerCase().indexOf(songTitle.toLowerCase()) >= 0) {
+                        previousVideo = currentVideo;
+                        try {
+                            currentVideo = new YoutubeVideo(videoIds.get(i), playlistDJname);
                             match = true;
-                            break;
+                        } catch (ex) {
+                            $.log.error("YoutubeVideo::exception: " + ex);
+                            return false;
                         }
-                    } catch (ex) {
-                        $.log.error("YoutubeVideo::exception: " + ex);
-                        return false;
+                        break;
                     }
                 }
             }
@@ -693,22 +579,10 @@
          * @returns {number}
          */
         this.loadPlaylistKeys = function() {
-            var keyList = $.inidb.GetKeyList(playListDbId, '');
-
-            defaultPlaylist = [];
-            defaultPlaylistReadOnly = [];
+            var count = playlist.reset(randomizePlaylist);
 
-            for (var i = 0; i < keyList.length; i++) {
-                if (!keyList[i].equals("lastkey")) {
-                    defaultPlaylist.push(keyList[i]);
-                }
-            }
-            defaultPlaylist = (randomizePlaylist ? $.arrayShuffle(defaultPlaylist) : defaultPlaylist);
-            for (var i = 0; i < defaultPlaylist.length; i++) {
-                defaultPlaylistReadOnly.push(defaultPlaylist[i]);
-            }
             this.loaded = true;
-            return keyList.length;
+            return count;
         };
 
         /**
@@ -728,16 +602,14 @@
                     currentVideo = requests.poll();
                     exception = false;
                 } else {
-                    if (defaultPlaylist.length == 0) {
-                        if (this.loadPlaylistKeys() == 0) {
-                            return new YoutubeVideo('r9NsG7pMwNk', playlistDJname);
-                        }
+                    // The store starts the order over once it runs out.
+                    var videoId = playlist.next();
+                    if (videoId == null) {
                         return new YoutubeVideo('r9NsG7pMwNk', playlistDJname);
                     }
 
                     try {
-                        var playListIndex = defaultPlaylist.shift();
-                        currentVideo = new YoutubeVideo($.inidb.get(playListDbId, playListIndex), playlistDJname);
+                        currentVideo = new YoutubeVideo(videoId, playlistDJname);
                         exception = false
                     } catch (ex) {
                         $.log.error("YoutubeVideo::exception: " + ex);
@@ -748,6 +620,7 @@
             }
 
             connectedPlayerClient.play(currentVideo);
+            connectedPlayerClient.pushSongList();
             this.updateCurrentSongFile(currentVideo);
 
             if (announceInChat) {
@@ -764,10 +637,7 @@
          */
         this.preparePlaylist = function(playlistName) {
             $.inidb.set('ytSettings', 'activePlaylistname', playlistName);
-            if (!$.inidb.exists('yt_playlists_registry', playListDbId) || !$.inidb.FileExists(playListDbId)) {
-                $.setIniDbBoolean('yt_playlists_registry', playListDbId, true);
-                $.inidb.AddFile(playListDbId);
-            }
+            playlist = $.ytPlaylists.create(playlistName);
             return true;
         };
 
@@ -905,17 +775,7 @@
          * @returns {boolean}
          */
         this.videoExistsInPlaylist = function(youtubeVideo, targetPlaylistName) {
-            var keyList = $.inidb.GetKeyList(playlistDbPrefix + targetPlaylistName, ''),
-                i;
-
-            for (i in keyList) {
-                if (!keyList[i].equals("lastkey")) {
-                    if ($.inidb.get(playlistDbPrefix + targetPlaylistName, keyList[i]) == youtubeVideo.getVideoId()) {
-                        return true;
-                    }
-                }
-            }
-            return false;
+            return $.ytPlaylists.get(targetPlaylistName).contains(youtubeVideo.getVideoId());
         };
 
         /**
@@ -967,81 +827,12 @@
         var client = $.ytplayer,
             playerPaused = false;
 
-        /**
-         * @function pushCurrentSong
-         */
-        this.pushCurrentSong = function() {
-            var jsonData = {};
-
-            jsonData['currentsong'] = {
-                "requester": currentPlaylist.getCurrentVideo().getOwner() + '',
-                "song": currentPlaylist.getCurrentVideo().getVideoId() + '',
-                "title": currentPlaylist.getCurrentVideo().getVideoTitle() + '',
-                "duration": currentPlaylist.getCurrentVideo().getVideoLengthMMSS() + ''
-            };
-            client.sendJSONToAll(JSON.stringify(jsonData));
-        }
-
         /**
          * @function pushPlayList
          */
         this.pushPlayList = function() {
-            var jsonList = {},
-                playList = [],
-                jsonString,
-                jsonData,
-                youtubeObject,
-                videoId,
-                videoTitle,
-                videoLength,
-                youTubeDbId,
-                i;
-
             if (currentPlaylist) {
-
-                jsonList['playlistname'] = currentPlaylist.getPlaylistname() + '';
-                jsonList['playlist'] = [];
-                playList = currentPlaylist.getReadOnlyPlaylistData();
-
-                for (i = 0; i < playList.length; i++) {
-
-                    youTubeDbId = $.inidb.get(currentPlaylist.getplayListDbId(), playList[i]);
-
-                    if ($.inidb.exists('ytcache', youTubeDbId)) {
-                        jsonString = $.inidb.get('ytcache', youTubeDbId);
-                        jsonData = JSON.parse(jsonString);
-                        videoId = jsonData["id"];
-                        videoTitle = jsonData["title"];
-                        videoLength = jsonData["time"];
-
-                        min = (videoLength / 60 < 10 ? "0" : "") + Math.floor(videoLength / 60);
-                        sec = (videoLength % 60 < 10 ? "0" : "") + Math.floor(videoLength % 60);
-                        videoLength = min + ':' + sec;
-
-                        jsonList['playlist'].push({ "song": videoId, "title": videoTitle, "duration": videoLength });
-                    } else {
-                        try {
-                            youtubeObject = new YoutubeVideo(youTubeDbId, $.botName);
-                            videoId = youtubeObject.getVideoId() + '';
-                            videoTitle = youtubeObject.getVideoTitle() + '';
-                            videoLength = youtubeObject.getVideoLengthMMSS() + '';
-
-                            // Store in the YTCache so that we do not have to hit the API again later.
-                            jsonData = {};
-                            jsonData["id"] = videoId;
-                            jsonData["title"] = videoTitle;
-                            jsonData["time"] = youtubeObject.getVideoLength();
-                            jsonString = JSON.stringify(jsonData);
-                            $.inidb.set('ytcache', videoId, jsonString);
-
-                            jsonList['playlist'].push({ "song": videoId, "title": videoTitle, "duration": videoLength });
-                        } catch (ex) {
-                            $.log.error('YouTube API Failed Lookup: Playlist [' + jsonList['playlistname'] +
-                                '] Index [' + playList[i] + '] YT ID [' + youTubeDbId + '] Error [' + ex + ']');
-                        }
-                    }
-                }
-                client.sendJSONToAll(JSON.stringify(jsonList));
+                $.ytPlaylists.push();
             }
         };
 
@@ -1049,24 +840,19 @@
          * @function pushSongList
          */
         this.pushSongList = function() {
-            var jsonList = {},
+            var songList = [],
                 requestList = [],
                 youtubeObject,
                 i;
 
             if (currentPlaylist) {
-                jsonList['songlist'] = [];
                 requestList = currentPlaylist.getRequestList();
                 for (i in requestList) {
                     youtubeObject = requestList[i];
-                    jsonList['songlist'].push({
-                        "song": youtubeObject.getVideoId() + '',
-                        "title": youtubeObject.getVideoTitle() + '',
-                        "duration": youtubeObject.getVideoLengthMMSS() + '',
-                        "requester": youtubeObject.getOwner() + ''
-                    });
+                    songList.push([youtubeObject.getVideoId() + '', youtubeObject.getVideoTitle() + '', youtubeObject.getVideoLengthMMSS() + '', youtubeObject.getOwner() + '']);
                 }
-                client.sendJSONToAll(JSON.stringify(jsonList));
+                // Only the changes to the queue are sent to the clients.
+                client.songlist(JSON.stringify(songList));
             }
         };
 
@@ -1219,27 +1005,6 @@
         $.inidb.set('ytSettings', 'volume', event.getVolume());
     });
 
-    /**
-     * @event yTPlayerRequestSonglist
-     */
-    $.bind('yTPlayerRequestSonglist', function(event) {
-        connectedPlayerClient.pushSongList();
-    });
-
-    /**
-     * @event yTPlayerRequestPlaylist
-     */
-    $.bind('yTPlayerRequestPlaylist', function(event) {
-        connectedPlayerClient.pushPlayList();
-    });
-
-    /**
-     * @event yTPlayerRequestCurrentSong
-     */
-    $.bind('yTPlayerRequestCurrentSong', function(event) {
-        connectedPlayerClient.pushCurrentSong();
-    });
-
     /**
      * @event yTPlayerState
      */
@@ -1355,7 +1120,7 @@
                     $.say($.whisperPrefix(sender) + $.lang.get('ytplayer.command.ytp.clearcache.warning'));
                 } else {
                     if (actionArgs[0].equalsIgnoreCase('now')) {
-                        $.inidb.RemoveFile('ytcache');
+                        $.youtubeCache.clear();
                         $.say($.whisperPrefix(sender) + $.lang.get('ytplayer.command.ytp.clearcache.success'));
                     } else {
                         $.say($.whisperPrefix(sender) + $.lang.get('ytplayer.command.ytp.clearcache.warning'));
@@ -1372,7 +1137,6 @@
                     $.say($.whisperPrefix(sender) + $.lang.get('ytplayer.command.ytp.resetdefaultlist.active'));
                     return;
                 }
-                $.inidb.RemoveFile('ytPlaylist_default');
                 createDefaultPl();
                 $.say($.whisperPrefix(sender) + $.lang.get('ytplayer.command.ytp.resetdefaultlist.success'));
                 return;
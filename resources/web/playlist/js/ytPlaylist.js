@@ -27,6 +27,8 @@ var url = window.location.host.split(":");
 var addr = (getProtocol() === 'https://' || window.location.protocol === 'https:' ? 'wss://' : 'ws://') + window.location.host + '/ws/ytplayer';
 var connection = new WebSocket(addr, []);
 var currentVolume = 0;
+// The player state synced from the bot, see applyState.
+var state = { 'epoch': 0, 'version': -1, 'playlistname': '', 'playlist': [], 'songlist': [], 'current': null, 'volume': -1 };
 
 function debugMsg(message) {
     if (DEBUG_MODE)
@@ -80,28 +82,65 @@ connection.onmessage = function (e) {
         refreshData();
     }
 
-    if (messageObject['command'] !== undefined) {
-        if (messageObject['command']['play'] !== undefined) {
-            handleNewSong(messageObject['command']['title'], messageObject['command']['duration'], messageObject['command']['requester']);
-            refreshData();
-            return;
-        }
-    }
-
-    if (messageObject['currentsong'] !== undefined) {
-        handleNewSong(messageObject['currentsong']['title'], messageObject['currentsong']['duration'],
-                messageObject['currentsong']['requester'], messageObject['currentsong']['song']);
+    if (messageObject['state'] !== undefined) {
+        applyState(messageObject['state']);
         return;
     }
+}
 
-    if (messageObject['songlist'] !== undefined) {
-        handleSongList(messageObject);
+function applyState(message) {
+    var changed = {};
+
+    if (message['snapshot'] !== undefined) {
+        state = message['snapshot'];
+        state['epoch'] = message['epoch'];
+        state['version'] = message['version'];
+        changed = { 'playlist': true, 'songlist': true, 'current': true };
+    } else if (message['epoch'] !== state['epoch'] || message['from'] !== state['version']) {
+        // Ops only apply on top of the version they were made from.
+        if (message['epoch'] !== state['epoch'] || message['version'] > state['version']) {
+            refreshData();
+        }
         return;
+    } else {
+        for (var i = 0; i < message['ops'].length; i++) {
+            var op = message['ops'][i];
+
+            if (op['op'] === 'add') {
+                state[op['list']].splice(op['index'], 0, op['song']);
+                changed[op['list']] = true;
+            } else if (op['op'] === 'remove' || op['op'] === 'move') {
+                var list = state[op['list']];
+
+                for (var j = 0; j < list.length; j++) {
+                    if (list[j][0] === op['song']) {
+                        var song = list.splice(j, 1)[0];
+
+                        if (op['op'] === 'move') {
+                            list.splice(op['index'], 0, song);
+                        }
+                        break;
+                    }
+                }
+                changed[op['list']] = true;
+            } else if (op['op'] === 'current') {
+                state['current'] = op['song'];
+                changed['current'] = true;
+            } else if (op['op'] === 'volume') {
+                state['volume'] = op['volume'];
+            }
+        }
+        state['version'] = message['version'];
     }
 
-    if (messageObject['playlist'] !== undefined) {
-        handlePlayList(messageObject);
-        return;
+    if (changed['current'] && state['current'] !== null) {
+        handleNewSong(state['current'][1], state['current'][2], state['current'][3], state['current'][0]);
+    }
+    if (changed['songlist']) {
+        handleSongList(state['songlist']);
+    }
+    if (changed['playlist']) {
+        handlePlayList(state['playlistname'], state['playlist']);
     }
 }
 
@@ -111,27 +150,27 @@ function handleNewSong(title, duration, requester, id) {
             '<tr><td>' + title + '</td><td>' + requester + '</td><td>' + duration + '</td><td>' + id + '</td></tr>');
 }
 
-function handlePlayList(d) {
-    debugMsg('handlePlayList(' + d + ')');
-    $('#playlistTableTitle').html('Current Playlist: ' + d['playlistname']);
+function handlePlayList(playlistName, playlist) {
+    debugMsg('handlePlayList(' + playlistName + ')');
+    $('#playlistTableTitle').html('Current Playlist: ' + playlistName);
     var tableData = '<tr><th>Song Title</th><th>Duration</th><th>YouTube ID</th></tr>';
-    for (var i in d['playlist']) {
-        var id = d['playlist'][i]['song'];
-        var title = d['playlist'][i]['title'];
-        var duration = d['playlist'][i]['duration'];
+    for (var i in playlist) {
+        var id = playlist[i][0];
+        var title = playlist[i][1];
+        var duration = playlist[i][2];
         tableData += '<tr><td>' + title + '</td><td>' + duration + '</td><td>' + id + '</td></tr>';
     }
     $('#playlistTable').html(tableData);
 }
 
-function handleSongList(d) {
-    debugMsg('handleSongList(' + d + ')');
+function handleSongList(songlist) {
+    debugMsg('handleSongList(' + songlist.length + ')');
     var tableData = '<tr><th>Song Title</th><th>Requester</th><th>Duration</th><th>YouTube ID</th></tr>';
-    for (var i in d['songlist']) {
-        var id = d['songlist'][i]['song'];
-        var title = d['songlist'][i]['title'];
-        var duration = d['songlist'][i]['duration'];
-        var requester = d['songlist'][i]['requester'];
+    for (var i in songlist) {
+        var id = songlist[i][0];
+        var title = songlist[i][1];
+        var duration = songlist[i][2];
+        var requester = songlist[i][3];
         tableData += '<tr><td>' + title + '</td><td>' + requester + '</td><td>' + duration + '</td><td>' + id + '</td></tr>';
     }
     $('#songTable').html(tableData);
@@ -151,16 +190,15 @@ function newAlert(message, title, type, timeout) {
     }
 }
 
+// Asks for the changes since the last version seen. The bot answers with a snapshot if they are no longer held.
 function refreshData() {
     var jsonObject = {};
     if (!connectedToWS) {
         return;
     }
-    jsonObject['query'] = 'currentsong';
-    connection.send(JSON.stringify(jsonObject));
-    jsonObject['query'] = 'songlist';
-    connection.send(JSON.stringify(jsonObject));
-    jsonObject['query'] = 'playlist';
+    jsonObject['subscribe'] = true;
+    jsonObject['epoch'] = state['epoch'];
+    jsonObject['version'] = state['version'];
     connection.send(JSON.stringify(jsonObject));
 }
 setInterval(refreshData, 20000);
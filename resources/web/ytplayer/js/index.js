@@ -28,6 +28,7 @@
  */
 $(function() {
     var cluster = null,
+        playlistData = null,
         timer = null;
 
     /*
@@ -114,11 +115,19 @@ $(function() {
 
         // Add a listener to load the main playlist.
         player.addListener('playlist', (e) => {
+            playlistData = e;
+            renderPlaylist();
+        });
+
+        /*
+         * @function Renders the loaded playlist.
+         */
+        const renderPlaylist = () => {
             let table = [],
-                playlist = e.playlist;
+                playlist = playlistData.playlist;
 
             // Set the playlist name.
-            $('#playlist-name').html('(' + e.playlistname + ')');
+            $('#playlist-name').html('(' + playlistData.playlistname + ')');
 
             // Table header.
             table.push(($('<tr>').append($('<th/>', {
@@ -219,7 +228,7 @@ $(function() {
                     }
                 });
             }
-        });
+        };
 
         // Add a listener for the songrequest queue.
         player.addListener('songlist', (e) => {
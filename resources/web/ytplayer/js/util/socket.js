@@ -22,7 +22,17 @@ $(function() {
         listeners = [],
         player = {},
         hasAPIKey = true,
-        secondConnection = false;
+        secondConnection = false,
+        // The player state synced from the bot, see applyState.
+        state = {
+            epoch: 0,
+            version: -1,
+            playlistname: '',
+            playlist: [],
+            songlist: [],
+            current: null,
+            volume: -1
+        };
 
     /*
      * @function sends data to the socket, this should only be used in this script.
@@ -56,16 +66,24 @@ $(function() {
         return hasAPIKey;
     }
 
+    /*
+     * @function asks the bot for the state changes since the last version seen, or a snapshot.
+     */
+    player.subscribe = () => {
+        sendToSocket({
+            subscribe: true,
+            epoch: state.epoch,
+            version: state.version
+        });
+    };
+
     /*
      * @function gets the playlist.
      *
      * @param {String} callback_id
      */
     player.requestPlaylist = (callback_id) => {
-        // Request the data.
-        sendToSocket({
-            query: 'playlist'
-        });
+        player.subscribe();
     };
 
     /*
@@ -74,10 +92,7 @@ $(function() {
      * @param {String} callback_id
      */
     player.requestRequestList = (callback_id) => {
-        // Request the data.
-        sendToSocket({
-            query: 'songlist'
-        });
+        player.subscribe();
     };
 
     /*
@@ -301,6 +316,73 @@ $(function() {
         listeners[listener_id] = listener;
     };
 
+    /*
+     * @function calls the playlist and songlist listeners with the synced lists.
+     *
+     * @param {Object} changed
+     */
+    var notifyState = (changed) => {
+        if (changed.playlist && listeners['playlist'] !== undefined) {
+            listeners['playlist']({
+                playlistname: state.playlistname,
+                playlist: state.playlist.map((song) => ({ song: song[0], title: song[1], duration: song[2] }))
+            });
+        }
+
+        if (changed.songlist && listeners['songlist'] !== undefined) {
+            listeners['songlist']({
+                songlist: state.songlist.map((song) => ({ song: song[0], title: song[1], duration: song[2], requester: song[3] }))
+            });
+        }
+    };
+
+    /*
+     * @function applies a state message from the bot. Ops are only applied on top of the version they were made
+     * from, otherwise the state is requested again.
+     *
+     * @param {Object} message
+     */
+    var applyState = (message) => {
+        if (message.snapshot !== undefined) {
+            state = Object.assign({ epoch: message.epoch, version: message.version }, message.snapshot);
+            notifyState({ playlist: true, songlist: true });
+            return;
+        }
+
+        if (message.epoch !== state.epoch || message.from !== state.version) {
+            if (message.epoch !== state.epoch || message.version > state.version) {
+                player.subscribe();
+            }
+            return;
+        }
+
+        let changed = {};
+
+        for (let i = 0; i < message.ops.length; i++) {
+            let op = message.ops[i];
+
+            if (op.op === 'add') {
+                state[op.list].splice(op.index, 0, op.song);
+            } else if (op.op === 'remove') {
+                state[op.list] = state[op.list].filter((song) => song[0] !== op.song);
+            } else if (op.op === 'move') {
+                let song = state[op.list].find((song) => song[0] === op.song);
+
+                state[op.list] = state[op.list].filter((song) => song[0] !== op.song);
+                state[op.list].splice(op.index, 0, song);
+            } else if (op.op === 'current') {
+                state.current = op.song;
+            } else if (op.op === 'volume') {
+                state.volume = op.volume;
+            }
+
+            changed[op.list] = true;
+        }
+
+        state.version = message.version;
+        notifyState(changed);
+    };
+
     /* Socket functions */
 
     /*
@@ -379,7 +461,9 @@ $(function() {
                 return;
             }
 
-            if (message.query_id !== undefined) {
+            if (message.state !== undefined) {
+                applyState(message.state);
+            } else if (message.query_id !== undefined) {
                 if (listeners[message.query_id] !== undefined) {
                     listeners[message.query_id](message);
                     delete listeners[message.query_id];
@@ -386,4 +386,22 @@ public class MiniConnectionPoolManager {
         return recycledConnections.size();
     }
 
+    /**
+     * Returns the number of threads waiting for a connection.
+     *
+     * @return the number of threads blocked in getConnection().
+     */
+    public int getWaitingThreads() {
+        return semaphore.getQueueLength();
+    }
+
+    /**
+     * Returns the maximum number of connections of this pool.
+     *
+     * @return the maximum number of connections.
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
 } // end class MiniConnectionPoolManager
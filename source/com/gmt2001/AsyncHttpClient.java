@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001;
+
+import com.gmt2001.HttpRequest.RequestType;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import org.apache.commons.io.IOUtils;
+import tv.phantombot.CaselessProperties;
+
+/**
+ * Shared HTTP client used by all of the outbound API classes
+ *
+ * Connections are pooled and kept alive by the underlying {@link HttpClient}, HTTP/2 is used when the server supports
+ * it, gzip responses are decoded, and the number of requests in flight to a single host is capped. Requests that are
+ * over the per-host cap wait in a queue instead of blocking a thread.
+ *
+ * @author agent
+ */
+public final class AsyncHttpClient {
+
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 6.1; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/44.0.2403.52 Safari/537.36 PhantomBotJ/2020";
+    private static AsyncHttpClient instance;
+    private static int connectTimeout = 5 * 1000;
+    private static int requestTimeout = 30 * 1000;
+    private static int maxPerHost = 10;
+    private static int poolSize = 0;
+    private static int keepAlive = 300;
+    private final AtomicInteger threadCount = new AtomicInteger(0);
+    private final ConcurrentHashMap<String, HostLimiter> limiters = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final HttpClient client;
+
+    /**
+     * Reads the client settings from botlogin.txt. Must be called before the first call to {@link #instance()} to take
+     * effect
+     *
+     * httpconnecttimeout limits opening the connection. httprequesttimeout limits the whole request, from sending it
+     * until the last byte of the response body is read. It is not reset as data arrives, so it also bounds slow
+     * downloads. Both are in milliseconds
+     *
+     * @param properties The bot properties
+     */
+    public static synchronized void configure(CaselessProperties properties) {
+        connectTimeout = Integer.parseInt(properties.getProperty("httpconnecttimeout", "" + connectTimeout));
+        requestTimeout = Integer.parseInt(properties.getProperty("httprequesttimeout", "" + requestTimeout));
+        maxPerHost = Math.max(1, Integer.parseInt(properties.getProperty("httpmaxperhost", "" + maxPerHost)));
+        poolSize = Math.max(0, Integer.parseInt(properties.getProperty("httppoolsize", "" + poolSize)));
+        keepAlive = Math.max(1, Integer.parseInt(properties.getProperty("httpkeepalive", "" + keepAlive)));
+    }
+
+    public static synchronized AsyncHttpClient instance() {
+        if (instance == null) {
+            instance = new AsyncHttpClient();
+        }
+
+        return instance;
+    }
+
+    private AsyncHttpClient() {
+        Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
+
+        /* The JDK client reads its pool settings from system properties when the first client is built */
+        if (System.getProperty("jdk.httpclient.connectionPoolSize") == null) {
+            System.setProperty("jdk.httpclient.connectionPoolSize", "" + poolSize);
+        }
+
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout", "" + keepAlive);
+        }
+
+        this.executor = Executors.newCachedThreadPool((r) -> {
+            Thread t = new Thread(r, "com.gmt2001.AsyncHttpClient-" + this.threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(connectTimeout))
+                .executor(this.executor)
+                .build();
+    }
+
+    /**
+     * Sends a request without blocking the calling thread
+     *
+     * The returned future always completes normally. Failures are reported through {@link HttpResponse#success},
+     * {@link HttpResponse#exception} and {@link HttpResponse#exceptionClass}
+     *
+     * @param type The request method
+     * @param url The URL to request. User info in the URL is sent as Basic authorization
+     * @param post The request body, sent for POST and PUT, and for DELETE when not empty
+     * @param headers The request headers. The User-Agent and Accept-Encoding headers are added if missing
+     * @return A future that completes with the response
+     */
+    public CompletableFuture<HttpResponse> request(RequestType type, String url, String post, HashMap<String, String> headers) {
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        HttpResponse r = new HttpResponse();
+
+        r.type = type;
+        r.url = url;
+        r.post = post;
+        r.headers = headers;
+
+        java.net.http.HttpRequest request;
+        HostLimiter limiter;
+
+        try {
+            URI uri = toURI(url);
+
+            if (uri.getHost() == null) {
+                throw new URISyntaxException(url, "Missing host");
+            }
+
+            java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder();
+
+            if (uri.getRawUserInfo() != null) {
+                builder.header("Authorization", "Basic " + Base64.getEncoder().encodeToString(uri.getUserInfo().getBytes(StandardCharsets.UTF_8)));
+                uri = new URI(uri.getScheme() + "://" + uri.getHost() + (uri.getPort() == -1 ? "" : ":" + uri.getPort())
+                        + uri.getRawPath() + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery()));
+            }
+
+            builder.uri(uri);
+
+            boolean hasUserAgent = false;
+            boolean hasAcceptEncoding = false;
+            for (Map.Entry<String, String> e : headers.entrySet()) {
+                hasUserAgent |= e.getKey().equalsIgnoreCase("User-Agent");
+                hasAcceptEncoding |= e.getKey().equalsIgnoreCase("Accept-Encoding");
+
+                try {
+                    builder.header(e.getKey(), e.getValue());
+                } catch (IllegalArgumentException ex) {
+                    /* Restricted headers, such as Content-Length, are managed by the client */
+                    com.gmt2001.Console.debug.println("Skipped header " + e.getKey() + ": " + ex.getMessage());
+                }
+            }
+
+            if (!hasUserAgent) {
+                builder.header("User-Agent", USER_AGENT);
+            }
+
+            if (!hasAcceptEncoding) {
+                builder.header("Accept-Encoding", "gzip");
+            }
+
+            if (type == RequestType.POST || type == RequestType.PUT || (type == RequestType.DELETE && !post.isEmpty())) {
+                builder.method(type.name(), java.net.http.HttpRequest.BodyPublishers.ofString(post));
+            } else {
+                builder.method(type.name(), java.net.http.HttpRequest.BodyPublishers.noBody());
+            }
+
+            request = builder.build();
+            limiter = this.limiters.computeIfAbsent(uri.getHost().toLowerCase() + ":" + uri.getPort(), (k) -> new HostLimiter());
+        } catch (IOException | URISyntaxException | IllegalArgumentException ex) {
+            fail(r, ex);
+            future.complete(r);
+            return future;
+        }
+
+        limiter.submit(() -> {
+            try {
+                CompletableFuture<java.net.http.HttpResponse<byte[]>> send = this.client.sendAsync(request, BodyHandlers.ofByteArray());
+
+                /* The JDK request timeout stops at the response headers, so the body is timed here */
+                send.thenApply((response) -> response).orTimeout(requestTimeout, TimeUnit.MILLISECONDS).whenComplete((response, ex) -> {
+                    limiter.release();
+
+                    if (ex instanceof TimeoutException) {
+                        send.cancel(true);
+                        fail(r, new HttpTimeoutException("Request timed out after " + requestTimeout + "ms"));
+                    } else if (ex != null) {
+                        fail(r, ex);
+                    } else {
+                        fill(r, response);
+                    }
+
+                    future.complete(r);
+                });
+            } catch (Exception ex) {
+                limiter.release();
+                fail(r, ex);
+                future.complete(r);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Converts a URL string to a URI, quoting characters that the URI parser rejects, such as spaces
+     */
+    private static URI toURI(String url) throws IOException, URISyntaxException {
+        try {
+            return new URI(url);
+        } catch (URISyntaxException ex) {
+            URL u = new URL(url);
+            return new URI(u.getProtocol(), u.getUserInfo(), u.getHost(), u.getPort(), u.getPath(), u.getQuery(), u.getRef());
+        }
+    }
+
+    private static void fill(HttpResponse r, java.net.http.HttpResponse<byte[]> response) {
+        for (Map.Entry<String, List<String>> e : response.headers().map().entrySet()) {
+            r.responseHeaders.put(e.getKey().toLowerCase(), String.join(",", e.getValue()));
+        }
+
+        try {
+            r.content = decode(response.body(), r.getResponseHeader("Content-Encoding"), r.getResponseHeader("Content-Type"));
+            r.httpCode = response.statusCode();
+            r.success = r.httpCode < 400;
+        } catch (IOException ex) {
+            fail(r, ex);
+        }
+    }
+
+    private static void fail(HttpResponse r, Throwable ex) {
+        while ((ex instanceof CompletionException || ex.getClass() == RuntimeException.class) && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+
+        r.success = false;
+        r.httpCode = 0;
+        r.exception = ex.getMessage();
+        r.exceptionClass = ex.getClass().getSimpleName();
+    }
+
+    private static String decode(byte[] body, String contentEncoding, String contentType) throws IOException {
+        InputStream stream = new ByteArrayInputStream(body);
+
+        if (body.length > 0 && contentEncoding != null) {
+            if (contentEncoding.equalsIgnoreCase("gzip")) {
+                stream = new GZIPInputStream(stream);
+            } else if (contentEncoding.equalsIgnoreCase("deflate")) {
+                stream = new InflaterInputStream(stream);
+            }
+        }
+
+        Charset charset = StandardCharsets.UTF_8;
+        if (contentType != null) {
+            for (String param : contentType.split(" *; *")) {
+                String[] val = param.split("=", 2);
+                if (val[0].trim().equalsIgnoreCase("charset") && val.length > 1) {
+                    try {
+                        charset = Charset.forName(val[1].replace("\"", "").trim());
+                    } catch (IllegalArgumentException ex) {
+                        com.gmt2001.Console.debug.println("Unknown charset " + val[1] + ", using UTF-8");
+                    }
+                }
+            }
+        }
+
+        try (InputStream in = stream) {
+            return IOUtils.toString(in, charset);
+        }
+    }
+
+    /**
+     * Caps the number of requests in flight to a single host. Waiting requests are queued and started as running
+     * requests complete
+     */
+    private static final class HostLimiter {
+
+        private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+        private int active = 0;
+
+        void submit(Runnable command) {
+            synchronized (this) {
+                if (this.active >= maxPerHost) {
+                    this.waiting.add(command);
+                    return;
+                }
+
+                this.active++;
+            }
+
+            command.run();
+        }
+
+        void release() {
+            Runnable next;
+
+            synchronized (this) {
+                next = this.waiting.poll();
+
+                if (next == null) {
+                    this.active--;
+                    return;
+                }
+            }
+
+            next.run();
+        }
+    }
+}
@@ -16,14 +16,7 @@
  */
 package com.gmt2001;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.net.URL;
-import java.nio.charset.Charset;
-import javax.net.ssl.HttpsURLConnection;
+import java.util.HashMap;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -48,18 +41,6 @@ public class BTTVAPIv3 {
         Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
     }
 
-    /*
-     * Reads data from a stream.
-     */
-    private static String readAll(Reader rd) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        int cp;
-        while ((cp = rd.read()) != -1) {
-            sb.append((char) cp);
-        }
-        return sb.toString();
-    }
-
     /*
      * Populates additional information into a JSON object to be digested
      * as needed.
@@ -76,53 +57,34 @@ public class BTTVAPIv3 {
         jsonObject.put("_content", jsonContent);
     }
 
-    @SuppressWarnings("UseSpecificCatch")
     private static JSONObject readJsonFromUrl(String urlAddress, boolean isJSONArray) throws JSONException {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        headers.put("User-Agent", "PhantomBotJ/2020");
+        HttpResponse response = HttpRequest.getDataAsync(HttpRequest.RequestType.GET, urlAddress, "", headers).join();
         JSONObject jsonResult = new JSONObject("{}");
-        InputStream inputStream = null;
-        URL urlRaw;
-        HttpsURLConnection urlConn;
         String jsonText = "";
 
-        try {
-            urlRaw = new URL(urlAddress);
-            urlConn = (HttpsURLConnection) urlRaw.openConnection();
-            urlConn.setDoInput(true);
-            urlConn.setRequestMethod("GET");
-            urlConn.addRequestProperty("Content-Type", "application/json");
-            urlConn.setRequestProperty("User-Agent", "PhantomBotJ/2020");
-            urlConn.connect();
-
-            if (urlConn.getResponseCode() == 200) {
-                inputStream = urlConn.getInputStream();
-            } else {
-                inputStream = urlConn.getErrorStream();
-            }
+        if (response.exceptionClass != null) {
+            fillJSONObject(jsonResult, false, response.type.name(), urlAddress, 0, response.exceptionClass, response.exception, "");
+            com.gmt2001.Console.err.println("BTTVAPIv3::readJsonFromUrl::Exception: " + response.exception);
+            return jsonResult;
+        }
 
-            BufferedReader rd = new BufferedReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
-            jsonText = readAll(rd);
+        try {
+            jsonText = response.content;
             if (isJSONArray) {
                 jsonResult.put("data", new JSONArray(jsonText));
             } else {
                 jsonResult = new JSONObject(jsonText);
             }
-            fillJSONObject(jsonResult, true, "GET", urlAddress, urlConn.getResponseCode(), "", "", jsonText);
-        } catch (IOException | NullPointerException | JSONException ex) {
-            // Generate the return object.
-            fillJSONObject(jsonResult, false, "GET", urlAddress, 0, ex.getClass().getSimpleName(), ex.getMessage(), jsonText);
+            fillJSONObject(jsonResult, true, response.type.name(), urlAddress, response.httpCode, "", "", jsonText);
+        } catch (JSONException ex) {
+            fillJSONObject(jsonResult, false, response.type.name(), urlAddress, 0, "JSONException", ex.getMessage(), jsonText);
             com.gmt2001.Console.err.println("BTTVAPIv3::readJsonFromUrl::Exception: " + ex.getMessage());
-        } finally {
-            if (inputStream != null) {
-                try {
-                    inputStream.close();
-                } catch (IOException ex) {
-                    fillJSONObject(jsonResult, false, "GET", urlAddress, 0, "IOException", ex.getMessage(), "");
-                    com.gmt2001.Console.err.println("BTTVAPIv3::readJsonFromUrl::Exception: " + ex.getMessage());
-                }
-            }
         }
 
-        return (jsonResult);
+        return jsonResult;
     }
 
     /*
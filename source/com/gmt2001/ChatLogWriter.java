@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+import tv.phantombot.PhantomBot;
+
+/**
+ * Writes the script logs (chat, events, errors...) to ./logs/[type]/[dd-MM-yyyy].txt.
+ *
+ * Lines are queued by the scripts and written in batches by one thread, which keeps one buffered
+ * append-only writer per file and flushes once per batch. Files roll over at midnight, and the
+ * closed files can be compressed with gzip.
+ */
+public class ChatLogWriter implements Runnable {
+
+    private static final ChatLogWriter instance = new ChatLogWriter();
+    private static final Pattern VALID_TYPE = Pattern.compile("[A-Za-z0-9_\\-]+");
+    private static final DateTimeFormatter FILE_DATE = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+    private static final int QUEUE_SIZE = 100000;
+    private static final int BATCH_SIZE = 1000;
+    private static final long TIMEZONE_REFRESH = 60000L;
+    /* Queued by close() to wake the writer thread */
+    private static final LogLine STOP = new LogLine("", "", 0L);
+    private final BlockingQueue<LogLine> queue = new LinkedBlockingQueue<>(QUEUE_SIZE);
+    private final Map<String, BufferedWriter> writers = new HashMap<>();
+    private final AtomicLong linesWritten = new AtomicLong(0L);
+    private final AtomicLong bytesWritten = new AtomicLong(0L);
+    private final AtomicLong linesDropped = new AtomicLong(0L);
+    private final Thread thread;
+    private volatile boolean disposed = false;
+
+    /* Only used by the writer thread */
+    private String fileDate = "";
+    private long nextRoll = 0L;
+    private String timeZoneId = "";
+    private long nextTimeZoneCheck = 0L;
+    private SimpleDateFormat secondFormat;
+    private SimpleDateFormat zoneFormat;
+    private long lastSecond = -1L;
+    private String secondPrefix = "";
+    private String zoneSuffix = "";
+
+    /**
+     * Method that returns this instance.
+     *
+     * @return
+     */
+    public static ChatLogWriter instance() {
+        return instance;
+    }
+
+    /**
+     * Class constructor.
+     */
+    private ChatLogWriter() {
+        this.thread = new Thread(this, "com.gmt2001.ChatLogWriter");
+        this.thread.setDaemon(true);
+        this.thread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
+        this.thread.start();
+
+        Metrics.instance().gauge("phantombot_chatlog_queue_lines", "Chat log lines waiting to be written", this::getQueueDepth);
+        Metrics.instance().counter("phantombot_chatlog_lines_written_total", "Chat log lines written", this::getLinesWritten);
+        Metrics.instance().counter("phantombot_chatlog_bytes_written_total", "Chat log bytes written", this::getBytesWritten);
+        Metrics.instance().counter("phantombot_chatlog_lines_dropped_total", "Chat log lines dropped because the queue was full", this::getLinesDropped);
+    }
+
+    /**
+     * Method that queues a line for ./logs/[type]/[date].txt. The line is prefixed with the time it was queued at.
+     *
+     * @param type The log type, which is also the folder name. Letters, digits, - and _ only.
+     * @param message
+     * @return False if the type is invalid or the queue is full.
+     */
+    public boolean log(String type, String message) {
+        if (disposed || !VALID_TYPE.matcher(type).matches()) {
+            return false;
+        }
+
+        if (!queue.offer(new LogLine(type, message, System.currentTimeMillis()))) {
+            linesDropped.incrementAndGet();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Method that returns the number of lines written since startup.
+     *
+     * @return
+     */
+    public long getLinesWritten() {
+        return linesWritten.get();
+    }
+
+    /**
+     * Method that returns the number of bytes written since startup.
+     *
+     * @return
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Method that returns the number of lines dropped because the queue was full.
+     *
+     * @return
+     */
+    public long getLinesDropped() {
+        return linesDropped.get();
+    }
+
+    /**
+     * Method that returns the number of lines waiting to be written.
+     *
+     * @return
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Method that writes the queued lines and closes all files.
+     *
+     * The writer thread is woken with a marker line instead of an interrupt, since an interrupt during a write closes the
+     * file channel and loses the lines still buffered.
+     */
+    public void close() {
+        disposed = true;
+        queue.offer(STOP);
+
+        try {
+            thread.join(5000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        List<LogLine> batch = new ArrayList<>(BATCH_SIZE);
+
+        while (!disposed || !queue.isEmpty()) {
+            try {
+                LogLine first = disposed ? queue.poll() : queue.poll(1, TimeUnit.SECONDS);
+
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                write(batch);
+            } catch (InterruptedException ex) {
+                com.gmt2001.Console.debug.println("Interrupted while waiting for log lines");
+            } catch (Exception ex) {
+                com.gmt2001.Console.err.printStackTrace(ex);
+            } finally {
+                batch.clear();
+            }
+        }
+
+        closeAll();
+    }
+
+    private void write(List<LogLine> batch) {
+        List<BufferedWriter> touched = new ArrayList<>();
+
+        for (LogLine line : batch) {
+            if (line == STOP) {
+                continue;
+            }
+
+            if (line.timestamp >= nextRoll) {
+                flush(touched);
+                roll(line.timestamp);
+            }
+
+            BufferedWriter writer = getWriter(line.type);
+            if (writer == null) {
+                continue;
+            }
+
+            String text = "[" + formatTimestamp(line.timestamp) + "] " + line.message + System.lineSeparator();
+
+            try {
+                writer.write(text);
+                linesWritten.incrementAndGet();
+                bytesWritten.addAndGet(text.getBytes(StandardCharsets.UTF_8).length);
+
+                if (!touched.contains(writer)) {
+                    touched.add(writer);
+                }
+            } catch (IOException ex) {
+                com.gmt2001.Console.err.println("Failed to write to the " + line.type + " log: " + ex.getMessage());
+            }
+        }
+
+        flush(touched);
+    }
+
+    private void flush(List<BufferedWriter> touched) {
+        for (BufferedWriter writer : touched) {
+            try {
+                writer.flush();
+            } catch (IOException ex) {
+                com.gmt2001.Console.err.println("Failed to flush a log: " + ex.getMessage());
+            }
+        }
+
+        touched.clear();
+    }
+
+    private BufferedWriter getWriter(String type) {
+        BufferedWriter writer = writers.get(type);
+
+        if (writer == null) {
+            try {
+                Path dir = Paths.get("./logs", type);
+                Files.createDirectories(dir);
+                writer = Files.newBufferedWriter(dir.resolve(fileDate + ".txt"), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+                writers.put(type, writer);
+            } catch (IOException ex) {
+                com.gmt2001.Console.err.println("Failed to open the " + type + " log: " + ex.getMessage());
+            }
+        }
+
+        return writer;
+    }
+
+    /**
+     * Closes the files of the previous day and moves to the day of the timestamp.
+     */
+    private void roll(long timestamp) {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate day = new Date(timestamp).toInstant().atZone(zone).toLocalDate();
+        List<Path> closed = new ArrayList<>();
+
+        for (Map.Entry<String, BufferedWriter> entry : writers.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (IOException ex) {
+                com.gmt2001.Console.err.println("Failed to close the " + entry.getKey() + " log: " + ex.getMessage());
+            }
+
+            closed.add(Paths.get("./logs", entry.getKey(), fileDate + ".txt"));
+        }
+
+        writers.clear();
+        fileDate = day.format(FILE_DATE);
+        nextRoll = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+
+        if (!closed.isEmpty() && isCompressEnabled()) {
+            Thread compressor = new Thread(() -> closed.forEach(this::compress), "com.gmt2001.ChatLogWriter-compress");
+            compressor.setDaemon(true);
+            compressor.start();
+        }
+    }
+
+    private boolean isCompressEnabled() {
+        PhantomBot bot = PhantomBot.instance();
+        if (bot == null || bot.getDataStore() == null) {
+            return false;
+        }
+
+        return "true".equals(bot.getDataStore().GetString("settings", "", "log.compress"));
+    }
+
+    private void compress(Path file) {
+        Path target = Paths.get(file.toString() + ".gz");
+
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        try (InputStream in = Files.newInputStream(file); OutputStream out = new GZIPOutputStream(Files.newOutputStream(target))) {
+            in.transferTo(out);
+        } catch (IOException ex) {
+            com.gmt2001.Console.err.println("Failed to compress " + file + ": " + ex.getMessage());
+            return;
+        }
+
+        try {
+            Files.delete(file);
+        } catch (IOException ex) {
+            com.gmt2001.Console.err.println("Failed to delete " + file + " after compressing it: " + ex.getMessage());
+        }
+    }
+
+    private void closeAll() {
+        writers.forEach((type, writer) -> {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                com.gmt2001.Console.err.println("Failed to close the " + type + " log: " + ex.getMessage());
+            }
+        });
+        writers.clear();
+    }
+
+    /**
+     * Formats a timestamp as MM-dd-yyyy @ HH:mm:ss.SSS z in the timezone set with !timezone. Only the
+     * milliseconds change between lines of the same second, so the rest is formatted once per second.
+     */
+    private String formatTimestamp(long timestamp) {
+        if (timestamp >= nextTimeZoneCheck) {
+            nextTimeZoneCheck = timestamp + TIMEZONE_REFRESH;
+
+            String id = "GMT";
+            PhantomBot bot = PhantomBot.instance();
+            if (bot != null && bot.getDataStore() != null) {
+                String setting = bot.getDataStore().GetString("settings", "", "timezone");
+
+                if (setting != null && !setting.isEmpty()) {
+                    id = setting;
+                }
+            }
+
+            if (!id.equals(timeZoneId)) {
+                timeZoneId = id;
+                secondFormat = new SimpleDateFormat("MM-dd-yyyy @ HH:mm:ss");
+                secondFormat.setTimeZone(TimeZone.getTimeZone(id));
+                zoneFormat = new SimpleDateFormat("z");
+                zoneFormat.setTimeZone(TimeZone.getTimeZone(id));
+                lastSecond = -1L;
+            }
+        }
+
+        long second = timestamp / 1000L;
+        if (second != lastSecond) {
+            lastSecond = second;
+            Date date = new Date(timestamp);
+            secondPrefix = secondFormat.format(date) + ".";
+            zoneSuffix = " " + zoneFormat.format(date);
+        }
+
+        long millis = timestamp % 1000L;
+        return secondPrefix + (millis < 10L ? "00" : millis < 100L ? "0" : "") + millis + zoneSuffix;
+    }
+
+    /**
+     * A queued log line.
+     */
+    private static class LogLine {
+
+        private final String type;
+        private final String message;
+        private final long timestamp;
+
+        private LogLine(String type, String message, long timestamp) {
+            this.type = type;
+            this.message = message;
+            this.timestamp = timestamp;
+        }
+    }
+}
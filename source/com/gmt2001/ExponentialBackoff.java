@@ -69,6 +69,17 @@ public class ExponentialBackoff {
         service.schedule(command, this.lastIntervalMS, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Advances the backoff and returns the next interval without blocking, for callers that schedule their own retry
+     *
+     * @return The next interval, in MS
+     */
+    public long GetNextInterval() {
+        this.determineNextInterval();
+        this.totalIterations++;
+        return this.lastIntervalMS;
+    }
+
     /**
      * Resets the backoff to use the minimum values on the next call
      */
@@ -16,14 +16,8 @@
  */
 package com.gmt2001;
 
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.HashMap;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.io.IOUtils;
+import java.util.concurrent.CompletableFuture;
 
 /**
  *
@@ -31,8 +25,6 @@ import org.apache.commons.io.IOUtils;
  */
 public class HttpRequest {
 
-    private static final int TIMEOUT = 5 * 1000;
-
     public static enum RequestType {
 
         GET, POST, PUT, DELETE
@@ -42,64 +34,26 @@ public class HttpRequest {
         Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
     }
 
+    /**
+     * Sends a request through the shared {@link AsyncHttpClient} without blocking the calling thread
+     *
+     * @param type The request method
+     * @param url The URL to request
+     * @param post The request body
+     * @param headers The request headers
+     * @return A future that completes with the response. The future never completes exceptionally
+     */
+    public static CompletableFuture<HttpResponse> getDataAsync(RequestType type, String url, String post, HashMap<String, String> headers) {
+        return AsyncHttpClient.instance().request(type, url, post, headers);
+    }
+
     public static HttpResponse getData(RequestType type, String url, String post, HashMap<String, String> headers) {
         Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
 
-        HttpResponse r = new HttpResponse();
-
-        r.type = type;
-        r.url = url;
-        r.post = post;
-        r.headers = headers;
-
-        try {
-            URL u = new URL(url);
-
-            HttpURLConnection h = (HttpURLConnection) u.openConnection();
-
-            if (u.getUserInfo() != null) {
-                String basicAuth = "Basic " + new String(new Base64().encode(u.getUserInfo().getBytes()));
-                h.setRequestProperty("Authorization", basicAuth);
-            }
-
-            headers.entrySet().stream().forEach((e) -> {
-                h.addRequestProperty(e.getKey(), e.getValue());
-            });
-
-            h.setRequestMethod(type.name());
-            h.setUseCaches(false);
-            h.setDefaultUseCaches(false);
-            h.setConnectTimeout(TIMEOUT);
-            h.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 6.1; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/44.0.2403.52 Safari/537.36 PhantomBotJ/2020");
-            if (type == RequestType.POST || type == RequestType.PUT) {
-                h.setDoOutput(true);
-                h.setRequestProperty("Content-Length", "" + post.getBytes().length);
-            }
-
-            h.connect();
-
-            if (type == RequestType.POST || type == RequestType.PUT) {
-                try (BufferedOutputStream stream = new BufferedOutputStream(h.getOutputStream())) {
-                    stream.write(post.getBytes());
-                    stream.flush();
-                }
-            }
-
-            if (h.getResponseCode() < 400) {
-                r.content = IOUtils.toString(new BufferedInputStream(h.getInputStream()), h.getContentEncoding());
-                r.httpCode = h.getResponseCode();
-                r.success = true;
-            } else {
-                r.content = IOUtils.toString(new BufferedInputStream(h.getErrorStream()), h.getContentEncoding());
-                r.httpCode = h.getResponseCode();
-                r.success = false;
-            }
-        } catch (IOException ex) {
-            r.success = false;
-            r.httpCode = 0;
-            r.exception = ex.getMessage();
+        HttpResponse r = getDataAsync(type, url, post, headers).join();
 
-            com.gmt2001.Console.err.printStackTrace(ex);
+        if (r.exceptionClass != null) {
+            com.gmt2001.Console.err.println("HttpRequest::getData::" + r.exceptionClass + ": " + r.exception);
         }
 
         return r;
@@ -30,9 +30,21 @@ public class HttpResponse {
     public String post;
     public String content;
     public HashMap<String, String> headers;
+    public HashMap<String, String> responseHeaders = new HashMap<>();
     public int httpCode;
     public boolean success;
     public String exception;
+    public String exceptionClass;
+
+    /**
+     * Gets a response header, ignoring the case of the header name
+     *
+     * @param name The name of the header
+     * @return The header value, or null if the header was not sent
+     */
+    public String getResponseHeader(String name) {
+        return responseHeaders.get(name.toLowerCase());
+    }
 
     @Override
     public String toString() {
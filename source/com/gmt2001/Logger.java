@@ -217,6 +217,17 @@ public class Logger implements Runnable {
 
     private Logger() {
         this.queue = new ConcurrentLinkedQueue<LogItem>();
+
+        Metrics.instance().gauge("phantombot_log_queue_lines", "Core log lines waiting to be written", this::getQueueDepth);
+    }
+
+    /**
+     * Method that returns the number of lines waiting to be written.
+     *
+     * @return
+     */
+    public int getQueueDepth() {
+        return this.queue.size();
     }
 
     public void log(LogType t, String s) {
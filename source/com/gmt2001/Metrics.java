@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A small in-process registry of counters, gauges and histograms, written out in the Prometheus text format.
+ *
+ * Counters and histograms are updated by the code that owns them. Gauges, and counters that are already kept
+ * somewhere else, are suppliers read at scrape time, so they cost nothing between scrapes. Registering a name again
+ * replaces the previous metric, which lets objects that are recreated (like the chat queue on a reconnect) register
+ * themselves from their constructor.
+ */
+public final class Metrics {
+
+    private static final Metrics instance = new Metrics();
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Method that returns this instance.
+     *
+     * @return
+     */
+    public static Metrics instance() {
+        return instance;
+    }
+
+    /**
+     * Class constructor. Registers the JVM metrics.
+     */
+    private Metrics() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        gauges("jvm_memory_bytes_used", "Used bytes of a JVM memory area", "area", () -> Map.of("heap", memory.getHeapMemoryUsage().getUsed(),
+                "nonheap", memory.getNonHeapMemoryUsage().getUsed()));
+        gauges("jvm_memory_bytes_committed", "Committed bytes of a JVM memory area", "area", () -> Map.of("heap", memory.getHeapMemoryUsage().getCommitted(),
+                "nonheap", memory.getNonHeapMemoryUsage().getCommitted()));
+        gauge("jvm_memory_bytes_max", "Max bytes of the JVM heap", () -> memory.getHeapMemoryUsage().getMax());
+        counters("jvm_gc_collections_total", "Collections run by each garbage collector", "gc", () -> {
+            Map<String, Number> values = new HashMap<>();
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                values.put(gc.getName(), gc.getCollectionCount());
+            }
+            return values;
+        });
+        counters("jvm_gc_collection_seconds_total", "Time spent in each garbage collector", "gc", () -> {
+            Map<String, Number> values = new HashMap<>();
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                values.put(gc.getName(), gc.getCollectionTime() / 1000.0);
+            }
+            return values;
+        });
+        gauge("jvm_threads_current", "Live JVM threads", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+        gauge("process_uptime_seconds", "Seconds since the JVM started", () -> ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0);
+    }
+
+    /**
+     * Method that returns the counter with this name, creating it if needed.
+     *
+     * @param name
+     * @param help
+     * @return
+     */
+    public Counter counter(String name, String help) {
+        Family family = families.compute(name, (k, v) -> v instanceof Counter ? v : new Counter(name, help));
+        return (Counter) family;
+    }
+
+    /**
+     * Method that returns the histogram with this name, creating it if needed.
+     *
+     * @param name
+     * @param help
+     * @param buckets The upper bounds of the buckets, ascending.
+     * @return
+     */
+    public Histogram histogram(String name, String help, double... buckets) {
+        Family family = families.compute(name, (k, v) -> v instanceof Histogram ? v : new Histogram(name, help, buckets));
+        return (Histogram) family;
+    }
+
+    /**
+     * Method that returns the histogram with this name and one label, creating it if needed. Get the histogram of each
+     * label value with {@link Histograms#labels(String)}.
+     *
+     * @param name
+     * @param help
+     * @param label The label name.
+     * @param buckets The upper bounds of the buckets, ascending.
+     * @return
+     */
+    public Histograms histograms(String name, String help, String label, double... buckets) {
+        Family family = families.compute(name, (k, v) -> v instanceof Histograms ? v : new Histograms(name, help, label, buckets));
+        return (Histograms) family;
+    }
+
+    /**
+     * Method that registers a gauge read at scrape time.
+     *
+     * @param name
+     * @param help
+     * @param value
+     */
+    public void gauge(String name, String help, Supplier<? extends Number> value) {
+        families.put(name, new Sampled(name, help, "gauge", null, () -> Map.of("", value.get())));
+    }
+
+    /**
+     * Method that registers a gauge with one label, read at scrape time.
+     *
+     * @param name
+     * @param help
+     * @param label The label name.
+     * @param values The value of each label value.
+     */
+    public void gauges(String name, String help, String label, Supplier<? extends Map<String, ? extends Number>> values) {
+        families.put(name, new Sampled(name, help, "gauge", label, values));
+    }
+
+    /**
+     * Method that registers a counter kept by someone else, read at scrape time.
+     *
+     * @param name
+     * @param help
+     * @param value
+     */
+    public void counter(String name, String help, Supplier<? extends Number> value) {
+        families.put(name, new Sampled(name, help, "counter", null, () -> Map.of("", value.get())));
+    }
+
+    /**
+     * Method that registers a counter with one label kept by someone else, read at scrape time.
+     *
+     * @param name
+     * @param help
+     * @param label The label name.
+     * @param values The value of each label value.
+     */
+    public void counters(String name, String help, String label, Supplier<? extends Map<String, ? extends Number>> values) {
+        families.put(name, new Sampled(name, help, "counter", label, values));
+    }
+
+    /**
+     * Method that removes a metric.
+     *
+     * @param name
+     */
+    public void remove(String name) {
+        families.remove(name);
+    }
+
+    /**
+     * Method that writes every metric in the Prometheus text format.
+     *
+     * @return
+     */
+    public String scrape() {
+        StringBuilder sb = new StringBuilder(8192);
+
+        for (Family family : families.values()) {
+            int start = sb.length();
+
+            try {
+                sb.append("# HELP ").append(family.name).append(' ').append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+                sb.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+                family.write(sb);
+            } catch (Exception ex) {
+                // A failing supplier only hides its own metric.
+                sb.setLength(start);
+                com.gmt2001.Console.debug.println("Failed to collect metric " + family.name + ": " + ex.getMessage());
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private static void writeSample(StringBuilder sb, String name, String label, String labelValue, Number value) {
+        writeSample(sb, name, null, null, label, labelValue, value);
+    }
+
+    private static void writeSample(StringBuilder sb, String name, String label, String labelValue, String label2, String labelValue2, Number value) {
+        sb.append(name);
+
+        if (label != null || label2 != null) {
+            sb.append('{');
+
+            if (label != null) {
+                writeLabel(sb, label, labelValue);
+            }
+
+            if (label2 != null) {
+                if (label != null) {
+                    sb.append(',');
+                }
+
+                writeLabel(sb, label2, labelValue2);
+            }
+
+            sb.append('}');
+        }
+
+        sb.append(' ');
+
+        if (value instanceof Double || value instanceof Float) {
+            double d = value.doubleValue();
+            sb.append(Double.isNaN(d) ? "NaN" : Double.isInfinite(d) ? (d > 0 ? "+Inf" : "-Inf") : Double.toString(d));
+        } else {
+            sb.append(value.longValue());
+        }
+
+        sb.append('\n');
+    }
+
+    private static void writeLabel(StringBuilder sb, String label, String labelValue) {
+        sb.append(label).append("=\"").append(labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+    }
+
+    private abstract static class Family {
+
+        protected final String name;
+        protected final String help;
+        protected final String type;
+
+        private Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        protected abstract void write(StringBuilder sb);
+    }
+
+    /**
+     * A counter owned by this registry.
+     */
+    public static final class Counter extends Family {
+
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name, String help) {
+            super(name, help, "counter");
+        }
+
+        /**
+         * Method that adds one to the counter.
+         */
+        public void inc() {
+            value.increment();
+        }
+
+        /**
+         * Method that adds to the counter.
+         *
+         * @param amount
+         */
+        public void inc(long amount) {
+            value.add(amount);
+        }
+
+        /**
+         * Method that returns the value of the counter.
+         *
+         * @return
+         */
+        public long get() {
+            return value.sum();
+        }
+
+        @Override
+        protected void write(StringBuilder sb) {
+            writeSample(sb, name, null, null, value.sum());
+        }
+    }
+
+    /**
+     * A histogram owned by this registry.
+     */
+    public static final class Histogram extends Family {
+
+        private final double[] bounds;
+        private final LongAdder[] counts;
+        private final DoubleAdder sum = new DoubleAdder();
+        private final String label;
+        private final String labelValue;
+
+        private Histogram(String name, String help, double[] bounds) {
+            this(name, help, null, null, bounds);
+        }
+
+        private Histogram(String name, String help, String label, String labelValue, double[] bounds) {
+            super(name, help, "histogram");
+            this.label = label;
+            this.labelValue = labelValue;
+            this.bounds = bounds.clone();
+            this.counts = new LongAdder[bounds.length + 1];
+
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Method that records a value.
+         *
+         * @param value
+         */
+        public void observe(double value) {
+            int i = 0;
+
+            while (i < bounds.length && value > bounds[i]) {
+                i++;
+            }
+
+            counts[i].increment();
+            sum.add(value);
+        }
+
+        @Override
+        protected void write(StringBuilder sb) {
+            long cumulative = 0L;
+
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i].sum();
+                writeSample(sb, name + "_bucket", label, labelValue, "le", i < bounds.length ? Double.toString(bounds[i]) : "+Inf", cumulative);
+            }
+
+            writeSample(sb, name + "_sum", label, labelValue, sum.sum());
+            writeSample(sb, name + "_count", label, labelValue, cumulative);
+        }
+    }
+
+    /**
+     * Histograms with one label, owned by this registry.
+     */
+    public static final class Histograms extends Family {
+
+        private final String label;
+        private final double[] bounds;
+        private final Map<String, Histogram> children = new ConcurrentSkipListMap<>();
+
+        private Histograms(String name, String help, String label, double[] bounds) {
+            super(name, help, "histogram");
+            this.label = label;
+            this.bounds = bounds.clone();
+        }
+
+        /**
+         * Method that returns the histogram of a label value, creating it if needed.
+         *
+         * @param labelValue
+         * @return
+         */
+        public Histogram labels(String labelValue) {
+            return children.computeIfAbsent(labelValue, (v) -> new Histogram(name, help, label, v, bounds));
+        }
+
+        @Override
+        protected void write(StringBuilder sb) {
+            for (Histogram histogram : children.values()) {
+                histogram.write(sb);
+            }
+        }
+    }
+
+    /**
+     * Gauges and counters read from a supplier at scrape time.
+     */
+    private static final class Sampled extends Family {
+
+        private final String label;
+        private final Supplier<? extends Map<String, ? extends Number>> values;
+
+        private Sampled(String name, String help, String type, String label, Supplier<? extends Map<String, ? extends Number>> values) {
+            super(name, help, type);
+            this.label = label;
+            this.values = values;
+        }
+
+        @Override
+        protected void write(StringBuilder sb) {
+            for (Map.Entry<String, ? extends Number> value : values.get().entrySet()) {
+                if (value.getValue() != null) {
+                    writeSample(sb, name, label, value.getKey(), value.getValue());
+                }
+            }
+        }
+    }
+}
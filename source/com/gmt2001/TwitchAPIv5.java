@@ -17,21 +17,16 @@
 package com.gmt2001;
 
 import com.gmt2001.datastore.DataStore;
-import java.io.BufferedOutputStream;
 import tv.phantombot.cache.UsernameCache;
-import java.io.IOException;
-import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.URL;
 import java.net.URLEncoder;
-import javax.net.ssl.HttpsURLConnection;
-import org.apache.commons.io.IOUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.json.JSONStringer;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.CompletableFuture;
 import org.json.JSONException;
 
 /**
@@ -45,7 +40,6 @@ public class TwitchAPIv5 {
     private static final TwitchAPIv5 instance = new TwitchAPIv5();
     private static final String base_url = "https://api.twitch.tv/kraken";
     private static final String header_accept = "application/vnd.twitchtv.v5+json";
-    private static final int timeout = 2 * 1000;
     private String clientid = "";
     private String oauth = "";
     private String cheerEmotes = "";
@@ -84,99 +78,56 @@ public class TwitchAPIv5 {
         jsonObject.put("_content", jsonContent);
     }
 
-    @SuppressWarnings("UseSpecificCatch")
     private JSONObject GetData(request_type type, String url, String post, String oauth, boolean isJson) throws JSONException {
-        JSONObject j = new JSONObject("{}");
-        InputStream i = null;
-        String content = "";
-
-        try {
-            URL u = new URL(url);
-            HttpsURLConnection c = (HttpsURLConnection) u.openConnection();
-            c.addRequestProperty("Accept", header_accept);
-            c.addRequestProperty("Content-Type", isJson ? "application/json" : "application/x-www-form-urlencoded");
-
-            if (!clientid.isEmpty()) {
-                c.addRequestProperty("Client-ID", clientid);
-            }
+        return GetDataAsync(type, url, post, oauth, isJson).join();
+    }
 
-            if (!oauth.isEmpty()) {
-                c.addRequestProperty("Authorization", "OAuth " + oauth);
-            } else {
-                if (!this.oauth.isEmpty()) {
-                    c.addRequestProperty("Authorization", "OAuth " + oauth);
-                }
-            }
+    @SuppressWarnings("UseSpecificCatch")
+    private CompletableFuture<JSONObject> GetDataAsync(request_type type, String url, String post, String oauth, boolean isJson) {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Accept", header_accept);
+        headers.put("Content-Type", isJson ? "application/json" : "application/x-www-form-urlencoded");
 
-            c.setRequestMethod(type.name());
-            c.setConnectTimeout(timeout);
-            c.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 6.1; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/44.0.2403.52 Safari/537.36 PhantomBotJ/2015");
+        if (!clientid.isEmpty()) {
+            headers.put("Client-ID", clientid);
+        }
 
-            if (!post.isEmpty()) {
-                c.setDoOutput(true);
+        if (!oauth.isEmpty()) {
+            headers.put("Authorization", "OAuth " + oauth);
+        } else {
+            if (!this.oauth.isEmpty()) {
+                headers.put("Authorization", "OAuth " + oauth);
             }
+        }
 
-            c.connect();
+        headers.put("User-Agent", "Mozilla/5.0 (Windows NT 6.1; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/44.0.2403.52 Safari/537.36 PhantomBotJ/2015");
 
-            if (!post.isEmpty()) {
-                try (BufferedOutputStream stream = new BufferedOutputStream(c.getOutputStream())) {
-                    stream.write(post.getBytes());
-                    stream.flush();
-                }
-            }
-
-            if (c.getResponseCode() == 200) {
-                i = c.getInputStream();
-            } else {
-                i = c.getErrorStream();
-            }
+        return HttpRequest.getDataAsync(HttpRequest.RequestType.valueOf(type.name()), url, post, headers).thenApply((response) -> {
+            JSONObject j = new JSONObject("{}");
+            String content = "";
 
-            if (c.getResponseCode() == 204 || i == null) {
-                content = "{}";
-            } else {
-                // default to UTF-8, it'll probably be the best bet if there's
-                // no charset specified.
-                String charset = "utf-8";
-                String ct = c.getContentType();
-                if (ct != null) {
-                    String[] cts = ct.split(" *; *");
-                    for (int idx = 1; idx < cts.length; ++idx) {
-                        String[] val = cts[idx].split("=", 2);
-                        if (val[0] == "charset" && val.length > 1) {
-                            charset = val[1];
-                        }
-                    }
+            try {
+                if (response.exceptionClass != null) {
+                    fillJSONObject(j, false, type.name(), post, url, 0, response.exceptionClass, response.exception, content);
+                    com.gmt2001.Console.debug.println("Failed to get data [" + response.exceptionClass + "]: " + response.exception);
+                    return j;
                 }
 
-                if ("gzip".equals(c.getContentEncoding())) {
-                    i = new GZIPInputStream(i);
+                if (response.httpCode == 204 || response.content == null || response.content.isEmpty()) {
+                    content = "{}";
+                } else {
+                    content = response.content;
                 }
 
-                content = IOUtils.toString(i, charset);
-            }
-
-            j = new JSONObject(content);
-            fillJSONObject(j, true, type.name(), post, url, c.getResponseCode(), "", "", content);
-        } catch (Exception ex) {
-            Throwable rootCause = ex;
-            while (rootCause.getCause() != null && rootCause.getCause() != rootCause) {
-                rootCause = rootCause.getCause();
+                j = new JSONObject(content);
+                fillJSONObject(j, true, type.name(), post, url, response.httpCode, "", "", content);
+            } catch (Exception ex) {
+                fillJSONObject(j, false, type.name(), post, url, 0, ex.getClass().getSimpleName(), ex.getMessage(), content);
+                com.gmt2001.Console.debug.println("Failed to get data [" + ex.getClass().getSimpleName() + "]: " + ex.getMessage());
             }
 
-            fillJSONObject(j, false, type.name(), post, url, 0, ex.getClass().getSimpleName(), ex.getMessage(), content);
-            com.gmt2001.Console.debug.println("Failed to get data [" + ex.getClass().getSimpleName() + "]: " + ex.getMessage());
-        } finally {
-            if (i != null) {
-                try {
-                    i.close();
-                } catch (IOException ex) {
-                    fillJSONObject(j, false, type.name(), post, url, 0, "IOException", ex.getMessage(), content);
-                    com.gmt2001.Console.err.println("IOException: " + ex.getMessage());
-                }
-            }
-        }
-
-        return j;
+            return j;
+        });
     }
 
     /**
@@ -452,6 +403,16 @@ public class TwitchAPIv5 {
         return GetData(request_type.GET, base_url + "/users?login=" + user, false);
     }
 
+    /**
+     * Gets a user object by login name without blocking the calling thread
+     *
+     * @param user
+     * @return
+     */
+    public CompletableFuture<JSONObject> GetUserAsync(String user) {
+        return GetDataAsync(request_type.GET, base_url + "/users?login=" + user, "", "", false);
+    }
+
     /**
      * Gets a user object by ID
      *
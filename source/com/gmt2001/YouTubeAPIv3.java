@@ -16,22 +16,17 @@
  */
 package com.gmt2001;
 
-import java.io.IOException;
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.nio.charset.Charset;
-import java.net.MalformedURLException;
-import java.net.SocketTimeoutException;
-import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
-import javax.net.ssl.HttpsURLConnection;
 import org.apache.commons.io.IOUtils;
 import org.joda.time.Period;
 import org.joda.time.format.ISOPeriodFormat;
@@ -49,7 +44,18 @@ import tv.phantombot.PhantomBot;
 public class YouTubeAPIv3 {
 
     private static YouTubeAPIv3 instance;
+    private static final Pattern VIDEO_URL = Pattern.compile(".*(?:youtu.be\\/|v\\/|u\\/\\w\\/|embed\\/|watch\\?v=)([^#\\&\\?^\\s]*).*");
+    private static final Pattern VIDEO_ID = Pattern.compile("^[A-Za-z0-9_-]{11}$");
+    /* Quota cost of each endpoint, in units */
+    private static final long SEARCH_COST = 100L;
+    private static final long VIDEOS_COST = 1L;
+    /* Most ids the videos endpoint accepts in one call */
+    public static final int MAX_VIDEO_IDS = 50;
+    private final AtomicLong searchCalls = new AtomicLong(0L);
+    private final AtomicLong videosCalls = new AtomicLong(0L);
     private String apikey = "";
+    private String quotaDate = null;
+    private long quotaPoints = 0L;
 
     private enum request_type {
 
@@ -66,18 +72,29 @@ public class YouTubeAPIv3 {
 
     private YouTubeAPIv3() {
         Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
+
+        Metrics.instance().counters("phantombot_youtube_api_calls_total", "Calls made to the YouTube Data API", "endpoint",
+                () -> Map.of("search", searchCalls.get(), "videos", videosCalls.get()));
+        Metrics.instance().gauge("phantombot_youtube_quota_units", "YouTube Data API quota used today", this::getQuotaUsed);
     }
 
-    /*
-     * Reads data from a stream.
+    /**
+     * Extracts the video id from a YouTube URL, or returns the input if it already looks like a video id.
+     *
+     * @param q A URL, video id, or search query
+     * @return The video id, or null if the input does not contain one
      */
-    private static String readAll(Reader rd) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        int cp;
-        while ((cp = rd.read()) != -1) {
-            sb.append((char) cp);
+    public static String ExtractVideoId(String q) {
+        String candidate = q.trim();
+        Matcher matcher = VIDEO_URL.matcher(candidate);
+
+        if (matcher.matches()) {
+            candidate = matcher.group(1);
+        } else if (candidate.contains("v=")) {
+            candidate = candidate.substring(candidate.indexOf("v=") + 2, Math.min(candidate.length(), candidate.indexOf("v=") + 13));
         }
-        return sb.toString();
+
+        return VIDEO_ID.matcher(candidate).matches() ? candidate : null;
     }
 
     /*
@@ -96,75 +113,40 @@ public class YouTubeAPIv3 {
         jsonObject.put("_content", jsonContent);
     }
 
-    @SuppressWarnings( {
-        "null", "SleepWhileInLoop", "UseSpecificCatch"
-    })
     private JSONObject GetData(request_type type, String urlAddress) throws JSONException {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        headers.put("User-Agent", "Mozilla/5.0 (Windows NT 6.1; Win64; x64) AppleWebKit/537.36 " +
+                    "(KHTML, like Gecko) Chrome/44.0.2403.52 Safari/537.36 PhantomBotJ/2015");
+        HttpResponse response = HttpRequest.getDataAsync(HttpRequest.RequestType.GET, urlAddress, "", headers).join();
         JSONObject jsonResult = new JSONObject("{}");
-        InputStream inputStream = null;
-        URL urlRaw;
-        HttpsURLConnection urlConn;
         String jsonText = "";
 
-        try {
-            urlRaw = new URL(urlAddress);
-            urlConn = (HttpsURLConnection) urlRaw.openConnection();
-            urlConn.setDoInput(true);
-            urlConn.setRequestMethod("GET");
-            urlConn.addRequestProperty("Content-Type", "application/json");
-            urlConn.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 6.1; Win64; x64) AppleWebKit/537.36 " +
-                                       "(KHTML, like Gecko) Chrome/44.0.2403.52 Safari/537.36 PhantomBotJ/2015");
-            urlConn.connect();
-
-            if (urlConn.getResponseCode() == 200) {
-                inputStream = urlConn.getInputStream();
-            } else {
-                inputStream = urlConn.getErrorStream();
-            }
-
-            BufferedReader rd = new BufferedReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
-            jsonText = readAll(rd);
-            jsonResult = new JSONObject(jsonText);
-            fillJSONObject(jsonResult, true, "GET", urlAddress, urlConn.getResponseCode(), "", "", jsonText);
-
-            /* If the JSON was properly parsed then we may have received back a proper error JSON payload from YouTube. */
-            if (jsonResult.has("error")) {
-                if (jsonResult.getJSONObject("error").has("errors")) {
-                    JSONArray jaerror = jsonResult.getJSONObject("error").getJSONArray("errors");
-                    if (jaerror.getJSONObject(0).has("reason") && jaerror.getJSONObject(0).has("domain")) {
-                        com.gmt2001.Console.err.println("YouTubeAPIv3 Error: [Domain] " + jaerror.getJSONObject(0).getString("domain") + 
-                                                        " [Reason] " + jaerror.getJSONObject(0).getString("reason"));
+        if (response.exceptionClass != null) {
+            fillJSONObject(jsonResult, false, "GET", urlAddress, 0, response.exceptionClass, response.exception, "");
+            com.gmt2001.Console.err.println("Exception: " + response.exception);
+        } else {
+            try {
+                jsonText = response.content;
+                jsonResult = new JSONObject(jsonText);
+                fillJSONObject(jsonResult, true, "GET", urlAddress, response.httpCode, "", "", jsonText);
+
+                /* If the JSON was properly parsed then we may have received back a proper error JSON payload from YouTube. */
+                if (jsonResult.has("error")) {
+                    if (jsonResult.getJSONObject("error").has("errors")) {
+                        JSONArray jaerror = jsonResult.getJSONObject("error").getJSONArray("errors");
+                        if (jaerror.getJSONObject(0).has("reason") && jaerror.getJSONObject(0).has("domain")) {
+                            com.gmt2001.Console.err.println("YouTubeAPIv3 Error: [Domain] " + jaerror.getJSONObject(0).getString("domain") + 
+                                                            " [Reason] " + jaerror.getJSONObject(0).getString("reason"));
+                        }
                     }
                 }
-            }
-        } catch (JSONException ex) {
-            fillJSONObject(jsonResult, false, "GET", urlAddress, 0, "JSONException", ex.getMessage(), jsonText);
-            if (!urlAddress.startsWith("https://www.youtube.com/oembed")) {
-                com.gmt2001.Console.err.println("Exception: " + ex.getMessage());
-            }
-        } catch (NullPointerException ex) {
-            fillJSONObject(jsonResult, false, "GET", urlAddress, 0, "NullPointerException", ex.getMessage(), "");
-            com.gmt2001.Console.err.println("Exception: " + ex.getMessage());
-        } catch (MalformedURLException ex) {
-            fillJSONObject(jsonResult, false, "GET", urlAddress, 0, "MalformedURLException", ex.getMessage(), "");
-            com.gmt2001.Console.err.println("Exception: " + ex.getMessage());
-        } catch (SocketTimeoutException ex) {
-            fillJSONObject(jsonResult, false, "GET", urlAddress, 0, "SocketTimeoutException", ex.getMessage(), "");
-            com.gmt2001.Console.err.println("Exception: " + ex.getMessage());
-        } catch (IOException ex) {
-            fillJSONObject(jsonResult, false, "GET", urlAddress, 0, "IOException", ex.getMessage(), "");
-            com.gmt2001.Console.err.println("Exception: " + ex.getMessage());
-        } catch (Exception ex) {
-            fillJSONObject(jsonResult, false, "GET", urlAddress, 0, "Exception", ex.getMessage(), "");
-            com.gmt2001.Console.err.println("Exception: " + ex.getMessage());
-        } finally {
-            if (inputStream != null)
-                try {
-                    inputStream.close();
-                } catch (IOException ex) {
-                    fillJSONObject(jsonResult, false, "GET", urlAddress, 0, "IOException", ex.getMessage(), "");
+            } catch (JSONException ex) {
+                fillJSONObject(jsonResult, false, "GET", urlAddress, 0, "JSONException", ex.getMessage(), jsonText);
+                if (!urlAddress.startsWith("https://www.youtube.com/oembed")) {
                     com.gmt2001.Console.err.println("Exception: " + ex.getMessage());
                 }
+            }
         }
         com.gmt2001.Console.debug.logln(jsonResult.toString().replaceAll(apikey, "xxx"));
         return(jsonResult);
@@ -180,8 +162,7 @@ public class YouTubeAPIv3 {
         if (q.contains("v=") | q.contains("?v=")) {
             q = q.substring(q.indexOf("v=") + 2, q.indexOf("v=") + 13);
         }
-        Pattern pattern = Pattern.compile(".*(?:youtu.be\\/|v\\/|u\\/\\w\\/|embed\\/|watch\\?v=)([^#\\&\\?^\\s]*).*");
-        Matcher matcher = pattern.matcher(q);
+        Matcher matcher = VIDEO_URL.matcher(q);
 
         if (matcher.matches()) {
             q = matcher.group(1);
@@ -211,8 +192,9 @@ public class YouTubeAPIv3 {
             q = URLEncoder.encode(q, Charset.forName("UTF-8"));
 
             JSONObject j2 = GetData(request_type.GET, "https://www.googleapis.com/youtube/v3/search?q=" + q + "&key=" + apikey + "&type=video&part=snippet&maxResults=1");
+            searchCalls.incrementAndGet();
             if (j2.getBoolean("_success")) {
-                updateQuota(100L);
+                updateQuota(SEARCH_COST);
                 if (j2.getInt("_http") == 200) {
                     JSONObject pageInfo = j2.getJSONObject("pageInfo");
                     if (pageInfo.getInt("totalResults") == 0) {
@@ -257,9 +239,10 @@ public class YouTubeAPIv3 {
         com.gmt2001.Console.debug.println("Query = [" + id + "]");
 
         JSONObject j = GetData(request_type.GET, "https://www.googleapis.com/youtube/v3/videos?id=" + id + "&key=" + apikey + "&part=contentDetails");
+        videosCalls.incrementAndGet();
         if (j.getBoolean("_success")) {
             if (j.getInt("_http") == 200) {
-                updateQuota(3L);
+                updateQuota(VIDEOS_COST);
                 JSONArray a = j.getJSONArray("items");
                 if (a.length() > 0) {
                     JSONObject i = a.getJSONObject(0);
@@ -308,10 +291,11 @@ public class YouTubeAPIv3 {
         int embedRetval = 0;
 
         JSONObject jsonObject = GetData(request_type.GET, "https://www.googleapis.com/youtube/v3/videos?id=" + id + "&key=" + apikey + "&part=status");
+        videosCalls.incrementAndGet();
 
         if (jsonObject.getBoolean("_success")) {
             if (jsonObject.getInt("_http") == 200) {
-                updateQuota(3L);
+                updateQuota(VIDEOS_COST);
                 JSONArray items = jsonObject.getJSONArray("items");
                 if (items.length() > 0) {
                     JSONObject item = items.getJSONObject(0);
@@ -337,23 +321,103 @@ public class YouTubeAPIv3 {
         return new int[] { licenseRetval, embedRetval };
     }
 
-    private void updateQuota(long quota) {
-        long storedQuota = getDBLong("quotaPoints", 0L);
-        String storedDate = getDBString("quotaDate", "01-01-2000");
+    /**
+     * Searches for a video without checking whether the query is a URL first.
+     *
+     * @param q The search query
+     * @return { videoId, title, channelTitle }; an empty id if nothing was found; or null if the call failed
+     */
+    public String[] SearchVideo(String q) throws JSONException {
+        JSONObject j = GetData(request_type.GET, "https://www.googleapis.com/youtube/v3/search?q=" + URLEncoder.encode(q, Charset.forName("UTF-8"))
+                + "&key=" + apikey + "&type=video&part=snippet&maxResults=1");
+        searchCalls.incrementAndGet();
+
+        if (!j.getBoolean("_success") || j.getInt("_http") != 200) {
+            com.gmt2001.Console.debug.println("Search API Fail: HTTP Code " + j.getInt("_http"));
+            return null;
+        }
+
+        updateQuota(SEARCH_COST);
+        JSONArray items = j.getJSONArray("items");
+
+        if (items.length() == 0) {
+            return new String[] { "", "", "" };
+        }
+
+        JSONObject sn = items.getJSONObject(0).getJSONObject("snippet");
+        return new String[] { items.getJSONObject(0).getJSONObject("id").getString("videoId"), sn.getString("title"), sn.getString("channelTitle") };
+    }
+
+    /**
+     * Gets the snippet, contentDetails, and status of up to {@link #MAX_VIDEO_IDS} videos in one call.
+     *
+     * @param ids The video ids
+     * @return The items returned, keyed by video id; videos that do not exist or are private are absent. null if the call failed
+     */
+    public Map<String, JSONObject> GetVideos(Collection<String> ids) throws JSONException {
+        if (ids.size() > MAX_VIDEO_IDS) {
+            throw new IllegalArgumentException("at most " + MAX_VIDEO_IDS + " ids per call");
+        }
+
+        JSONObject j = GetData(request_type.GET, "https://www.googleapis.com/youtube/v3/videos?id=" + String.join(",", ids) + "&key=" + apikey
+                + "&part=snippet,contentDetails,status&maxResults=" + MAX_VIDEO_IDS);
+        videosCalls.incrementAndGet();
 
+        if (!j.getBoolean("_success") || j.getInt("_http") != 200) {
+            com.gmt2001.Console.debug.println("Videos API Fail: HTTP Code " + j.getInt("_http"));
+            return null;
+        }
+
+        updateQuota(VIDEOS_COST);
+        Map<String, JSONObject> ret = new HashMap<>();
+        JSONArray items = j.getJSONArray("items");
+
+        for (int i = 0; i < items.length(); i++) {
+            ret.put(items.getJSONObject(i).getString("id"), items.getJSONObject(i));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the quota units used since midnight Pacific time.
+     *
+     * @return
+     */
+    public synchronized long getQuotaUsed() {
+        loadQuota();
+        return currentDate().equals(quotaDate) ? quotaPoints : 0L;
+    }
+
+    private void loadQuota() {
+        if (quotaDate == null) {
+            quotaPoints = getDBLong("quotaPoints", 0L);
+            quotaDate = getDBString("quotaDate", "01-01-2000");
+        }
+    }
+
+    private static String currentDate() {
         SimpleDateFormat datefmt = new SimpleDateFormat("dd-MM-yyyy");
         datefmt.setTimeZone(TimeZone.getTimeZone("America/Los_Angeles"));
-        String currentDate = datefmt.format(new Date());
+        return datefmt.format(new Date());
+    }
 
-        if (!currentDate.equals(storedDate)) {
-            com.gmt2001.Console.debug.println("Date Change Detected: " + storedDate + " -> " + currentDate);
+    private synchronized void updateQuota(long quota) {
+        loadQuota();
+        String currentDate = currentDate();
+
+        if (!currentDate.equals(quotaDate)) {
+            com.gmt2001.Console.debug.println("Date Change Detected: " + quotaDate + " -> " + currentDate);
             com.gmt2001.Console.debug.println("Resetting Quota. New Quota: " + quota);
+            quotaDate = currentDate;
+            quotaPoints = quota;
             updateDBString("quotaDate", currentDate);
-            updateDBLong("quotaPoints", quota);
         } else {
-            com.gmt2001.Console.debug.println("Updating Quota. New Quota: " + (quota + storedQuota));
-            updateDBLong("quotaPoints", quota + storedQuota);
+            quotaPoints += quota;
+            com.gmt2001.Console.debug.println("Updating Quota. New Quota: " + quotaPoints);
         }
+
+        updateDBLong("quotaPoints", quotaPoints);
     }
 
     /*
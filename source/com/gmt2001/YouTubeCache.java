@@ -0,0 +1,544 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001;
+
+import com.gmt2001.datastore.DataStore;
+import com.gmt2001.datastore.KeyValue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.joda.time.format.ISOPeriodFormat;
+import org.json.JSONException;
+import org.json.JSONObject;
+import tv.phantombot.PhantomBot;
+
+/**
+ * Caches YouTube video metadata, keyed by video id, in memory and in the ytcache table.
+ *
+ * Search queries are mapped to the video id they resolved to, so a repeated query costs no search quota. Metadata is fetched from the
+ * videos endpoint in batches of up to 50 ids, and entries older than {@link #TTL_MS} are fetched again. Ids the videos endpoint did
+ * not return are remembered for {@link #NOT_FOUND_TTL_MS}, so deleted videos are not asked for on every playlist push.
+ *
+ * @author agent
+ */
+public final class YouTubeCache {
+
+    private static final YouTubeCache INSTANCE = new YouTubeCache();
+    private static final String TABLE = "ytcache";
+    private static final String QUERY_TABLE = "ytcache_query";
+    private static final int MAX_ENTRIES = 5000;
+    private static final long TTL_MS = 14L * 24L * 60L * 60L * 1000L;
+    private static final long NOT_FOUND_TTL_MS = 30L * 60L * 1000L;
+    private static final int SEARCH_THREADS = 4;
+    public static final String NOT_FOUND = "No Search Results Found";
+    public static final String FAILED = "No data returned.";
+    private final Map<String, Video> videos = Collections.synchronizedMap(new Lru<>(MAX_ENTRIES));
+    private final Map<String, String> queries = Collections.synchronizedMap(new Lru<>(MAX_ENTRIES));
+    private final Map<String, Long> notFound = Collections.synchronizedMap(new Lru<>(MAX_ENTRIES));
+    private final ScheduledExecutorService executor;
+    private final Metrics.Counter hits;
+    private final Metrics.Counter misses;
+
+    public static YouTubeCache instance() {
+        return INSTANCE;
+    }
+
+    private YouTubeCache() {
+        this.executor = Executors.newScheduledThreadPool(SEARCH_THREADS, (r) -> {
+            Thread t = new Thread(r, "com.gmt2001.YouTubeCache");
+            t.setDaemon(true);
+            return t;
+        });
+        this.executor.scheduleWithFixedDelay(this::prune, 10, 24 * 60, TimeUnit.MINUTES);
+
+        this.hits = Metrics.instance().counter("phantombot_youtube_cache_hits_total", "YouTube videos found in the metadata cache");
+        this.misses = Metrics.instance().counter("phantombot_youtube_cache_misses_total", "YouTube videos fetched because they were not cached or had expired");
+        Metrics.instance().gauge("phantombot_youtube_cache_videos", "YouTube videos held in memory by the metadata cache", this.videos::size);
+    }
+
+    /**
+     * Resolves a URL, video id, or search query to a video
+     *
+     * @param query
+     * @return
+     */
+    public Lookup lookup(String query) {
+        return this.lookupAll(Collections.singletonList(query)).get(0);
+    }
+
+    /**
+     * Resolves many URLs, video ids, or search queries at once. Searches run in parallel and metadata is fetched in batches
+     *
+     * @param queries
+     * @return One result per query, in the same order
+     */
+    public List<Lookup> lookupAll(List<String> queries) {
+        List<Lookup> ret = new ArrayList<>();
+        List<Lookup> search = new ArrayList<>();
+        List<Lookup> rawIds = new ArrayList<>();
+
+        for (String query : queries) {
+            Lookup lookup = new Lookup(query.trim());
+            String id = YouTubeAPIv3.ExtractVideoId(lookup.query);
+            ret.add(lookup);
+
+            if (id != null) {
+                lookup.id = id;
+
+                if (id.equals(lookup.query)) {
+                    rawIds.add(lookup);
+                }
+            } else {
+                lookup.id = this.getAlias(lookup.query);
+
+                if (lookup.id == null) {
+                    search.add(lookup);
+                }
+            }
+        }
+
+        this.search(search);
+        this.fill(ret);
+
+        /* Something that merely looks like an id may be a search query after all, but only YouTube saying there is no such video tells */
+        List<Lookup> retry = new ArrayList<>();
+        search.clear();
+        rawIds.stream().filter(l -> l.video == null && this.isNotFound(l.id)).forEach(l -> {
+            l.error = null;
+            l.id = this.getAlias(l.query);
+            retry.add(l);
+
+            if (l.id == null) {
+                search.add(l);
+            }
+        });
+
+        if (!retry.isEmpty()) {
+            this.search(search);
+            this.fill(retry);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Gets a video by id
+     *
+     * @param id
+     * @return The video, or null if it does not exist or the lookup failed
+     */
+    public Video get(String id) {
+        return this.getAll(Collections.singletonList(id)).get(id);
+    }
+
+    /**
+     * Gets many videos by id, fetching the missing or expired ones in batches
+     *
+     * @param ids
+     * @return The videos found, keyed by id
+     */
+    public Map<String, Video> getAll(Collection<String> ids) {
+        Map<String, Video> ret = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        DataStore db = PhantomBot.instance().getDataStore();
+        long now = System.currentTimeMillis();
+
+        for (String id : ids) {
+            if (id == null || ret.containsKey(id) || this.isNotFound(id)) {
+                continue;
+            }
+
+            Video video = this.videos.get(id);
+
+            if (video == null || now - video.fetched > TTL_MS) {
+                video = Video.fromJSON(db.GetString(TABLE, "", id));
+
+                if (video != null && now - video.fetched <= TTL_MS) {
+                    this.videos.put(id, video);
+                } else {
+                    video = null;
+                }
+            }
+
+            if (video != null) {
+                this.hits.inc();
+                ret.put(id, video);
+            } else {
+                this.misses.inc();
+                missing.add(id);
+            }
+        }
+
+        List<String> batch = new ArrayList<>();
+
+        for (String id : missing) {
+            batch.add(id);
+
+            if (batch.size() == YouTubeAPIv3.MAX_VIDEO_IDS) {
+                this.fetch(batch, ret);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            this.fetch(batch, ret);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Forgets every cached video and query
+     */
+    public void clear() {
+        this.videos.clear();
+        this.queries.clear();
+        this.notFound.clear();
+        PhantomBot.instance().getDataStore().RemoveFile(TABLE);
+        PhantomBot.instance().getDataStore().RemoveFile(QUERY_TABLE);
+    }
+
+    /**
+     * Removes expired entries from the database
+     */
+    public void prune() {
+        try {
+            DataStore db = PhantomBot.instance().getDataStore();
+            long now = System.currentTimeMillis();
+
+            for (String table : new String[]{TABLE, QUERY_TABLE}) {
+                List<String> expired = new ArrayList<>();
+
+                for (KeyValue kv : db.GetKeyValueList(table, "")) {
+                    if (now - fetched(kv.getValue()) > TTL_MS) {
+                        expired.add(kv.getKey());
+                    }
+                }
+
+                if (!expired.isEmpty()) {
+                    db.RemoveKeysFromFiles(new String[]{table}, "", expired.toArray(new String[0]));
+                    com.gmt2001.Console.debug.println("Pruned " + expired.size() + " expired entries from " + table);
+                }
+            }
+        } catch (Exception ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+        }
+    }
+
+    private void search(List<Lookup> lookups) {
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        for (Lookup lookup : lookups) {
+            tasks.add(() -> {
+                try {
+                    String[] result = YouTubeAPIv3.instance().SearchVideo(lookup.query);
+
+                    if (result == null) {
+                        lookup.error = FAILED;
+                    } else if (result[0].isEmpty()) {
+                        lookup.error = NOT_FOUND;
+                    } else {
+                        lookup.id = result[0];
+                        this.putAlias(lookup.query, result[0]);
+                    }
+                } catch (Exception ex) {
+                    com.gmt2001.Console.debug.printStackTrace(ex);
+                    lookup.error = FAILED;
+                }
+
+                return null;
+            });
+        }
+
+        try {
+            for (Future<Void> f : this.executor.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (Exception ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+        }
+    }
+
+    private void fill(List<Lookup> lookups) {
+        List<String> ids = new ArrayList<>();
+
+        lookups.stream().filter(l -> l.error == null && l.id != null).forEach(l -> ids.add(l.id));
+
+        Map<String, Video> found = this.getAll(ids);
+
+        for (Lookup lookup : lookups) {
+            if (lookup.error == null) {
+                lookup.video = found.get(lookup.id);
+
+                if (lookup.video == null) {
+                    lookup.error = this.isNotFound(lookup.id) ? NOT_FOUND : FAILED;
+                }
+            }
+        }
+    }
+
+    private void fetch(List<String> ids, Map<String, Video> ret) {
+        Map<String, JSONObject> items;
+
+        try {
+            items = YouTubeAPIv3.instance().GetVideos(ids);
+        } catch (JSONException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+            return;
+        }
+
+        if (items == null) {
+            return;
+        }
+
+        long expires = System.currentTimeMillis() + NOT_FOUND_TTL_MS;
+
+        for (String id : ids) {
+            if (!items.containsKey(id)) {
+                this.notFound.put(id, expires);
+            }
+        }
+
+        List<String> keys = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+
+        for (JSONObject item : items.values()) {
+            try {
+                Video video = Video.fromItem(item);
+                this.videos.put(video.id, video);
+                ret.put(video.id, video);
+                keys.add(video.id);
+                values.add(video.toJSON());
+            } catch (Exception ex) {
+                com.gmt2001.Console.debug.printStackTrace(ex);
+            }
+        }
+
+        if (!keys.isEmpty()) {
+            PhantomBot.instance().getDataStore().SetBatchString(TABLE, "", keys.toArray(new String[0]), values.toArray(new String[0]));
+        }
+    }
+
+    /**
+     * Returns if the videos endpoint recently answered that there is no video with this id
+     */
+    private boolean isNotFound(String id) {
+        Long expires = this.notFound.get(id);
+
+        if (expires == null) {
+            return false;
+        }
+
+        if (expires < System.currentTimeMillis()) {
+            this.notFound.remove(id);
+            return false;
+        }
+
+        return true;
+    }
+
+    private String getAlias(String query) {
+        String key = query.toLowerCase();
+        String id = this.queries.get(key);
+
+        if (id != null) {
+            return id;
+        }
+
+        String value = PhantomBot.instance().getDataStore().GetString(QUERY_TABLE, "", key);
+
+        if (value != null && System.currentTimeMillis() - fetched(value) <= TTL_MS) {
+            try {
+                id = new JSONObject(value).getString("id");
+                this.queries.put(key, id);
+                return id;
+            } catch (JSONException ex) {
+            }
+        }
+
+        return null;
+    }
+
+    private void putAlias(String query, String id) {
+        String key = query.toLowerCase();
+        this.queries.put(key, id);
+        PhantomBot.instance().getDataStore().SetString(QUERY_TABLE, "", key, new JSONObject().put("id", id).put("fetched", System.currentTimeMillis()).toString());
+    }
+
+    private static long fetched(String json) {
+        try {
+            return new JSONObject(json).optLong("fetched", 0L);
+        } catch (JSONException ex) {
+            return 0L;
+        }
+    }
+
+    /**
+     * The result of resolving a URL, id, or search query
+     */
+    public static final class Lookup {
+
+        private final String query;
+        private String id = null;
+        private Video video = null;
+        private String error = null;
+
+        private Lookup(String query) {
+            this.query = query;
+        }
+
+        public String getQuery() {
+            return this.query;
+        }
+
+        /**
+         * @return The video, or null if it was not found
+         */
+        public Video getVideo() {
+            return this.video;
+        }
+
+        /**
+         * @return Why the video was not found, or null if it was
+         */
+        public String getError() {
+            return this.error;
+        }
+    }
+
+    /**
+     * The metadata of one video
+     */
+    public static final class Video {
+
+        private final String id;
+        private final String title;
+        private final String channel;
+        private final int length;
+        private final boolean live;
+        private final boolean creativeCommons;
+        private final boolean embeddable;
+        private final long fetched;
+
+        private Video(String id, String title, String channel, int length, boolean live, boolean creativeCommons, boolean embeddable, long fetched) {
+            this.id = id;
+            this.title = title;
+            this.channel = channel;
+            this.length = length;
+            this.live = live;
+            this.creativeCommons = creativeCommons;
+            this.embeddable = embeddable;
+            this.fetched = fetched;
+        }
+
+        private static Video fromItem(JSONObject item) {
+            JSONObject snippet = item.getJSONObject("snippet");
+            JSONObject status = item.getJSONObject("status");
+            String duration = item.getJSONObject("contentDetails").optString("duration", "PT0S");
+            boolean live = duration.equalsIgnoreCase("PT0S") || duration.equalsIgnoreCase("P0D") || !snippet.optString("liveBroadcastContent", "none").equals("none");
+
+            return new Video(item.getString("id"), snippet.getString("title"), snippet.optString("channelTitle", ""),
+                    live ? 0 : ISOPeriodFormat.standard().parsePeriod(duration).toStandardSeconds().getSeconds(), live,
+                    status.optString("license", "").equals("creativeCommon"), status.optBoolean("embeddable", false), System.currentTimeMillis());
+        }
+
+        /**
+         * Reads a row of the ytcache table; rows written before the cache kept the status return null
+         */
+        private static Video fromJSON(String json) {
+            if (json == null) {
+                return null;
+            }
+
+            try {
+                JSONObject j = new JSONObject(json);
+
+                if (!j.has("fetched") || !j.has("embed")) {
+                    return null;
+                }
+
+                return new Video(j.getString("id"), j.getString("title"), j.optString("channel", ""), j.getInt("time"), j.optBoolean("live", false),
+                        j.optBoolean("cc", false), j.getBoolean("embed"), j.getLong("fetched"));
+            } catch (JSONException ex) {
+                return null;
+            }
+        }
+
+        private String toJSON() {
+            return new JSONObject().put("id", this.id).put("title", this.title).put("channel", this.channel).put("time", this.length)
+                    .put("live", this.live).put("cc", this.creativeCommons).put("embed", this.embeddable).put("fetched", this.fetched).toString();
+        }
+
+        public String getId() {
+            return this.id;
+        }
+
+        public String getTitle() {
+            return this.title;
+        }
+
+        public String getChannel() {
+            return this.channel;
+        }
+
+        /**
+         * @return The length in seconds; 0 for live streams
+         */
+        public int getLength() {
+            return this.length;
+        }
+
+        public boolean isLive() {
+            return this.live;
+        }
+
+        public boolean isCreativeCommons() {
+            return this.creativeCommons;
+        }
+
+        public boolean isEmbeddable() {
+            return this.embeddable;
+        }
+    }
+
+    private static final class Lru<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+        private final int max;
+
+        private Lru(int max) {
+            super(16, 0.75f, true);
+            this.max = max;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return this.size() > this.max;
+        }
+    }
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001.datastore;
+
+import com.gmt2001.Metrics;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pools the connections of a {@link DataStore} and caches the statements prepared on each of them.
+ *
+ * A borrowed connection is a proxy, closing it returns the connection to the pool. Every connection keeps the
+ * statements prepared through it in an LRU keyed by the SQL text, closing one of those only resets it for the next
+ * caller. The connections that were idle for a while are validated before they are handed out, the ones past their
+ * lifetime or that raised a connection error are closed instead of being returned, and the connections held for too
+ * long are reported with the stack of the thread holding them.
+ *
+ * @author agent
+ */
+final class ConnectionPool {
+
+    /**
+     * Opens a new physical connection.
+     */
+    @FunctionalInterface
+    interface Factory {
+
+        Connection open() throws SQLException;
+    }
+
+    private static final Metrics.Histogram WAIT_SECONDS = Metrics.instance().histogram("phantombot_db_connection_wait_seconds", "Time spent waiting to borrow a database connection",
+            0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5);
+    private static final long TIMEOUT_MS = 60000L;
+    private static final long LEAK_CHECK_MS = 10000L;
+    private final Factory factory;
+    private final int maxConnections;
+    private final int statementCacheSize;
+    private final long validateIdleNanos;
+    private final long maxLifetimeNanos;
+    private final long leakNanos;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<Pooled> idle = new ConcurrentLinkedDeque<>();
+    private final Set<Pooled> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicLong opened = new AtomicLong(0L);
+    private final AtomicLong hits = new AtomicLong(0L);
+    private final AtomicLong misses = new AtomicLong(0L);
+    private final AtomicLong leaks = new AtomicLong(0L);
+    private final ScheduledExecutorService leakCheck;
+    private volatile boolean disposed = false;
+
+    /**
+     * @param factory Opens the connections
+     * @param maxConnections The most connections open at once
+     * @param statementCacheSize How many prepared statements each connection keeps, 0 to not cache them
+     * @param validateIdleMs Validate a connection idle for longer than this before handing it out, 0 to never validate
+     * @param maxLifetimeMs Close a connection once it is older than this, 0 to keep it until the pool is disposed
+     * @param leakMs Report a connection held for longer than this, 0 to not look for leaks
+     */
+    ConnectionPool(Factory factory, int maxConnections, int statementCacheSize, long validateIdleMs, long maxLifetimeMs, long leakMs) {
+        this.factory = factory;
+        this.maxConnections = maxConnections;
+        this.statementCacheSize = statementCacheSize;
+        this.validateIdleNanos = TimeUnit.MILLISECONDS.toNanos(validateIdleMs);
+        this.maxLifetimeNanos = TimeUnit.MILLISECONDS.toNanos(maxLifetimeMs);
+        this.leakNanos = TimeUnit.MILLISECONDS.toNanos(leakMs);
+        this.permits = new Semaphore(maxConnections, true);
+
+        if (leakMs > 0L) {
+            this.leakCheck = Executors.newSingleThreadScheduledExecutor((r) -> {
+                Thread t = new Thread(r, "com.gmt2001.datastore.ConnectionPool");
+                t.setDaemon(true);
+                return t;
+            });
+            this.leakCheck.scheduleWithFixedDelay(this::checkLeaks, LEAK_CHECK_MS, LEAK_CHECK_MS, TimeUnit.MILLISECONDS);
+        } else {
+            this.leakCheck = null;
+        }
+
+        Metrics.instance().gauge("phantombot_db_connections_active", "Database connections in use", this::getActiveConnections);
+        Metrics.instance().gauge("phantombot_db_connections_idle", "Database connections open and unused", this::getIdleConnections);
+        Metrics.instance().gauge("phantombot_db_connections_waiting", "Threads waiting for a database connection", this::getWaitingThreads);
+        Metrics.instance().gauge("phantombot_db_connections_max", "Most database connections the pool opens", this::getMaxConnections);
+        Metrics.instance().counter("phantombot_db_connections_opened_total", "Database connections opened by the pool", opened::get);
+        Metrics.instance().counter("phantombot_db_connection_leaks_total", "Database connections held for longer than the leak threshold", leaks::get);
+        Metrics.instance().counter("phantombot_db_statement_cache_hits_total", "Prepared statements reused from the cache", hits::get);
+        Metrics.instance().counter("phantombot_db_statement_cache_misses_total", "Prepared statements that had to be prepared", misses::get);
+    }
+
+    /**
+     * Borrows a connection, waiting up to 60 seconds for one to be returned if they are all in use. Closing it returns
+     * it to the pool.
+     *
+     * @return
+     * @throws SQLException
+     */
+    Connection getConnection() throws SQLException {
+        if (disposed) {
+            throw new SQLException("The connection pool has been disposed");
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            if (!permits.tryAcquire(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a free database connection");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", ex);
+        }
+
+        try {
+            Pooled pooled = take();
+            long now = System.nanoTime();
+            WAIT_SECONDS.observe((now - start) / 1e9);
+            pooled.borrowed = now;
+            pooled.owner = Thread.currentThread();
+            pooled.leaked = false;
+            borrowed.add(pooled);
+            return pooled.handle();
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    private Pooled take() throws SQLException {
+        Pooled pooled;
+
+        while ((pooled = idle.pollFirst()) != null) {
+            long now = System.nanoTime();
+
+            if (maxLifetimeNanos > 0L && now - pooled.created > maxLifetimeNanos) {
+                pooled.close();
+            } else if (validateIdleNanos > 0L && now - pooled.returned > validateIdleNanos && !pooled.isValid()) {
+                pooled.close();
+            } else {
+                return pooled;
+            }
+        }
+
+        Pooled p = new Pooled(factory.open());
+        opened.incrementAndGet();
+        return p;
+    }
+
+    private void giveBack(Pooled pooled) {
+        borrowed.remove(pooled);
+        pooled.owner = null;
+
+        try {
+            if (disposed || pooled.broken || (maxLifetimeNanos > 0L && System.nanoTime() - pooled.created > maxLifetimeNanos) || !pooled.reset()) {
+                pooled.close();
+            } else {
+                pooled.returned = System.nanoTime();
+                /* Most recently used first, keeps the busy connections and their statements warm */
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void checkLeaks() {
+        long now = System.nanoTime();
+
+        for (Pooled pooled : borrowed) {
+            Thread owner = pooled.owner;
+
+            if (!pooled.leaked && owner != null && now - pooled.borrowed > leakNanos) {
+                pooled.leaked = true;
+                leaks.incrementAndGet();
+
+                StringBuilder sb = new StringBuilder("A database connection has been held by " + owner.getName() + " for "
+                        + TimeUnit.NANOSECONDS.toSeconds(now - pooled.borrowed) + " seconds, it was not closed or is stuck:");
+
+                for (StackTraceElement element : owner.getStackTrace()) {
+                    sb.append(System.lineSeparator()).append("    at ").append(element);
+                }
+
+                com.gmt2001.Console.warn.println(sb.toString());
+            }
+        }
+    }
+
+    int getActiveConnections() {
+        return borrowed.size();
+    }
+
+    int getIdleConnections() {
+        return idle.size();
+    }
+
+    int getWaitingThreads() {
+        return permits.getQueueLength();
+    }
+
+    int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Closes the idle connections, the borrowed ones are closed when they are returned.
+     */
+    void dispose() {
+        disposed = true;
+
+        if (leakCheck != null) {
+            leakCheck.shutdownNow();
+        }
+
+        Pooled pooled;
+
+        while ((pooled = idle.pollFirst()) != null) {
+            pooled.close();
+        }
+    }
+
+    private static boolean isConnectionError(Throwable ex) {
+        return ex instanceof SQLException && ((SQLException) ex).getSQLState() != null && ((SQLException) ex).getSQLState().startsWith("08");
+    }
+
+    /**
+     * A physical connection and its statement cache. Only the thread that borrowed it touches the cache.
+     */
+    private final class Pooled {
+
+        private final Connection connection;
+        private final long created = System.nanoTime();
+        private final LinkedHashMap<String, Cached> statements;
+        private volatile long borrowed;
+        private volatile Thread owner;
+        private volatile boolean leaked;
+        private long returned = created;
+        private boolean broken = false;
+
+        private Pooled(Connection connection) {
+            this.connection = connection;
+            this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                    if (size() > statementCacheSize) {
+                        eldest.getValue().evicted = true;
+
+                        if (!eldest.getValue().inUse) {
+                            eldest.getValue().closeQuietly();
+                        }
+
+                        return true;
+                    }
+
+                    return false;
+                }
+            };
+        }
+
+        private Connection handle() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(), new Class<?>[]{Connection.class}, new Handle(this));
+        }
+
+        private PreparedStatement prepare(Connection handle, String sql) throws SQLException {
+            if (statementCacheSize <= 0) {
+                return connection.prepareStatement(sql);
+            }
+
+            Cached cached = statements.get(sql);
+
+            if (cached != null && !cached.inUse) {
+                hits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+                PreparedStatement statement = connection.prepareStatement(sql);
+
+                if (cached != null) {
+                    /* Already in use further up the stack, this one is not cached */
+                    return statement;
+                }
+
+                cached = new Cached(this, statement);
+                statements.put(sql, cached);
+            }
+
+            cached.inUse = true;
+            return cached.proxy(handle);
+        }
+
+        private boolean isValid() {
+            try {
+                return connection.isValid(5);
+            } catch (SQLException ex) {
+                return false;
+            }
+        }
+
+        /**
+         * Undoes what the borrower left behind.
+         *
+         * @return false if the connection can't be reused
+         */
+        private boolean reset() {
+            try {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+
+                for (Iterator<Cached> it = statements.values().iterator(); it.hasNext();) {
+                    Cached cached = it.next();
+
+                    if (cached.inUse) {
+                        cached.release();
+                    }
+                }
+
+                return true;
+            } catch (SQLException ex) {
+                return false;
+            }
+        }
+
+        private void close() {
+            statements.values().forEach(Cached::closeQuietly);
+            statements.clear();
+
+            try {
+                connection.close();
+            } catch (SQLException ex) {
+                com.gmt2001.Console.debug.printStackTrace(ex);
+            }
+        }
+    }
+
+    /**
+     * A cached statement. Closing its proxy only resets it.
+     */
+    private static final class Cached {
+
+        private final Pooled pooled;
+        private final PreparedStatement statement;
+        private boolean inUse = false;
+        private boolean evicted = false;
+
+        private Cached(Pooled pooled, PreparedStatement statement) {
+            this.pooled = pooled;
+            this.statement = statement;
+        }
+
+        private PreparedStatement proxy(Connection handle) {
+            return (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, new InvocationHandler() {
+                private boolean closed = false;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!closed) {
+                                closed = true;
+                                release();
+                            }
+                            return null;
+                        case "isClosed":
+                            return closed;
+                        case "getConnection":
+                            return handle;
+                        default:
+                            if (closed) {
+                                throw new SQLException("The statement is closed");
+                            }
+                    }
+
+                    try {
+                        return method.invoke(statement, args);
+                    } catch (InvocationTargetException ex) {
+                        if (isConnectionError(ex.getCause())) {
+                            pooled.broken = true;
+                        }
+
+                        throw ex.getCause();
+                    }
+                }
+            });
+        }
+
+        private void release() {
+            inUse = false;
+
+            if (evicted) {
+                closeQuietly();
+                return;
+            }
+
+            try {
+                ResultSet rs = statement.getResultSet();
+
+                if (rs != null) {
+                    rs.close();
+                }
+
+                statement.clearParameters();
+                statement.clearBatch();
+            } catch (SQLException ex) {
+                closeQuietly();
+                pooled.statements.values().remove(this);
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException ex) {
+                com.gmt2001.Console.debug.printStackTrace(ex);
+            }
+        }
+    }
+
+    /**
+     * The connection handed to a borrower.
+     */
+    private final class Handle implements InvocationHandler {
+
+        private final Pooled pooled;
+        private boolean closed = false;
+
+        private Handle(Pooled pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        giveBack(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pooled.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ConnectionPool$Handle@" + Integer.toHexString(System.identityHashCode(proxy));
+                default:
+                    if (closed) {
+                        throw new SQLException("The connection is closed");
+                    }
+            }
+
+            try {
+                if (method.getName().equals("prepareStatement") && args.length == 1) {
+                    return pooled.prepare((Connection) proxy, (String) args[0]);
+                }
+
+                return method.invoke(pooled.connection, args);
+            } catch (InvocationTargetException ex) {
+                if (isConnectionError(ex.getCause())) {
+                    pooled.broken = true;
+                }
+
+                throw ex.getCause();
+            } catch (SQLException ex) {
+                if (isConnectionError(ex)) {
+                    pooled.broken = true;
+                }
+
+                throw ex;
+            }
+        }
+    }
+}
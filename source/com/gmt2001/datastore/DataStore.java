@@ -16,6 +16,11 @@
  */
 package com.gmt2001.datastore;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+
 /**
  *
  * @author gmt2001
@@ -162,6 +167,49 @@ public abstract class DataStore {
         }
     }
 
+    /**
+     * Sets a value without waiting for it to be written, on the stores that queue their writes. The others write it
+     * before returning.
+     *
+     * @param fName
+     * @param section
+     * @param key
+     * @param value
+     * @return A future completed once the value is committed
+     */
+    public CompletableFuture<Void> SetStringAsync(String fName, String section, String key, String value) {
+        SetString(fName, section, key, value);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Sets several values without waiting for them to be written, see {@link #SetStringAsync(String, String, String, String)}.
+     *
+     * @param fName
+     * @param section
+     * @param keys
+     * @param values
+     * @return A future completed once the values are committed
+     */
+    public CompletableFuture<Void> SetBatchStringAsync(String fName, String section, String[] keys, String[] values) {
+        SetBatchString(fName, section, keys, values);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Adds to several values without waiting for them to be written, see {@link #SetStringAsync(String, String, String, String)}.
+     *
+     * @param fName
+     * @param section
+     * @param keys
+     * @param value
+     * @return A future completed once the values are committed
+     */
+    public CompletableFuture<Void> IncreaseBatchStringAsync(String fName, String section, String[] keys, String value) {
+        IncreaseBatchString(fName, section, keys, value);
+        return CompletableFuture.completedFuture(null);
+    }
+
     public Object GetObject(String fName, String section, String key) {
         throw new UnsupportedOperationException();
     }
@@ -252,8 +300,100 @@ public abstract class DataStore {
 
     public abstract void RemoveKey(String fName, String section, String key);
 
+    /**
+     * Removes a key without waiting for it to be written, see {@link #SetStringAsync(String, String, String, String)}.
+     *
+     * @param fName
+     * @param section
+     * @param key
+     * @return A future completed once the removal is committed
+     */
+    public CompletableFuture<Void> RemoveKeyAsync(String fName, String section, String key) {
+        RemoveKey(fName, section, key);
+        return CompletableFuture.completedFuture(null);
+    }
+
     public abstract void RemoveSection(String fName, String section);
 
+    /**
+     * Removes the keys of a table whose value is a number below the given value.
+     *
+     * @param fName
+     * @param section
+     * @param value
+     * @return The number of keys removed
+     */
+    public long RemoveKeysByNumberValueBelow(String fName, String section, long value) {
+        long count = 0;
+
+        for (KeyValue kv : GetKeyValueList(fName, section)) {
+            Long number = parseNumber(kv.getValue());
+
+            if (number != null && number < value) {
+                RemoveKey(fName, section, kv.getKey());
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the keys of a table whose number value in another table is below the given value. Keys missing from the
+     * other table count as 0.
+     *
+     * @param fName The table to take the keys from
+     * @param section
+     * @param value
+     * @param valueFName The table to take the values from
+     * @return
+     */
+    public String[] GetKeysByNumberValueBelow(String fName, String section, long value, String valueFName) {
+        HashMap<String, String> values = new HashMap<>();
+        ArrayList<String> out = new ArrayList<>();
+
+        for (KeyValue kv : GetKeyValueList(valueFName, section)) {
+            values.put(kv.getKey(), kv.getValue());
+        }
+
+        for (String key : GetKeyList(fName, section)) {
+            Long number = values.containsKey(key) ? parseNumber(values.get(key)) : Long.valueOf(0L);
+
+            if (number != null && number < value) {
+                out.add(key);
+            }
+        }
+
+        return out.toArray(new String[out.size()]);
+    }
+
+    /**
+     * Removes the given keys from all of the given tables.
+     *
+     * @param fNames
+     * @param section
+     * @param keys
+     */
+    public void RemoveKeysFromFiles(String[] fNames, String section, String[] keys) {
+        for (String fName : fNames) {
+            for (String key : keys) {
+                RemoveKey(fName, section, key);
+            }
+        }
+    }
+
+    private static Long parseNumber(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
     public abstract void AddFile(String fName);
 
     public abstract void RemoveFile(String fName);
@@ -353,6 +493,18 @@ public abstract class DataStore {
     }
 
     public void backupDB(String filename) {
+        this.backupDB(filename, false);
+    }
+
+    /**
+     * Backs up the database into ./dbbackup while it stays in use, then verifies the backup
+     *
+     * @param filename The name of the backup without an extension, the store adds its own
+     * @param compress Whether to gzip the backup
+     * @return The backup file, or null if the backup failed or could not be verified
+     */
+    public File backupDB(String filename, boolean compress) {
+        return null;
     }
 
     public void dispose() {
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001.datastore;
+
+import com.gmt2001.Metrics;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Runs the backups of a {@link DataStore} into ./dbbackup and applies the retention of that folder.
+ *
+ * The stores write and verify the backup themselves in {@link DataStore#backupDB(String, boolean)}, this class times it,
+ * reports it and holds the helpers they share.
+ *
+ * @author agent
+ */
+public final class DataStoreBackup {
+
+    public static final String DIRECTORY = "./dbbackup";
+    private static final AtomicLong lastSuccess = new AtomicLong(0L);
+    private static final AtomicLong lastBytes = new AtomicLong(0L);
+    private static final AtomicLong lastMillis = new AtomicLong(0L);
+    private static final AtomicLong failures = new AtomicLong(0L);
+
+    static {
+        Metrics.instance().gauge("phantombot_db_backup_last_success_timestamp_seconds", "When the last database backup succeeded", () -> lastSuccess.get() / 1000L);
+        Metrics.instance().gauge("phantombot_db_backup_last_bytes", "Size of the last database backup", lastBytes::get);
+        Metrics.instance().gauge("phantombot_db_backup_last_seconds", "Time the last database backup took", () -> lastMillis.get() / 1000.0);
+        Metrics.instance().counter("phantombot_db_backup_failures_total", "Database backups that failed or could not be verified", failures::get);
+    }
+
+    private DataStoreBackup() {
+    }
+
+    /**
+     * Backs up a store and verifies the result.
+     *
+     * @param store
+     * @param name The name of the backup, the store adds the extension
+     * @param compress Whether to gzip the backup
+     * @return The backup file, or null if it failed
+     */
+    public static File backup(DataStore store, String name, boolean compress) {
+        if (!store.canBackup()) {
+            return null;
+        }
+
+        long start = System.currentTimeMillis();
+        File file = store.backupDB(name, compress);
+
+        if (file == null) {
+            failures.incrementAndGet();
+            com.gmt2001.Console.err.println("The database backup " + name + " failed or could not be verified");
+            return null;
+        }
+
+        lastSuccess.set(System.currentTimeMillis());
+        lastMillis.set(lastSuccess.get() - start);
+        lastBytes.set(file.length());
+        com.gmt2001.Console.debug.println("Backed up the database to " + file.getPath() + " (" + file.length() + " bytes in " + lastMillis.get() + "ms)");
+        return file;
+    }
+
+    /**
+     * Deletes old backups. The newest backup is always kept.
+     *
+     * @param prefix The start of the names of the backups to look at
+     * @param keepDays Delete the backups older than this many days, 0 for no limit
+     * @param keepCount Keep at most this many backups, 0 for no limit
+     * @param keepBytes Delete the oldest backups once the total is over this size, 0 for no limit
+     */
+    public static void prune(String prefix, int keepDays, int keepCount, long keepBytes) {
+        File[] files = new File(DIRECTORY).listFiles((f) -> f.isFile() && f.getName().startsWith(prefix));
+
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+
+        long cutoff = keepDays > 0 ? System.currentTimeMillis() - (keepDays * 86400000L) : Long.MIN_VALUE;
+        long bytes = 0L;
+
+        for (int i = 0; i < files.length; i++) {
+            bytes += files[i].length();
+
+            if (i > 0 && (files[i].lastModified() < cutoff || (keepCount > 0 && i >= keepCount) || (keepBytes > 0L && bytes > keepBytes))) {
+                if (!files[i].delete()) {
+                    com.gmt2001.Console.err.println("Failed to delete the old database backup " + files[i].getPath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the file for a backup, creating the folder and removing a previous file of the same name.
+     */
+    static File target(String name, String extension, boolean compress) throws IOException {
+        File file = new File(DIRECTORY, name + extension + (compress ? ".gz" : ""));
+
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.deleteIfExists(file.toPath());
+        return file;
+    }
+
+    /**
+     * Compresses a file to [file].gz and deletes the original.
+     */
+    static File gzip(File file) throws IOException {
+        File gz = new File(file.getPath() + ".gz");
+
+        try (InputStream in = new FileInputStream(file); OutputStream out = new GZIPOutputStream(new FileOutputStream(gz), 65536)) {
+            in.transferTo(out);
+        } catch (IOException ex) {
+            Files.deleteIfExists(gz.toPath());
+            throw ex;
+        }
+
+        Files.delete(file.toPath());
+        return gz;
+    }
+
+    static BufferedWriter writer(File file, boolean compress) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        return new BufferedWriter(new OutputStreamWriter(compress ? new GZIPOutputStream(out, 65536) : out, StandardCharsets.UTF_8), 65536);
+    }
+
+    static BufferedReader reader(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        return new BufferedReader(new InputStreamReader(file.getName().endsWith(".gz") ? new GZIPInputStream(in, 65536) : in, StandardCharsets.UTF_8), 65536);
+    }
+}
@@ -16,14 +16,19 @@
  */
 package com.gmt2001.datastore;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import org.h2.jdbcx.JdbcConnectionPool;
+import org.apache.commons.io.FileUtils;
 
 /**
  *
@@ -34,7 +39,9 @@ import org.h2.jdbcx.JdbcConnectionPool;
 public class H2Store extends DataStore {
 
     private static final int MAX_CONNECTIONS = 30;
-    private static JdbcConnectionPool poolMgr;
+    private static final int STATEMENT_CACHE_SIZE = 64;
+    private static final long LEAK_MS = 60000L;
+    private static ConnectionPool poolMgr;
     private static H2Store instance;
 
     public static H2Store instance() {
@@ -62,8 +69,8 @@ public class H2Store extends DataStore {
             configStr = "phantombot.h2";
         }
 
-        poolMgr = JdbcConnectionPool.create("jdbc:h2:./config/" + configStr + ";DB_CLOSE_ON_EXIT=FALSE;MAX_LENGTH_INPLACE_LOB=2048", "", "");
-        poolMgr.setMaxConnections(MAX_CONNECTIONS);
+        String url = "jdbc:h2:./config/" + configStr + ";DB_CLOSE_ON_EXIT=FALSE;MAX_LENGTH_INPLACE_LOB=2048";
+        poolMgr = new ConnectionPool(() -> DriverManager.getConnection(url, "", ""), MAX_CONNECTIONS, STATEMENT_CACHE_SIZE, 0L, 0L, LEAK_MS);
     }
 
     private String sanitizeOrder(String order) {
@@ -163,6 +170,68 @@ public class H2Store extends DataStore {
         }
     }
 
+    @Override
+    public long RemoveKeysByNumberValueBelow(String fName, String section, long value) {
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+
+            if (FileExists(connection, fName)) {
+                return SqlCleanup.removeBelow(connection, SqlCleanup.Dialect.H2, "phantombot_" + fName, section, value);
+            }
+        } catch (SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+        }
+
+        return 0;
+    }
+
+    @Override
+    public String[] GetKeysByNumberValueBelow(String fName, String section, long value, String valueFName) {
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+            valueFName = validateFname(valueFName);
+
+            if (FileExists(connection, fName)) {
+                return SqlCleanup.keysBelow(connection, SqlCleanup.Dialect.H2, "phantombot_" + fName,
+                        FileExists(connection, valueFName) ? "phantombot_" + valueFName : null, section, value);
+            }
+        } catch (SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+        }
+
+        return new String[]{};
+    }
+
+    @Override
+    public void RemoveKeysFromFiles(String[] fNames, String section, String[] keys) {
+        if (keys.length == 0) {
+            return;
+        }
+
+        try (Connection connection = GetConnection()) {
+            connection.setAutoCommit(false);
+
+            try {
+                for (String fName : fNames) {
+                    fName = validateFname(fName);
+
+                    if (FileExists(connection, fName)) {
+                        SqlCleanup.removeKeys(connection, "phantombot_" + fName, section, keys);
+                    }
+                }
+
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+        }
+    }
+
     @Override
     public void RemoveFile(String fName) {
         try (Connection connection = GetConnection()) {
@@ -217,9 +286,11 @@ public class H2Store extends DataStore {
     public boolean FileExists(Connection connection, String fName) {
         fName = validateFname(fName);
 
-        try {
-            DatabaseMetaData md = connection.getMetaData();
-            try (ResultSet rs = md.getTables(null, null, "PHANTOMBOT_" + fName.toUpperCase(), null)) {
+        /* A prepared query is cached by the pool, the metadata query is compiled again on every call */
+        try (PreparedStatement statement = connection.prepareStatement("SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME=?;")) {
+            statement.setString(1, "PHANTOMBOT_" + fName.toUpperCase());
+
+            try (ResultSet rs = statement.executeQuery()) {
                 return rs.next();
             }
         } catch (SQLException ex) {
@@ -889,6 +960,74 @@ public class H2Store extends DataStore {
         }
     }
 
+    @Override
+    public boolean canBackup() {
+        return true;
+    }
+
+    @Override
+    public File backupDB(String filename, boolean compress) {
+        String[] tables = GetFileList();
+        File file;
+
+        try {
+            file = DataStoreBackup.target(filename, ".sql", compress);
+        } catch (IOException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+            return null;
+        }
+
+        /* SCRIPT reads the tables through MVCC, the writers are not locked out while it runs */
+        try (Connection connection = GetConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("SCRIPT TO '" + file.getAbsolutePath().replace("'", "''") + "'" + (compress ? " COMPRESSION GZIP" : "") + ";");
+        } catch (SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+            file.delete();
+            return null;
+        }
+
+        if (!verifyBackup(file, compress, tables.length)) {
+            file.delete();
+            return null;
+        }
+
+        return file;
+    }
+
+    /**
+     * Restores the script into a scratch database and checks that all the tables came back.
+     */
+    private boolean verifyBackup(File file, boolean compress, int tables) {
+        File dir = null;
+
+        try {
+            dir = Files.createTempDirectory(Paths.get(DataStoreBackup.DIRECTORY), "verify").toFile();
+
+            try (Connection connection = DriverManager.getConnection("jdbc:h2:" + dir.getAbsolutePath() + "/verify", "", "");
+                    Statement statement = connection.createStatement()) {
+                statement.execute("RUNSCRIPT FROM '" + file.getAbsolutePath().replace("'", "''") + "'" + (compress ? " COMPRESSION GZIP" : "") + ";");
+
+                try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME LIKE 'PHANTOMBOT\\_%';")) {
+                    if (!rs.next() || rs.getInt(1) < tables) {
+                        com.gmt2001.Console.err.println("The H2 backup " + file.getPath() + " is missing tables");
+                        return false;
+                    }
+                }
+
+                statement.execute("SHUTDOWN;");
+            }
+
+            return true;
+        } catch (IOException | SQLException ex) {
+            com.gmt2001.Console.err.println("The H2 backup " + file.getPath() + " could not be restored: " + ex.getMessage());
+            return false;
+        } finally {
+            if (dir != null) {
+                FileUtils.deleteQuietly(dir);
+            }
+        }
+    }
+
     @Override
     public void dispose() {
         super.dispose();
@@ -16,39 +16,58 @@
  */
 package com.gmt2001.datastore;
 
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.io.File;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
-import java.util.Collection;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import javax.swing.Timer;
-import org.apache.commons.io.FileUtils;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
- * @deprecated @author gmt2001
+ * Keeps every table in memory, and on disk as an .ini snapshot plus an append-only .log of the changes made since.
+ *
+ * A change is appended to the log of its table, so saving costs as much I/O as what changed. Once a log outgrows its
+ * snapshot the table is compacted: the log is set aside, a new snapshot is written to a temporary file and renamed over
+ * the old one, then the set aside log is deleted. Loading replays the logs over the snapshot, a crash during a
+ * compaction only replays changes that the new snapshot may already hold.
+ *
+ * @author gmt2001
  */
-@Deprecated
-public class IniStore extends DataStore implements ActionListener {
-
-    private final HashMap<String, IniFile> files = new HashMap<>();
-    private final HashMap<String, Date> changed = new HashMap<>();
-    private final Date nextSave = new Date(0);
-    private final Timer t;
-    private final Timer t2;
-    private static final long saveinterval = 5 * 60 * 1000;
+public class IniStore extends DataStore {
+
+    private static final long FLUSH_INTERVAL_MS = 1000L;
+    /* A log is compacted once it is larger than this and larger than its snapshot */
+    private static final long COMPACT_MIN_BYTES = 1048576L;
+    private static final String SNAPSHOT = ".ini";
+    private static final String SNAPSHOT_TEMP = ".ini.tmp";
+    private static final String LOG = ".log";
+    private static final String LOG_OLD = ".log.old";
+    /* Marks the snapshots whose keys and values are escaped like the log, the older ones hold them as is */
+    private static final String ESCAPED_HEADER = "; escaped";
     private static IniStore instance;
-    private String inifolder = "";
+    private final ConcurrentHashMap<String, IniFile> files = new ConcurrentHashMap<>();
+    /* Held while a table is compacted, removed or renamed */
+    private final Object compaction = new Object();
+    private final ScheduledExecutorService flusher;
+    private final String inifolder;
 
     public static IniStore instance() {
         return instance("");
@@ -67,12 +86,37 @@ public class IniStore extends DataStore implements ActionListener {
 
         inifolder = LoadConfigReal(configStr);
 
-        t = new Timer((int) saveinterval, this);
-        t2 = new Timer(1, this);
+        flusher = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r, "com.gmt2001.datastore.IniStore");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush(false);
+            } catch (Exception ex) {
+                com.gmt2001.Console.err.printStackTrace(ex);
+            }
+        }, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static class IniFile {
 
-        Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
+        private final ConcurrentHashMap<String, ConcurrentHashMap<String, String>> data = new ConcurrentHashMap<>();
+        /* The fields below are guarded by the IniFile */
+        private Writer log;
+        private boolean dirty;
+        private boolean removed;
+        private long logBytes;
+        private volatile long snapshotBytes;
 
-        t.start();
+        private IniFile() {
+            data.put("", new ConcurrentHashMap<>());
+        }
+
+        private ConcurrentHashMap<String, String> section(String section) {
+            return data.getOrDefault(section, new ConcurrentHashMap<>());
+        }
     }
 
     private String validatefName(String fName) {
@@ -99,144 +143,299 @@ public class IniStore extends DataStore implements ActionListener {
         return key;
     }
 
-    private boolean LoadFile(String fName, boolean force) {
-        fName = validatefName(fName);
+    private Path path(String fName, String extension) {
+        return Paths.get("./" + inifolder + "/" + fName + extension);
+    }
 
-        if (!files.containsKey(fName) || force) {
-            try {
-                String data = FileUtils.readFileToString(new File("./" + inifolder + "/" + fName + ".ini"), Charset.defaultCharset());
-                String[] lines = data.replaceAll("\\r", "").split("\\n");
+    private IniFile file(String fName) {
+        return files.computeIfAbsent(fName, this::load);
+    }
 
-                IniFile f = new IniFile();
+    private IniFile load(String fName) {
+        IniFile f = new IniFile();
 
-                String section = "";
+        try {
+            Path snapshot = path(fName, SNAPSHOT);
 
-                f.data.put(section, new HashMap<>());
+            if (Files.exists(snapshot)) {
+                String section = "";
+                String[] lines = new String(Files.readAllBytes(snapshot), StandardCharsets.UTF_8).replaceAll("\\r", "").split("\\n");
+                boolean escaped = lines[0].equals(ESCAPED_HEADER);
 
                 for (String line : lines) {
-                    if (!line.trim().startsWith(";")) {
-                        if (line.trim().startsWith("[") && line.trim().endsWith("]")) {
-                            section = line.trim().substring(1, line.trim().length() - 1);
-                            f.data.put(section, new HashMap<>());
-                        } else if (!line.trim().isEmpty()) {
-                            String[] spl = line.split("=", 2);
-                            f.data.get(section).put(spl[0], spl[1]);
-                        }
+                    String trimmed = line.trim();
+
+                    if (trimmed.startsWith(";")) {
+                        continue;
+                    }
+
+                    if (trimmed.startsWith("[") && trimmed.endsWith("]")) {
+                        section = trimmed.substring(1, trimmed.length() - 1);
+                        f.data.putIfAbsent(section, new ConcurrentHashMap<>());
+                    } else if (line.contains("=")) {
+                        String[] spl = line.split("=", 2);
+                        f.data.get(section).put(escaped ? unescape(spl[0]) : spl[0], escaped ? unescape(spl[1]) : spl[1]);
                     }
                 }
 
-                files.put(fName, f);
-            } catch (IOException ex) {
-                AddFile(fName);
-                return false;
+                f.snapshotBytes = Files.size(snapshot);
             }
+
+            f.logBytes = replay(f, path(fName, LOG_OLD)) + replay(f, path(fName, LOG));
+        } catch (IOException ex) {
+            /* An empty table would replace the snapshot at the next compaction */
+            throw new UncheckedIOException("Failed to load " + fName + SNAPSHOT, ex);
         }
 
-        return true;
+        return f;
     }
 
-    private void SaveFile(String fName, IniFile data) {
-        if (data == null) {
-            return;
+    /**
+     * Applies the records of a log. A last line without its line break was cut short by a crash and is skipped.
+     */
+    private long replay(IniFile f, Path log) throws IOException {
+        if (!Files.exists(log)) {
+            return 0L;
         }
 
-        try {
-            String wdata = "";
-            Object[] adata = data.data.keySet().toArray();
-            Object[] akdata;
-            Object[] avdata;
-
-            for (int i = 0; i < adata.length; i++) {
-                if (i > 0) {
-                    wdata += "\r\n";
-                }
-
-                if (!((String) adata[i]).equals("")) {
-                    wdata += "[" + ((String) adata[i]) + "]\r\n";
-                }
+        String data = new String(Files.readAllBytes(log), StandardCharsets.UTF_8);
+        String[] lines = data.split("\\n", -1);
 
-                akdata = data.data.get(((String) adata[i])).keySet().toArray();
-                avdata = data.data.get(((String) adata[i])).values().toArray();
+        /* The last element is the empty string after the final line break, or a torn record */
+        for (int i = 0; i < lines.length - 1; i++) {
+            String[] record = lines[i].split("\\t", -1);
 
-                for (int b = 0; b < akdata.length; b++) {
-                    wdata += ((String) akdata[b]) + "=" + ((String) avdata[b]) + "\r\n";
-                }
-            }
-            if (!Files.isDirectory(Paths.get("./" + inifolder + "/"))) {
-                Files.createDirectory(Paths.get("./" + inifolder + "/"));
+            switch (record[0]) {
+                case "S":
+                    if (record.length == 4) {
+                        f.data.computeIfAbsent(unescape(record[1]), (s) -> new ConcurrentHashMap<>()).put(unescape(record[2]), unescape(record[3]));
+                    }
+                    break;
+                case "R":
+                    if (record.length == 3) {
+                        f.section(unescape(record[1])).remove(unescape(record[2]));
+                    }
+                    break;
+                case "D":
+                    if (record.length == 2) {
+                        f.data.remove(unescape(record[1]));
+                    }
+                    break;
+                default:
+                    break;
             }
+        }
 
-            Files.write(Paths.get("./" + inifolder + "/" + fName + ".ini"), wdata.getBytes(StandardCharsets.UTF_8),
-                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return data.length();
+    }
 
-            changed.remove(fName);
-        } catch (IOException ex) {
-            com.gmt2001.Console.err.printStackTrace(ex);
+    private static void escape(StringBuilder sb, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    sb.append(c);
+            }
         }
     }
 
-    @Override
-    public void actionPerformed(ActionEvent e) {
-        t2.stop();
-        SaveAll(false);
+    private static String unescape(String s) {
+        if (s.indexOf('\\') < 0) {
+            return s;
+        }
+
+        StringBuilder sb = new StringBuilder(s.length());
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+
+            if (c == '\\' && i + 1 < s.length()) {
+                char n = s.charAt(++i);
+                sb.append(n == 't' ? '\t' : n == 'n' ? '\n' : n == 'r' ? '\r' : n);
+            } else {
+                sb.append(c);
+            }
+        }
+
+        return sb.toString();
     }
 
-    private static class IniFile {
+    private static void record(StringBuilder sb, char type, String... fields) {
+        sb.append(type);
 
-        protected HashMap<String, HashMap<String, String>> data = new HashMap<>();
+        for (String field : fields) {
+            sb.append('\t');
+            escape(sb, field);
+        }
+
+        sb.append('\n');
     }
 
-    @Override
-    public void AddFile(String fName) {
-        if (!new File("./" + inifolder + "/").exists()) {
-            new File("./" + inifolder + "/").mkdirs();
+    /**
+     * Appends records to the log of a table. Must be called while holding the IniFile, after changing its data.
+     */
+    private void append(String fName, IniFile f, StringBuilder records) {
+        if (f.removed || records.length() == 0) {
+            return;
         }
 
-        IniFile f = new IniFile();
-        f.data.put("", new HashMap<>());
+        try {
+            if (f.log == null) {
+                Files.createDirectories(Paths.get("./" + inifolder + "/"));
+                f.log = Files.newBufferedWriter(path(fName, LOG), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
 
-        files.put(fName, f);
+            f.log.append(records);
+            f.logBytes += records.length();
+            f.dirty = true;
+        } catch (IOException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+        }
     }
 
-    @Override
-    public void SaveAll(boolean force) {
-        if (!nextSave.after(new Date()) || force) {
-            Object[] n = changed.keySet().toArray();
-            if (n != null) {
+    private void closeLog(IniFile f) {
+        if (f.log != null) {
+            try {
+                f.log.close();
+            } catch (IOException ex) {
+                com.gmt2001.Console.err.printStackTrace(ex);
+            }
+
+            f.log = null;
+            f.dirty = false;
+        }
+    }
+
+    /**
+     * Writes out the logs, and compacts the tables whose log outgrew the snapshot.
+     *
+     * @param compactAll Whether to compact every table that has a log
+     */
+    private void flush(boolean compactAll) {
+        files.forEach((fName, f) -> {
+            long logBytes;
+
+            synchronized (f) {
+                if (f.dirty) {
+                    try {
+                        f.log.flush();
+                    } catch (IOException ex) {
+                        com.gmt2001.Console.err.printStackTrace(ex);
+                    }
 
-                if (force) {
-                    n = files.keySet().toArray();
+                    f.dirty = false;
                 }
 
-                if (n.length > 0) {
-                    com.gmt2001.Console.debug.println("Saving " + n.length + " files");
+                logBytes = f.removed ? 0L : f.logBytes;
+            }
+
+            if (logBytes > 0L && (compactAll || logBytes > Math.max(COMPACT_MIN_BYTES, f.snapshotBytes))) {
+                try {
+                    compact(fName, f, false);
+                } catch (IOException ex) {
+                    com.gmt2001.Console.err.println("Failed to compact " + fName + SNAPSHOT + ": " + ex.getMessage());
                 }
+            }
+        });
+    }
 
-                for (Object n1 : n) {
-                    try {
-                        if (force || changed.get((String) n1).after(nextSave) || changed.get((String) n1).equals(nextSave)) {
-                            SaveFile((String) n1, files.get((String) n1));
-                        }
-                    } catch (java.lang.NullPointerException e) {
-                        try {
-                            SaveFile((String) n1, files.get((String) n1));
-                        } catch (java.lang.NullPointerException e2) {
-                            com.gmt2001.Console.err.printStackTrace(e2);
-                        }
+    /**
+     * Writes a new snapshot of a table and deletes the log it replaces. The writers are only held back while the data
+     * is copied and the log is set aside.
+     *
+     * @param retire Whether to stop logging the changes of the table once it is copied, before it is renamed
+     */
+    private void compact(String fName, IniFile f, boolean retire) throws IOException {
+        synchronized (compaction) {
+            List<Map.Entry<String, HashMap<String, String>>> copy = new ArrayList<>();
+
+            synchronized (f) {
+                if (f.removed) {
+                    return;
+                }
+
+                f.data.forEach((section, values) -> copy.add(Map.entry(section, new HashMap<>(values))));
+                closeLog(f);
+                f.removed = retire;
+
+                Path log = path(fName, LOG);
+                Path old = path(fName, LOG_OLD);
+
+                if (Files.exists(log)) {
+                    if (Files.exists(old)) {
+                        /* A failed compaction left its log behind, it has to be replayed first */
+                        Files.write(old, Files.readAllBytes(log), StandardOpenOption.APPEND);
+                        Files.delete(log);
+                    } else {
+                        Files.move(log, old, StandardCopyOption.ATOMIC_MOVE);
                     }
                 }
 
-                nextSave.setTime(new Date().getTime() + saveinterval);
+                f.logBytes = 0L;
+            }
+
+            copy.sort(Map.Entry.comparingByKey());
+
+            Path temp = path(fName, SNAPSHOT_TEMP);
+            Files.createDirectories(temp.getParent());
 
-                if (n.length > 0) {
-                    com.gmt2001.Console.debug.println("Save complete");
+            try (FileOutputStream out = new FileOutputStream(temp.toFile());
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 65536)) {
+                StringBuilder sb = new StringBuilder(ESCAPED_HEADER + "\r\n");
+
+                for (Map.Entry<String, HashMap<String, String>> section : copy) {
+                    if (!section.getKey().isEmpty()) {
+                        sb.append("\r\n[").append(section.getKey()).append("]\r\n");
+                    }
+
+                    for (Map.Entry<String, String> entry : section.getValue().entrySet()) {
+                        escape(sb, entry.getKey());
+                        sb.append('=');
+                        escape(sb, entry.getValue());
+                        sb.append("\r\n");
+
+                        if (sb.length() > 32768) {
+                            writer.append(sb);
+                            sb.setLength(0);
+                        }
+                    }
                 }
-            } else {
-                com.gmt2001.Console.debug.println("Object null, nothing to save.");
+
+                writer.append(sb);
+
+                writer.flush();
+                out.getFD().sync();
             }
+
+            Files.move(temp, path(fName, SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(path(fName, LOG_OLD));
+            f.snapshotBytes = Files.size(path(fName, SNAPSHOT));
         }
     }
 
+    @Override
+    public void AddFile(String fName) {
+        file(validatefName(fName));
+    }
+
+    @Override
+    public void SaveAll(boolean force) {
+        flush(force);
+    }
+
     public static boolean hasDatabase(String configStr) {
         return Files.exists(Paths.get(LoadConfigReal(configStr)), LinkOption.NOFOLLOW_LINKS);
     }
@@ -251,265 +450,162 @@ public class IniStore extends DataStore implements ActionListener {
 
     @Override
     public String[] GetFileList() {
-        if (new File("./" + inifolder + "/").exists()) {
-
-            Collection<File> f = FileUtils.listFiles(new File("./" + inifolder + "/"), null, false);
-
-            String[] s = new String[f.size()];
-
-            Iterator<File> it = f.iterator();
-            int i = 0;
+        Set<String> names = new TreeSet<>();
 
-            while (it.hasNext()) {
-                String name = it.next().getName();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get("./" + inifolder + "/"))) {
+            for (Path p : stream) {
+                String name = p.getFileName().toString();
 
-                name = name.substring(0, name.lastIndexOf(".ini"));
-
-                s[i++] = name;
+                for (String extension : new String[]{SNAPSHOT, LOG, LOG_OLD}) {
+                    if (name.endsWith(extension)) {
+                        names.add(name.substring(0, name.length() - extension.length()));
+                    }
+                }
             }
-
-            return s;
+        } catch (IOException ex) {
+            return new String[]{};
         }
 
-        return new String[]{};
+        return names.toArray(String[]::new);
     }
 
     @Override
     public String[] GetCategoryList(String fName) {
-        fName = validatefName(fName);
-
-        if (!LoadFile(fName, false)) {
-            return new String[]{};
-        }
-
-        Set<String> o = files.get(fName).data.keySet();
-
-        String[] s = new String[o.size()];
-
-        Iterator<String> it = o.iterator();
-        int i = 0;
-
-        while (it.hasNext()) {
-            s[i++] = it.next();
-        }
-
-        return s;
+        return file(validatefName(fName)).data.keySet().toArray(String[]::new);
     }
 
     @Override
     public String[] GetKeyList(String fName, String section) {
-        fName = validatefName(fName);
-
-        if (!LoadFile(fName, false)) {
-            return new String[]{};
-        }
-
-        section = validateSection(section);
-
-        Set<String> o = files.get(fName).data.get(section).keySet();
-
-        String[] s = new String[o.size()];
-
-        Iterator<String> it = o.iterator();
-        int i = 0;
-
-        while (it.hasNext()) {
-            s[i++] = it.next();
-        }
-
-        return s;
+        return file(validatefName(fName)).section(validateSection(section)).keySet().toArray(String[]::new);
     }
 
     @Override
     public KeyValue[] GetKeyValueList(String fName, String section) {
-        fName = validatefName(fName);
-
-        if (!LoadFile(fName, false)) {
-            return new KeyValue[]{};
-        }
-
-        section = validateSection(section);
-
-        Set<Map.Entry<String, String>> entries = files.get(fName).data.get(section).entrySet();
-        return entries.stream().map(i -> new KeyValue(i.getKey(), i.getValue())).toArray(KeyValue[]::new);
+        return file(validatefName(fName)).section(validateSection(section)).entrySet().stream()
+                .map(i -> new KeyValue(i.getKey(), i.getValue())).toArray(KeyValue[]::new);
     }
 
     @Override
     public String GetString(String fName, String section, String key) {
-        fName = validatefName(fName);
-
-        if (!LoadFile(fName, false)) {
-            return null;
-        }
-
-        section = validateSection(section);
-        key = validateKey(key);
-
-        if (!files.containsKey(fName) || !files.get(fName).data.containsKey(section)
-                || !files.get(fName).data.get(section).containsKey(key)) {
-            return null;
-        }
-
-        return files.get(fName).data.get(section).get(key);
+        return file(validatefName(fName)).section(validateSection(section)).get(validateKey(key));
     }
 
     @Override
     public String[] GetKeysByLikeValues(String fName, String section, String search) {
-        fName = validatefName(fName);
-
-        if (!LoadFile(fName, false)) {
-            return null;
-        }
-
-        section = validateSection(section);
-        Set<String> o = files.get(fName).data.get(section).keySet();
-        String[] s = new String[o.size()];
-
-        int i = 0;
-        Iterator<String> it = o.iterator();
-        while (it.hasNext()) {
-            String key = it.next();
-            if (files.get(fName).data.get(section).get(key).toLowerCase().contains(search.toLowerCase())) {
-                s[i++] = key;
-            }
-        }
+        String[] s = file(validatefName(fName)).section(validateSection(section)).entrySet().stream()
+                .filter(i -> i.getValue().toLowerCase().contains(search.toLowerCase())).map(Map.Entry::getKey).toArray(String[]::new);
 
-        if (i == 0) {
-            return null;
-        }
-
-        String[] retVal = new String[i];
-        System.arraycopy(s, 0, retVal, 0, i);
-        return retVal;
+        return s.length == 0 ? null : s;
     }
 
     @Override
     public String GetKeyByValue(String fName, String section, String value) {
-        if (!LoadFile(fName, false)) {
-            return null;
-        }
-
-        section = validateSection(section);
-        Set<String> o = files.get(fName).data.get(section).keySet();
-
-        Iterator<String> it = o.iterator();
-        while (it.hasNext()) {
-            String key = it.next();
-            if (files.get(fName).data.get(section).get(key).toLowerCase().equals(value.toLowerCase())) {
-                return key;
-            }
-        }
-        return null;
+        return file(validatefName(fName)).section(validateSection(section)).entrySet().stream()
+                .filter(i -> i.getValue().toLowerCase().equals(value.toLowerCase())).map(Map.Entry::getKey).findFirst().orElse(null);
     }
 
     @Override
     public String[] GetKeysByLikeKeys(String fName, String section, String search) {
-        fName = validatefName(fName);
-
-        if (!LoadFile(fName, false)) {
-            return null;
-        }
+        String[] s = file(validatefName(fName)).section(validateSection(section)).keySet().stream()
+                .filter(key -> key.toLowerCase().contains(search.toLowerCase())).toArray(String[]::new);
 
-        section = validateSection(section);
-        Set<String> o = files.get(fName).data.get(section).keySet();
-        String[] s = new String[o.size()];
-
-        int i = 0;
-        Iterator<String> it = o.iterator();
-        while (it.hasNext()) {
-            String key = it.next();
-            if (key.toLowerCase().contains(search.toLowerCase())) {
-                s[i++] = key;
-            }
-        }
-
-        if (i == 0) {
-            return null;
-        }
-
-        String[] retVal = new String[i];
-        System.arraycopy(s, 0, retVal, 0, i);
-        return retVal;
+        return s.length == 0 ? null : s;
     }
 
     @Override
     public void SetBatchString(String fName, String section, String[] keys, String[] values) {
         fName = validatefName(fName);
-
-        LoadFile(fName, false);
-
         section = validateSection(section);
 
-        if (!files.get(fName).data.containsKey(section)) {
-            files.get(fName).data.put(section, new HashMap<>());
-        }
+        IniFile f = file(fName);
+        StringBuilder records = new StringBuilder(keys.length * 32);
 
-        for (int idx = 0; idx < keys.length; idx++) {
-            String key = validateKey(keys[idx]);
-            files.get(fName).data.get(section).put(key, values[idx]);
-        }
+        synchronized (f) {
+            ConcurrentHashMap<String, String> data = f.data.computeIfAbsent(section, (s) -> new ConcurrentHashMap<>());
 
-        changed.put(fName, new Date());
+            for (int idx = 0; idx < keys.length; idx++) {
+                set(data, records, section, validateKey(keys[idx]), values[idx]);
+            }
 
-        t2.start();
+            append(fName, f, records);
+        }
     }
 
     @Override
     public void SetString(String fName, String section, String key, String value) {
-        fName = validatefName(fName);
-
-        LoadFile(fName, false);
-
-        section = validateSection(section);
-        key = validateKey(key);
+        this.SetBatchString(fName, section, new String[]{key}, new String[]{value});
+    }
 
-        if (!files.get(fName).data.containsKey(section)) {
-            files.get(fName).data.put(section, new HashMap<>());
+    private void set(ConcurrentHashMap<String, String> data, StringBuilder records, String section, String key, String value) {
+        /* The maps can't hold null, which reads back the same as a missing key */
+        if (value == null) {
+            if (data.remove(key) != null) {
+                record(records, 'R', section, key);
+            }
+        } else if (!value.equals(data.put(key, value))) {
+            record(records, 'S', section, key, value);
         }
-
-        files.get(fName).data.get(section).put(key, value);
-
-        changed.put(fName, new Date());
-
-        t2.start();
     }
 
     @Override
     public void RemoveKey(String fName, String section, String key) {
         fName = validatefName(fName);
-
-        LoadFile(fName, false);
-
         section = validateSection(section);
         key = validateKey(key);
 
-        files.get(fName).data.get(section).remove(key);
+        IniFile f = file(fName);
+        StringBuilder records = new StringBuilder();
 
-        SaveFile(fName, files.get(fName));
+        synchronized (f) {
+            if (f.section(section).remove(key) != null) {
+                record(records, 'R', section, key);
+                append(fName, f, records);
+            }
+        }
     }
 
     @Override
     public void RemoveSection(String fName, String section) {
         fName = validatefName(fName);
-
-        LoadFile(fName, false);
-
         section = validateSection(section);
 
-        files.get(fName).data.remove(section);
+        IniFile f = file(fName);
+        StringBuilder records = new StringBuilder();
 
-        SaveFile(fName, files.get(fName));
+        synchronized (f) {
+            if (f.data.remove(section) != null) {
+                record(records, 'D', section);
+                append(fName, f, records);
+            }
+        }
     }
 
     @Override
     public void RemoveFile(String fName) {
         fName = validatefName(fName);
 
-        File f = new File("./" + inifolder + "/" + fName + ".ini");
+        synchronized (compaction) {
+            IniFile f = files.get(fName);
 
-        f.delete();
+            if (f != null) {
+                synchronized (f) {
+                    closeLog(f);
+                    f.removed = true;
+                }
+            }
 
-        files.remove(fName);
+            for (String extension : new String[]{SNAPSHOT, SNAPSHOT_TEMP, LOG, LOG_OLD}) {
+                try {
+                    Files.deleteIfExists(path(fName, extension));
+                } catch (IOException ex) {
+                    com.gmt2001.Console.err.printStackTrace(ex);
+                }
+            }
+
+            if (f != null) {
+                files.remove(fName, f);
+            }
+        }
     }
 
     @Override
@@ -517,31 +613,60 @@ public class IniStore extends DataStore implements ActionListener {
         fNameSource = validatefName(fNameSource);
         fNameDest = validatefName(fNameDest);
 
-        SaveFile(fNameSource, files.get(fNameSource));
-        if (!FileExists(fNameSource)) {
-            return;
-        }
+        synchronized (compaction) {
+            if (!FileExists(fNameSource)) {
+                return;
+            }
 
-        SaveFile(fNameDest, files.get(fNameDest));
-        if (FileExists(fNameDest)) {
-            RemoveFile(fNameDest);
-        }
+            IniFile f = file(fNameSource);
+
+            try {
+                /* Puts the whole table in the snapshot, which then only has to be renamed */
+                compact(fNameSource, f, true);
+            } catch (IOException ex) {
+                com.gmt2001.Console.err.printStackTrace(ex);
+                files.remove(fNameSource, f);
+                return;
+            }
 
-        File sourceFile = new File("./" + inifolder + "/" + fNameSource + ".ini");
-        File destFile = new File("./" + inifolder + "/" + fNameDest + ".ini");
+            RemoveFile(fNameDest);
 
-        sourceFile.renameTo(destFile);
+            try {
+                Files.move(path(fNameSource, SNAPSHOT), path(fNameDest, SNAPSHOT), StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(path(fNameSource, LOG));
+            } catch (IOException ex) {
+                com.gmt2001.Console.err.printStackTrace(ex);
+            }
 
-        files.remove(fNameSource);
-        LoadFile(fNameDest, false);
+            files.remove(fNameSource, f);
+        }
     }
 
     @Override
     public boolean FileExists(String fName) {
         fName = validatefName(fName);
 
-        File f = new File("./" + inifolder + "/" + fName + ".ini");
+        return Files.exists(path(fName, SNAPSHOT)) || Files.exists(path(fName, LOG)) || Files.exists(path(fName, LOG_OLD));
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+
+        flusher.shutdown();
 
-        return f.exists();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush(false);
+
+        files.values().forEach((f) -> {
+            synchronized (f) {
+                closeLog(f);
+            }
+        });
     }
 }
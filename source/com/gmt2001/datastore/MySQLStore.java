@@ -16,8 +16,10 @@
  */
 package com.gmt2001.datastore;
 
-import biz.source_code.miniConnectionPoolManager.MiniConnectionPoolManager;
-import com.mysql.jdbc.jdbc2.optional.MysqlConnectionPoolDataSource;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
@@ -26,6 +28,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  *
@@ -34,24 +39,47 @@ import java.util.ArrayList;
 public class MySQLStore extends DataStore {
 
     private static final int MAX_CONNECTIONS = 30;
+    private static final int STATEMENT_CACHE_SIZE = 64;
+    private static final long VALIDATE_IDLE_MS = 30000L;
+    private static final long MAX_LIFETIME_MS = 1800000L;
+    private static final long LEAK_MS = 60000L;
+    private static final int BACKUP_INSERT_ROWS = 500;
+    private static final String BACKUP_TRAILER = "-- Dump completed";
     private static MySQLStore instance;
-    private final MiniConnectionPoolManager poolMgr;
+    private final ConnectionPool poolMgr;
+    private final String configStr;
+    private final String tablePrefix;
 
     public static MySQLStore instance() {
         return instance("");
     }
 
     public static synchronized MySQLStore instance(String configStr) {
+        return instance(configStr, "phantombot_");
+    }
+
+    /**
+     * Method that returns the instance, creating it with the given table prefix the first time. Bots of several
+     * channels can share one database by using a different prefix each, as long as no prefix starts with another one.
+     *
+     * @param configStr
+     * @param tablePrefix
+     * @return
+     */
+    public static synchronized MySQLStore instance(String configStr, String tablePrefix) {
         if (instance == null) {
-            instance = new MySQLStore(configStr);
+            instance = new MySQLStore(configStr, tablePrefix);
         }
 
         return instance;
     }
 
-    private MySQLStore(String configStr) {
+    private MySQLStore(String configStr, String tablePrefix) {
         super(configStr);
 
+        this.configStr = configStr;
+        this.tablePrefix = tablePrefix.replaceAll("([^a-zA-Z0-9_])", "_");
+
         try {
             Class.forName("com.mysql.jdbc.Driver");
         } catch (ClassNotFoundException ex) {
@@ -60,10 +88,8 @@ public class MySQLStore extends DataStore {
             com.gmt2001.Console.err.println(ex.getMessage());
         }
 
-        MysqlConnectionPoolDataSource dataSource = new MysqlConnectionPoolDataSource();
-        dataSource.setURL(configStr);
-
-        poolMgr = new MiniConnectionPoolManager(dataSource, MAX_CONNECTIONS);
+        /* The server drops the connections idle for longer than its wait_timeout */
+        poolMgr = new ConnectionPool(() -> DriverManager.getConnection(configStr), MAX_CONNECTIONS, STATEMENT_CACHE_SIZE, VALIDATE_IDLE_MS, MAX_LIFETIME_MS, LEAK_MS);
     }
 
     private String sanitizeOrder(String order) {
@@ -137,7 +163,7 @@ public class MySQLStore extends DataStore {
         fName = validateFname(fName);
 
         try (Statement statement = connection.createStatement()) {
-            statement.executeUpdate("CREATE TABLE IF NOT EXISTS phantombot_" + fName + " (section LONGTEXT, variable varchar(255) NOT NULL, value LONGTEXT, PRIMARY KEY (section(30), variable(150))) DEFAULT CHARSET=utf8mb4 COLLATE utf8mb4_general_ci;");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + tablePrefix + fName + " (section LONGTEXT, variable varchar(255) NOT NULL, value LONGTEXT, PRIMARY KEY (section(30), variable(150))) DEFAULT CHARSET=utf8mb4 COLLATE utf8mb4_general_ci;");
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
@@ -149,7 +175,7 @@ public class MySQLStore extends DataStore {
             fName = validateFname(fName);
 
             if (FileExists(connection, fName)) {
-                try (PreparedStatement statement = connection.prepareStatement("DELETE FROM phantombot_" + fName + " WHERE section=? AND variable=?;")) {
+                try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + tablePrefix + fName + " WHERE section=? AND variable=?;")) {
                     statement.setString(1, section);
                     statement.setString(2, key);
                     statement.execute();
@@ -166,7 +192,7 @@ public class MySQLStore extends DataStore {
             fName = validateFname(fName);
 
             if (FileExists(connection, fName)) {
-                try (PreparedStatement statement = connection.prepareStatement("DELETE FROM phantombot_" + fName + " WHERE section=?;")) {
+                try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + tablePrefix + fName + " WHERE section=?;")) {
                     statement.setString(1, section);
                     statement.execute();
                 }
@@ -176,6 +202,68 @@ public class MySQLStore extends DataStore {
         }
     }
 
+    @Override
+    public long RemoveKeysByNumberValueBelow(String fName, String section, long value) {
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+
+            if (FileExists(connection, fName)) {
+                return SqlCleanup.removeBelow(connection, SqlCleanup.Dialect.MYSQL, tablePrefix + fName, section, value);
+            }
+        } catch (SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+        }
+
+        return 0;
+    }
+
+    @Override
+    public String[] GetKeysByNumberValueBelow(String fName, String section, long value, String valueFName) {
+        try (Connection connection = GetConnection()) {
+            fName = validateFname(fName);
+            valueFName = validateFname(valueFName);
+
+            if (FileExists(connection, fName)) {
+                return SqlCleanup.keysBelow(connection, SqlCleanup.Dialect.MYSQL, tablePrefix + fName,
+                        FileExists(connection, valueFName) ? tablePrefix + valueFName : null, section, value);
+            }
+        } catch (SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+        }
+
+        return new String[]{};
+    }
+
+    @Override
+    public void RemoveKeysFromFiles(String[] fNames, String section, String[] keys) {
+        if (keys.length == 0) {
+            return;
+        }
+
+        try (Connection connection = GetConnection()) {
+            connection.setAutoCommit(false);
+
+            try {
+                for (String fName : fNames) {
+                    fName = validateFname(fName);
+
+                    if (FileExists(connection, fName)) {
+                        SqlCleanup.removeKeys(connection, tablePrefix + fName, section, keys);
+                    }
+                }
+
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+        }
+    }
+
     @Override
     public void RemoveFile(String fName) {
         try (Connection connection = GetConnection()) {
@@ -183,7 +271,7 @@ public class MySQLStore extends DataStore {
 
             if (FileExists(connection, fName)) {
                 try (Statement statement = connection.createStatement()) {
-                    statement.execute("DROP TABLE phantombot_" + fName + ";");
+                    statement.execute("DROP TABLE " + tablePrefix + fName + ";");
                 }
             }
         } catch (SQLException ex) {
@@ -204,10 +292,10 @@ public class MySQLStore extends DataStore {
             try (Statement statement = connection.createStatement()) {
 
                 if (FileExists(connection, fNameDest)) {
-                    statement.execute("DROP TABLE phantombot_" + fNameDest + ";");
+                    statement.execute("DROP TABLE " + tablePrefix + fNameDest + ";");
                 }
 
-                statement.execute("ALTER TABLE phantombot_" + fNameSource + " RENAME TO phantombot_" + fNameDest + ";");
+                statement.execute("ALTER TABLE " + tablePrefix + fNameSource + " RENAME TO " + tablePrefix + fNameDest + ";");
             }
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
@@ -232,7 +320,7 @@ public class MySQLStore extends DataStore {
 
         try {
             DatabaseMetaData md = connection.getMetaData();
-            try (ResultSet rs = md.getTables(null, null, "phantombot_" + fName, null)) {
+            try (ResultSet rs = md.getTables(null, null, tablePrefix + fName, null)) {
                 return rs.next();
             }
         } catch (SQLException ex) {
@@ -248,10 +336,10 @@ public class MySQLStore extends DataStore {
 
         try (Connection connection = GetConnection()) {
             DatabaseMetaData md = connection.getMetaData();
-            try (ResultSet rs = md.getTables(null, null, "phantombot_%", null)) {
+            try (ResultSet rs = md.getTables(null, null, tablePrefix.replace("_", md.getSearchStringEscape() + "_") + "%", null)) {
                 ArrayList<String> s = new ArrayList<>();
                 while (rs.next()) {
-                    s.add(rs.getString(3).substring(11));
+                    s.add(rs.getString(3).substring(tablePrefix.length()));
                 }
                 out = s.toArray(new String[s.size()]);
             }
@@ -271,7 +359,7 @@ public class MySQLStore extends DataStore {
 
             if (FileExists(connection, fName)) {
                 try (Statement statement = connection.createStatement()) {
-                    try (ResultSet rs = statement.executeQuery("SELECT section FROM phantombot_" + fName + " GROUP BY section;")) {
+                    try (ResultSet rs = statement.executeQuery("SELECT section FROM " + tablePrefix + fName + " GROUP BY section;")) {
 
                         ArrayList<String> s = new ArrayList<>();
 
@@ -299,7 +387,7 @@ public class MySQLStore extends DataStore {
 
             if (FileExists(connection, fName)) {
                 if (section != null) {
-                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM phantombot_" + fName + " WHERE section=?;")) {
+                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM " + tablePrefix + fName + " WHERE section=?;")) {
                         statement.setString(1, section);
 
                         try (ResultSet rs = statement.executeQuery()) {
@@ -314,7 +402,7 @@ public class MySQLStore extends DataStore {
                         }
                     }
                 } else {
-                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM phantombot_" + fName + ";")) {
+                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM " + tablePrefix + fName + ";")) {
                         try (ResultSet rs = statement.executeQuery()) {
 
                             ArrayList<String> s = new ArrayList<>();
@@ -344,7 +432,7 @@ public class MySQLStore extends DataStore {
 
             if (FileExists(connection, fName)) {
                 if (section != null) {
-                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable, value FROM phantombot_" + fName + " WHERE section=?;")) {
+                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable, value FROM " + tablePrefix + fName + " WHERE section=?;")) {
                         statement.setString(1, section);
 
                         try (ResultSet rs = statement.executeQuery()) {
@@ -358,7 +446,7 @@ public class MySQLStore extends DataStore {
                         }
                     }
                 } else {
-                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable, value FROM phantombot_" + fName + ";")) {
+                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable, value FROM " + tablePrefix + fName + ";")) {
                         try (ResultSet rs = statement.executeQuery()) {
 
                             ArrayList<KeyValue> s = new ArrayList<>();
@@ -402,9 +490,9 @@ public class MySQLStore extends DataStore {
             if (FileExists(connection, fName)) {
                 if (section != null) {
                     if (isNumber) {
-                        statementStr = "SELECT variable FROM phantombot_" + fName + " WHERE section=? ORDER BY CAST(variable as UNSIGNED) " + order + " LIMIT " + limit + " OFFSET " + offset + ";";
+                        statementStr = "SELECT variable FROM " + tablePrefix + fName + " WHERE section=? ORDER BY CAST(variable as UNSIGNED) " + order + " LIMIT " + limit + " OFFSET " + offset + ";";
                     } else {
-                        statementStr = "SELECT variable FROM phantombot_" + fName + " WHERE section=? ORDER BY variable " + order + " LIMIT " + limit + " OFFSET " + offset + ";";
+                        statementStr = "SELECT variable FROM " + tablePrefix + fName + " WHERE section=? ORDER BY variable " + order + " LIMIT " + limit + " OFFSET " + offset + ";";
                     }
                     try (PreparedStatement statement = connection.prepareStatement(statementStr)) {
                         statement.setString(1, section);
@@ -422,9 +510,9 @@ public class MySQLStore extends DataStore {
                     }
                 } else {
                     if (isNumber) {
-                        statementStr = "SELECT variable FROM phantombot_" + fName + " ORDER BY CAST(variable as UNSIGNED) " + order + " LIMIT " + limit + " OFFSET " + offset + ";";
+                        statementStr = "SELECT variable FROM " + tablePrefix + fName + " ORDER BY CAST(variable as UNSIGNED) " + order + " LIMIT " + limit + " OFFSET " + offset + ";";
                     } else {
-                        statementStr = "SELECT variable FROM phantombot_" + fName + " ORDER BY variable " + order + " LIMIT " + limit + " OFFSET " + offset + ";";
+                        statementStr = "SELECT variable FROM " + tablePrefix + fName + " ORDER BY variable " + order + " LIMIT " + limit + " OFFSET " + offset + ";";
                     }
                     try (PreparedStatement statement = connection.prepareStatement(statementStr)) {
                         try (ResultSet rs = statement.executeQuery()) {
@@ -470,9 +558,9 @@ public class MySQLStore extends DataStore {
             if (FileExists(connection, fName)) {
                 if (section != null) {
                     if (isNumber) {
-                        statementStr = "SELECT variable FROM phantombot_" + fName + " WHERE section=? ORDER BY CAST(value as UNSIGNED) " + order + " LIMIT " + limit + " OFFSET " + offset + ";";
+                        statementStr = "SELECT variable FROM " + tablePrefix + fName + " WHERE section=? ORDER BY CAST(value as UNSIGNED) " + order + " LIMIT " + limit + " OFFSET " + offset + ";";
                     } else {
-                        statementStr = "SELECT variable FROM phantombot_" + fName + " WHERE section=? ORDER BY value " + order + " LIMIT " + limit + " OFFSET " + offset + ";";
+                        statementStr = "SELECT variable FROM " + tablePrefix + fName + " WHERE section=? ORDER BY value " + order + " LIMIT " + limit + " OFFSET " + offset + ";";
                     }
 
                     try (PreparedStatement statement = connection.prepareStatement(statementStr)) {
@@ -491,9 +579,9 @@ public class MySQLStore extends DataStore {
                     }
                 } else {
                     if (isNumber) {
-                        statementStr = "SELECT variable FROM phantombot_" + fName + " ORDER BY CAST(value as UNSIGNED) " + order + " LIMIT " + limit + " OFFSET " + offset + ";";
+                        statementStr = "SELECT variable FROM " + tablePrefix + fName + " ORDER BY CAST(value as UNSIGNED) " + order + " LIMIT " + limit + " OFFSET " + offset + ";";
                     } else {
-                        statementStr = "SELECT variable FROM phantombot_" + fName + " ORDER BY value " + order + " LIMIT " + limit + " OFFSET " + offset + ";";
+                        statementStr = "SELECT variable FROM " + tablePrefix + fName + " ORDER BY value " + order + " LIMIT " + limit + " OFFSET " + offset + ";";
                     }
                     try (PreparedStatement statement = connection.prepareStatement(statementStr)) {
                         try (ResultSet rs = statement.executeQuery()) {
@@ -525,7 +613,7 @@ public class MySQLStore extends DataStore {
 
             if (FileExists(connection, fName)) {
                 if (section != null) {
-                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM phantombot_" + fName + " WHERE section=? AND value LIKE ?;")) {
+                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM " + tablePrefix + fName + " WHERE section=? AND value LIKE ?;")) {
                         statement.setString(1, section);
                         statement.setString(2, "%" + search + "%");
 
@@ -539,7 +627,7 @@ public class MySQLStore extends DataStore {
                         }
                     }
                 } else {
-                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM phantombot_" + fName + " WHERE value LIKE ?;")) {
+                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM " + tablePrefix + fName + " WHERE value LIKE ?;")) {
                         statement.setString(1, "%" + search + "%");
 
                         try (ResultSet rs = statement.executeQuery()) {
@@ -569,7 +657,7 @@ public class MySQLStore extends DataStore {
 
             if (FileExists(connection, fName)) {
                 if (section != null) {
-                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM phantombot_" + fName + " WHERE section=? AND variable LIKE ?;")) {
+                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM " + tablePrefix + fName + " WHERE section=? AND variable LIKE ?;")) {
                         statement.setString(1, section);
                         statement.setString(2, "%" + search + "%");
 
@@ -583,7 +671,7 @@ public class MySQLStore extends DataStore {
                         }
                     }
                 } else {
-                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM phantombot_" + fName + " WHERE variable LIKE ?;")) {
+                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM " + tablePrefix + fName + " WHERE variable LIKE ?;")) {
                         statement.setString(1, "%" + search + "%");
 
                         try (ResultSet rs = statement.executeQuery()) {
@@ -616,7 +704,7 @@ public class MySQLStore extends DataStore {
 
             if (FileExists(connection, fName)) {
                 if (section != null) {
-                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM phantombot_" + fName + " WHERE section=? AND variable LIKE ? ORDER BY variable " + order + " LIMIT " + limit + " OFFSET " + offset + ";")) {
+                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM " + tablePrefix + fName + " WHERE section=? AND variable LIKE ? ORDER BY variable " + order + " LIMIT " + limit + " OFFSET " + offset + ";")) {
                         statement.setString(1, section);
                         statement.setString(2, "%" + search + "%");
 
@@ -631,7 +719,7 @@ public class MySQLStore extends DataStore {
                         }
                     }
                 } else {
-                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM phantombot_" + fName + " WHERE variable LIKE ? ORDER BY variable " + order + " LIMIT " + limit + " OFFSET " + offset + ";")) {
+                    try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM " + tablePrefix + fName + " WHERE variable LIKE ? ORDER BY variable " + order + " LIMIT " + limit + " OFFSET " + offset + ";")) {
                         statement.setString(1, "%" + search + "%");
 
                         try (ResultSet rs = statement.executeQuery()) {
@@ -665,7 +753,7 @@ public class MySQLStore extends DataStore {
             }
 
             if (section != null) {
-                try (PreparedStatement statement = connection.prepareStatement("SELECT value FROM phantombot_" + fName + " WHERE section=? AND variable=?;")) {
+                try (PreparedStatement statement = connection.prepareStatement("SELECT value FROM " + tablePrefix + fName + " WHERE section=? AND variable=?;")) {
                     statement.setString(1, section);
                     statement.setString(2, key);
 
@@ -677,7 +765,7 @@ public class MySQLStore extends DataStore {
                     }
                 }
             } else {
-                try (PreparedStatement statement = connection.prepareStatement("SELECT value FROM phantombot_" + fName + " WHERE variable=?;")) {
+                try (PreparedStatement statement = connection.prepareStatement("SELECT value FROM " + tablePrefix + fName + " WHERE variable=?;")) {
                     statement.setString(1, key);
 
                     try (ResultSet rs = statement.executeQuery()) {
@@ -707,7 +795,7 @@ public class MySQLStore extends DataStore {
             }
 
             if (section != null) {
-                try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM phantombot_" + fName + " WHERE section=? AND value=?;")) {
+                try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM " + tablePrefix + fName + " WHERE section=? AND value=?;")) {
                     statement.setString(1, section);
                     statement.setString(2, value);
 
@@ -719,7 +807,7 @@ public class MySQLStore extends DataStore {
                     }
                 }
             } else {
-                try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM phantombot_" + fName + " WHERE value=?;")) {
+                try (PreparedStatement statement = connection.prepareStatement("SELECT variable FROM " + tablePrefix + fName + " WHERE value=?;")) {
                     statement.setString(1, value);
 
                     try (ResultSet rs = statement.executeQuery()) {
@@ -750,7 +838,7 @@ public class MySQLStore extends DataStore {
             }
 
             if (section != null) {
-                try (PreparedStatement statement = connection.prepareStatement("SELECT value FROM phantombot_" + fName + " WHERE section=? AND variable=?;")) {
+                try (PreparedStatement statement = connection.prepareStatement("SELECT value FROM " + tablePrefix + fName + " WHERE section=? AND variable=?;")) {
                     statement.setString(1, section);
                     statement.setString(2, key);
 
@@ -762,7 +850,7 @@ public class MySQLStore extends DataStore {
                     }
                 }
             } else {
-                try (PreparedStatement statement = connection.prepareStatement("SELECT value FROM phantombot_" + fName + " WHERE variable=?;")) {
+                try (PreparedStatement statement = connection.prepareStatement("SELECT value FROM " + tablePrefix + fName + " WHERE variable=?;")) {
                     statement.setString(1, key);
 
                     try (ResultSet rs = statement.executeQuery()) {
@@ -789,7 +877,7 @@ public class MySQLStore extends DataStore {
 
             connection.setAutoCommit(false);
 
-            try (PreparedStatement statement = connection.prepareStatement("REPLACE INTO phantombot_" + fName + " (value, section, variable) values(?, ?, ?);")) {
+            try (PreparedStatement statement = connection.prepareStatement("REPLACE INTO " + tablePrefix + fName + " (value, section, variable) values(?, ?, ?);")) {
                 for (int idx = 0; idx < keys.length; idx++) {
                     statement.setString(1, values[idx]);
                     statement.setString(2, section);
@@ -815,7 +903,7 @@ public class MySQLStore extends DataStore {
 
             AddFile(connection, fName);
 
-            try (PreparedStatement statement = connection.prepareStatement("REPLACE INTO phantombot_" + fName + "(section, variable, value) values(?, ?, ?);")) {
+            try (PreparedStatement statement = connection.prepareStatement("REPLACE INTO " + tablePrefix + fName + "(section, variable, value) values(?, ?, ?);")) {
                 statement.setString(1, section);
                 statement.setString(2, key);
                 statement.setString(3, value);
@@ -842,7 +930,7 @@ public class MySQLStore extends DataStore {
                 sb.append("?,");
             }
 
-            try (PreparedStatement statement = connection.prepareStatement("UPDATE phantombot_" + fName + " SET value = CAST(value AS UNSIGNED) + ? WHERE section = ? AND variable IN (" + sb.deleteCharAt(sb.length() - 1).toString() + ");")) {
+            try (PreparedStatement statement = connection.prepareStatement("UPDATE " + tablePrefix + fName + " SET value = CAST(value AS UNSIGNED) + ? WHERE section = ? AND variable IN (" + sb.deleteCharAt(sb.length() - 1).toString() + ");")) {
                 statement.setInt(1, Integer.parseUnsignedInt(value));
                 statement.setString(2, section);
                 int i = 3;
@@ -858,7 +946,7 @@ public class MySQLStore extends DataStore {
                 sb.append("(?, ?, ?),");
             }
 
-            try (PreparedStatement statement = connection.prepareStatement("INSERT IGNORE INTO phantombot_" + fName + " (section, variable, value) VALUES " + sb.deleteCharAt(sb.length() - 1).toString() + ";")) {
+            try (PreparedStatement statement = connection.prepareStatement("INSERT IGNORE INTO " + tablePrefix + fName + " (section, variable, value) VALUES " + sb.deleteCharAt(sb.length() - 1).toString() + ";")) {
                 int i = 1;
                 for (String k : keys) {
                     statement.setString(i++, section);
@@ -874,4 +962,197 @@ public class MySQLStore extends DataStore {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
     }
+
+    @Override
+    public boolean canBackup() {
+        return true;
+    }
+
+    /**
+     * Dumps the tables of this bot one at a time, streaming the rows from the server, inside one consistent snapshot
+     * so that the writers carry on while it runs.
+     *
+     * The dump uses a connection of its own instead of one from the pool, it can run for longer than the pool
+     * considers a leak and its isolation level must not carry over to other queries.
+     */
+    @Override
+    public File backupDB(String filename, boolean compress) {
+        Map<String, Long> rows = new LinkedHashMap<>();
+        File file;
+
+        try {
+            file = DataStoreBackup.target(filename, ".sql", compress);
+        } catch (IOException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+            return null;
+        }
+
+        String[] tables = GetFileList();
+
+        try (Connection connection = DriverManager.getConnection(configStr); Statement statement = connection.createStatement(); BufferedWriter out = DataStoreBackup.writer(file, compress)) {
+            statement.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ;");
+            statement.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT;");
+
+            try {
+                out.write("-- PhantomBot MySQL dump\n");
+                out.write("SET NAMES utf8mb4;\n");
+
+                for (String fName : tables) {
+                    String table = "`" + tablePrefix + fName + "`";
+
+                    try (ResultSet rs = statement.executeQuery("SHOW CREATE TABLE " + table + ";")) {
+                        rs.next();
+                        out.write("\nDROP TABLE IF EXISTS " + table + ";\n");
+                        out.write(rs.getString(2) + ";\n");
+                    }
+
+                    rows.put(table, dumpRows(connection, table, out));
+                }
+
+                out.write("\n" + BACKUP_TRAILER + "\n");
+            } finally {
+                statement.execute("COMMIT;");
+            }
+        } catch (IOException | SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+            file.delete();
+            return null;
+        }
+
+        if (!verifyBackup(file, rows)) {
+            file.delete();
+            return null;
+        }
+
+        return file;
+    }
+
+    private long dumpRows(Connection connection, String table, BufferedWriter out) throws IOException, SQLException {
+        long count = 0L;
+
+        try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            /* Makes the driver stream the rows instead of reading the whole table into memory */
+            statement.setFetchSize(Integer.MIN_VALUE);
+
+            try (ResultSet rs = statement.executeQuery("SELECT * FROM " + table + ";")) {
+                int columns = rs.getMetaData().getColumnCount();
+                StringBuilder sb = new StringBuilder(256);
+
+                while (rs.next()) {
+                    sb.setLength(0);
+                    sb.append(count % BACKUP_INSERT_ROWS == 0 ? "INSERT INTO " + table + " VALUES\n(" : ",\n(");
+
+                    for (int i = 1; i <= columns; i++) {
+                        if (i > 1) {
+                            sb.append(',');
+                        }
+
+                        appendLiteral(sb, rs.getString(i));
+                    }
+
+                    sb.append(')');
+                    count++;
+
+                    if (count % BACKUP_INSERT_ROWS == 0) {
+                        sb.append(";\n");
+                    }
+
+                    out.write(sb.toString());
+                }
+
+                if (count % BACKUP_INSERT_ROWS != 0) {
+                    out.write(";\n");
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Appends a value as a quoted literal, escaping line breaks so that every row stays on its own line of the dump.
+     */
+    private static void appendLiteral(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("NULL");
+            return;
+        }
+
+        sb.append('\'');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            switch (c) {
+                case '\0':
+                    sb.append("\\0");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\u001a':
+                    sb.append("\\Z");
+                    break;
+                case '\'':
+                case '\\':
+                    sb.append('\\').append(c);
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+
+        sb.append('\'');
+    }
+
+    /**
+     * Reads the dump back and checks that it is complete and holds as many rows per table as were dumped.
+     */
+    private boolean verifyBackup(File file, Map<String, Long> rows) {
+        Map<String, Long> found = new HashMap<>();
+        String table = null;
+        String last = null;
+
+        try (BufferedReader in = DataStoreBackup.reader(file)) {
+            String line;
+
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("DROP TABLE IF EXISTS ")) {
+                    table = line.substring(21, line.length() - 1);
+                    found.put(table, 0L);
+                } else if (line.startsWith("(") && table != null) {
+                    found.merge(table, 1L, Long::sum);
+                }
+
+                if (!line.isEmpty()) {
+                    last = line;
+                }
+            }
+        } catch (IOException ex) {
+            com.gmt2001.Console.err.println("The MySQL backup " + file.getPath() + " could not be read: " + ex.getMessage());
+            return false;
+        }
+
+        if (!BACKUP_TRAILER.equals(last)) {
+            com.gmt2001.Console.err.println("The MySQL backup " + file.getPath() + " is incomplete");
+            return false;
+        }
+
+        if (!found.equals(rows)) {
+            com.gmt2001.Console.err.println("The MySQL backup " + file.getPath() + " does not hold the rows that were dumped");
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+
+        poolMgr.dispose();
+    }
 }
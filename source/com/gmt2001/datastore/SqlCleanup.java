@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001.datastore;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+/**
+ * The bulk removals of !cleanup as SQL, shared by the SQL stores.
+ *
+ * The stores pass the full name of tables they checked exist, and commit. A value counts as a number when it is an
+ * integer of up to 18 digits, optionally signed and surrounded by spaces. Other values are left alone instead of
+ * being read as 0 or failing the statement.
+ *
+ * @author agent
+ */
+final class SqlCleanup {
+
+    private static final int CHUNK = 500;
+
+    /**
+     * How each database tells and converts the values that are numbers.
+     */
+    enum Dialect {
+        SQLITE {
+            @Override
+            String number(String column) {
+                String trimmed = "TRIM(" + column + ")";
+                return "CASE WHEN (" + trimmed + " GLOB '[0-9]*' OR " + trimmed + " GLOB '[+-][0-9]*') AND NOT SUBSTR(" + trimmed + ", 2) GLOB '*[^0-9]*'"
+                        + " AND LENGTH(LTRIM(" + trimmed + ", '+-')) <= 18 THEN CAST(" + trimmed + " AS INTEGER) END";
+            }
+        },
+        H2 {
+            @Override
+            String number(String column) {
+                return "CASE WHEN REGEXP_LIKE(TRIM(" + column + "), '^[+-]?[0-9]{1,18}$') THEN CAST(TRIM(" + column + ") AS BIGINT) END";
+            }
+        },
+        MYSQL {
+            @Override
+            String number(String column) {
+                return "CASE WHEN TRIM(" + column + ") REGEXP '^[+-]?[0-9]{1,18}$' THEN CAST(TRIM(" + column + ") AS SIGNED) END";
+            }
+        };
+
+        /**
+         * Returns an expression that is the number in the column, or NULL if it does not hold one.
+         */
+        abstract String number(String column);
+    }
+
+    private SqlCleanup() {
+    }
+
+    /**
+     * Removes the keys whose value is a number below the given value.
+     *
+     * @return The number of removed keys
+     */
+    static long removeBelow(Connection connection, Dialect dialect, String table, String section, long value) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + table + " WHERE " + (section != null ? "section=? AND " : "")
+                + dialect.number("value") + " < ?;")) {
+            int i = 1;
+            if (section != null) {
+                statement.setString(i++, section);
+            }
+            statement.setLong(i, value);
+            return statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Returns the keys of a table whose value in another table is a number below the given value. Keys missing from
+     * the other table count as 0.
+     *
+     * @param valueTable The table to take the values from, null if it does not exist
+     */
+    static String[] keysBelow(Connection connection, Dialect dialect, String table, String valueTable, String section, long value) throws SQLException {
+        String sql;
+
+        if (valueTable == null) {
+            sql = "SELECT k.variable FROM " + table + " k WHERE " + (section != null ? "k.section=? AND " : "") + "0 < ?;";
+        } else {
+            sql = "SELECT k.variable FROM " + table + " k LEFT JOIN " + valueTable + " v ON v.section=k.section AND v.variable=k.variable WHERE "
+                    + (section != null ? "k.section=? AND " : "") + "(CASE WHEN v.variable IS NULL THEN 0 ELSE " + dialect.number("v.value") + " END) < ?;";
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int i = 1;
+            if (section != null) {
+                statement.setString(i++, section);
+            }
+            statement.setLong(i, value);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                ArrayList<String> out = new ArrayList<>();
+
+                while (rs.next()) {
+                    out.add(rs.getString("variable"));
+                }
+
+                return out.toArray(new String[out.size()]);
+            }
+        }
+    }
+
+    /**
+     * Removes the given keys from a table, in chunks to stay below the limit of parameters of a statement.
+     */
+    static void removeKeys(Connection connection, String table, String section, String[] keys) throws SQLException {
+        for (int start = 0; start < keys.length; start += CHUNK) {
+            int end = Math.min(start + CHUNK, keys.length);
+            StringBuilder sb = new StringBuilder((end - start) * 2);
+
+            for (int idx = start; idx < end; idx++) {
+                sb.append("?,");
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + table + " WHERE " + (section != null ? "section=? AND " : "")
+                    + "variable IN (" + sb.deleteCharAt(sb.length() - 1).toString() + ");")) {
+                int i = 1;
+                if (section != null) {
+                    statement.setString(i++, section);
+                }
+                for (int idx = start; idx < end; idx++) {
+                    statement.setString(i++, keys[idx]);
+                }
+                statement.execute();
+            }
+        }
+    }
+}
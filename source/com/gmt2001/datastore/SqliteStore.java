@@ -16,7 +16,7 @@
  */
 package com.gmt2001.datastore;
 
-import biz.source_code.miniConnectionPoolManager.MiniConnectionPoolManager;
+import com.gmt2001.Metrics;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -29,13 +29,16 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
 import org.apache.commons.io.FileUtils;
 import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteErrorCode;
 import org.sqlite.SQLiteException;
-import org.sqlite.javax.SQLiteConnectionPoolDataSource;
 
 /**
  *
@@ -44,8 +47,13 @@ import org.sqlite.javax.SQLiteConnectionPoolDataSource;
 public class SqliteStore extends DataStore {
 
     private static final int MAX_CONNECTIONS = 30;
+    private static final int STATEMENT_CACHE_SIZE = 64;
+    private static final long LEAK_MS = 60000L;
+    private static final Pattern BACKUP_SCHEMA = Pattern.compile("^(\\s*CREATE\\s+(?:UNIQUE\\s+)?(?:TABLE|INDEX)\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?)", Pattern.CASE_INSENSITIVE);
     private static SqliteStore instance;
-    private final MiniConnectionPoolManager poolMgr;
+    private final ConnectionPool poolMgr;
+    private final SqliteWriter writer;
+    private final String url;
 
     public static SqliteStore instance() {
         return instance("");
@@ -70,16 +78,38 @@ public class SqliteStore extends DataStore {
 
         Object o[] = LoadConfigReal(configStr);
 
+        boolean singleWriter = (boolean) o[4];
+        url = "jdbc:sqlite:" + ((String) o[0]).replaceAll("\\\\", "/");
+
         SQLiteConfig config = new SQLiteConfig();
         config.setCacheSize((int) o[1]);
         config.setSynchronous((boolean) o[2] ? SQLiteConfig.SynchronousMode.FULL : SQLiteConfig.SynchronousMode.NORMAL);
         config.setTempStore(SQLiteConfig.TempStore.MEMORY);
-        config.setJournalMode((boolean) o[3] ? SQLiteConfig.JournalMode.WAL : SQLiteConfig.JournalMode.OFF);
+        /* The readers of the single writer mode need WAL to read while the writer commits */
+        config.setJournalMode((boolean) o[3] || singleWriter ? SQLiteConfig.JournalMode.WAL : SQLiteConfig.JournalMode.OFF);
         config.setBusyTimeout(10000);
+        /* Take the write lock when a transaction begins, a deferred one fails at once with SQLITE_BUSY when it can't upgrade */
+        config.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+
+        if ((long) o[5] > 0L) {
+            config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, Long.toString((long) o[5]));
+        }
+
+        SqliteWriter w = null;
+
+        if (singleWriter) {
+            try {
+                w = new SqliteWriter(config.createConnection(url), (long) o[6]);
+                /* The driver can't set query_only, opening read only refuses writes the same way */
+                config.setReadOnly(true);
+            } catch (SQLException ex) {
+                com.gmt2001.Console.err.println("Failed to open the SQLite writer, using read/write connections instead: " + ex.getMessage());
+            }
+        }
 
-        SQLiteConnectionPoolDataSource dataSource = new SQLiteConnectionPoolDataSource(config);
-        dataSource.setUrl("jdbc:sqlite:" + ((String) o[0]).replaceAll("\\\\", "/"));
-        poolMgr = new MiniConnectionPoolManager(dataSource, MAX_CONNECTIONS);
+        writer = w;
+
+        poolMgr = new ConnectionPool(() -> config.createConnection(url), MAX_CONNECTIONS, STATEMENT_CACHE_SIZE, 0L, 0L, LEAK_MS);
     }
 
     private String sanitizeOrder(String order) {
@@ -117,6 +147,9 @@ public class SqliteStore extends DataStore {
         int cache_size = -50000;
         boolean safe_write = false;
         boolean journal = true;
+        boolean single_writer = false;
+        long mmap_size = -1L;
+        long group_commit = 0L;
 
         try {
             File f = new File("./" + configStr);
@@ -134,6 +167,12 @@ public class SqliteStore extends DataStore {
                         safe_write = line.substring(10).equalsIgnoreCase("true") || line.substring(10).equalsIgnoreCase("1");
                     } else if (line.startsWith("journal=") && line.length() > 9) {
                         journal = line.substring(8).equalsIgnoreCase("true") || line.substring(10).equalsIgnoreCase("1");
+                    } else if (line.startsWith("singlewriter=") && line.length() > 13) {
+                        single_writer = line.substring(13).equalsIgnoreCase("true") || line.substring(13).equalsIgnoreCase("1");
+                    } else if (line.startsWith("mmapsize=") && line.length() > 9) {
+                        mmap_size = Long.parseLong(line.substring(9));
+                    } else if (line.startsWith("groupcommitms=") && line.length() > 14) {
+                        group_commit = Long.parseLong(line.substring(14));
                     }
                 }
             }
@@ -141,8 +180,13 @@ public class SqliteStore extends DataStore {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
 
+        /* The single writer mode maps the first 256MB of the database unless told otherwise */
+        if (mmap_size < 0L) {
+            mmap_size = single_writer ? 268435456L : 0L;
+        }
+
         return new Object[]{
-            dbname, cache_size, safe_write, journal
+            dbname, cache_size, safe_write, journal, single_writer, mmap_size, group_commit
         };
     }
 
@@ -170,15 +214,71 @@ public class SqliteStore extends DataStore {
         return null;
     }
 
-    @Override
-    public void AddFile(String fName) {
-        try (Connection connection = GetConnection()) {
-            AddFile(connection, fName);
+    /**
+     * Runs a write in its own transaction, or on the writer in single writer mode, and waits for it to be committed.
+     */
+    private <T> T write(SqliteWriter.Op<T> op, T fallback) {
+        try {
+            if (writer != null) {
+                return writer.submit(op).get();
+            }
+
+            return writeNow(op);
+        } catch (ExecutionException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex.getCause());
+        } catch (InterruptedException | SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+        }
+
+        return fallback;
+    }
+
+    /**
+     * Queues a write on the writer in single writer mode, otherwise runs it now. Failures are logged and also complete
+     * the future exceptionally.
+     */
+    private <T> CompletableFuture<T> writeAsync(SqliteWriter.Op<T> op) {
+        if (writer != null) {
+            return writer.submit(op).whenComplete((r, ex) -> {
+                if (ex != null) {
+                    com.gmt2001.Console.err.printStackTrace(ex);
+                }
+            });
+        }
+
+        try {
+            return CompletableFuture.completedFuture(writeNow(op));
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    private <T> T writeNow(SqliteWriter.Op<T> op) throws SQLException {
+        try (Connection connection = GetConnection()) {
+            connection.setAutoCommit(false);
+
+            try {
+                T result = op.apply(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
         }
     }
 
+    @Override
+    public void AddFile(String fName) {
+        write((connection) -> {
+            AddFile(connection, fName);
+            return null;
+        }, null);
+    }
+
     public void AddFile(Connection connection, String fName) {
         fName = validateFname(fName);
 
@@ -195,73 +295,131 @@ public class SqliteStore extends DataStore {
 
     @Override
     public void RemoveKey(String fName, String section, String key) {
-        try (Connection connection = GetConnection()) {
-            fName = validateFname(fName);
+        write(removeKey(fName, section, key), null);
+    }
 
-            if (FileExists(connection, fName)) {
-                try (PreparedStatement statement = connection.prepareStatement("DELETE FROM phantombot_" + fName + " WHERE section=? AND variable=?;")) {
+    @Override
+    public CompletableFuture<Void> RemoveKeyAsync(String fName, String section, String key) {
+        return writeAsync(removeKey(fName, section, key));
+    }
+
+    private SqliteWriter.Op<Void> removeKey(String fName, String section, String key) {
+        String table = validateFname(fName);
+
+        return (connection) -> {
+            if (FileExists(connection, table)) {
+                try (PreparedStatement statement = connection.prepareStatement("DELETE FROM phantombot_" + table + " WHERE section=? AND variable=?;")) {
                     statement.setString(1, section);
                     statement.setString(2, key);
                     statement.execute();
                 }
             }
-        } catch (SQLException ex) {
-            com.gmt2001.Console.err.printStackTrace(ex);
-        }
+
+            return null;
+        };
     }
 
     @Override
     public void RemoveSection(String fName, String section) {
-        try (Connection connection = GetConnection()) {
-            fName = validateFname(fName);
+        String table = validateFname(fName);
 
-            if (FileExists(connection, fName)) {
-                try (PreparedStatement statement = connection.prepareStatement("DELETE FROM phantombot_" + fName + " WHERE section=?;")) {
+        write((connection) -> {
+            if (FileExists(connection, table)) {
+                try (PreparedStatement statement = connection.prepareStatement("DELETE FROM phantombot_" + table + " WHERE section=?;")) {
                     statement.setString(1, section);
                     statement.execute();
                 }
             }
-        } catch (SQLException ex) {
-            com.gmt2001.Console.err.printStackTrace(ex);
-        }
+
+            return null;
+        }, null);
     }
 
     @Override
-    public void RemoveFile(String fName) {
+    public long RemoveKeysByNumberValueBelow(String fName, String section, long value) {
+        String table = validateFname(fName);
+
+        return write((connection) -> {
+            if (FileExists(connection, table)) {
+                return SqlCleanup.removeBelow(connection, SqlCleanup.Dialect.SQLITE, "phantombot_" + table, section, value);
+            }
+
+            return 0L;
+        }, 0L);
+    }
+
+    @Override
+    public String[] GetKeysByNumberValueBelow(String fName, String section, long value, String valueFName) {
         try (Connection connection = GetConnection()) {
             fName = validateFname(fName);
+            valueFName = validateFname(valueFName);
 
             if (FileExists(connection, fName)) {
-                try (Statement statement = connection.createStatement()) {
-                    statement.execute("DROP TABLE phantombot_" + fName + ";");
-                }
+                return SqlCleanup.keysBelow(connection, SqlCleanup.Dialect.SQLITE, "phantombot_" + fName,
+                        FileExists(connection, valueFName) ? "phantombot_" + valueFName : null, section, value);
             }
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        return new String[]{};
+    }
+
+    @Override
+    public void RemoveKeysFromFiles(String[] fNames, String section, String[] keys) {
+        if (keys.length == 0) {
+            return;
+        }
+
+        write((connection) -> {
+            for (String fName : fNames) {
+                fName = validateFname(fName);
+
+                if (FileExists(connection, fName)) {
+                    SqlCleanup.removeKeys(connection, "phantombot_" + fName, section, keys);
+                }
+            }
+
+            return null;
+        }, null);
+    }
+
+    @Override
+    public void RemoveFile(String fName) {
+        String table = validateFname(fName);
+
+        write((connection) -> {
+            if (FileExists(connection, table)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("DROP TABLE phantombot_" + table + ";");
+                }
+            }
+
+            return null;
+        }, null);
     }
 
     @Override
     public void RenameFile(String fNameSource, String fNameDest) {
-        try (Connection connection = GetConnection()) {
-            fNameSource = validateFname(fNameSource);
-            fNameDest = validateFname(fNameDest);
+        String source = validateFname(fNameSource);
+        String dest = validateFname(fNameDest);
 
-            if (!FileExists(connection, fNameSource)) {
-                return;
+        write((connection) -> {
+            if (!FileExists(connection, source)) {
+                return null;
             }
 
             try (Statement statement = connection.createStatement()) {
 
-                if (FileExists(connection, fNameDest)) {
-                    statement.execute("DROP TABLE phantombot_" + fNameDest + ";");
+                if (FileExists(connection, dest)) {
+                    statement.execute("DROP TABLE phantombot_" + dest + ";");
                 }
 
-                statement.execute("ALTER TABLE phantombot_" + fNameSource + " RENAME TO phantombot_" + fNameDest + ";");
+                statement.execute("ALTER TABLE phantombot_" + source + " RENAME TO phantombot_" + dest + ";");
             }
-        } catch (SQLException ex) {
-            com.gmt2001.Console.err.printStackTrace(ex);
-        }
+
+            return null;
+        }, null);
     }
 
     @Override
@@ -282,8 +440,10 @@ public class SqliteStore extends DataStore {
 
         boolean out = false;
 
-        try (Statement statement = connection.createStatement()) {
-            try (ResultSet rs = statement.executeQuery("SELECT name FROM sqlite_master WHERE type='table' AND name='phantombot_" + fName + "';")) {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT name FROM sqlite_master WHERE type='table' AND name=?;")) {
+            statement.setString(1, "phantombot_" + fName);
+
+            try (ResultSet rs = statement.executeQuery()) {
                 out = rs.next();
             }
         } catch (SQLException ex) {
@@ -837,42 +997,55 @@ public class SqliteStore extends DataStore {
 
     @Override
     public void SetBatchString(String fName, String section, String[] keys, String[] values) {
-        try (Connection connection = GetConnection()) {
+        write(setBatchString(fName, section, keys, values), null);
+    }
 
-            fName = validateFname(fName);
-            AddFile(connection, fName);
+    @Override
+    public CompletableFuture<Void> SetBatchStringAsync(String fName, String section, String[] keys, String[] values) {
+        return writeAsync(setBatchString(fName, section, keys, values));
+    }
 
-            /* Walk the list of keys to figure out which ones can pass INSERT and which ones need UPDATE */
-            Map<String, String> insertMap = new HashMap<>();
-            Map<String, String> updateMap = new HashMap<>();
+    private SqliteWriter.Op<Void> setBatchString(String fName, String section, String[] keys, String[] values) {
+        String table = validateFname(fName);
+        /* The last value of a key given twice wins */
+        Map<String, String> valueMap = new LinkedHashMap<>();
 
-            for (int idx = 0; idx < keys.length; idx++) {
-                if (HasKey(fName, section, keys[idx])) {
-                    updateMap.put(keys[idx], values[idx]);
-                } else {
-                    insertMap.put(keys[idx], values[idx]);
-                }
+        for (int idx = 0; idx < keys.length; idx++) {
+            valueMap.put(keys[idx], values[idx]);
+        }
+
+        return (connection) -> {
+            AddFile(connection, table);
+
+            if (valueMap.isEmpty()) {
+                return null;
             }
 
-            connection.setAutoCommit(false);
+            /* Update the keys that exist, then insert the ones no row was updated for */
+            List<String> insertKeys = new ArrayList<>();
 
-            if (insertMap.size() > 0) {
-                try (PreparedStatement statement = connection.prepareStatement("INSERT INTO phantombot_" + fName + " (value, section, variable) values(?, ?, ?);")) {
-                    for (String key : insertMap.keySet()) {
-                        statement.setString(1, insertMap.get(key));
-                        statement.setString(2, section);
-                        statement.setString(3, key);
-                        statement.addBatch();
-                    }
+            try (PreparedStatement statement = connection.prepareStatement("UPDATE phantombot_" + table + " SET value=? WHERE section=? and variable=?;")) {
+                for (Map.Entry<String, String> entry : valueMap.entrySet()) {
+                    statement.setString(1, entry.getValue());
+                    statement.setString(2, section);
+                    statement.setString(3, entry.getKey());
+                    statement.addBatch();
+                }
 
-                    statement.executeBatch();
+                int[] updated = statement.executeBatch();
+                int idx = 0;
+
+                for (String key : valueMap.keySet()) {
+                    if (updated[idx++] == 0) {
+                        insertKeys.add(key);
+                    }
                 }
             }
 
-            if (updateMap.size() > 0) {
-                try (PreparedStatement statement = connection.prepareStatement("UPDATE phantombot_" + fName + " SET value=? WHERE section=? and variable=?;")) {
-                    for (String key : updateMap.keySet()) {
-                        statement.setString(1, updateMap.get(key));
+            if (insertKeys.size() > 0) {
+                try (PreparedStatement statement = connection.prepareStatement("INSERT INTO phantombot_" + table + " (value, section, variable) values(?, ?, ?);")) {
+                    for (String key : insertKeys) {
+                        statement.setString(1, valueMap.get(key));
                         statement.setString(2, section);
                         statement.setString(3, key);
                         statement.addBatch();
@@ -882,50 +1055,66 @@ public class SqliteStore extends DataStore {
                 }
             }
 
-            connection.commit();
-            connection.setAutoCommit(true);
-        } catch (SQLException ex) {
-            com.gmt2001.Console.err.printStackTrace(ex);
-        }
+            return null;
+        };
     }
 
     @Override
     public void SetString(String fName, String section, String key, String value) {
-        try (Connection connection = GetConnection()) {
+        write(setString(fName, section, key, value), null);
+    }
 
-            fName = validateFname(fName);
+    @Override
+    public CompletableFuture<Void> SetStringAsync(String fName, String section, String key, String value) {
+        return writeAsync(setString(fName, section, key, value));
+    }
 
-            AddFile(connection, fName);
+    private SqliteWriter.Op<Void> setString(String fName, String section, String key, String value) {
+        String table = validateFname(fName);
 
-            if (HasKey(fName, section, key)) {
-                try (PreparedStatement statement = connection.prepareStatement("UPDATE phantombot_" + fName + " SET value=? WHERE section=? AND variable=?;")) {
-                    statement.setString(1, value);
-                    statement.setString(2, section);
-                    statement.setString(3, key);
-                    statement.execute();
-                }
-            } else {
-                try (PreparedStatement statement = connection.prepareStatement("INSERT INTO phantombot_" + fName + " values(?, ?, ?);")) {
-                    statement.setString(1, section);
-                    statement.setString(2, key);
-                    statement.setString(3, value);
-                    statement.execute();
+        return (connection) -> {
+            AddFile(connection, table);
+
+            try (PreparedStatement statement = connection.prepareStatement("UPDATE phantombot_" + table + " SET value=? WHERE section=? AND variable=?;")) {
+                statement.setString(1, value);
+                statement.setString(2, section);
+                statement.setString(3, key);
+
+                if (statement.executeUpdate() > 0) {
+                    return null;
                 }
             }
 
-        } catch (SQLException ex) {
-            com.gmt2001.Console.err.printStackTrace(ex);
-        }
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO phantombot_" + table + " values(?, ?, ?);")) {
+                statement.setString(1, section);
+                statement.setString(2, key);
+                statement.setString(3, value);
+                statement.execute();
+            }
+
+            return null;
+        };
     }
 
     @Override
     public void IncreaseBatchString(String fName, String section, String[] keys, String value) {
-        try (Connection connection = GetConnection()) {
-            fName = validateFname(fName);
+        write(increaseBatchString(fName, section, keys, value), null);
+    }
 
-            AddFile(connection, fName);
+    @Override
+    public CompletableFuture<Void> IncreaseBatchStringAsync(String fName, String section, String[] keys, String value) {
+        return writeAsync(increaseBatchString(fName, section, keys, value));
+    }
 
-            connection.setAutoCommit(false);
+    private SqliteWriter.Op<Void> increaseBatchString(String fName, String section, String[] keys, String value) {
+        String table = validateFname(fName);
+
+        return (connection) -> {
+            AddFile(connection, table);
+
+            if (keys.length == 0) {
+                return null;
+            }
 
             StringBuilder sb = new StringBuilder(keys.length * 2);
 
@@ -933,8 +1122,8 @@ public class SqliteStore extends DataStore {
                 sb.append("?,");
             }
 
-            try (PreparedStatement statement = connection.prepareStatement("UPDATE phantombot_" + fName + " SET value = CAST(value AS UNSIGNED) + ? WHERE section = ? AND variable IN (" + sb.deleteCharAt(sb.length() - 1).toString() + ");")) {
-                statement.setInt(1, Integer.parseUnsignedInt(value));
+            try (PreparedStatement statement = connection.prepareStatement("UPDATE phantombot_" + table + " SET value = CAST(value AS UNSIGNED) + ? WHERE section = ? AND variable IN (" + sb.deleteCharAt(sb.length() - 1).toString() + ");")) {
+                statement.setLong(1, Long.parseLong(value));
                 statement.setString(2, section);
                 int i = 3;
                 for (String k : keys) {
@@ -949,7 +1138,7 @@ public class SqliteStore extends DataStore {
                 sb.append("(?, ?, ?),");
             }
 
-            try (PreparedStatement statement = connection.prepareStatement("INSERT OR IGNORE INTO phantombot_" + fName + " (section, variable, value) VALUES " + sb.deleteCharAt(sb.length() - 1).toString() + ";")) {
+            try (PreparedStatement statement = connection.prepareStatement("INSERT OR IGNORE INTO phantombot_" + table + " (section, variable, value) VALUES " + sb.deleteCharAt(sb.length() - 1).toString() + ";")) {
                 int i = 1;
                 for (String k : keys) {
                     statement.setString(i++, section);
@@ -959,50 +1148,70 @@ public class SqliteStore extends DataStore {
                 statement.execute();
             }
 
-            connection.commit();
-            connection.setAutoCommit(true);
-        } catch (SQLException ex) {
-            com.gmt2001.Console.err.printStackTrace(ex);
-        }
+            return null;
+        };
+    }
+
+    /* A single atomic write instead of a read and a write, which could lose concurrent changes */
+    @Override
+    public void incr(String fName, String section, String key, long amount) {
+        IncreaseBatchString(fName, section, new String[]{key}, Long.toString(amount));
+    }
+
+    @Override
+    public void incr(String fName, String section, String key, int amount) {
+        incr(fName, section, key, (long) amount);
+    }
+
+    @Override
+    public void decr(String fName, String section, String key, long amount) {
+        incr(fName, section, key, -amount);
+    }
+
+    @Override
+    public void decr(String fName, String section, String key, int amount) {
+        incr(fName, section, key, -(long) amount);
     }
 
     @Override
     public void CreateIndexes() {
-        try (Connection connection = GetConnection()) {
-            String[] tableNames = GetFileList();
-            try (Statement statement = connection.createStatement()) {
-                for (String tableName : tableNames) {
-                    tableName = validateFname(tableName);
+        /* One write per table, so that a large table does not hold every other write back and a failure stays with its table */
+        for (String fName : GetFileList()) {
+            String tableName = validateFname(fName);
+
+            write((connection) -> {
+                try (Statement statement = connection.createStatement()) {
                     try {
                         statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS " + tableName + "_idx on phantombot_" + tableName + " (section, variable);");
                     } catch (SQLiteException ex) {
                         if (ex.getResultCode() == SQLiteErrorCode.SQLITE_CONSTRAINT) {
-                            statement.execute("DELETE FROM " + tableName + " WHERE rowid NOT IN (SELECT MIN(rowid) FROM " + tableName + " GROUP BY section, variable);");
+                            statement.execute("DELETE FROM phantombot_" + tableName + " WHERE rowid NOT IN (SELECT MIN(rowid) FROM phantombot_" + tableName + " GROUP BY section, variable);");
                             statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS " + tableName + "_idx on phantombot_" + tableName + " (section, variable);");
                         } else {
                             throw ex;
                         }
                     }
                 }
-            }
-        } catch (SQLException ex) {
-            com.gmt2001.Console.err.printStackTrace(ex);
+
+                return null;
+            }, null);
         }
     }
 
     @Override
     public void DropIndexes() {
-        try (Connection connection = GetConnection()) {
-            String[] tableNames = GetFileList();
+        String[] tableNames = GetFileList();
+
+        write((connection) -> {
             try (Statement statement = connection.createStatement()) {
                 for (String tableName : tableNames) {
                     tableName = validateFname(tableName);
                     statement.execute("DROP INDEX IF EXISTS " + tableName + "_idx");
                 }
             }
-        } catch (SQLException ex) {
-            com.gmt2001.Console.err.printStackTrace(ex);
-        }
+
+            return null;
+        }, null);
     }
 
     @Override
@@ -1011,18 +1220,131 @@ public class SqliteStore extends DataStore {
     }
 
     @Override
-    public void backupDB(String filename) {
-        try (Connection connection = GetConnection()) {
-            if (!new File("./dbbackup").exists()) {
-                new File("./dbbackup").mkdirs();
+    public File backupDB(String filename, boolean compress) {
+        String[] tables = GetFileList();
+        File file;
+
+        try {
+            file = DataStoreBackup.target(filename, ".db", false);
+        } catch (IOException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+            return null;
+        }
+
+        SQLiteConfig config = new SQLiteConfig();
+        config.setBusyTimeout(10000);
+
+        try (Connection connection = config.createConnection(url)) {
+            String journalMode;
+
+            try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery("PRAGMA journal_mode;")) {
+                journalMode = rs.next() ? rs.getString(1) : "";
             }
 
-            try (Statement statement = connection.createStatement()) {
-                statement.execute("backup to ./dbbackup/" + filename);
-                com.gmt2001.Console.debug.println("Backed up SQLite3 DB to ./dbbackup/" + filename);
+            if (journalMode.equalsIgnoreCase("wal")) {
+                /* A WAL reader copies one snapshot without holding the writers back */
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("VACUUM INTO '" + file.getAbsolutePath().replace("'", "''") + "';");
+                }
+            } else {
+                snapshotCopy(connection, file);
             }
         } catch (SQLException ex) {
             com.gmt2001.Console.err.printStackTrace(ex);
+            file.delete();
+            return null;
+        }
+
+        if (!verifyBackup(file, tables.length)) {
+            file.delete();
+            return null;
+        }
+
+        try {
+            return compress ? DataStoreBackup.gzip(file) : file;
+        } catch (IOException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+            return null;
+        }
+    }
+
+    /**
+     * Copies the database inside one read transaction, so that the backup is a consistent snapshot. Without WAL the
+     * writers wait for the copy, which only holds them back as long as one INSERT ... SELECT per table takes.
+     */
+    private void snapshotCopy(Connection connection, File file) throws SQLException {
+        List<String[]> tables = new ArrayList<>();
+        List<String> indexes = new ArrayList<>();
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ATTACH DATABASE '" + file.getAbsolutePath().replace("'", "''") + "' AS backup;");
+
+            try {
+                statement.execute("BEGIN;");
+
+                try {
+                    try (ResultSet rs = statement.executeQuery("SELECT type, name, sql FROM main.sqlite_master WHERE sql IS NOT NULL AND name NOT LIKE 'sqlite_%';")) {
+                        while (rs.next()) {
+                            if (rs.getString(1).equals("table")) {
+                                tables.add(new String[]{rs.getString(2), rs.getString(3)});
+                            } else if (rs.getString(1).equals("index")) {
+                                indexes.add(rs.getString(3));
+                            }
+                        }
+                    }
+
+                    for (String[] table : tables) {
+                        String name = "\"" + table[0].replace("\"", "\"\"") + "\"";
+                        statement.execute(BACKUP_SCHEMA.matcher(table[1]).replaceFirst("$1backup."));
+                        statement.execute("INSERT INTO backup." + name + " SELECT * FROM main." + name + ";");
+                    }
+
+                    statement.execute("COMMIT;");
+                } catch (SQLException ex) {
+                    try {
+                        statement.execute("ROLLBACK;");
+                    } catch (SQLException ex2) {
+                        /* SQLite already rolled back on some errors */
+                        ex.addSuppressed(ex2);
+                    }
+
+                    throw ex;
+                }
+
+                /* Only touches the backup, an index that can't be built fails the backup */
+                for (String index : indexes) {
+                    statement.execute(BACKUP_SCHEMA.matcher(index).replaceFirst("$1backup."));
+                }
+            } finally {
+                statement.execute("DETACH DATABASE backup;");
+            }
+        }
+    }
+
+    private boolean verifyBackup(File file, int tables) {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+
+        try (Connection connection = config.createConnection("jdbc:sqlite:" + file.getAbsolutePath().replaceAll("\\\\", "/"));
+                Statement statement = connection.createStatement()) {
+            try (ResultSet rs = statement.executeQuery("PRAGMA quick_check;")) {
+                if (!rs.next() || !rs.getString(1).equals("ok")) {
+                    com.gmt2001.Console.err.println("The SQLite backup " + file.getPath() + " failed its integrity check");
+                    return false;
+                }
+            }
+
+            try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name LIKE 'phantombot^_%' ESCAPE '^';")) {
+                if (!rs.next() || rs.getInt(1) < tables) {
+                    com.gmt2001.Console.err.println("The SQLite backup " + file.getPath() + " is missing tables");
+                    return false;
+                }
+            }
+
+            return true;
+        } catch (SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+            return false;
         }
     }
 
@@ -1030,10 +1352,10 @@ public class SqliteStore extends DataStore {
     public void dispose() {
         super.dispose();
 
-        try {
-            poolMgr.dispose();
-        } catch (SQLException ex) {
-            com.gmt2001.Console.err.printStackTrace(ex);
+        if (writer != null) {
+            writer.dispose();
         }
+
+        poolMgr.dispose();
     }
 }
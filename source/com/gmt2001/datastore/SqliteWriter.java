@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001.datastore;
+
+import com.gmt2001.Metrics;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs all the writes of a {@link SqliteStore} on one connection and thread.
+ *
+ * Whatever is queued when the writer wakes up is applied in one transaction and committed once, so concurrent writers
+ * share a commit instead of queuing up on the SQLite write lock. Each write runs in its own savepoint, so a failing one
+ * is rolled back alone and reported through its future.
+ *
+ * @author agent
+ */
+final class SqliteWriter implements Runnable {
+
+    /**
+     * A write run on the connection of the writer.
+     */
+    @FunctionalInterface
+    interface Op<T> {
+
+        T apply(Connection connection) throws SQLException;
+    }
+
+    private static final int MAX_BATCH = 1000;
+    private static final Metrics.Histogram BATCH_SIZE = Metrics.instance().histogram("phantombot_db_write_batch_size", "Writes committed together by the SQLite writer",
+            1, 2, 5, 10, 25, 50, 100, 250, 500, 1000);
+    private static final Metrics.Histogram COMMIT_SECONDS = Metrics.instance().histogram("phantombot_db_commit_seconds", "Time the SQLite writer took to apply and commit a batch",
+            0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5);
+    private final BlockingQueue<Write<?>> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong writes = new AtomicLong(0L);
+    private final AtomicLong errors = new AtomicLong(0L);
+    private final Connection connection;
+    private final long lingerNanos;
+    private final Thread thread;
+    /* Held while checking disposed and queuing, so that nothing is queued once the writer was told to stop */
+    private final Object submitLock = new Object();
+    private volatile boolean disposed = false;
+
+    /**
+     * @param connection The connection to write with. It is closed by {@link #dispose()}.
+     * @param lingerMs How long to wait for more writes before committing a batch, 0 to commit as soon as the queue is
+     * empty
+     * @throws SQLException
+     */
+    SqliteWriter(Connection connection, long lingerMs) throws SQLException {
+        this.connection = connection;
+        this.connection.setAutoCommit(false);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.thread = new Thread(this, "com.gmt2001.datastore.SqliteWriter");
+        this.thread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
+        this.thread.start();
+
+        Metrics.instance().gauge("phantombot_db_write_queue", "Writes waiting for the SQLite writer", queue::size);
+        Metrics.instance().counter("phantombot_db_writes_total", "Writes committed by the SQLite writer", writes::get);
+        Metrics.instance().counter("phantombot_db_write_errors_total", "Writes the SQLite writer rolled back", errors::get);
+    }
+
+    /**
+     * Queues a write.
+     *
+     * @param op
+     * @return A future completed once the write is committed, or exceptionally if it failed
+     */
+    <T> CompletableFuture<T> submit(Op<T> op) {
+        Write<T> write = new Write<>(op);
+
+        // A write made from inside another one joins the transaction of the batch.
+        if (Thread.currentThread() == thread) {
+            try {
+                write.future.complete(op.apply(connection));
+            } catch (SQLException | RuntimeException ex) {
+                write.future.completeExceptionally(ex);
+            }
+        } else {
+            synchronized (submitLock) {
+                if (!disposed) {
+                    queue.add(write);
+                    return write.future;
+                }
+            }
+
+            write.future.completeExceptionally(new SQLException("The SQLite writer is closed"));
+        }
+
+        return write.future;
+    }
+
+    /**
+     * Commits the queued writes and closes the connection.
+     */
+    void dispose() {
+        synchronized (submitLock) {
+            disposed = true;
+        }
+
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException ex) {
+            com.gmt2001.Console.debug.printStackTrace(ex);
+        }
+
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+        }
+    }
+
+    @Override
+    public void run() {
+        List<Write<?>> batch = new ArrayList<>(MAX_BATCH);
+
+        while (!disposed || !queue.isEmpty()) {
+            try {
+                Write<?> first = queue.poll(250, TimeUnit.MILLISECONDS);
+
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+
+                if (lingerNanos > 0L) {
+                    long deadline = System.nanoTime() + lingerNanos;
+                    Write<?> next;
+
+                    while (batch.size() < MAX_BATCH && (next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) != null) {
+                        batch.add(next);
+                        queue.drainTo(batch, MAX_BATCH - batch.size());
+                    }
+                }
+
+                commit(batch);
+            } catch (InterruptedException ex) {
+                com.gmt2001.Console.debug.printStackTrace(ex);
+            } finally {
+                batch.clear();
+            }
+        }
+
+        /* Nothing can be queued once disposed is set, this only fails writes if the loop was left early */
+        Write<?> left;
+        while ((left = queue.poll()) != null) {
+            left.future.completeExceptionally(new SQLException("The SQLite writer is closed"));
+        }
+    }
+
+    private void commit(List<Write<?>> batch) {
+        long start = System.nanoTime();
+
+        try (Statement control = connection.createStatement()) {
+            for (Write<?> write : batch) {
+                control.execute("SAVEPOINT w;");
+
+                try {
+                    write.apply(connection);
+                    control.execute("RELEASE w;");
+                } catch (SQLException | RuntimeException ex) {
+                    control.execute("ROLLBACK TO w;");
+                    control.execute("RELEASE w;");
+                    write.error = ex;
+                }
+            }
+
+            connection.commit();
+        } catch (SQLException ex) {
+            try {
+                connection.rollback();
+            } catch (SQLException ex2) {
+                com.gmt2001.Console.err.printStackTrace(ex2);
+            }
+
+            for (Write<?> write : batch) {
+                write.error = ex;
+            }
+        }
+
+        COMMIT_SECONDS.observe((System.nanoTime() - start) / 1000000000.0);
+        BATCH_SIZE.observe(batch.size());
+
+        for (Write<?> write : batch) {
+            if (write.error == null) {
+                writes.incrementAndGet();
+            } else {
+                errors.incrementAndGet();
+            }
+
+            write.complete();
+        }
+    }
+
+    /**
+     * A queued write and the future of its result.
+     */
+    private static final class Write<T> {
+
+        private final Op<T> op;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private Exception error;
+
+        private Write(Op<T> op) {
+            this.op = op;
+        }
+
+        private void apply(Connection connection) throws SQLException {
+            result = op.apply(connection);
+        }
+
+        private void complete() {
+            if (error == null) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+}
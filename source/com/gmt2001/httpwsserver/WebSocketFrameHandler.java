@@ -16,6 +16,7 @@
  */
 package com.gmt2001.httpwsserver;
 
+import com.gmt2001.Metrics;
 import com.gmt2001.httpwsserver.auth.WsAuthenticationHandler;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
@@ -30,6 +31,7 @@ import io.netty.handler.codec.http.websocketx.WebSocketCloseStatus;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler.HandshakeComplete;
 import io.netty.util.AttributeKey;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
@@ -56,6 +58,23 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
      * Represents a {@link Queue} containing all current WS Sessions
      */
     private static final Queue<Channel> WS_SESSIONS = new ConcurrentLinkedQueue<>();
+    /**
+     * Counts the frames received on all sessions
+     */
+    private static final Metrics.Counter WS_FRAMES = Metrics.instance().counter("phantombot_websocket_frames_total", "WebSocket frames received");
+
+    static {
+        Metrics.instance().gauges("phantombot_websocket_sessions", "Open WebSocket sessions of each handler path", "path", () -> {
+            Map<String, Integer> sessions = new HashMap<>();
+            wsFrameHandlers.keySet().forEach((k) -> sessions.put(k, 0));
+            WS_SESSIONS.forEach((c) -> {
+                if (c.attr(ATTR_URI).get() != null) {
+                    sessions.merge(c.attr(ATTR_URI).get(), 1, Integer::sum);
+                }
+            });
+            return sessions;
+        });
+    }
 
     /**
      * Default Constructor
@@ -74,6 +93,7 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) throws Exception {
         WsFrameHandler h = wsFrameHandlers.get(ctx.channel().attr(ATTR_URI).get());
+        WS_FRAMES.inc();
 
         if (h.getAuthHandler().checkAuthorization(ctx, frame)) {
             h.handleFrame(ctx, frame);
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001.httpwsserver.auth;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import static io.netty.handler.codec.http.HttpHeaderNames.AUTHORIZATION;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONNECTION;
+import static io.netty.handler.codec.http.HttpHeaderValues.CLOSE;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import io.netty.util.CharsetUtil;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Provides a {@link HttpAuthenticationHandler} that implements bearer token authentication, as sent by monitoring tools
+ *
+ * The token must be in the header {@code Authorization: Bearer token} to succeed. It is not accepted as a query parameter, since URLs
+ * end up in access logs, proxy logs and browser history
+ *
+ * @author agent
+ */
+public class HttpBearerTokenAuthenticationHandler implements HttpAuthenticationHandler {
+
+    /**
+     * The authorization token that grants access
+     */
+    private final byte[] token;
+
+    /**
+     * Constructor
+     *
+     * @param token The authorization token that grants access
+     */
+    public HttpBearerTokenAuthenticationHandler(String token) {
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks if the given {@link FullHttpRequest} has a valid token
+     *
+     * @param ctx The {@link ChannelHandlerContext} of the session
+     * @param req The {@link FullHttpRequest} to check
+     * @return {@code true} if authenticated, {@code false} otherwise. When returning {@code false}, this method will also reply with
+     * {@code 401 Unauthorized} and then close the channel
+     */
+    @Override
+    public boolean checkAuthorization(ChannelHandlerContext ctx, FullHttpRequest req) {
+        String header = req.headers().get(AUTHORIZATION);
+        String auth = "";
+
+        if (header != null && header.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            auth = header.substring(7).trim();
+        }
+
+        if (!auth.isEmpty() && MessageDigest.isEqual(token, auth.getBytes(StandardCharsets.UTF_8))) {
+            return true;
+        }
+
+        DefaultFullHttpResponse res = new DefaultFullHttpResponse(HTTP_1_1, HttpResponseStatus.UNAUTHORIZED, Unpooled.buffer());
+        ByteBuf buf = Unpooled.copiedBuffer(res.status().toString(), CharsetUtil.UTF_8);
+        res.content().writeBytes(buf);
+        buf.release();
+        HttpUtil.setContentLength(res, res.content().readableBytes());
+
+        com.gmt2001.Console.debug.println("401");
+
+        res.headers().set(CONNECTION, CLOSE);
+        ctx.writeAndFlush(res).addListener(ChannelFutureListener.CLOSE);
+
+        return false;
+    }
+
+    @Override
+    public void invalidateAuthorization(ChannelHandlerContext ctx, FullHttpRequest req) {
+        throw new UnsupportedOperationException("Not supported by this authentication handler.");
+    }
+}
@@ -23,6 +23,7 @@ import com.gmt2001.UncaughtExceptionHandler;
 import net.engio.mbassy.listener.Handler;
 
 import tv.phantombot.PhantomBot;
+import tv.phantombot.cache.CacheScheduler;
 import tv.phantombot.cache.TwitchCache;
 import tv.phantombot.event.Listener;
 import tv.phantombot.event.command.CommandEvent;
@@ -48,16 +49,15 @@ import org.json.JSONException;
  *
  * @author illusionaryone
  */
-public class NoticeTimer implements Runnable, Listener {
+public class NoticeTimer implements Listener {
 
     private static final Map<String, NoticeTimer> instances = new ConcurrentHashMap<>();
-    private Thread noticeThread;
+    private final CacheScheduler.Task noticeTask;
     private String channel;
     private TwitchSession session;
     private ScriptEventManager scriptEventManager = ScriptEventManager.instance();
     private String botname;
 
-    private boolean killed = false;
     private boolean reIndex = false;
     private long lastNoticeTime = -1L;
     private int lastMinuteRan = -1;
@@ -91,76 +91,35 @@ public class NoticeTimer implements Runnable, Listener {
      * @param    String        Channel - The name of the channel that this object belongs to.
      * @param    TwitchSession       TwitchSession - The WSIRC TwitchSession object to send data to.
      */
-    @SuppressWarnings("CallToThreadStartDuringObjectConstruction")
     private NoticeTimer(String channel, TwitchSession session) {
         this.channel = channel;
         this.session = session;
         this.botname = PhantomBot.instance().getBotName();
 
-        this.noticeThread = new Thread(this, "com.illusionaryone.NoticeTimer");
-
-        Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-        this.noticeThread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-
-        noticeThread.start();
-    }
-
-    /*
-     * Main thread processing.  Reads data from the database to determine which notices to fire and when
-     * to do so.
-     */
-    @Override
-    @SuppressWarnings("SleepWhileInLoop")
-    public void run() {
         /*
          * Wait 30 seconds before starting to process notices.  Sometimes the bot may not fully be logged into
-         * chat and the session.say() command doesn't send anything.
-         */
-        try {
-            Thread.sleep(30000);
-        } catch (InterruptedException ex) {
-            com.gmt2001.Console.debug.println("InterruptedException: " + ex.getMessage());
-        }
-
-        /*
-         * Now, sync to the top of the minute.  Allow for a little bit of drift in case the bot is busy or we
-         * are already near the top of the minute.
+         * chat and the session.say() command doesn't send anything.  After that, sync to the top of the minute
+         * and check every 30 seconds for the next minute to arrive.
          */
-        boolean sync = false;
-        while (!sync) {
-            int currentSecond = Calendar.getInstance().get(Calendar.SECOND);
-            if (currentSecond < 6) {
-                sync = true;
-            }
-
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException ex) {
-                com.gmt2001.Console.debug.println("InterruptedException: " + ex.getMessage());
-            }
-        }
-
-        /* Main loop for processing the notices. */
-        while (!killed) {
-            int currentMinute = Calendar.getInstance().get(Calendar.MINUTE);
+        long initialDelay = 30000L + (60000L - (System.currentTimeMillis() + 30000L) % 60000L);
+        this.noticeTask = CacheScheduler.instance().schedule("NoticeTimer:" + channel, initialDelay, 30000L, 30000L, this::checkMinute);
+    }
 
-            if (this.lastMinuteRan != currentMinute) {
-                this.lastMinuteRan = currentMinute;
-                try {
-                    processTimers(currentMinute);
-                } catch (JSONException ex) {
-                    com.gmt2001.Console.err.logStackTrace(ex);
-                }
-            }
+    /*
+     * Scheduled check.  Reads data from the database to determine which notices to fire and when
+     * to do so, once per minute.
+     */
+    private void checkMinute() {
+        int currentMinute = Calendar.getInstance().get(Calendar.MINUTE);
 
-            /* Wait 30 seconds between checking for the next minute to arrive. */
+        if (this.lastMinuteRan != currentMinute) {
+            this.lastMinuteRan = currentMinute;
             try {
-                Thread.sleep(30000);
-            } catch (InterruptedException ex) {
-                com.gmt2001.Console.debug.println("InterruptedException: " + ex.getMessage());
+                processTimers(currentMinute);
+            } catch (Exception ex) {
+                com.gmt2001.Console.err.logStackTrace(ex);
             }
         }
-
     }
 
     /*
@@ -394,48 +353,52 @@ public class NoticeTimer implements Runnable, Listener {
                 continue;
             }
 
-            if (!noticeData.getBoolean("enabled")) {
-                continue;
-            }
+            try {
+                if (!noticeData.getBoolean("enabled")) {
+                    continue;
+                }
 
-            int interval = noticeData.getInt("interval");
-            if (interval == 0 || currentMinute % interval != 0) {
-                continue;
-            }
+                int interval = noticeData.getInt("interval");
+                if (interval == 0 || currentMinute % interval != 0) {
+                    continue;
+                }
 
-            int weight = noticeData.getInt("weight");
-            if (weight == 0) {
-                continue;
-            }
+                int weight = noticeData.getInt("weight");
+                if (weight == 0) {
+                    continue;
+                }
 
-            /* Pull chatlines. 0 means ignore lines in chat. */
-            int chatlines = noticeData.getInt("chatlines");
-            if (chatlines > totalChatLines && chatlines != 0) {
-                continue;
-            }
+                /* Pull chatlines. 0 means ignore lines in chat. */
+                int chatlines = noticeData.getInt("chatlines");
+                if (chatlines > totalChatLines && chatlines != 0) {
+                    continue;
+                }
 
-            /* Pull the message (or command). */
-            String message = noticeData.getString("message");
-            if (message == null) {
-                continue;
-            }
-            if (message.length() == 0) {
-                continue;
-            }
+                /* Pull the message (or command). */
+                String message = noticeData.getString("message");
+                if (message == null) {
+                    continue;
+                }
+                if (message.length() == 0) {
+                    continue;
+                }
 
-            /* Pull gametitle. If it is empty, always use it, otherwise, compare to current game. */
-            String gametitle = noticeData.getString("gametitle");
-            if (gametitle != null) {
-                if (gametitle.length() > 0) {
-                    if (gametitle.toLowerCase().equals(currentGameTitle.toLowerCase())) {
-                        eligibleGameNotices.add(noticeData);
+                /* Pull gametitle. If it is empty, always use it, otherwise, compare to current game. */
+                String gametitle = noticeData.getString("gametitle");
+                if (gametitle != null) {
+                    if (gametitle.length() > 0) {
+                        if (gametitle.toLowerCase().equals(currentGameTitle.toLowerCase())) {
+                            eligibleGameNotices.add(noticeData);
+                        }
+                        continue;
                     }
-                    continue;
                 }
-            }
 
-            /* Put this in the running. */
-            eligibleNotices.add(noticeData);
+                /* Put this in the running. */
+                eligibleNotices.add(noticeData);
+            } catch (JSONException ex) {
+                com.gmt2001.Console.err.println("Notice JSON Data Corrupt: Key [" + noticeKey + "]");
+            }
         }
 
         /* Nothing found. */
@@ -509,9 +472,9 @@ public class NoticeTimer implements Runnable, Listener {
     }
 
     /*
-     * Requests the main thread to stop processing and exit.
+     * Stops processing notices.
      */
     public void kill() {
-        killed = true;
+        noticeTask.cancel();
     }
 }
@@ -18,17 +18,9 @@
  */
 package com.illusionaryone;
 
-import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.IOException;
-import java.io.Reader;
-import java.net.MalformedURLException;
-import java.net.SocketTimeoutException;
-import java.net.URL;
-import java.nio.charset.Charset;
-import javax.net.ssl.HttpsURLConnection;
+import com.gmt2001.HttpRequest;
+import com.gmt2001.HttpResponse;
+import java.util.HashMap;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -42,7 +34,6 @@ public class TwitchAlertsAPIv1 {
 
     private static TwitchAlertsAPIv1 instance;
     private static final String sAPIURL = "https://www.streamlabs.com/api/v1.0";
-    private static final int iHTTPTimeout = 2 * 1000;
     private String sAccessToken = "";
     private int iDonationPullLimit = 5;
     private String sCurrencyCode = "";
@@ -59,18 +50,6 @@ public class TwitchAlertsAPIv1 {
         Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
     }
 
-    /*
-     * Reads data from a stream.
-     */
-    private static String readAll(Reader rd) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        int cp;
-        while ((cp = rd.read()) != -1) {
-            sb.append((char) cp);
-        }
-        return sb.toString();
-    }
-
     /*
      * Populates additional information into a JSON object to be digested
      * as needed.
@@ -87,80 +66,36 @@ public class TwitchAlertsAPIv1 {
         jsonObject.put("_content", jsonContent);
     }
 
-    @SuppressWarnings("UseSpecificCatch")
     private static JSONObject readJsonFromUrl(String urlAddress) throws JSONException {
         return readJsonFromUrl(urlAddress, "");
     }
 
-    @SuppressWarnings("UseSpecificCatch")
     private static JSONObject readJsonFromUrl(String urlAddress, String postString) throws JSONException {
+        boolean doPost = (postString.length() > 0);
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", doPost ? "application/x-www-form-urlencoded" : "application/json");
+        headers.put("User-Agent", "Mozilla/5.0 (Windows NT 6.1; Win64; x64) AppleWebKit/537.36 " +
+                "(KHTML, like Gecko) Chrome/44.0.2403.52 Safari/537.36 PhantomBotJ/2015");
+        HttpResponse response = HttpRequest.getDataAsync(doPost ? HttpRequest.RequestType.POST : HttpRequest.RequestType.GET, urlAddress, postString, headers).join();
         JSONObject jsonResult = new JSONObject("{}");
-        InputStream inputStream = null;
-        URL urlRaw;
-        HttpsURLConnection urlConn;
         String jsonText = "";
-        boolean doPost = (postString.length() > 0);
-
-        try {
-            urlRaw = new URL(urlAddress);
-            urlConn = (HttpsURLConnection) urlRaw.openConnection();
-            urlConn.setDoInput(true);
-            urlConn.setRequestMethod(doPost ? "POST" : "GET");
-            urlConn.addRequestProperty("Content-Type", doPost ? "application/x-www-form-urlencoded" : "application/json");
-            urlConn.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 6.1; Win64; x64) AppleWebKit/537.36 " +
-                                       "(KHTML, like Gecko) Chrome/44.0.2403.52 Safari/537.36 PhantomBotJ/2015");
-            if (doPost) {
-                urlConn.setDoOutput(true);
-            }
-
-            urlConn.connect();
 
-            if (doPost) {
-                try (BufferedOutputStream stream = new BufferedOutputStream(urlConn.getOutputStream())) {
-                    stream.write(postString.getBytes());
-                    stream.flush();
-                }
-            }
-
-            if (urlConn.getResponseCode() == 200) {
-                inputStream = urlConn.getInputStream();
-            } else {
-                inputStream = urlConn.getErrorStream();
-            }
+        if (response.exceptionClass != null) {
+            fillJSONObject(jsonResult, false, response.type.name(), urlAddress, 0, response.exceptionClass, response.exception, "");
+            com.gmt2001.Console.debug.println("TwitchAlertsAPIv1::readJsonFromUrl::Exception: " + response.exception);
+            return jsonResult;
+        }
 
-            BufferedReader rd = new BufferedReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
-            jsonText = readAll(rd);
+        try {
+            jsonText = response.content;
             jsonResult = new JSONObject(jsonText);
-            fillJSONObject(jsonResult, true, doPost ? "POST" : "GET", urlAddress, urlConn.getResponseCode(), "", "", jsonText);
+            fillJSONObject(jsonResult, true, response.type.name(), urlAddress, response.httpCode, "", "", jsonText);
         } catch (JSONException ex) {
-            fillJSONObject(jsonResult, false, doPost ? "POST" : "GET", urlAddress, 0, "JSONException", ex.getMessage(), jsonText);
-            com.gmt2001.Console.debug.println("TwitchAlertsAPIv1::readJsonFromUrl::Exception: " + ex.getMessage());
-        } catch (NullPointerException ex) {
-            fillJSONObject(jsonResult, false, doPost ? "POST" : "GET", urlAddress, 0, "NullPointerException", ex.getMessage(), "");
-            com.gmt2001.Console.debug.println("TwitchAlertsAPIv1::readJsonFromUrl::Exception: " + ex.getMessage());
-        } catch (MalformedURLException ex) {
-            fillJSONObject(jsonResult, false, doPost ? "POST" : "GET", urlAddress, 0, "MalformedURLException", ex.getMessage(), "");
-            com.gmt2001.Console.debug.println("TwitchAlertsAPIv1::readJsonFromUrl::Exception: " + ex.getMessage());
-        } catch (SocketTimeoutException ex) {
-            fillJSONObject(jsonResult, false, doPost ? "POST" : "GET", urlAddress, 0, "SocketTimeoutException", ex.getMessage(), "");
-            com.gmt2001.Console.debug.println("TwitchAlertsAPIv1::readJsonFromUrl::Exception: " + ex.getMessage());
-        } catch (IOException ex) {
-            fillJSONObject(jsonResult, false, doPost ? "POST" : "GET", urlAddress, 0, "IOException", ex.getMessage(), "");
-            com.gmt2001.Console.debug.println("TwitchAlertsAPIv1::readJsonFromUrl::Exception: " + ex.getMessage());
-        } catch (Exception ex) {
-            fillJSONObject(jsonResult, false, doPost ? "POST" : "GET", urlAddress, 0, "Exception", ex.getMessage(), "");
+            fillJSONObject(jsonResult, false, response.type.name(), urlAddress, 0, "JSONException", ex.getMessage(), jsonText);
             com.gmt2001.Console.debug.println("TwitchAlertsAPIv1::readJsonFromUrl::Exception: " + ex.getMessage());
-        } finally {
-            if (inputStream != null)
-                try {
-                    inputStream.close();
-                } catch (IOException ex) {
-                    fillJSONObject(jsonResult, false, doPost ? "POST" : "GET", urlAddress, 0, "IOException", ex.getMessage(), "");
-                    com.gmt2001.Console.debug.println("TwitchAlertsAPIv1::readJsonFromUrl::Exception: " + ex.getMessage());
-                }
         }
 
-        return(jsonResult);
+        return jsonResult;
     }
 
     /*
@@ -22,12 +22,30 @@ import com.gmt2001.HttpRequest;
 import com.gmt2001.HttpResponse;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.json.JSONObject;
 import org.json.JSONException;
 
 public class CustomAPI {
     private static CustomAPI instance;
+    // Maximum number of responses kept in the cache.
+    private static final int CACHE_SIZE = 500;
+    // Maximum number of seconds a failed request is cached for.
+    private static final int NEGATIVE_TTL = 5;
+    private final LinkedHashMap<String, CacheEntry> cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private final ConcurrentHashMap<String, CompletableFuture<HttpResponse>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong cacheHits = new AtomicLong(0);
+    private final AtomicLong cacheMisses = new AtomicLong(0);
 
     /*
      * Method to the this instance.
@@ -79,6 +97,102 @@ public class CustomAPI {
         return HttpRequest.getData(HttpRequest.RequestType.GET, url, "", new HashMap<String, String>());
     }
 
+    /*
+     * Method to get data from an API without blocking the calling thread.
+     *
+     * @param  {String} url
+     * @return {CompletableFuture}
+     */
+    public CompletableFuture<HttpResponse> getAsync(String url) {
+        return HttpRequest.getDataAsync(HttpRequest.RequestType.GET, url, "", new HashMap<String, String>());
+    }
+
+    /*
+     * Method to get data from an API, reusing a recent response for the same URL.
+     * Identical requests made while one is already running share its response.
+     * Failed requests are cached for at most 5 seconds.
+     *
+     * @param  {String} url
+     * @param  {Number} ttl Number of seconds to keep the response, 0 to only share running requests.
+     * @return {HttpResponse}
+     */
+    public HttpResponse getCached(String url, int ttl) {
+        return getCachedAsync(url, ttl).join();
+    }
+
+    /*
+     * Method to get data from an API through the cache without blocking the calling thread.
+     *
+     * @param  {String} url
+     * @param  {Number} ttl Number of seconds to keep the response, 0 to only share running requests.
+     * @return {CompletableFuture}
+     */
+    public CompletableFuture<HttpResponse> getCachedAsync(String url, int ttl) {
+        synchronized (cache) {
+            CacheEntry entry = cache.get(url);
+
+            if (entry != null) {
+                if (entry.expires > System.currentTimeMillis()) {
+                    cacheHits.incrementAndGet();
+                    return CompletableFuture.completedFuture(entry.response);
+                }
+
+                cache.remove(url);
+            }
+        }
+
+        cacheMisses.incrementAndGet();
+
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        CompletableFuture<HttpResponse> running = inFlight.putIfAbsent(url, future);
+
+        if (running != null) {
+            return running;
+        }
+
+        getAsync(url).thenAccept((response) -> {
+            int seconds = response.success ? ttl : Math.min(ttl, NEGATIVE_TTL);
+
+            if (seconds > 0) {
+                synchronized (cache) {
+                    cache.put(url, new CacheEntry(response, System.currentTimeMillis() + (seconds * 1000L)));
+                }
+            }
+
+            inFlight.remove(url);
+            future.complete(response);
+        });
+
+        return future;
+    }
+
+    /*
+     * Method to get the number of requests answered from the cache.
+     *
+     * @return {Number}
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /*
+     * Method to get the number of requests that had to be sent.
+     *
+     * @return {Number}
+     */
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /*
+     * Method to remove all cached responses.
+     */
+    public void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
     /*
      * Method to post to an API.
      *
@@ -111,4 +225,17 @@ public class CustomAPI {
     public HttpResponse del(String url, String content) {
         return HttpRequest.getData(HttpRequest.RequestType.DELETE, url, content, new HashMap<String, String>());
     }
+
+    /*
+     * A cached response and the time it expires at.
+     */
+    private static class CacheEntry {
+        private final HttpResponse response;
+        private final long expires;
+
+        private CacheEntry(HttpResponse response, long expires) {
+            this.response = response;
+            this.expires = expires;
+        }
+    }
 }
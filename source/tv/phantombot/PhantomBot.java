@@ -16,11 +16,14 @@
  */
 package tv.phantombot;
 
+import com.gmt2001.AsyncHttpClient;
 import com.gmt2001.GamesListUpdater;
 import com.gmt2001.TwitchAPIv5;
 import com.gmt2001.TwitchAuthorizationCodeFlow;
 import com.gmt2001.YouTubeAPIv3;
+import com.gmt2001.YouTubeCache;
 import com.gmt2001.datastore.DataStore;
+import com.gmt2001.datastore.DataStoreBackup;
 import com.gmt2001.datastore.DataStoreConverter;
 import com.gmt2001.datastore.H2Store;
 import com.gmt2001.datastore.IniStore;
@@ -48,7 +51,6 @@ import java.security.SecureRandom;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.TimeZone;
 import java.util.concurrent.Executors;
@@ -56,10 +58,10 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import net.engio.mbassy.listener.Handler;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.apache.commons.lang3.SystemUtils;
 import org.json.JSONException;
 import reactor.util.Loggers;
+import tv.phantombot.cache.CacheScheduler;
 import tv.phantombot.cache.DonationsCache;
 import tv.phantombot.cache.EmotesCache;
 import tv.phantombot.cache.FollowersCache;
@@ -72,6 +74,7 @@ import tv.phantombot.cache.ViewerListCache;
 import tv.phantombot.console.ConsoleEventHandler;
 import tv.phantombot.console.ConsoleInputListener;
 import tv.phantombot.discord.DiscordAPI;
+import tv.phantombot.discord.util.DiscordRoleSync;
 import tv.phantombot.event.EventBus;
 import tv.phantombot.event.Listener;
 import tv.phantombot.event.command.CommandEvent;
@@ -80,21 +83,27 @@ import tv.phantombot.event.irc.complete.IrcJoinCompleteEvent;
 import tv.phantombot.event.irc.message.IrcChannelMessageEvent;
 import tv.phantombot.event.irc.message.IrcPrivateMessageEvent;
 import tv.phantombot.httpserver.HTTPAuthenticatedHandler;
+import tv.phantombot.httpserver.HTTPMetricsHandler;
 import tv.phantombot.httpserver.HTTPNoAuthHandler;
 import tv.phantombot.httpserver.HTTPOAuthHandler;
 import tv.phantombot.httpserver.HTTPPanelAndYTHandler;
 import tv.phantombot.panel.WsAlertsPollsHandler;
 import tv.phantombot.panel.WsPanelHandler;
 import tv.phantombot.panel.WsPanelRemoteLoginHandler;
+import tv.phantombot.script.HookMetrics;
 import tv.phantombot.script.Script;
 import tv.phantombot.script.ScriptEventManager;
 import tv.phantombot.script.ScriptFileWatcher;
 import tv.phantombot.script.ScriptManager;
 import tv.phantombot.scripts.core.Moderation;
+import tv.phantombot.scripts.handler.Raffle;
+import tv.phantombot.scripts.handler.WordCounter;
+import tv.phantombot.twitch.api.Helix;
 import tv.phantombot.twitch.api.TwitchValidate;
 import tv.phantombot.twitch.irc.TwitchSession;
 import tv.phantombot.twitch.irc.host.TwitchWSHostIRC;
 import tv.phantombot.twitch.pubsub.TwitchPubSub;
+import tv.phantombot.ytplayer.PlaylistStore;
 import tv.phantombot.ytplayer.WsYTHandler;
 
 public final class PhantomBot implements Listener {
@@ -108,6 +117,7 @@ public final class PhantomBot implements Listener {
     private String clientId;
     private static Double messageLimit;
     private static Double whisperLimit;
+    private static Boolean mergeMessages;
     private TwitchAuthorizationCodeFlow authflow;
 
     /* Web Information */
@@ -121,6 +131,8 @@ public final class PhantomBot implements Listener {
     private Boolean webEnabled;
     private Boolean musicEnabled;
     private Boolean useHttps;
+    private Boolean metricsEnabled;
+    private String metricsToken;
     private int basePort;
     private String bindIP;
 
@@ -205,6 +217,9 @@ public final class PhantomBot implements Listener {
     private Boolean backupDBAuto = false;
     private int backupDBHourFrequency = 0;
     private int backupDBKeepDays = 0;
+    private int backupDBKeepCount = 0;
+    private long backupDBKeepMB = 0L;
+    private boolean backupDBCompress = false;
 
     // Error codes
     // [...] by convention, a nonzero status code indicates abnormal termination. (see System.exit() JavaDoc)
@@ -350,6 +365,9 @@ public final class PhantomBot implements Listener {
         /* System interactive */
         interactive = (System.getProperty("interactive") != null);
 
+        /* Set the outbound HTTP client limits before anything makes a request */
+        AsyncHttpClient.configure(pbProperties);
+
         this.authflow = new TwitchAuthorizationCodeFlow(pbProperties.getProperty("clientid"), pbProperties.getProperty("clientsecret"));
         if (this.authflow.refresh(pbProperties)) {
             pbProperties = ConfigurationManager.getConfiguration();
@@ -381,6 +399,8 @@ public final class PhantomBot implements Listener {
         this.webEnabled = this.pbProperties.getProperty("webenable", "true").equalsIgnoreCase("true");
         this.musicEnabled = this.pbProperties.getProperty("musicenable", "true").equalsIgnoreCase("true");
         this.useHttps = this.pbProperties.getProperty("usehttps", "true").equalsIgnoreCase("true");
+        this.metricsEnabled = this.pbProperties.getProperty("usemetrics", "false").equalsIgnoreCase("true");
+        this.metricsToken = this.pbProperties.getProperty("metricstoken", "");
 
         /* Set the datastore variables */
         this.dataStoreType = this.pbProperties.getProperty("datastore", "");
@@ -449,6 +469,13 @@ public final class PhantomBot implements Listener {
             PhantomBot.messageLimit = 19.0;
         }
 
+        /* Merge consecutive messages waiting in the queue into one, up to the 500 characters Twitch allows */
+        PhantomBot.mergeMessages = this.pbProperties.getProperty("mergemessages", "false").equals("true");
+
+        /* Events are always timed, hookmetrics also times each script. Hooks slower than slowhookms are logged to ./logs/slowhooks */
+        HookMetrics.instance().setEnabled(this.pbProperties.getProperty("hookmetrics", "false").equals("true"));
+        HookMetrics.instance().setSlowThreshold(Long.parseLong(this.pbProperties.getProperty("slowhookms", "250")));
+
         // *Not currently being used.*
         // If this is false the bot won't limit the bot to 1 message every 1.5 second. It will still limit to 19/30 though.
         PhantomBot.useMessageQueue = this.pbProperties.getProperty("usemessagequeue", "true").equals("true");
@@ -463,6 +490,9 @@ public final class PhantomBot implements Listener {
         this.backupDBAuto = this.pbProperties.getProperty("backupdbauto", this.pbProperties.getProperty("backupsqliteauto", "true")).equalsIgnoreCase("true");
         this.backupDBHourFrequency = Integer.parseInt(this.pbProperties.getProperty("backupdbhourfrequency", this.pbProperties.getProperty("backupsqlitehourfrequency", "24")));
         this.backupDBKeepDays = Integer.parseInt(this.pbProperties.getProperty("backupdbkeepdays", this.pbProperties.getProperty("backupsqlitekeepdays", "5")));
+        this.backupDBKeepCount = Integer.parseInt(this.pbProperties.getProperty("backupdbkeepcount", "0"));
+        this.backupDBKeepMB = Long.parseLong(this.pbProperties.getProperty("backupdbkeepmb", "0"));
+        this.backupDBCompress = this.pbProperties.getProperty("backupdbcompress", "false").equalsIgnoreCase("true");
 
         // Set the newSetup flag
         this.newSetup = this.pbProperties.getProperty("newSetup").equals("true");
@@ -480,7 +510,7 @@ public final class PhantomBot implements Listener {
                 this.mySqlConn = "jdbc:mysql://" + this.mySqlHost + ":" + this.mySqlPort + "/" + this.mySqlName + "?useSSL=false&user=" + this.mySqlUser + "&password=" + this.mySqlPass;
             }
 
-            dataStore = MySQLStore.instance(this.mySqlConn);
+            dataStore = MySQLStore.instance(this.mySqlConn, this.pbProperties.getProperty("mysqlprefix", "phantombot_"));
 
             /* Check to see if we can create a connection */
             if (!dataStore.CanConnect(this.mySqlConn, this.mySqlUser, this.mySqlPass)) {
@@ -522,6 +552,7 @@ public final class PhantomBot implements Listener {
         if (!this.apiOAuth.isEmpty()) {
             TwitchAPIv5.instance().SetOAuth(this.apiOAuth);
             TwitchValidate.instance().validateAPI(this.apiOAuth, "API (apioauth)");
+            Helix.setInstance(new Helix(this.apiOAuth));
         }
 
         /* Set the client Id in the Twitch api. */
@@ -613,6 +644,9 @@ public final class PhantomBot implements Listener {
         this.oauth = this.pbProperties.getProperty("oauth");
         TwitchAPIv5.instance().SetClientID(this.clientId);
         TwitchAPIv5.instance().SetOAuth(this.apiOAuth);
+        if (Helix.getInstance() != null) {
+            Helix.getInstance().setOAuth(this.apiOAuth);
+        }
         if (this.session != null) {
             this.session.setOAuth(this.oauth);
         }
@@ -676,6 +710,15 @@ public final class PhantomBot implements Listener {
         return this.dataStore;
     }
 
+    /**
+     * Gives you the YouTube player WebSocket handler
+     *
+     * @return {WsYTHandler} ytHandler, or null if the player is not enabled
+     */
+    public WsYTHandler getYTHandler() {
+        return this.ytHandler;
+    }
+
     /**
      * Tells you if the bot is exiting
      *
@@ -802,6 +845,11 @@ public final class PhantomBot implements Listener {
             alertsPollsHandler = (WsAlertsPollsHandler) new WsAlertsPollsHandler(webOAuthThro, webOAuth).register();
             new WsPanelRemoteLoginHandler(panelUsername, panelPassword, webOAuthThro, webOAuth).register();
 
+            /* Serve /metrics for Prometheus, behind metricstoken when one is set. */
+            if (metricsEnabled) {
+                new HTTPMetricsHandler(metricsToken).register();
+            }
+
             /* Is the music toggled on? */
             if (musicEnabled) {
                 ytHandler = (WsYTHandler) new WsYTHandler(youtubeOAuthThro, youtubeOAuth).register();
@@ -986,6 +1034,8 @@ public final class PhantomBot implements Listener {
         Script.global.defineProperty("alertspollssocket", alertsPollsHandler, 0);
         Script.global.defineProperty("random", random, 0);
         Script.global.defineProperty("youtube", YouTubeAPIv3.instance(), 0);
+        Script.global.defineProperty("youtubeCache", YouTubeCache.instance(), 0);
+        Script.global.defineProperty("ytPlaylists", PlaylistStore.instance(), 0);
         Script.global.defineProperty("twitter", TwitterAPI.instance(), 0);
         Script.global.defineProperty("twitchCacheReady", PhantomBot.twitchCacheReady, 0);
         Script.global.defineProperty("isNightly", isNightly(), 0);
@@ -993,6 +1043,7 @@ public final class PhantomBot implements Listener {
         Script.global.defineProperty("version", botVersion(), 0);
         Script.global.defineProperty("changed", newSetup, 0);
         Script.global.defineProperty("discordAPI", DiscordAPI.instance(), 0);
+        Script.global.defineProperty("discordRoleSync", DiscordRoleSync.instance(), 0);
         Script.global.defineProperty("hasDiscordToken", hasDiscordToken(), 0);
         Script.global.defineProperty("customAPI", CustomAPI.instance(), 0);
         Script.global.defineProperty("streamLabsAPI", TwitchAlertsAPIv1.instance(), 0);
@@ -1072,6 +1123,9 @@ public final class PhantomBot implements Listener {
             StreamElementsCache.killall();
         }
 
+        print("Terminating the cache scheduler...");
+        CacheScheduler.instance().shutdown();
+
         print("Terminating all script modules...");
         HashMap<String, Script> scripts = ScriptManager.getScripts();
         scripts.entrySet().forEach((script) -> {
@@ -1079,6 +1133,10 @@ public final class PhantomBot implements Listener {
         });
 
         print("Saving all data...");
+        UsernameCache.instance().kill();
+        WordCounter.instance().kill();
+        PlaylistStore.instance().kill();
+        Raffle.flushAll();
         dataStore.SaveAll(true);
 
         /* Check to see if web is enabled */
@@ -1089,6 +1147,7 @@ public final class PhantomBot implements Listener {
 
         print("Closing the logs...");
         com.gmt2001.Logger.instance().close();
+        com.gmt2001.ChatLogWriter.instance().close();
 
         try {
             for (int i = 5; i > 0; i--) {
@@ -1181,6 +1240,7 @@ public final class PhantomBot implements Listener {
                     if (moderator.equalsIgnoreCase(this.botName)) {
                         EventBus.instance().postAsync(new IrcChannelUserModeEvent(this.session, this.session.getBotName(), "O", true));
                         /* Allow the bot to sends message to this session */
+                        event.getSession().setModerator(true);
                         event.getSession().setAllowSendMessages(true);
                         com.gmt2001.Console.debug.println("Allowing messages to be sent due to .mods response +O");
                     }
@@ -1201,6 +1261,7 @@ public final class PhantomBot implements Listener {
                 event.getSession().getModerationStatus();
             }
             /* Allow the bot to sends message to this session */
+            event.getSession().setModerator(event.getAdd());
             event.getSession().setAllowSendMessages(event.getAdd());
         }
     }
@@ -1388,7 +1449,7 @@ public final class PhantomBot implements Listener {
     }
 
     /**
-     * Backup the database, keeping so many days.
+     * Backup the database, keeping so many days, backups and megabytes.
      */
     private void doBackupDB() {
         if (!this.dataStore.canBackup()) {
@@ -1403,22 +1464,25 @@ public final class PhantomBot implements Listener {
             datefmt.setTimeZone(TimeZone.getTimeZone(timeZone));
             String timestamp = datefmt.format(new Date());
 
-            dataStore.backupDB("phantombot.auto.backup." + timestamp + ".db");
+            DataStoreBackup.backup(dataStore, "phantombot.auto.backup." + timestamp, backupDBCompress);
 
             try {
-                Iterator<File> dirIterator = FileUtils.iterateFiles(new File("./dbbackup"), new WildcardFileFilter("phantombot.auto.*"), null);
-                while (dirIterator.hasNext()) {
-                    File backupFile = dirIterator.next();
-                    if (FileUtils.isFileOlder(backupFile, (System.currentTimeMillis() - (long) (backupDBKeepDays * 864e5)))) {
-                        FileUtils.deleteQuietly(backupFile);
-                    }
-                }
+                DataStoreBackup.prune("phantombot.auto.", backupDBKeepDays, backupDBKeepCount, backupDBKeepMB * 1048576L);
             } catch (Exception ex) {
                 com.gmt2001.Console.err.println("Failed to clean up database backup directory: " + ex.getMessage());
             }
         }, 0, backupDBHourFrequency, TimeUnit.HOURS);
     }
 
+    /**
+     * Whether database backups are gzipped.
+     *
+     * @return
+     */
+    public boolean getBackupDBCompress() {
+        return this.backupDBCompress;
+    }
+
     /**
      * Method that moves the db and botlogin into a new folder (config)
      */
@@ -1555,6 +1619,10 @@ public final class PhantomBot implements Listener {
         return useMessageQueue;
     }
 
+    public static Boolean getMergeMessages() {
+        return mergeMessages;
+    }
+
     public static Boolean getTwitchTcpNodelay() {
         return twitchTcpNodelay;
     }
@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.cache;
+
+import com.gmt2001.ExponentialBackoff;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Runs the polling caches as scheduled tasks on a small shared pool.
+ *
+ * Every task has an interval for when the stream is live and one for when it is offline. A failed
+ * update is retried using an {@link ExponentialBackoff}, and the run statistics of every task are
+ * kept for diagnostics.
+ */
+public class CacheScheduler {
+
+    private static final CacheScheduler instance = new CacheScheduler();
+    private static final int POOL_SIZE = 3;
+    private static final long BACKOFF_MIN = 60000L;
+    private static final long BACKOFF_MAX = 900000L;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<String, Task> tasks = new ConcurrentHashMap<>();
+    private volatile boolean isLive = false;
+    private volatile boolean isShutdown = false;
+
+    /**
+     * Method that returns this instance.
+     *
+     * @return
+     */
+    public static CacheScheduler instance() {
+        return instance;
+    }
+
+    /**
+     * Class constructor.
+     */
+    private CacheScheduler() {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+
+        this.executor = new ScheduledThreadPoolExecutor(POOL_SIZE, (r) -> {
+            Thread thread = new Thread(r, "tv.phantombot.cache.CacheScheduler-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
+            return thread;
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Method that schedules a cache update.
+     *
+     * @param name Name of the task, used in logs and diagnostics.
+     * @param initialDelay Delay before the first update, in milliseconds.
+     * @param liveInterval Delay between updates while the stream is live, in milliseconds.
+     * @param offlineInterval Delay between updates while the stream is offline, in milliseconds.
+     * @param update The update to run.
+     * @return The scheduled task.
+     */
+    public Task schedule(String name, long initialDelay, long liveInterval, long offlineInterval, Update update) {
+        return schedule(name, initialDelay, liveInterval, offlineInterval, BACKOFF_MIN, update);
+    }
+
+    /**
+     * Method that schedules a cache update with its own minimum retry delay after a failure.
+     *
+     * @param name Name of the task, used in logs and diagnostics.
+     * @param initialDelay Delay before the first update, in milliseconds.
+     * @param liveInterval Delay between updates while the stream is live, in milliseconds.
+     * @param offlineInterval Delay between updates while the stream is offline, in milliseconds.
+     * @param backoffMin Delay before the first retry after a failed update, in milliseconds. Later retries grow up to 15 minutes.
+     * @param update The update to run.
+     * @return The scheduled task.
+     */
+    public Task schedule(String name, long initialDelay, long liveInterval, long offlineInterval, long backoffMin, Update update) {
+        Task task = new Task(name, liveInterval, offlineInterval, backoffMin, update);
+        Task old = tasks.put(name, task);
+
+        if (old != null) {
+            old.cancel();
+        }
+
+        task.scheduleNext(initialDelay);
+        return task;
+    }
+
+    /**
+     * Method that sets if the stream is live. Pending updates are brought forward when the new interval is shorter.
+     *
+     * @param isLive
+     */
+    public void setLive(boolean isLive) {
+        if (this.isLive == isLive) {
+            return;
+        }
+
+        this.isLive = isLive;
+        tasks.values().forEach(Task::reschedule);
+    }
+
+    /**
+     * Method that returns if the stream is considered live.
+     *
+     * @return
+     */
+    public boolean isLive() {
+        return isLive;
+    }
+
+    /**
+     * Method that returns a task by name.
+     *
+     * @param name
+     * @return
+     */
+    public Task getTask(String name) {
+        return tasks.get(name);
+    }
+
+    /**
+     * Method that returns all scheduled tasks.
+     *
+     * @return
+     */
+    public List<Task> getTasks() {
+        return new ArrayList<>(tasks.values());
+    }
+
+    /**
+     * Method that returns the run statistics of every task.
+     *
+     * @return
+     */
+    public JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        JSONArray list = new JSONArray();
+
+        tasks.values().forEach((task) -> {
+            list.put(task.toJSON());
+        });
+
+        stats.put("live", isLive);
+        stats.put("tasks", list);
+        return stats;
+    }
+
+    /**
+     * Method that cancels every task and waits a few seconds for running updates to finish.
+     */
+    public void shutdown() {
+        isShutdown = true;
+        tasks.values().forEach(Task::cancel);
+        executor.shutdown();
+
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * An update run by the scheduler. Throwing marks the run as failed and backs off the next one.
+     */
+    @FunctionalInterface
+    public interface Update {
+
+        void update() throws Exception;
+    }
+
+    /**
+     * A scheduled cache update and its run statistics.
+     */
+    public final class Task {
+
+        private final String name;
+        private final Update update;
+        private final ExponentialBackoff backoff;
+        private volatile long liveInterval;
+        private volatile long offlineInterval;
+        private ScheduledFuture<?> future;
+        private boolean isRunning = false;
+        private boolean isCancelled = false;
+        private long lastRun = 0L;
+        private long lastDuration = 0L;
+        private long nextRun = 0L;
+        private long runCount = 0L;
+        private long errorCount = 0L;
+        private int consecutiveErrors = 0;
+        private String lastError = "";
+
+        private Task(String name, long liveInterval, long offlineInterval, long backoffMin, Update update) {
+            this.name = name;
+            this.liveInterval = liveInterval;
+            this.offlineInterval = offlineInterval;
+            this.backoff = new ExponentialBackoff(backoffMin, BACKOFF_MAX);
+            this.update = update;
+        }
+
+        private synchronized void scheduleNext(long delay) {
+            if (isCancelled || isShutdown) {
+                return;
+            }
+
+            nextRun = System.currentTimeMillis() + delay;
+            future = executor.schedule(this::execute, delay, TimeUnit.MILLISECONDS);
+        }
+
+        private synchronized void reschedule() {
+            if (isRunning || isCancelled || consecutiveErrors > 0 || future == null) {
+                return;
+            }
+
+            long due = (lastRun > 0L ? lastRun : System.currentTimeMillis()) + getInterval();
+
+            if (due < nextRun && future.cancel(false)) {
+                scheduleNext(Math.max(0L, due - System.currentTimeMillis()));
+            }
+        }
+
+        private void execute() {
+            long start;
+
+            synchronized (this) {
+                if (isCancelled) {
+                    return;
+                }
+
+                isRunning = true;
+                start = System.currentTimeMillis();
+                lastRun = start;
+            }
+
+            long delay = getInterval();
+
+            try {
+                update.update();
+
+                synchronized (this) {
+                    consecutiveErrors = 0;
+                    backoff.Reset();
+                }
+            } catch (Exception ex) {
+                synchronized (this) {
+                    errorCount++;
+                    consecutiveErrors++;
+                    lastError = ex.getClass().getSimpleName() + ": " + ex.getMessage();
+                    delay = Math.max(delay, backoff.GetNextInterval());
+                }
+
+                com.gmt2001.Console.debug.println("CacheScheduler: " + name + " failed [" + lastError + "], retrying in " + (delay / 1000L) + " seconds");
+            } finally {
+                synchronized (this) {
+                    runCount++;
+                    lastDuration = System.currentTimeMillis() - start;
+                    isRunning = false;
+                    scheduleNext(delay);
+                }
+            }
+        }
+
+        /**
+         * Method that changes the update intervals, used from the next run.
+         *
+         * @param liveInterval Delay between updates while the stream is live, in milliseconds.
+         * @param offlineInterval Delay between updates while the stream is offline, in milliseconds.
+         */
+        public void setInterval(long liveInterval, long offlineInterval) {
+            this.liveInterval = liveInterval;
+            this.offlineInterval = offlineInterval;
+        }
+
+        /**
+         * Method that returns the current update interval for the stream state.
+         *
+         * @return
+         */
+        public long getInterval() {
+            return isLive ? liveInterval : offlineInterval;
+        }
+
+        /**
+         * Method that stops this task. A running update is allowed to finish.
+         */
+        public synchronized void cancel() {
+            isCancelled = true;
+
+            if (future != null) {
+                future.cancel(false);
+            }
+
+            tasks.remove(name, this);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public synchronized boolean isCancelled() {
+            return isCancelled;
+        }
+
+        public synchronized long getLastRun() {
+            return lastRun;
+        }
+
+        public synchronized long getLastDuration() {
+            return lastDuration;
+        }
+
+        public synchronized long getNextRun() {
+            return nextRun;
+        }
+
+        public synchronized long getRunCount() {
+            return runCount;
+        }
+
+        public synchronized long getErrorCount() {
+            return errorCount;
+        }
+
+        public synchronized int getConsecutiveErrors() {
+            return consecutiveErrors;
+        }
+
+        public synchronized String getLastError() {
+            return lastError;
+        }
+
+        private synchronized JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+
+            json.put("name", name);
+            json.put("interval", getInterval());
+            json.put("lastRun", lastRun);
+            json.put("lastDuration", lastDuration);
+            json.put("nextRun", nextRun);
+            json.put("runs", runCount);
+            json.put("errors", errorCount);
+            json.put("consecutiveErrors", consecutiveErrors);
+            json.put("lastError", lastError);
+            return json;
+        }
+    }
+}
@@ -19,8 +19,6 @@
 package tv.phantombot.cache;
 
 import com.illusionaryone.TwitchAlertsAPIv1;
-import java.util.Calendar;
-import java.util.Date;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
@@ -31,7 +29,7 @@ import tv.phantombot.event.streamlabs.donate.StreamLabsDonationInitializedEvent;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-public class DonationsCache implements Runnable {
+public class DonationsCache {
 
     private static final Map<String, DonationsCache> instances = new ConcurrentHashMap<>();
     public static DonationsCache instance(String channel) {
@@ -46,27 +44,17 @@ public class DonationsCache implements Runnable {
 
     private Map<String, String> cache = new ConcurrentHashMap<>();
     private final String channel;
-    private final Thread updateThread;
+    private final CacheScheduler.Task updateTask;
     private boolean firstUpdate = true;
-    private Date timeoutExpire = new Date();
-    private Date lastFail = new Date();
-    private int numfail = 0;
     private int id = 0;
-    private boolean killed = false;
 
-    @SuppressWarnings("CallToThreadStartDuringObjectConstruction")
     private DonationsCache(String channel) {
         if (channel.startsWith("#")) {
             channel = channel.substring(1);
         }
 
         this.channel = channel;
-        this.updateThread = new Thread(this, "tv.phantombot.cache.DonationsCache");
-
-        Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-        this.updateThread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-
-        updateThread.start();
+        this.updateTask = CacheScheduler.instance().schedule("DonationsCache:" + channel, 20 * 1000, 30 * 1000, 60 * 1000, this::updateCache);
     }
 
     public boolean exists(String donationID) {
@@ -77,49 +65,6 @@ public class DonationsCache implements Runnable {
         return cache.size();
     }
 
-    private void checkLastFail() {
-        Calendar cal = Calendar.getInstance();
-        numfail = (lastFail.after(new Date()) ? numfail + 1 : 1);
-
-        cal.add(Calendar.MINUTE, 1);
-        lastFail = cal.getTime();
-
-        if (numfail > 5) {
-            timeoutExpire = cal.getTime();
-        }
-    }
-
-    @Override
-    @SuppressWarnings("SleepWhileInLoop")
-    public void run() {
-        try {
-            Thread.sleep(20 * 1000);
-        } catch (InterruptedException ex) {
-            com.gmt2001.Console.debug.println("DonationsCache.run: Failed to execute initial sleep [InterruptedException]: " + ex.getMessage());
-        }
-
-        while (!killed) {
-            try {
-                try {
-                    if (new Date().after(timeoutExpire)) {
-                        this.updateCache();
-                    }
-                } catch (Exception ex) {
-                    checkLastFail();
-                    com.gmt2001.Console.debug.println("DonationsCache.run: Failed to update donations: " + ex.getMessage());
-                }
-            } catch (Exception ex) {
-                com.gmt2001.Console.err.println("DonationsCache.run: Failed to update donations: " + ex.getMessage());
-            }
-
-            try {
-                Thread.sleep(30 * 1000);
-            } catch (InterruptedException ex) {
-                com.gmt2001.Console.debug.println("DonationsCache.run: Failed to execute sleep [InterruptedException]: " + ex.getMessage());
-            }
-        }
-    }
-
     private void updateCache() throws Exception {
         Map<String, String> newCache = new ConcurrentHashMap<>();
         JSONObject jsonResult;
@@ -153,22 +98,15 @@ public class DonationsCache implements Runnable {
                 }
             }
         } else {
-            try {
-                throw new Exception("[" + jsonResult.getString("_exception") + "] " + jsonResult.getString("_exceptionMessage"));
-            } catch (Exception ex) {
-                if (ex.getMessage().startsWith("[SocketTimeoutException]") || ex.getMessage().startsWith("[IOException]")) {
-                    checkLastFail();
-                    com.gmt2001.Console.warn.println("DonationsCache.run: Failed to update donations: " + ex.getMessage());
-                }
-            }
+            throw new Exception("[" + jsonResult.getString("_exception") + "] " + jsonResult.getString("_exceptionMessage"));
         }
 
-        if (firstUpdate && !killed) {
+        if (firstUpdate && !updateTask.isCancelled()) {
             firstUpdate = false;
             EventBus.instance().post(new StreamLabsDonationInitializedEvent());
         }
 
-        if (donations != null && !killed) {
+        if (donations != null && !updateTask.isCancelled()) {
             for (int i = 0; i < donations.length(); i++) {
                 if (cache == null || !cache.containsKey(donations.getJSONObject(i).get("donation_id").toString())) {
                     EventBus.instance().post(new StreamLabsDonationEvent(donations.getJSONObject(i).toString()));
@@ -187,7 +125,7 @@ public class DonationsCache implements Runnable {
     }
 
     public void kill() {
-        killed = true;
+        updateTask.cancel();
     }
 
     public static void killall() {
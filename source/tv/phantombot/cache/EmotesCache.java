@@ -21,18 +21,14 @@ package tv.phantombot.cache;
 
 import com.gmt2001.BTTVAPIv3;
 import com.illusionaryone.FrankerZAPIv1;
-import java.util.Calendar;
-import java.util.Date;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
-import org.json.JSONException;
 import org.json.JSONObject;
 import tv.phantombot.PhantomBot;
 import tv.phantombot.event.EventBus;
 import tv.phantombot.event.emotes.EmotesGetEvent;
 
-public class EmotesCache implements Runnable {
+public class EmotesCache {
 
     private static final long LOOP_SLEEP_EMOTES_DISABLED = 60L;
     private static final long LOOP_SLEEP_EMOTES_ENABLED = 60L * 60L;
@@ -48,68 +44,18 @@ public class EmotesCache implements Runnable {
     }
 
     private final String channel;
-    private final Thread updateThread;
-    private Date timeoutExpire = new Date();
-    private Date lastFail = new Date();
-    private int numfail = 0;
-    private boolean killed = false;
-    private long loopSleep = 0;
-
-    @SuppressWarnings("CallToThreadStartDuringObjectConstruction")
+    private final CacheScheduler.Task updateTask;
+
     private EmotesCache(String channel) {
         if (channel.startsWith("#")) {
             channel = channel.substring(1);
         }
 
         this.channel = channel;
-        this.updateThread = new Thread(this, "tv.phantombot.cache.EmotesCache");
-
-        Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-        this.updateThread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-
-        updateThread.start();
-    }
-
-    private void checkLastFail() {
-        Calendar cal = Calendar.getInstance();
-        numfail = (lastFail.after(new Date()) ? numfail + 1 : 1);
-
-        cal.add(Calendar.MINUTE, 1);
-        lastFail = cal.getTime();
-
-        if (numfail > 5) {
-            timeoutExpire = cal.getTime();
-        }
+        this.updateTask = CacheScheduler.instance().schedule("EmotesCache:" + channel, 0L, LOOP_SLEEP_EMOTES_DISABLED * 1000L, LOOP_SLEEP_EMOTES_DISABLED * 1000L, this::updateCache);
     }
 
-    @Override
-    @SuppressWarnings("SleepWhileInLoop")
-    public void run() {
-        loopSleep = 600L;
-
-        while (!killed) {
-            try {
-                try {
-                    if (new Date().after(timeoutExpire)) {
-                        this.updateCache();
-                    }
-                } catch (Exception ex) {
-                    checkLastFail();
-                    com.gmt2001.Console.debug.println("EmotesCache.run: Failed to update emotes: " + ex.getMessage());
-                }
-            } catch (Exception ex) {
-                com.gmt2001.Console.err.logStackTrace(ex);
-            }
-
-            try {
-                Thread.sleep(loopSleep * 1000L);
-            } catch (InterruptedException ex) {
-                com.gmt2001.Console.debug.println("EmotesCache.run: Failed to execute initial sleep: [InterruptedException] " + ex.getMessage());
-            }
-        }
-    }
-
-    private boolean checkJSONExceptions(JSONObject jsonResult, boolean ignore404, String emoteType) throws JSONException {
+    private boolean checkJSONExceptions(JSONObject jsonResult, boolean ignore404, String emoteType) throws Exception {
 
         if (jsonResult.getBoolean("_success")) {
             if (jsonResult.getInt("_http") == 200) {
@@ -128,14 +74,7 @@ public class EmotesCache implements Runnable {
                 }
             }
         } else {
-            try {
-                throw new Exception("[" + jsonResult.getString("_exception") + "] " + jsonResult.getString("_exceptionMessage") + "Emotes Type=" + emoteType);
-            } catch (Exception ex) {
-                if (ex.getMessage().startsWith("[SocketTimeoutException]") || ex.getMessage().startsWith("[IOException]")) {
-                    checkLastFail();
-                    com.gmt2001.Console.debug.println("EmotesCache.updateCache: Failed to update emotes (" + emoteType + "): " + ex.getMessage());
-                }
-            }
+            throw new Exception("[" + jsonResult.getString("_exception") + "] " + jsonResult.getString("_exceptionMessage") + "Emotes Type=" + emoteType);
         }
         return false;
     }
@@ -149,17 +88,13 @@ public class EmotesCache implements Runnable {
 
         emotesModEnabled = PhantomBot.instance().getDataStore().GetString("chatModerator", "", "emotesToggle");
 
-        if (emotesModEnabled == null) {
-            loopSleep = LOOP_SLEEP_EMOTES_DISABLED;
-            return;
-        }
-        if (!emotesModEnabled.equals("true")) {
-            loopSleep = LOOP_SLEEP_EMOTES_DISABLED;
+        if (emotesModEnabled == null || !emotesModEnabled.equals("true")) {
+            updateTask.setInterval(LOOP_SLEEP_EMOTES_DISABLED * 1000L, LOOP_SLEEP_EMOTES_DISABLED * 1000L);
             return;
         }
 
-        // We will pull emotes, set the sleep to every 10 minutes.
-        loopSleep = LOOP_SLEEP_EMOTES_ENABLED;
+        // We will pull emotes, set the interval to every hour.
+        updateTask.setInterval(LOOP_SLEEP_EMOTES_ENABLED * 1000L, LOOP_SLEEP_EMOTES_ENABLED * 1000L);
 
         com.gmt2001.Console.debug.println("Polling Emotes from BTTV and FFZ");
 
@@ -201,7 +136,7 @@ public class EmotesCache implements Runnable {
     }
 
     public void kill() {
-        killed = true;
+        updateTask.cancel();
     }
 
     public static void killall() {
@@ -19,9 +19,7 @@ package tv.phantombot.cache;
 import com.gmt2001.datastore.DataStore;
 import com.gmt2001.TwitchAPIv5;
 
-import java.util.Calendar;
 import java.util.HashMap;
-import java.util.Date;
 import java.util.Map;
 
 import tv.phantombot.event.twitch.follower.TwitchFollowsInitializedEvent;
@@ -32,17 +30,12 @@ import tv.phantombot.PhantomBot;
 import org.json.JSONObject;
 import org.json.JSONArray;
 
-public class FollowersCache implements Runnable {
+public class FollowersCache {
 
     private static final Map<String, FollowersCache> instances = new HashMap<String, FollowersCache>();
-    private final Thread updateThread;
+    private final CacheScheduler.Task updateTask;
     private final String channelName;
-    private Date timeoutExpire = new Date();
-    private Date lastFail = new Date();
     private Boolean firstUpdate = true;
-    private Boolean hasFail = false;
-    private Boolean killed = false;
-    private int numfail = 0;
 
     /*
      * @function instance
@@ -66,44 +59,8 @@ public class FollowersCache implements Runnable {
      * @param {String} channelName
      */
     private FollowersCache(String channelName) {
-        this.updateThread = new Thread(this, "tv.phantombot.cache.FollowersCache");
         this.channelName = channelName;
-
-        this.updateThread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-        Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-
-        this.updateThread.start();
-    }
-
-    @Override
-    @SuppressWarnings("SleepWhileInLoop")
-    public void run() {
-        try {
-            Thread.sleep(20 * 1000);
-        } catch (InterruptedException ex) {
-            com.gmt2001.Console.err.println("FollowersCache.run: Failed to initial sleep [InterruptedException]: " + ex.getMessage());
-        }
-
-        while (!killed) {
-            try {
-                try {
-                    if (new Date().after(timeoutExpire)) {
-                        updateCache();
-                    }
-                } catch (Exception ex) {
-                    checkLastFail();
-                    com.gmt2001.Console.debug.println("FollowersCache.run: Failed to update followers: " + ex.getMessage());
-                }
-            } catch (Exception ex) {
-                com.gmt2001.Console.err.println("FollowersCache.run: Failed to update followers [" + ex.getClass().getSimpleName() + "]: " + ex.getMessage());
-            }
-
-            try {
-                Thread.sleep(30 * 1000);
-            } catch (InterruptedException ex) {
-                com.gmt2001.Console.err.println("FollowersCache.run: Failed to sleep [InterruptedException]: " + ex.getMessage());
-            }
-        }
+        this.updateTask = CacheScheduler.instance().schedule("FollowersCache:" + channelName, 20 * 1000, 30 * 1000, 60 * 1000, this::updateCache);
     }
 
     /*
@@ -137,32 +94,17 @@ public class FollowersCache implements Runnable {
             throw new Exception("[" + jsonObject.getString("_exception") + "] " + jsonObject.getString("_exceptionMessage"));
         }
 
-        if (!killed && firstUpdate) {
+        if (!updateTask.isCancelled() && firstUpdate) {
             firstUpdate = false;
             EventBus.instance().post(new TwitchFollowsInitializedEvent());
         }
     }
 
-    /*
-     * @function checkLastFail
-     */
-    private void checkLastFail() {
-        Calendar cal = Calendar.getInstance();
-        numfail = (lastFail.after(new Date()) ? numfail + 1 : 1);
-
-        cal.add(Calendar.MINUTE, 1);
-        lastFail = cal.getTime();
-
-        if (numfail > 5) {
-            timeoutExpire = cal.getTime();
-        }
-    }
-
     /*
      * @function kill
      */
     public void kill() {
-        this.killed = true;
+        this.updateTask.cancel();
     }
 
     /*
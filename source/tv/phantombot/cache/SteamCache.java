@@ -26,21 +26,18 @@ import java.util.ArrayList;
 import org.json.JSONObject;
 import org.json.JSONArray;
 
-public class SteamCache implements Runnable {
+public class SteamCache {
 	private static final Map<String, SteamCache> instances = new HashMap<>();
-	private final Thread runThread;
+	private final CacheScheduler.Task updateTask;
 
 	/**
 	 * Class constructor.
+	 *
+	 * @param {String} channelName
 	 */
-	@SuppressWarnings("CallToThreadStartDuringObjectConstruction")
-	private SteamCache() {
-		// Create a new thread for the cache.
-		this.runThread = new Thread(this, "tv.phantombot.cache.SteamCache");
-		// Set our Exception handler.
-		this.runThread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-		// Start the thread.
-		this.runThread.start();
+	private SteamCache(String channelName) {
+		// Check every 30 minutes, the update itself only runs once every 24 hours.
+		this.updateTask = CacheScheduler.instance().schedule("SteamCache:" + channelName, 0L, 30 * 60 * 1000, 30 * 60 * 1000, this::updateCache);
 	}
 
 	/**
@@ -53,38 +50,13 @@ public class SteamCache implements Runnable {
 		SteamCache instance = instances.get(channelName);
 
 		if (instance == null) {
-			instance = new SteamCache();
+			instance = new SteamCache(channelName);
 			instances.put(channelName, instance);
 		}
 
 		return instance;
 	}
 
-	/**
-	 * Run method that runs on a new thread and sleeps every 30 minutes.
-	 */
-	@Override
-	@SuppressWarnings("SleepWhileInLoop")
-	public void run() {
-		while (!runThread.isInterrupted()) {
-			try {
-				// Update.
-				updateCache();
-
-				// Sleep for 30 minutes.
-				try {
-					Thread.sleep(30 * 60 * 1000);
-				} catch (InterruptedException ex) {
-					com.gmt2001.Console.debug.println("SteamCache.run::Failed to sleep [InterruptedException]: " +
-						ex.getMessage());
-				}
-			} catch (Exception ex) {
-				com.gmt2001.Console.err.println("SteamCache.run::Failed to update cache " +
-					"[" + ex.getClass().getSimpleName() + "]: " + ex.getMessage());
-			}
-		}
-	}
-
 	/**
 	 * Method that updates the cache.
 	 */
@@ -138,9 +110,9 @@ public class SteamCache implements Runnable {
 	}
 
 	/**
-	 * Method that kills the run thread.
+	 * Method that stops the updates.
 	 */
 	public void kill() {
-		runThread.interrupt();
+		updateTask.cancel();
 	}
 }
@@ -18,8 +18,6 @@ package tv.phantombot.cache;
 
 import com.scaniatv.StreamElementsAPIv2;
 
-import java.util.Calendar;
-import java.util.Date;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
@@ -33,17 +31,13 @@ import tv.phantombot.event.EventBus;
 import tv.phantombot.event.streamelements.donate.StreamElementsDonationEvent;
 import tv.phantombot.event.streamelements.donate.StreamElementsDonationInitializedEvent;
 
-public class StreamElementsCache implements Runnable {
+public class StreamElementsCache {
 
     private static final Map<String, StreamElementsCache> instances = new ConcurrentHashMap<>();
-    private final Thread updateThread;
+    private final CacheScheduler.Task updateTask;
     private final String channel;
     private Map<String, JSONObject> cache = new ConcurrentHashMap<>();
-    private Date timeoutExpire = new Date();
-    private Date lastFail = new Date();
     private Boolean firstUpdate = true;
-    private Boolean killed = false;
-    private int numfail = 0;
 
     /**
      * Used to call and start this instance.
@@ -61,18 +55,13 @@ public class StreamElementsCache implements Runnable {
     }
 
     /**
-     * Starts this class on a new thread.
+     * Schedules the updates of this cache.
      *
      * @param {String}  channel  Channel to run the cache for.
      */
     private StreamElementsCache(String channel) {
         this.channel = channel;
-        this.updateThread = new Thread(this, "tv.phantombot.cache.StreamElementsCache");
-
-        Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-        this.updateThread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-
-        this.updateThread.start();
+        this.updateTask = CacheScheduler.instance().schedule("StreamElementsCache:" + channel, 20 * 1000, 30 * 1000, 60 * 1000, this::updateCache);
     }
 
     /**
@@ -93,55 +82,6 @@ public class StreamElementsCache implements Runnable {
         return cache.size();
     }
 
-    /**
-     * Checks the amount of time we failed when calling the api to avoid abusing it.
-     */
-    private void checkLastFail() {
-        Calendar cal = Calendar.getInstance();
-        numfail = (lastFail.after(new Date()) ? numfail + 1 : 1);
-
-        cal.add(Calendar.MINUTE, 1);
-        lastFail = cal.getTime();
-
-        if (numfail > 5) {
-            timeoutExpire = cal.getTime();
-        }
-    }
-
-    /**
-     * Starts the cache loop.
-     */
-    @Override
-    @SuppressWarnings("SleepWhileInLoop")
-    public void run() {
-        try {
-            Thread.sleep(20 * 1000);
-        } catch (InterruptedException ex) {
-            com.gmt2001.Console.debug.println("StreamElementsCache.run: Failed to execute initial sleep [InterruptedException]: " + ex.getMessage());
-        }
-
-        while (!killed) {
-            try {
-                try {
-                    if (new Date().after(timeoutExpire)) {
-                        this.updateCache();
-                    }
-                } catch (Exception ex) {
-                    checkLastFail();
-                    com.gmt2001.Console.debug.println("StreamElementsCache.run: Failed to update donations: " + ex.getMessage());
-                }
-            } catch (Exception ex) {
-                com.gmt2001.Console.err.println("StreamElementsCache.run: Failed to update donations: " + ex.getMessage());
-            }
-
-            try {
-                Thread.sleep(30 * 1000);
-            } catch (InterruptedException ex) {
-                com.gmt2001.Console.debug.println("StreamElementsCache.run: Failed to sleep [InterruptedException]: " + ex.getMessage());
-            }
-        }
-    }
-
     /**
      * Updates the cache by calling the TipeeeStream API.
      */
@@ -168,7 +108,7 @@ public class StreamElementsCache implements Runnable {
                 if (jsonResult.has("error") && jsonResult.getString("error").equalsIgnoreCase("Unauthorized")) {
                     com.gmt2001.Console.err.println("StreamElementsCache.updateCache: Bad JWT token disabling the StreamElements module.");
                     PhantomBot.instance().getDataStore().SetString("modules", "", "./handlers/streamElementsHandler.js", "false");
-                    killed = true;
+                    updateTask.cancel();
                 } else {
                     throw new Exception("Failed to get donations: " + jsonResult);
                 }
@@ -177,12 +117,12 @@ public class StreamElementsCache implements Runnable {
             throw new Exception("[" + jsonResult.getString("_exception") + "] " + jsonResult.getString("_exceptionMessage"));
         }
 
-        if (firstUpdate && !killed) {
+        if (firstUpdate && !updateTask.isCancelled()) {
             firstUpdate = false;
             EventBus.instance().post(new StreamElementsDonationInitializedEvent());
         }
 
-        if (donations != null && !killed) {
+        if (donations != null && !updateTask.isCancelled()) {
             for (int i = 0; i < donations.length(); i++) {
                 if (cache == null || !cache.containsKey(donations.getJSONObject(i).getString("_id"))) {
                     EventBus.instance().postAsync(new StreamElementsDonationEvent(donations.getJSONObject(i).toString()));
@@ -215,7 +155,7 @@ public class StreamElementsCache implements Runnable {
      * Kills the current cache.
      */
     public void kill() {
-        killed = true;
+        updateTask.cancel();
     }
 
     /**
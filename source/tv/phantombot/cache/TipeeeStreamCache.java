@@ -17,8 +17,6 @@
 package tv.phantombot.cache;
 
 import com.scaniatv.TipeeeStreamAPIv1;
-import java.util.Calendar;
-import java.util.Date;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
@@ -29,17 +27,13 @@ import tv.phantombot.event.tipeeestream.donate.TipeeeStreamDonationInitializedEv
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-public class TipeeeStreamCache implements Runnable {
+public class TipeeeStreamCache {
 
     private static final Map<String, TipeeeStreamCache> instances = new ConcurrentHashMap<>();
-    private final Thread updateThread;
+    private final CacheScheduler.Task updateTask;
     private final String channel;
     private Map<String, String> cache = new ConcurrentHashMap<>();
-    private Date timeoutExpire = new Date();
-    private Date lastFail = new Date();
     private Boolean firstUpdate = true;
-    private Boolean killed = false;
-    private int numfail = 0;
 
     /**
      * Used to call and start this instance.
@@ -57,18 +51,13 @@ public class TipeeeStreamCache implements Runnable {
     }
 
     /**
-     * Starts this class on a new thread.
+     * Schedules the updates of this cache.
      *
      * @param {String}  channel  Channel to run the cache for.
      */
     private TipeeeStreamCache(String channel) {
         this.channel = channel;
-        this.updateThread = new Thread(this, "tv.phantombot.cache.TipeeeStreamCache");
-
-        Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-        this.updateThread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-
-        this.updateThread.start();
+        this.updateTask = CacheScheduler.instance().schedule("TipeeeStreamCache:" + channel, 20 * 1000, 30 * 1000, 60 * 1000, this::updateCache);
     }
 
     /**
@@ -89,55 +78,6 @@ public class TipeeeStreamCache implements Runnable {
         return cache.size();
     }
 
-    /**
-     * Checks the amount of time we failed when calling the api to avoid abusing it.
-     */
-    private void checkLastFail() {
-        Calendar cal = Calendar.getInstance();
-        numfail = (lastFail.after(new Date()) ? numfail + 1 : 1);
-
-        cal.add(Calendar.MINUTE, 1);
-        lastFail = cal.getTime();
-
-        if (numfail > 5) {
-            timeoutExpire = cal.getTime();
-        }
-    }
-
-    /**
-     * Starts the cache loop.
-     */
-    @Override
-    @SuppressWarnings("SleepWhileInLoop")
-    public void run() {
-        try {
-            Thread.sleep(20 * 1000);
-        } catch (InterruptedException ex) {
-            com.gmt2001.Console.debug.println("TipeeeStreamCache.run: Failed to execute initial sleep [InterruptedException]: " + ex.getMessage());
-        }
-
-        while (!killed) {
-            try {
-                try {
-                    if (new Date().after(timeoutExpire)) {
-                        this.updateCache();
-                    }
-                } catch (Exception ex) {
-                    checkLastFail();
-                    com.gmt2001.Console.debug.println("TipeeeStreamCache.run: Failed to update donations: " + ex.getMessage());
-                }
-            } catch (Exception ex) {
-                com.gmt2001.Console.err.println("TipeeeStreamCache.run: Failed to update donations: " + ex.getMessage());
-            }
-
-            try {
-                Thread.sleep(30 * 1000);
-            } catch (InterruptedException ex) {
-                com.gmt2001.Console.debug.println("TipeeeStreamCache.run: Failed to sleep [InterruptedException]: " + ex.getMessage());
-            }
-        }
-    }
-
     /**
      * Updates the cache by calling the TipeeeStream API.
      */
@@ -180,22 +120,15 @@ public class TipeeeStreamCache implements Runnable {
                 }
             }
         } else {
-            try {
-                throw new Exception("[" + jsonResult.getString("_exception") + "] " + jsonResult.getString("_exceptionMessage"));
-            } catch (Exception ex) {
-                if (ex.getMessage().startsWith("[SocketTimeoutException]") || ex.getMessage().startsWith("[IOException]")) {
-                    checkLastFail();
-                    com.gmt2001.Console.warn.println("TipeeeStreamCache.run: Failed to update donations: " + ex.getMessage());
-                }
-            }
+            throw new Exception("[" + jsonResult.getString("_exception") + "] " + jsonResult.getString("_exceptionMessage"));
         }
 
-        if (firstUpdate && !killed) {
+        if (firstUpdate && !updateTask.isCancelled()) {
             firstUpdate = false;
             EventBus.instance().post(new TipeeeStreamDonationInitializedEvent());
         }
 
-        if (donations != null && !killed) {
+        if (donations != null && !updateTask.isCancelled()) {
             for (int i = 0; i < donations.length(); i++) {
                 if (cache == null || !cache.containsKey(donations.getJSONObject(i).get("id").toString())) {
                     EventBus.instance().post(new TipeeeStreamDonationEvent(donations.getJSONObject(i).toString()));
@@ -227,7 +160,7 @@ public class TipeeeStreamCache implements Runnable {
      * Kills the current cache.
      */
     public void kill() {
-        killed = true;
+        updateTask.cancel();
     }
 
     /**
@@ -56,12 +56,13 @@ import tv.phantombot.event.twitch.titlechange.TwitchTitleChangeEvent;
  * This class keeps track of certain Twitch information such as if the channel is online or not
  * and sends events to the JS side to indicate when the channel has gone off or online.
  */
-public class TwitchCache implements Runnable {
+public class TwitchCache {
 
     private static final Map<String, TwitchCache> instances = new ConcurrentHashMap<>();
     private final String channel;
-    private final Thread updateThread;
-    private boolean killed = false;
+    private final CacheScheduler.Task updateTask;
+    private boolean isInitialized = false;
+    private boolean doUpdateClips = false;
 
     /* Cached data */
     private Boolean isOnline = false;
@@ -99,7 +100,6 @@ public class TwitchCache implements Runnable {
      *
      * @param  channel  Name of the Twitch Channel for which this object is created.
      */
-    @SuppressWarnings("CallToThreadStartDuringObjectConstruction")
     private TwitchCache(String channel) {
         if (channel.startsWith("#")) {
             channel = channel.substring(1);
@@ -107,57 +107,38 @@ public class TwitchCache implements Runnable {
 
         this.channel = channel;
         this.displayName = channel;
-        this.updateThread = new Thread(this, "tv.phantombot.cache.TwitchCache");
-
-        Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-        this.updateThread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-
-        updateThread.start();
+        this.updateTask = CacheScheduler.instance().schedule("TwitchCache:" + channel, 0L, 30 * 1000, 30 * 1000, 30 * 1000, this::update);
     }
 
     /**
-     * Thread run instance.  This is the main loop for the thread that is created to manage
-     * retrieving data from the Twitch API.  This loop runs every 30 seconds, querying data
-     * from Twitch.
+     * Scheduled update.  This runs every 30 seconds, querying data from Twitch, and updates the
+     * clips every other run.
      */
-    @Override
-    @SuppressWarnings("SleepWhileInLoop")
-    public void run() {
+    private void update() throws Exception {
         // If this cache starts before the database, we need to wait.
-        while (PhantomBot.instance() == null || PhantomBot.instance().getDataStore() == null) {
-            com.gmt2001.Console.debug.println("TwitchCache::run::failed:database:null");
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException ex) {
-                com.gmt2001.Console.err.printStackTrace(ex);
+        if (!isInitialized) {
+            if (PhantomBot.instance() == null || PhantomBot.instance().getDataStore() == null) {
+                com.gmt2001.Console.debug.println("TwitchCache::run::failed:database:null");
+                return;
             }
-        }
 
-        /* Update the clips every other loop. */
-        boolean doUpdateClips = false;
+            /* Check the DB for a previous Game and Stream Title */
+            String gameTitle = getDBString("game");
+            String streamTitle = getDBString("title");
 
-        /* Check the DB for a previous Game and Stream Title */
-        String gameTitle = getDBString("game");
-        String streamTitle = getDBString("title");
+            if (gameTitle != null) {
+                this.gameTitle = gameTitle;
+            }
+            if (streamTitle != null) {
+                this.streamTitle = streamTitle;
+            }
 
-        if (gameTitle != null) {
-            this.gameTitle = gameTitle;
-        }
-        if (streamTitle != null) {
-            this.streamTitle = streamTitle;
+            isInitialized = true;
         }
 
-        while (!killed) {
-            try {
-                try {
-                    this.updateCache();
-                } catch (Exception ex) {
-                    com.gmt2001.Console.debug.println("TwitchCache::run: " + ex.getMessage());
-                }
-            } catch (Exception ex) {
-                com.gmt2001.Console.err.println("TwitchCache::run: " + ex.getMessage());
-            }
-
+        try {
+            this.updateCache();
+        } finally {
             if (doUpdateClips) {
                 doUpdateClips = false;
                 try {
@@ -168,12 +149,6 @@ public class TwitchCache implements Runnable {
             } else {
                 doUpdateClips = true;
             }
-
-            try {
-                Thread.sleep(30 * 1000);
-            } catch (InterruptedException ex) {
-                com.gmt2001.Console.err.println("TwitchCache::run: Failed to execute sleep [InterruptedException]: " + ex.getMessage());
-            }
         }
     }
 
@@ -260,10 +235,12 @@ public class TwitchCache implements Runnable {
 
                 if (!this.isOnline && isOnline) {
                     this.isOnline = true;
+                    CacheScheduler.instance().setLive(true);
                     EventBus.instance().postAsync(new TwitchOnlineEvent());
                     sentTwitchOnlineEvent = true;
                 } else if (this.isOnline && !isOnline) {
                     this.isOnline = false;
+                    CacheScheduler.instance().setLive(false);
                     EventBus.instance().postAsync(new TwitchOfflineEvent());
                 }
 
@@ -551,7 +528,7 @@ public class TwitchCache implements Runnable {
      * Destroys the current instance of the TwitchCache object.
      */
     public void kill() {
-        killed = true;
+        updateTask.cancel();
     }
 
     /**
@@ -18,7 +18,7 @@ package tv.phantombot.cache;
 
 import com.gmt2001.TwitchAPIv5;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.Random;
 
 import org.json.JSONObject;
@@ -29,12 +29,11 @@ import org.json.JSONException;
  *
  * @author ScaniaTV
  */
-public class TwitchTeamsCache implements Runnable {
+public class TwitchTeamsCache {
     private static TwitchTeamsCache INSTANCE;
-    private static final Map<String, Team> teams = new HashMap<>();
-    private final Thread updateThread;
+    private static final Map<String, Team> teams = new ConcurrentHashMap<>();
+    private final CacheScheduler.Task updateTask;
     private final String channelName;
-    private boolean isKilled = false;
     
     /**
      * Method that starts this cache, and returns it.
@@ -55,33 +54,11 @@ public class TwitchTeamsCache implements Runnable {
      * 
      * @param channelName 
      */
-    @SuppressWarnings("CallToThreadStartDuringObjectConstruction")
     private TwitchTeamsCache(String channelName) {
         this.channelName = channelName;
-        
-        this.updateThread = new Thread(this, "tv.phantombot.cache.TwitchTeamsCache");
-        this.updateThread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-        this.updateThread.start();
-    }
-    
-    /**
-     * Method that updates the Twitch teams.
-     */
-    @Override
-    public void run() {
-        while (!isKilled) {
-            try {
-                updateCache();
-                try {
-                    Thread.sleep(60 * 1000);
-                } catch (InterruptedException ex) {
-                    // Ignore this.
-                    // ex.printStackTrace();
-                }
-            } catch (Exception ex) {
-                com.gmt2001.Console.err.printStackTrace(ex);
-            }
-        }
+
+        // Teams rarely change, only check every minute while live and every 10 minutes while offline.
+        this.updateTask = CacheScheduler.instance().schedule("TwitchTeamsCache:" + channelName, 0L, 60 * 1000, 600 * 1000, this::updateCache);
     }
     
     /**
@@ -112,6 +89,13 @@ public class TwitchTeamsCache implements Runnable {
         return teams.get(teamName);
     }
     
+    /**
+     * Method that stops the updates.
+     */
+    public void kill() {
+        updateTask.cancel();
+    }
+    
     /**
      * Private class that holds the teams information.
      */
@@ -45,12 +45,11 @@ import tv.phantombot.event.twitter.TwitterRetweetEvent;
  * that data and updating the local database with certain information and passing information
  * on the event bus to trigger events in chat.
  */
-public class TwitterCache implements Runnable {
+public class TwitterCache {
 
     private static final Map<String, TwitterCache> instances = new ConcurrentHashMap<>();
     private final String channel;
-    private final Thread updateThread;
-    private boolean killed = false;
+    private final CacheScheduler.Task updateTask;
 
     /**
      * Creates an instance for a channel.
@@ -73,54 +72,15 @@ public class TwitterCache implements Runnable {
      *
      * @param  channel  Name of the Twitch Channel for which this object is created.
      */
-    @SuppressWarnings("CallToThreadStartDuringObjectConstruction")
     private TwitterCache(String channel) {
         if (channel.startsWith("#")) {
             channel = channel.substring(1);
         }
 
         this.channel = channel;
-        this.updateThread = new Thread(this, "tv.phantombot.cache.TwitterCache");
 
-        Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-        this.updateThread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-
-        updateThread.start();
-    }
-
-    /**
-     * Thread run instance.  This is the main loop for the thread that is created to manage
-     * retrieving data from the Twitter API.  This loop runs every 15 seconds, calling the
-     * method to update data from Twitter.  That method checks against limits.
-     */
-    @Override
-    @SuppressWarnings("SleepWhileInLoop")
-    public void run() {
-
-        /* Wait 30 seconds before starting to poll Twitter. */
-        try {
-            Thread.sleep(20 * 1000);
-        } catch (InterruptedException ex) {
-            com.gmt2001.Console.err.println("TwitterCache::run: Failed to execute initial sleep [InterruptedException]: " + ex.getMessage());
-        }
-
-        while (!killed) {
-            try {
-                try {
-                    this.updateCache();
-                } catch (Exception ex) {
-                    com.gmt2001.Console.err.println("TwitterCache::run: " + ex.getMessage());
-                }
-            } catch (Exception ex) {
-                com.gmt2001.Console.err.println("TwitterCache::run: " + ex.getMessage());
-            }
-
-            try {
-                Thread.sleep(15 * 1000);
-            } catch (InterruptedException ex) {
-                com.gmt2001.Console.err.println("TwitterCache::run: Failed to execute sleep [InterruptedException]: " + ex.getMessage());
-            }
-        }
+        /* Wait 20 seconds before starting to poll Twitter, then check every 15 seconds. The update checks against limits. */
+        this.updateTask = CacheScheduler.instance().schedule("TwitterCache:" + channel, 20 * 1000, 15 * 1000, 15 * 1000, this::updateCache);
     }
 
     /**
@@ -426,7 +386,7 @@ public class TwitterCache implements Runnable {
      * Destroys the current instance of the TwitterCache object.
      */
     public void kill() {
-        killed = true;
+        updateTask.cancel();
     }
 
     /**
@@ -17,69 +17,338 @@
 package tv.phantombot.cache;
 
 import com.gmt2001.TwitchAPIv5;
-import java.util.Calendar;
-import java.util.Date;
+import com.gmt2001.datastore.DataStore;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import tv.phantombot.PhantomBot;
+import tv.phantombot.twitch.api.Helix;
+import tv.phantombot.twitch.api.HelixScheduler;
 
+/**
+ * Cache of Twitch login names to display names and user IDs.
+ *
+ * Entries are filled from IRC tags whenever possible. Misses are resolved in the background
+ * through Helix, where concurrent lookups are batched up to 100 names per request. Known users
+ * are persisted to the usernamecache table and loaded back lazily on the cache thread the first
+ * time they are needed, so the non-blocking methods never wait on the database.
+ */
 public class UsernameCache {
 
     private static final UsernameCache instance = new UsernameCache();
+    private static final String TABLE = "usernamecache";
+    private static final int MAX_SIZE = 50000;
+    private static final long TTL = TimeUnit.HOURS.toMillis(24);
+    private static final long NOT_FOUND_TTL = TimeUnit.MINUTES.toMillis(5);
+    private static final long LOOKUP_TIMEOUT = 5000L;
+    private static final long FLUSH_INTERVAL = 30L;
 
     public static UsernameCache instance() {
         return instance;
     }
 
-    private final Map<String, UserData> cache = new ConcurrentHashMap<>();
-    private Date timeoutExpire = new Date();
-    private Date lastFail = new Date();
-    private int numfail = 0;
+    private final Map<String, UserData> cache = new LinkedHashMap<String, UserData>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UserData> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+    /* Users known to be missing from the usernamecache table, guarded by cache */
+    private final Set<String> notStored = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_SIZE;
+        }
+    });
+    private final Map<String, UserData> dirty = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<UserData>> loading = new ConcurrentHashMap<>();
+    private final Map<String, Long> notFound = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<UserData>> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
 
     private UsernameCache() {
         Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
+
+        this.executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread thread = new Thread(r, "tv.phantombot.cache.UsernameCache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.SECONDS);
     }
 
-    private void lookupUserData(String username) {
+    /**
+     * Returns the cached entry for a login name without waiting. On a memory miss the entry is loaded
+     * from the database in the background, so it is available to later calls.
+     */
+    private UserData getEntry(String lusername) {
+        return getEntryAsync(lusername).getNow(null);
+    }
+
+    /**
+     * Returns the cached entry for a login name, completing once it has been loaded from the database
+     * on a memory miss. Completes with null if the user is not stored.
+     */
+    private CompletableFuture<UserData> getEntryAsync(String lusername) {
+        synchronized (cache) {
+            UserData data = cache.get(lusername);
+
+            if (data != null || notStored.contains(lusername)) {
+                return CompletableFuture.completedFuture(data);
+            }
+        }
+
+        CompletableFuture<UserData> future = loading.get(lusername);
+        if (future != null) {
+            return future;
+        }
+
+        CompletableFuture<UserData> created = new CompletableFuture<>();
+        future = loading.putIfAbsent(lusername, created);
+        if (future != null) {
+            return future;
+        }
+
         try {
-            JSONObject user = TwitchAPIv5.instance().GetUser(username);
-
-            if (user.getBoolean("_success")) {
-                if (user.getInt("_http") == 200) {
-                    if (user.getJSONArray("users").length() > 0) {
-                        String displayName = user.getJSONArray("users").getJSONObject(0).getString("display_name").replaceAll("\\\\s", " ");
-                        String userID = user.getJSONArray("users").getJSONObject(0).getString("_id");
-                        cache.put(username, new UserData(displayName, userID));
-                    }
-                } else {
-                    com.gmt2001.Console.debug.println("UsernameCache.updateCache: Failed to get username [" + username + "] http error [" + user.getInt("_http") + "]");
+            executor.execute(() -> {
+                UserData data = null;
+
+                try {
+                    data = load(lusername);
+                } catch (Exception ex) {
+                    com.gmt2001.Console.err.printStackTrace(ex);
+                } finally {
+                    loading.remove(lusername);
+                    created.complete(data);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            loading.remove(lusername);
+            created.complete(null);
+        }
+
+        return created;
+    }
+
+    private void putEntry(String lusername, UserData data) {
+        synchronized (cache) {
+            cache.put(lusername, data);
+            notStored.remove(lusername);
+        }
+
+        notFound.remove(lusername);
+        dirty.put(lusername, data);
+    }
+
+    private DataStore getDataStore() {
+        PhantomBot bot = PhantomBot.instance();
+        return bot == null ? null : bot.getDataStore();
+    }
+
+    /**
+     * Reads an entry from the database into the cache. Entries added while it was being read win over
+     * the stored one.
+     */
+    private UserData load(String lusername) {
+        DataStore dataStore = getDataStore();
+
+        if (dataStore == null) {
+            return null;
+        }
+
+        UserData data = null;
+        String value = dataStore.GetString(TABLE, "", lusername);
+
+        if (value != null) {
+            String[] parts = value.split(",", 3);
+
+            try {
+                if (parts.length == 3) {
+                    data = new UserData(parts[2], parts[0], Long.parseLong(parts[1]));
                 }
+            } catch (NumberFormatException ex) {
+                com.gmt2001.Console.debug.println("UsernameCache.load: Invalid entry for [" + lusername + "]");
+            }
+        }
+
+        synchronized (cache) {
+            UserData current = cache.get(lusername);
+
+            if (current != null) {
+                return current;
+            }
+
+            if (data == null) {
+                notStored.add(lusername);
             } else {
-                if (user.getString("_exception").equalsIgnoreCase("SocketTimeoutException") || user.getString("_exception").equalsIgnoreCase("IOException")) {
-                    Calendar c = Calendar.getInstance();
+                cache.put(lusername, data);
+            }
+        }
+
+        return data;
+    }
+
+    /**
+     * Writes all changed entries to the database in one batch.
+     */
+    public void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        DataStore dataStore = getDataStore();
+        if (dataStore == null) {
+            return;
+        }
+
+        List<String> keys = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+
+        for (String key : new ArrayList<>(dirty.keySet())) {
+            UserData data = dirty.remove(key);
+
+            if (data != null) {
+                keys.add(key);
+                values.add(data.getUserID() + "," + data.getUpdated() + "," + data.getUserName());
+            }
+        }
+
+        if (!keys.isEmpty()) {
+            try {
+                dataStore.SetBatchString(TABLE, "", keys.toArray(new String[0]), values.toArray(new String[0]));
+            } catch (Exception ex) {
+                com.gmt2001.Console.err.printStackTrace(ex);
+            }
+        }
+    }
+
+    /**
+     * Flushes pending writes and stops the background flush.
+     */
+    public void kill() {
+        executor.shutdown();
+        flush();
+    }
+
+    /**
+     * Looks up a user on Twitch, sharing the request with any other lookup for the same name.
+     */
+    private CompletableFuture<UserData> lookupAsync(String lusername, HelixScheduler.Priority priority) {
+        Long expires = notFound.get(lusername);
+        if (expires != null) {
+            if (expires > System.currentTimeMillis()) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            notFound.remove(lusername);
+        }
+
+        CompletableFuture<UserData> future = pending.get(lusername);
+        if (future != null) {
+            return future;
+        }
+
+        CompletableFuture<UserData> created = new CompletableFuture<>();
+        future = pending.putIfAbsent(lusername, created);
+        if (future != null) {
+            return future;
+        }
+
+        Helix helix = Helix.getInstance();
+        CompletableFuture<UserData> request;
+
+        if (helix != null) {
+            request = helix.getUserByNameAsync(lusername, priority).thenApply((user) -> parseUser(lusername, user, "data", "id"));
+        } else {
+            request = TwitchAPIv5.instance().GetUserAsync(lusername).thenApply((user) -> parseUser(lusername, user, "users", "_id"));
+        }
+
+        request.whenComplete((data, ex) -> {
+            pending.remove(lusername);
+
+            if (ex != null) {
+                com.gmt2001.Console.debug.println("UsernameCache.lookupAsync: Failed to get username [" + lusername + "] " + ex.getMessage());
+                created.complete(null);
+                return;
+            }
+
+            if (data != null) {
+                putEntry(lusername, data);
+            }
+
+            created.complete(data);
+        });
+
+        return created;
+    }
 
-                    if (lastFail.after(new Date())) {
-                        numfail++;
-                    } else {
-                        numfail = 1;
-                    }
+    private UserData parseUser(String lusername, JSONObject user, String arrayKey, String idKey) {
+        try {
+            if (!user.getBoolean("_success")) {
+                com.gmt2001.Console.debug.println("UsernameCache.lookupAsync: Failed to get username [" + lusername + "] " + user.optString("_exception"));
+                return null;
+            }
+
+            if (user.getInt("_http") != 200) {
+                com.gmt2001.Console.debug.println("UsernameCache.lookupAsync: Failed to get username [" + lusername + "] http error [" + user.getInt("_http") + "]");
+                return null;
+            }
 
-                    c.add(Calendar.MINUTE, 1);
+            JSONArray users = user.getJSONArray(arrayKey);
+            if (users.length() == 0) {
+                notFound.put(lusername, System.currentTimeMillis() + NOT_FOUND_TTL);
+                return null;
+            }
+
+            JSONObject data = users.getJSONObject(0);
+            return new UserData(data.getString("display_name").replaceAll("\\\\s", " "), data.getString(idKey), System.currentTimeMillis());
+        } catch (JSONException | NumberFormatException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+            return null;
+        }
+    }
 
-                    lastFail = c.getTime();
+    /**
+     * Returns the entry for a user, looking it up on Twitch if needed and waiting a bounded amount of time for the answer.
+     */
+    private UserData getBlocking(String lusername) {
+        try {
+            UserData data = getEntryAsync(lusername).get(LOOKUP_TIMEOUT, TimeUnit.MILLISECONDS);
 
-                    if (numfail >= 5) {
-                        timeoutExpire = c.getTime();
-                    }
+            if (data != null) {
+                if (data.isExpired()) {
+                    lookupAsync(lusername, HelixScheduler.Priority.BACKGROUND);
                 }
+
+                return data;
             }
-        } catch (JSONException e) {
-            com.gmt2001.Console.err.printStackTrace(e);
+
+            return lookupAsync(lusername, HelixScheduler.Priority.USER).get(LOOKUP_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            com.gmt2001.Console.debug.println("UsernameCache: Timed out looking up [" + lusername + "]");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
         }
+
+        return null;
     }
-    
+
     // This will be implemented later
     // For now it's just to keep another class from throwing errors.
     public JSONObject getUserData(String username) throws JSONException {
@@ -90,91 +359,121 @@ public class UsernameCache {
         return resolve(username, new HashMap<>());
     }
 
+    /**
+     * Returns the display name of a user without blocking. When the user is not cached yet, a lookup is
+     * queued in the background and the login name is returned.
+     */
     public String resolve(String username, Map<String, String> tags) {
         String lusername = username.toLowerCase();
 
-        if (hasUser(lusername)) {
-            return cache.get(lusername).getUserName();
-        } else {
-            if (username.equalsIgnoreCase("jtv") || username.equalsIgnoreCase("twitchnotify")) {
-                return username;
-            }
+        if (username.equalsIgnoreCase("jtv") || username.equalsIgnoreCase("twitchnotify")) {
+            return username;
+        }
 
-            if (tags.containsKey("display-name") && tags.get("display-name").equalsIgnoreCase(lusername) && tags.containsKey("user-id")) {
-                cache.put(lusername, new UserData(tags.get("display-name"), tags.get("user-id")));
-                return tags.get("display-name");
+        if (tags.containsKey("display-name") && tags.get("display-name").equalsIgnoreCase(lusername)) {
+            if (tags.containsKey("user-id")) {
+                addUser(lusername, tags.get("display-name"), tags.get("user-id"));
             }
 
-            /* While the user-id should always be present, this is just a stop-gap measure. */
-            if (tags.containsKey("display-name") && tags.get("display-name").equalsIgnoreCase(lusername)) {
-                return tags.get("display-name");
-            }
+            return tags.get("display-name");
+        }
 
-            if (new Date().before(timeoutExpire)) {
-                return username;
+        CompletableFuture<UserData> entry = getEntryAsync(lusername);
+        UserData data = entry.getNow(null);
+
+        /* Only users the database doesn't know, or knows from too long ago, are looked up on Twitch */
+        entry.thenAccept((stored) -> {
+            if (stored == null || stored.isExpired()) {
+                lookupAsync(lusername, HelixScheduler.Priority.BACKGROUND);
             }
+        });
 
-            lookupUserData(lusername);
-            if (hasUser(lusername)) {
-                return cache.get(lusername).getUserName();
-            } else {
-                return lusername;
+        return data == null ? lusername : data.getUserName();
+    }
+
+    /**
+     * Returns the display name of a user once it has been resolved.
+     */
+    public CompletableFuture<String> resolveAsync(String username) {
+        String lusername = username.toLowerCase();
+
+        return getEntryAsync(lusername).thenCompose((data) -> {
+            if (data != null && !data.isExpired()) {
+                return CompletableFuture.completedFuture(data.getUserName());
             }
-        }
+
+            return lookupAsync(lusername, HelixScheduler.Priority.USER).thenApply((result) -> {
+                if (result != null) {
+                    return result.getUserName();
+                }
+
+                return data == null ? lusername : data.getUserName();
+            });
+        });
     }
 
     public boolean exists(String userName) {
-        // Check the cache first, if the user doesn't exist call the API and check the cache again.
-        if (cache.containsKey(userName)) {
-            return true;
-        } else {
-            lookupUserData(userName);
-
-            return cache.containsKey(userName);
-        }
+        return getBlocking(userName.toLowerCase()) != null;
     }
 
     public void addUser(String userName, String displayName, int userID) {
-        if (!hasUser(userName) && displayName.length() > 0) {
-            cache.put(userName, new UserData(displayName.replaceAll("\\\\s", " "), userID));
-        }
+        addUser(userName, displayName, Integer.toUnsignedString(userID));
     }
 
     public void addUser(String userName, String displayName, String userID) {
-        if (!hasUser(userName) && displayName.length() > 0 && userID.length() > 0) {
-            cache.put(userName, new UserData(displayName.replaceAll("\\\\s", " "), userID));
+        if (displayName.length() == 0 || userID.length() == 0) {
+            return;
+        }
+
+        String lusername = userName.toLowerCase();
+        String name = displayName.replaceAll("\\\\s", " ");
+        UserData data;
+
+        /* The tags are authoritative, so a memory miss is simply overwritten instead of read from the database */
+        synchronized (cache) {
+            data = cache.get(lusername);
+        }
+
+        try {
+            if (data == null || data.isExpired() || !data.getUserName().equals(name) || !data.getUserID().equals(userID)) {
+                putEntry(lusername, new UserData(name, userID, System.currentTimeMillis()));
+            }
+        } catch (NumberFormatException ex) {
+            com.gmt2001.Console.debug.println("UsernameCache.addUser: Invalid user-id [" + userID + "] for [" + lusername + "]");
         }
     }
 
+    /**
+     * Returns if a user is cached without waiting. A user only stored in the database is reported once it
+     * has been loaded in the background.
+     */
     public boolean hasUser(String userName) {
-        return cache.containsKey(userName);
+        return getEntry(userName.toLowerCase()) != null;
     }
 
     public String get(String userName) {
-        return (hasUser(userName) ? cache.get(userName).getUserName() : userName);
+        UserData data = getEntry(userName.toLowerCase());
+        return (data != null ? data.getUserName() : userName);
     }
 
     public String getID(String userName) {
-        String lusername = userName.toLowerCase();
-        if (hasUser(lusername)) {
-            return cache.get(lusername).getUserID();
-        } else {
-            if (new Date().before(timeoutExpire)) {
-                return "0";
-            }
-            lookupUserData(lusername);
-            if (hasUser(lusername)) {
-                return cache.get(lusername).getUserID();
-            }
-        }
-        return "0";
+        UserData data = getBlocking(userName.toLowerCase());
+        return (data != null ? data.getUserID() : "0");
     }
 
     public void removeUser(String userName) {
         userName = userName.toLowerCase();
 
-        if (hasUser(userName)) {
+        synchronized (cache) {
             cache.remove(userName);
+            notStored.add(userName);
+        }
+
+        dirty.remove(userName);
+
+        DataStore dataStore = getDataStore();
+        if (dataStore != null) {
+            dataStore.RemoveKey(TABLE, "", userName);
         }
     }
 
@@ -185,26 +484,14 @@ public class UsernameCache {
      * int within Java is 4,294,967,295 which should serve as a large enough data type.
      */
     private class UserData {
-        private String userName;
-        private int userID;
-
-        public UserData(String userName, int userID) {
-            this.userName = userName;
-            this.userID = userID;
-        }
-        public UserData(String userName, String userID) {
-            this.userName = userName;
-            this.userID = Integer.parseUnsignedInt(userID);
-        }
+        private final String userName;
+        private final int userID;
+        private final long updated;
 
-        public void putUserName(String userName) {
+        public UserData(String userName, String userID, long updated) {
             this.userName = userName;
-        }
-        public void putUserID(int userID) {
-            this.userID = userID;
-        }
-        public void putUserID(String userID) {
             this.userID = Integer.parseUnsignedInt(userID);
+            this.updated = updated;
         }
 
         public String getUserName() {
@@ -213,5 +500,11 @@ public class UsernameCache {
         public String getUserID() {
             return Integer.toUnsignedString(userID);
         }
+        public long getUpdated() {
+            return updated;
+        }
+        public boolean isExpired() {
+            return System.currentTimeMillis() - updated > TTL;
+        }
     }
 }
@@ -29,12 +29,11 @@ import org.json.JSONException;
 import tv.phantombot.event.irc.channel.IrcChannelUsersUpdateEvent;
 import tv.phantombot.event.EventBus;
 
-public class ViewerListCache implements Runnable {
+public class ViewerListCache {
     private static ViewerListCache instance = null;
     private final String channelName;
-    private final Thread thread;
+    private final CacheScheduler.Task updateTask;
     private List<String> cache = new ArrayList<>();
-    private boolean isKilled = false;
 
     /**
      * Method to get this instance.
@@ -56,38 +55,10 @@ public class ViewerListCache implements Runnable {
      * @param  {String} channelName
      */
     private ViewerListCache(String channelName) {
-        Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-
         this.channelName = channelName;
 
-        this.thread = new Thread(this, "tv.phantombot.cache.ViewerListCache");
-        Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
-        this.thread.start();
-    }
-
-    /**
-     * Method that updates the cache every 10 minutes.
-     */
-    @Override
-    @SuppressWarnings("SleepWhileInLoop")
-    public void run() {
-        while (!isKilled) {
-            try {
-                try {
-                    this.updateCache();
-                } catch (Exception ex) {
-                    com.gmt2001.Console.debug.println("ViewerListCache::run: " + ex.getMessage());
-                }
-            } catch (Exception ex) {
-                com.gmt2001.Console.err.println("ViewerListCache::run: " + ex.getMessage());
-            }
-
-            try {
-                Thread.sleep(600 * 1000);
-            } catch (InterruptedException ex) {
-                com.gmt2001.Console.err.println("ViewerListCache::run: Failed to execute sleep [InterruptedException]: " + ex.getMessage());
-            }
-        }
+        // Updates every 5 minutes while live and every 10 minutes while offline.
+        this.updateTask = CacheScheduler.instance().schedule("ViewerListCache:" + channelName, 0L, 300 * 1000, 600 * 1000, this::updateCache);
     }
 
     /**
@@ -143,7 +114,7 @@ public class ViewerListCache implements Runnable {
                 // Run the GC to clear memory,
                 System.gc();
             } else {
-                com.gmt2001.Console.debug.println("Failed to update viewers cache: " + object);
+                throw new Exception("Failed to update viewers cache: " + object);
             }
         } catch (JSONException ex) {
             com.gmt2001.Console.debug.println("ViewerListCache::updateCache: Failed to update: " + ex.getMessage());
@@ -173,6 +144,6 @@ public class ViewerListCache implements Runnable {
      * Method to kill this cache.
      */
     public void kill() {
-        this.isKilled = true;
+        this.updateTask.cancel();
     }
 }
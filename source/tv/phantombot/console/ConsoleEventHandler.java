@@ -22,10 +22,12 @@ import net.engio.mbassy.listener.Handler;
 
 import com.gmt2001.TwitchAPIv5;
 import com.gmt2001.datastore.DataStore;
+import com.gmt2001.datastore.DataStoreBackup;
 
 import com.scaniatv.BotImporter;
 import com.scaniatv.GenerateLogs;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 
@@ -39,11 +41,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.TimeZone;
 import java.util.TreeSet;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import tv.phantombot.CaselessProperties;
 
 import tv.phantombot.PhantomBot;
+import tv.phantombot.cache.CacheScheduler;
 
 import tv.phantombot.discord.DiscordAPI;
 
@@ -68,6 +72,7 @@ import tv.phantombot.event.twitch.subscriber.TwitchAnonymousSubscriptionGiftEven
 
 import tv.phantombot.event.twitter.TwitterRetweetEvent;
 
+import tv.phantombot.script.HookMetrics;
 import tv.phantombot.script.Script;
 
 public class ConsoleEventHandler implements Listener {
@@ -228,6 +233,62 @@ public class ConsoleEventHandler implements Listener {
             return;
         }
 
+        /**
+         * @consolecommand cachestatus - Prints the last run, duration and errors of each cache.
+         */
+        if (message.equalsIgnoreCase("cachestatus")) {
+            long now = System.currentTimeMillis();
+            com.gmt2001.Console.out.println("Cache scheduler (stream " + (CacheScheduler.instance().isLive() ? "live" : "offline") + "):");
+            CacheScheduler.instance().getTasks().forEach((task) -> {
+                com.gmt2001.Console.out.println("  " + task.getName() + ": last run " + (task.getLastRun() > 0L ? ((now - task.getLastRun()) / 1000L) + "s ago" : "never")
+                        + ", took " + task.getLastDuration() + "ms, next in " + Math.max(0L, (task.getNextRun() - now) / 1000L) + "s, runs " + task.getRunCount()
+                        + ", errors " + task.getErrorCount() + (task.getConsecutiveErrors() > 0 ? " (last: " + task.getLastError() + ")" : ""));
+            });
+            return;
+        }
+
+        /**
+         * @consolecommand eventstats - Prints the async lanes, and how many times each event was dispatched, how long its handlers took and how many were dropped or blocked.
+         */
+        if (message.equalsIgnoreCase("eventstats")) {
+            JSONObject stats = EventBus.instance().getStats();
+            JSONArray lanes = stats.getJSONArray("lanes");
+            JSONArray events = stats.getJSONArray("events");
+            com.gmt2001.Console.out.println("Event bus (" + stats.getInt("queued") + " async events queued):");
+            for (int i = 0; i < lanes.length(); i++) {
+                JSONObject lane = lanes.getJSONObject(i);
+                com.gmt2001.Console.out.println("  lane " + lane.getString("name") + ": " + lane.getInt("queued") + " queued, " + lane.getInt("active") + " dispatching, "
+                        + (lane.getBoolean("dropWhenFull") ? "drops" : "blocks") + " when full");
+            }
+            for (int i = 0; i < events.length(); i++) {
+                JSONObject eventStats = events.getJSONObject(i);
+                com.gmt2001.Console.out.println("  " + eventStats.getString("name") + ": " + eventStats.getLong("count") + " dispatched, avg " + eventStats.getLong("avgMicros")
+                        + "us, max " + eventStats.getLong("maxMicros") + "us" + (eventStats.getLong("dropped") > 0L ? ", " + eventStats.getLong("dropped") + " dropped" : "")
+                        + (eventStats.getLong("blocked") > 0L ? ", " + eventStats.getLong("blocked") + " blocked" : ""));
+            }
+            return;
+        }
+
+        /**
+         * @consolecommand hookstats [amount] - Prints the script hooks that took the most time.
+         */
+        if (message.equalsIgnoreCase("hookstats")) {
+            int limit = 10;
+            if (argument != null && argument[0].matches("\\d+")) {
+                limit = Integer.parseInt(argument[0]);
+            }
+
+            JSONArray hooks = HookMetrics.instance().getStats(limit).getJSONArray("hooks");
+            com.gmt2001.Console.out.println("Slowest script hooks by total time:");
+            for (int i = 0; i < hooks.length(); i++) {
+                JSONObject hookStats = hooks.getJSONObject(i);
+                com.gmt2001.Console.out.println("  [" + hookStats.getString("script") + "] " + hookStats.getString("hook") + ": " + hookStats.getLong("count") + " calls, "
+                        + hookStats.getLong("totalMs") + "ms total, p50 " + hookStats.getLong("p50Micros") + "us, p99 " + hookStats.getLong("p99Micros") + "us, max "
+                        + hookStats.getLong("maxMicros") + "us, " + hookStats.getLong("slow") + " slow");
+            }
+            return;
+        }
+
         /**
          * @consolecommand revloconvert [CSV file] - Command that imports points from RevloBot.
          */
@@ -265,7 +326,13 @@ public class ConsoleEventHandler implements Listener {
             datefmt.setTimeZone(TimeZone.getTimeZone(PhantomBot.getTimeZone()));
             String timestamp = datefmt.format(new Date());
 
-            dataStore.backupDB("phantombot.manual.backup." + timestamp + ".db");
+            File backup = DataStoreBackup.backup(dataStore, "phantombot.manual.backup." + timestamp, PhantomBot.instance().getBackupDBCompress());
+
+            if (backup != null) {
+                com.gmt2001.Console.out.println("Backed up the database to " + backup.getPath());
+            } else if (!dataStore.canBackup()) {
+                com.gmt2001.Console.out.println("This database type can't be backed up");
+            }
             return;
         }
 
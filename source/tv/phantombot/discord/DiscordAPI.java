@@ -21,10 +21,19 @@ import discord4j.common.retry.ReconnectOptions;
 import discord4j.core.DiscordClient;
 import discord4j.core.DiscordClientBuilder;
 import discord4j.core.GatewayDiscordClient;
+import discord4j.core.event.domain.PresenceUpdateEvent;
 import discord4j.core.event.domain.VoiceStateUpdateEvent;
+import discord4j.core.event.domain.channel.NewsChannelCreateEvent;
+import discord4j.core.event.domain.channel.NewsChannelDeleteEvent;
+import discord4j.core.event.domain.channel.NewsChannelUpdateEvent;
+import discord4j.core.event.domain.channel.TextChannelCreateEvent;
+import discord4j.core.event.domain.channel.TextChannelDeleteEvent;
+import discord4j.core.event.domain.channel.TextChannelUpdateEvent;
 import discord4j.core.event.domain.guild.GuildCreateEvent;
+import discord4j.core.event.domain.guild.MemberChunkEvent;
 import discord4j.core.event.domain.guild.MemberJoinEvent;
 import discord4j.core.event.domain.guild.MemberLeaveEvent;
+import discord4j.core.event.domain.guild.MemberUpdateEvent;
 import discord4j.core.event.domain.lifecycle.ReadyEvent;
 import discord4j.core.event.domain.message.MessageCreateEvent;
 import discord4j.core.event.domain.message.ReactionAddEvent;
@@ -53,6 +62,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import reactor.core.publisher.Mono;
 import tv.phantombot.PhantomBot;
+import tv.phantombot.discord.util.DiscordCache;
 import tv.phantombot.discord.util.DiscordUtil;
 import tv.phantombot.event.EventBus;
 import tv.phantombot.event.discord.channel.DiscordChannelCommandEvent;
@@ -190,6 +200,16 @@ public class DiscordAPI extends DiscordUtil {
         DiscordAPI.gateway.getEventDispatcher().on(ReactionAddEvent.class).subscribe(event -> DiscordEventListener.onDiscordMessageReactionAddEvent(event));
         DiscordAPI.gateway.getEventDispatcher().on(ReactionRemoveEvent.class).subscribe(event -> DiscordEventListener.onDiscordMessageReactionRemoveEvent(event));
         DiscordAPI.gateway.getEventDispatcher().on(VoiceStateUpdateEvent.class).subscribe(event -> DiscordEventListener.onDiscordVoiceStateUpdateEvent(event));
+        DiscordAPI.gateway.getEventDispatcher().on(MemberChunkEvent.class).subscribe(event -> DiscordEventListener.onDiscordMemberChunkEvent(event));
+        DiscordAPI.gateway.getEventDispatcher().on(MemberUpdateEvent.class).subscribe(event -> DiscordEventListener.onDiscordMemberUpdateEvent(event));
+        DiscordAPI.gateway.getEventDispatcher().on(PresenceUpdateEvent.class).filter(event -> event.getNewUsername().isPresent())
+                .subscribe(event -> DiscordEventListener.onDiscordUsernameUpdateEvent(event));
+        DiscordAPI.gateway.getEventDispatcher().on(TextChannelCreateEvent.class).subscribe(event -> DiscordCache.instance().putChannel(event.getChannel()));
+        DiscordAPI.gateway.getEventDispatcher().on(TextChannelUpdateEvent.class).subscribe(event -> DiscordCache.instance().putChannel(event.getCurrent()));
+        DiscordAPI.gateway.getEventDispatcher().on(TextChannelDeleteEvent.class).subscribe(event -> DiscordCache.instance().removeChannel(event.getChannel().getId()));
+        DiscordAPI.gateway.getEventDispatcher().on(NewsChannelCreateEvent.class).subscribe(event -> DiscordCache.instance().putChannel(event.getChannel()));
+        DiscordAPI.gateway.getEventDispatcher().on(NewsChannelUpdateEvent.class).subscribe(event -> DiscordCache.instance().putChannel(event.getCurrent()));
+        DiscordAPI.gateway.getEventDispatcher().on(NewsChannelDeleteEvent.class).subscribe(event -> DiscordCache.instance().removeChannel(event.getChannel().getId()));
     }
 
     /**
@@ -278,6 +298,7 @@ public class DiscordAPI extends DiscordUtil {
             reconnectState = ConnectionState.CANNOT_RECONNECT;
         } else {
             DiscordAPI.guild = events.get(0).getGuild();
+            DiscordCache.instance().load(DiscordAPI.guild);
         }
     }
 
@@ -383,22 +404,61 @@ public class DiscordAPI extends DiscordUtil {
         }
 
         public static void onDiscordUserJoinEvent(MemberJoinEvent event) {
+            if (DiscordCache.instance().isGuild(event.getGuildId())) {
+                DiscordCache.instance().putMember(event.getMember());
+            }
+
             EventBus.instance().postAsync(new DiscordChannelJoinEvent(event.getMember()));
         }
 
         public static void onDiscordUserLeaveEvent(MemberLeaveEvent event) {
+            if (DiscordCache.instance().isGuild(event.getGuildId())) {
+                DiscordCache.instance().removeMember(event.getUser().getId());
+            }
+
             EventBus.instance().postAsync(new DiscordChannelPartEvent(event.getUser()));
         }
 
+        public static void onDiscordMemberChunkEvent(MemberChunkEvent event) {
+            if (DiscordCache.instance().isGuild(event.getGuildId())) {
+                event.getMembers().forEach(DiscordCache.instance()::putMember);
+            }
+        }
+
+        public static void onDiscordMemberUpdateEvent(MemberUpdateEvent event) {
+            if (DiscordCache.instance().isGuild(event.getGuildId())) {
+                event.getMember().doOnNext(DiscordCache.instance()::putMember).doOnError(e -> com.gmt2001.Console.debug.printStackTrace(e)).subscribe();
+            }
+        }
+
+        public static void onDiscordUsernameUpdateEvent(PresenceUpdateEvent event) {
+            if (DiscordCache.instance().isGuild(event.getGuildId())) {
+                event.getMember().doOnNext(DiscordCache.instance()::putMember).doOnError(e -> com.gmt2001.Console.debug.printStackTrace(e)).subscribe();
+            }
+        }
+
         public static void onDiscordRoleCreateEvent(RoleCreateEvent event) {
+            if (DiscordCache.instance().isGuild(event.getGuildId())) {
+                DiscordCache.instance().putRole(event.getRole());
+            }
+
             EventBus.instance().post(new DiscordRoleCreatedEvent(event.getRole()));
         }
 
         public static void onDiscordRoleUpdateEvent(RoleUpdateEvent event) {
+            if (DiscordCache.instance().isGuild(event.getCurrent().getGuildId())) {
+                DiscordCache.instance().putRole(event.getCurrent());
+            }
+
             EventBus.instance().post(new DiscordRoleUpdatedEvent(event.getCurrent()));
         }
 
         public static void onDiscordRoleDeleteEvent(RoleDeleteEvent event) {
+            if (DiscordCache.instance().isGuild(event.getGuildId())) {
+                DiscordCache.instance().removeRole(event.getRoleId());
+            }
+
+
             Role role = event.getRole().get();
 
             if (role == null) {
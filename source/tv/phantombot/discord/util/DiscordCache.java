@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.discord.util;
+
+import com.gmt2001.Metrics;
+import discord4j.core.object.entity.Guild;
+import discord4j.core.object.entity.Member;
+import discord4j.core.object.entity.Role;
+import discord4j.core.object.entity.channel.GuildMessageChannel;
+import discord4j.rest.util.Snowflake;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory index of the members, roles and message channels of the guild.
+ *
+ * The index is seeded once when the guild becomes available and is then kept current from gateway events, so that lookups by id, name or
+ * mention are hash lookups instead of a scan of every member of the guild.
+ *
+ * Until a seed has completed, {@code hasAll*} returns false and callers should fall back to asking Discord4J.
+ *
+ * @author agent
+ */
+public final class DiscordCache {
+
+    private static final DiscordCache INSTANCE = new DiscordCache();
+    private static final Pattern MEMBER_MENTION = Pattern.compile("^<@!?(\\d+)>$");
+    private static final Pattern ROLE_MENTION = Pattern.compile("^<@&(\\d+)>$");
+    private static final Pattern ID = Pattern.compile("^\\d+$");
+    private final Map<Long, Member> members = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> membersByName = new ConcurrentHashMap<>();
+    private final Map<Long, Role> roles = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> rolesByName = new ConcurrentHashMap<>();
+    private final Map<Long, GuildMessageChannel> channels = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> channelsByName = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong(0L);
+    private final AtomicLong hits = new AtomicLong(0L);
+    private final AtomicLong misses = new AtomicLong(0L);
+    private volatile long guildId = 0L;
+    private volatile boolean allMembers = false;
+    private volatile boolean allRoles = false;
+    private volatile boolean allChannels = false;
+
+    public static DiscordCache instance() {
+        return INSTANCE;
+    }
+
+    private DiscordCache() {
+        Metrics.instance().gauge("phantombot_discord_cache_members", "Guild members held in the Discord lookup index", members::size);
+        Metrics.instance().gauge("phantombot_discord_cache_roles", "Guild roles held in the Discord lookup index", roles::size);
+        Metrics.instance().gauge("phantombot_discord_cache_channels", "Guild message channels held in the Discord lookup index", channels::size);
+        Metrics.instance().counter("phantombot_discord_cache_hits_total", "Discord lookups answered from the index", hits::get);
+        Metrics.instance().counter("phantombot_discord_cache_misses_total", "Discord lookups that found nothing in the index", misses::get);
+    }
+
+    /**
+     * Drops the current index and rebuilds it from the Discord4J state of the provided guild
+     *
+     * @param guild The guild to index
+     */
+    public void load(Guild guild) {
+        long gen;
+
+        synchronized (this) {
+            gen = this.generation.incrementAndGet();
+            this.guildId = guild.getId().asLong();
+            this.allMembers = false;
+            this.allRoles = false;
+            this.allChannels = false;
+            this.members.clear();
+            this.membersByName.clear();
+            this.roles.clear();
+            this.rolesByName.clear();
+            this.channels.clear();
+            this.channelsByName.clear();
+        }
+
+        guild.getRoles().filter(r -> this.generation.get() == gen).doOnNext(this::putRole).doOnComplete(() -> {
+            if (this.generation.get() == gen) {
+                this.allRoles = true;
+            }
+        }).doOnError(e -> com.gmt2001.Console.debug.printStackTrace(e)).subscribe();
+
+        guild.getChannels().ofType(GuildMessageChannel.class).filter(c -> this.generation.get() == gen).doOnNext(this::putChannel).doOnComplete(() -> {
+            if (this.generation.get() == gen) {
+                this.allChannels = true;
+            }
+        }).doOnError(e -> com.gmt2001.Console.debug.printStackTrace(e)).subscribe();
+
+        guild.getMembers().filter(m -> this.generation.get() == gen).doOnNext(this::putMember).doOnComplete(() -> {
+            if (this.generation.get() == gen) {
+                this.allMembers = true;
+                com.gmt2001.Console.debug.println("Indexed " + this.members.size() + " members, " + this.roles.size() + " roles, "
+                        + this.channels.size() + " channels");
+            }
+        }).doOnError(e -> com.gmt2001.Console.debug.printStackTrace(e)).subscribe();
+    }
+
+    /**
+     * Indicates if the index belongs to the provided guild
+     *
+     * @param guildId The id of a guild
+     * @return
+     */
+    public boolean isGuild(Snowflake guildId) {
+        return guildId != null && guildId.asLong() == this.guildId;
+    }
+
+    public boolean hasAllMembers() {
+        return this.allMembers;
+    }
+
+    public boolean hasAllRoles() {
+        return this.allRoles;
+    }
+
+    public boolean hasAllChannels() {
+        return this.allChannels;
+    }
+
+    public synchronized void putMember(Member member) {
+        long id = member.getId().asLong();
+        Member old = this.members.put(id, member);
+
+        if (old != null) {
+            unindex(this.membersByName, old.getUsername(), id);
+            unindex(this.membersByName, old.getDisplayName(), id);
+        }
+
+        index(this.membersByName, member.getUsername(), id);
+        index(this.membersByName, member.getDisplayName(), id);
+    }
+
+    public synchronized void removeMember(Snowflake id) {
+        Member old = this.members.remove(id.asLong());
+
+        if (old != null) {
+            unindex(this.membersByName, old.getUsername(), id.asLong());
+            unindex(this.membersByName, old.getDisplayName(), id.asLong());
+        }
+    }
+
+    public synchronized void putRole(Role role) {
+        long id = role.getId().asLong();
+        Role old = this.roles.put(id, role);
+
+        if (old != null) {
+            unindex(this.rolesByName, old.getName(), id);
+        }
+
+        index(this.rolesByName, role.getName(), id);
+    }
+
+    public synchronized void removeRole(Snowflake id) {
+        Role old = this.roles.remove(id.asLong());
+
+        if (old != null) {
+            unindex(this.rolesByName, old.getName(), id.asLong());
+        }
+    }
+
+    public synchronized void putChannel(GuildMessageChannel channel) {
+        long id = channel.getId().asLong();
+        GuildMessageChannel old = this.channels.put(id, channel);
+
+        if (old != null) {
+            unindex(this.channelsByName, old.getName(), id);
+        }
+
+        index(this.channelsByName, channel.getName(), id);
+    }
+
+    public synchronized void removeChannel(Snowflake id) {
+        GuildMessageChannel old = this.channels.remove(id.asLong());
+
+        if (old != null) {
+            unindex(this.channelsByName, old.getName(), id.asLong());
+        }
+    }
+
+    public Optional<Member> getMember(long id) {
+        return this.count(Optional.ofNullable(this.members.get(id)));
+    }
+
+    /**
+     * Finds a member by username, display name, or mention
+     *
+     * @param name The name or mention, case-insensitive
+     * @return
+     */
+    public Optional<Member> getMember(String name) {
+        Matcher m = MEMBER_MENTION.matcher(name);
+
+        if (m.matches()) {
+            return this.getMember(Long.parseUnsignedLong(m.group(1)));
+        }
+
+        return this.count(first(this.membersByName, this.members, name));
+    }
+
+    /**
+     * Finds a member by display name and discriminator
+     *
+     * @param name The display name, case-insensitive
+     * @param discriminator The discriminator
+     * @return
+     */
+    public Optional<Member> getMember(String name, String discriminator) {
+        Set<Long> ids = this.membersByName.get(name.toLowerCase());
+
+        if (ids != null) {
+            for (Long id : ids) {
+                Member member = this.members.get(id);
+
+                if (member != null && member.getDisplayName().equalsIgnoreCase(name) && member.getDiscriminator().equalsIgnoreCase(discriminator)) {
+                    return this.count(Optional.of(member));
+                }
+            }
+        }
+
+        return this.count(Optional.empty());
+    }
+
+    public List<Member> getMembers() {
+        return new ArrayList<>(this.members.values());
+    }
+
+    public Optional<Role> getRole(long id) {
+        return this.count(Optional.ofNullable(this.roles.get(id)));
+    }
+
+    /**
+     * Finds a role by name or mention
+     *
+     * @param name The name or mention, case-insensitive
+     * @return
+     */
+    public Optional<Role> getRole(String name) {
+        Matcher m = ROLE_MENTION.matcher(name);
+
+        if (m.matches()) {
+            return this.getRole(Long.parseUnsignedLong(m.group(1)));
+        }
+
+        return this.count(first(this.rolesByName, this.roles, name));
+    }
+
+    public List<Role> getRoles() {
+        return new ArrayList<>(this.roles.values());
+    }
+
+    /**
+     * Resolves the roles of a member, skipping any that are not indexed
+     *
+     * @param member The member
+     * @return
+     */
+    public List<Role> getRoles(Member member) {
+        List<Role> ret = new ArrayList<>();
+
+        member.getRoleIds().forEach(id -> {
+            Role role = this.roles.get(id.asLong());
+
+            if (role != null) {
+                ret.add(role);
+            }
+        });
+
+        return ret;
+    }
+
+    public Optional<GuildMessageChannel> getChannel(long id) {
+        return this.count(Optional.ofNullable(this.channels.get(id)));
+    }
+
+    /**
+     * Finds a message channel by name or id
+     *
+     * @param name The name, without the leading #, case-insensitive; or the id
+     * @return
+     */
+    public Optional<GuildMessageChannel> getChannel(String name) {
+        Optional<GuildMessageChannel> ret = first(this.channelsByName, this.channels, name);
+
+        if (!ret.isPresent() && ID.matcher(name).matches()) {
+            ret = Optional.ofNullable(this.channels.get(Long.parseUnsignedLong(name)));
+        }
+
+        return this.count(ret);
+    }
+
+    private <T> Optional<T> count(Optional<T> ret) {
+        if (ret.isPresent()) {
+            this.hits.incrementAndGet();
+        } else {
+            this.misses.incrementAndGet();
+        }
+
+        return ret;
+    }
+
+    private static <T> Optional<T> first(Map<String, Set<Long>> index, Map<Long, T> values, String name) {
+        Set<Long> ids = index.get(name.toLowerCase());
+
+        if (ids != null) {
+            for (Long id : ids) {
+                T value = values.get(id);
+
+                if (value != null) {
+                    return Optional.of(value);
+                }
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    private static void index(Map<String, Set<Long>> index, String name, long id) {
+        index.computeIfAbsent(name.toLowerCase(), k -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+
+    private static void unindex(Map<String, Set<Long>> index, String name, long id) {
+        index.computeIfPresent(name.toLowerCase(), (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+}
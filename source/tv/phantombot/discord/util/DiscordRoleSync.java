@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.discord.util;
+
+import com.gmt2001.Metrics;
+import com.gmt2001.datastore.DataStore;
+import com.gmt2001.datastore.KeyValue;
+import discord4j.core.object.entity.Member;
+import discord4j.core.object.entity.Role;
+import discord4j.rest.util.Snowflake;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import tv.phantombot.PhantomBot;
+import tv.phantombot.discord.DiscordAPI;
+
+/**
+ * Keeps the Discord roles of linked accounts in line with their PhantomBot permission group and rank.
+ *
+ * Each cycle reads the small tables in bulk, works out the roles each linked member should have, and compares them with the roles held in
+ * {@link DiscordCache}. Only members whose roles actually differ are queued. The queue holds at most one pending change per member and is
+ * applied one request at a time, since every member edit in a guild shares the same REST rate limit bucket; Discord4J delays each request
+ * until that bucket has room.
+ *
+ * @author agent
+ */
+public final class DiscordRoleSync {
+
+    private static final DiscordRoleSync INSTANCE = new DiscordRoleSync();
+    private static final Duration EDIT_TIMEOUT = Duration.ofMinutes(2);
+    private final Map<Long, Change> pending = new LinkedHashMap<>();
+    private final AtomicBoolean syncing = new AtomicBoolean(false);
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final ExecutorService worker;
+    private final Metrics.Counter checked;
+    private final Metrics.Counter queued;
+    private final Metrics.Counter applied;
+    private final Metrics.Counter failed;
+    private volatile double lastCycleSeconds = 0.0;
+
+    public static DiscordRoleSync instance() {
+        return INSTANCE;
+    }
+
+    private DiscordRoleSync() {
+        this.worker = Executors.newSingleThreadExecutor((r) -> {
+            Thread t = new Thread(r, "tv.phantombot.discord.util.DiscordRoleSync");
+            t.setDaemon(true);
+            return t;
+        });
+
+        this.checked = Metrics.instance().counter("phantombot_discord_rolesync_users_checked_total", "Linked Discord accounts compared with their expected roles");
+        this.queued = Metrics.instance().counter("phantombot_discord_rolesync_changes_queued_total", "Discord role changes queued");
+        this.applied = Metrics.instance().counter("phantombot_discord_rolesync_changes_applied_total", "Discord role changes sent successfully");
+        this.failed = Metrics.instance().counter("phantombot_discord_rolesync_changes_failed_total", "Discord role changes that failed");
+        Metrics.instance().gauge("phantombot_discord_rolesync_backlog", "Discord role changes waiting to be sent", this::getBacklog);
+        Metrics.instance().gauge("phantombot_discord_rolesync_last_cycle_seconds", "Time taken by the last role comparison pass", () -> this.lastCycleSeconds);
+    }
+
+    /**
+     * Returns the number of members waiting for a role change
+     *
+     * @return
+     */
+    public synchronized int getBacklog() {
+        return this.pending.size();
+    }
+
+    /**
+     * Compares the roles of every linked account with the expected roles and queues the differences
+     *
+     * Does nothing if a previous pass is still running, or if the guild index is not complete yet.
+     *
+     * @param permissions true to sync the permission group role
+     * @param ranks true to sync the rank role
+     */
+    public void sync(boolean permissions, boolean ranks) {
+        DiscordCache cache = DiscordCache.instance();
+
+        if ((!permissions && !ranks) || !cache.hasAllMembers() || !cache.hasAllRoles() || !this.syncing.compareAndSet(false, true)) {
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            DataStore db = PhantomBot.instance().getDataStore();
+            Set<String> blacklist = new HashSet<>();
+            Map<String, String> groups = permissions ? values(db, "groups", false) : new HashMap<>();
+            Map<String, String> viewerRanks = ranks ? values(db, "viewerRanks", true) : new HashMap<>();
+            Map<String, String> records = values(db, "discordRoles", false);
+            TreeMap<Long, String> rankTable = new TreeMap<>();
+            List<String> recordKeys = new ArrayList<>();
+            List<String> recordValues = new ArrayList<>();
+
+            for (String key : db.GetKeyList("blacklistedDiscordRoles", "")) {
+                blacklist.add(key.toLowerCase());
+            }
+
+            if (ranks) {
+                for (KeyValue kv : db.GetKeyValueList("ranksMapping", "")) {
+                    try {
+                        rankTable.put(Long.parseLong(kv.getKey().trim()), kv.getValue());
+                    } catch (NumberFormatException ex) {
+                    }
+                }
+            }
+
+            for (KeyValue link : db.GetKeyValueList("discordToTwitch", "")) {
+                Optional<Member> member;
+
+                try {
+                    member = cache.getMember(Long.parseUnsignedLong(link.getKey()));
+                } catch (NumberFormatException ex) {
+                    continue;
+                }
+
+                if (!member.isPresent() || link.getValue() == null) {
+                    continue;
+                }
+
+                String username = link.getValue().toLowerCase();
+                List<String> desired = new ArrayList<>();
+                this.checked.inc();
+
+                if (permissions) {
+                    String group = db.GetString("group", "", username);
+                    String name = group == null ? null : groups.get(group);
+
+                    if (name != null && !name.trim().isEmpty() && !blacklist.contains(group.toLowerCase()) && !blacklist.contains(name.trim().toLowerCase())) {
+                        desired.add(name.trim());
+                    }
+                }
+
+                if (ranks) {
+                    String rank = viewerRanks.get(username);
+
+                    if (rank == null && !rankTable.isEmpty()) {
+                        Map.Entry<Long, String> entry = rankTable.floorEntry(hours(db.GetString("time", "", username)));
+                        rank = entry == null ? null : entry.getValue();
+                    }
+
+                    if (rank != null && !rank.trim().isEmpty() && !blacklist.contains(rank.trim().toLowerCase())) {
+                        desired.add(rank.trim());
+                    }
+                }
+
+                if (desired.isEmpty()) {
+                    continue;
+                }
+
+                String record = String.join(",", desired);
+                String oldRecord = records.get(link.getKey());
+                Set<Snowflake> current = member.get().getRoleIds();
+                Set<Snowflake> target = target(cache, current, desired, oldRecord);
+
+                if (!target.equals(current)) {
+                    this.enqueue(member.get().getId().asLong(), target, link.getKey(), record);
+                } else if (!record.equals(oldRecord)) {
+                    recordKeys.add(link.getKey());
+                    recordValues.add(record);
+                }
+            }
+
+            if (!recordKeys.isEmpty()) {
+                db.SetBatchString("discordRoles", "", recordKeys.toArray(new String[0]), recordValues.toArray(new String[0]));
+            }
+        } catch (Exception ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+        } finally {
+            this.lastCycleSeconds = (System.nanoTime() - start) / 1000000000.0;
+            this.syncing.set(false);
+        }
+    }
+
+    /**
+     * Works out the full role list of a member: the current roles, minus those previously assigned by the sync which are no longer expected,
+     * plus the expected roles
+     */
+    private static Set<Snowflake> target(DiscordCache cache, Set<Snowflake> current, List<String> desired, String oldRecord) {
+        Set<Snowflake> target = new HashSet<>(current);
+        Set<String> wanted = new HashSet<>();
+
+        desired.forEach(name -> wanted.add(name.toLowerCase()));
+
+        if (oldRecord != null) {
+            for (String name : oldRecord.split(",")) {
+                if (!name.trim().isEmpty() && !wanted.contains(name.trim().toLowerCase())) {
+                    cache.getRole(name.trim()).map(Role::getId).ifPresent(target::remove);
+                }
+            }
+        }
+
+        for (String name : desired) {
+            cache.getRole(name).map(Role::getId).ifPresent(target::add);
+        }
+
+        return target;
+    }
+
+    private static Map<String, String> values(DataStore db, String table, boolean lowerKeys) {
+        Map<String, String> ret = new HashMap<>();
+
+        for (KeyValue kv : db.GetKeyValueList(table, "")) {
+            ret.put(lowerKeys ? kv.getKey().toLowerCase() : kv.getKey(), kv.getValue());
+        }
+
+        return ret;
+    }
+
+    private static long hours(String seconds) {
+        if (seconds == null) {
+            return 0L;
+        }
+
+        try {
+            return (long) (Double.parseDouble(seconds) / 3600);
+        } catch (NumberFormatException ex) {
+            return 0L;
+        }
+    }
+
+    private void enqueue(long id, Set<Snowflake> roles, String key, String record) {
+        synchronized (this) {
+            if (this.pending.put(id, new Change(id, roles, key, record)) == null) {
+                this.queued.inc();
+            }
+        }
+
+        if (this.draining.compareAndSet(false, true)) {
+            this.worker.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Change change;
+
+            synchronized (this) {
+                Iterator<Change> it = this.pending.values().iterator();
+
+                if (!it.hasNext()) {
+                    this.draining.set(false);
+                    return;
+                }
+
+                change = it.next();
+                it.remove();
+            }
+
+            this.apply(change);
+        }
+    }
+
+    private void apply(Change change) {
+        Optional<Member> member = DiscordCache.instance().getMember(change.id);
+
+        if (!member.isPresent() || DiscordAPI.getGuild() == null) {
+            return;
+        }
+
+        try {
+            member.get().edit(spec -> spec.setRoles(change.roles)).block(EDIT_TIMEOUT);
+            PhantomBot.instance().getDataStore().SetString("discordRoles", "", change.key, change.record);
+            this.applied.inc();
+        } catch (Exception ex) {
+            this.failed.inc();
+            com.gmt2001.Console.err.println("Failed to update the Discord roles of " + member.get().getUsername() + ": " + ex.getMessage());
+            com.gmt2001.Console.debug.printStackTrace(ex);
+        }
+    }
+
+    private static final class Change {
+
+        private final long id;
+        private final Set<Snowflake> roles;
+        private final String key;
+        private final String record;
+
+        private Change(long id, Set<Snowflake> roles, String key, String record) {
+            this.id = id;
+            this.roles = roles;
+            this.key = key;
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.discord.util;
+
+import com.gmt2001.Metrics;
+import discord4j.core.object.entity.Message;
+import discord4j.core.object.entity.channel.MessageChannel;
+import discord4j.rest.http.client.ClientException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import reactor.core.publisher.Mono;
+
+/**
+ * Sends Discord messages without blocking the caller.
+ *
+ * Each channel has its own bounded lane with one request in flight, so messages to one channel keep their order while different
+ * channels send in parallel. Rate limits (429), server errors, and network errors are retried with jittered exponential backoff; other
+ * errors fail the handle straight away.
+ *
+ * @author agent
+ */
+public final class DiscordSendQueue {
+
+    private static final DiscordSendQueue INSTANCE = new DiscordSendQueue();
+    private static final int MAX_PENDING = 50;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_DELAY_MS = 1000L;
+    private static final long MAX_DELAY_MS = 30000L;
+    private static final Metrics.Histogram WAIT = Metrics.instance().histogram("phantombot_discord_send_wait_seconds", "Time Discord messages waited in their channel lane",
+            0.05, 0.1, 0.5, 1, 2, 5, 10, 30, 60, 300);
+    private static final Metrics.Histogram SEND = Metrics.instance().histogram("phantombot_discord_send_seconds", "Time taken to send a Discord message, including retries",
+            0.05, 0.1, 0.25, 0.5, 1, 2, 5, 10, 30, 60);
+    private final Map<Long, Lane> lanes = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger(0);
+    private final Metrics.Counter retries;
+    private final Metrics.Counter failures;
+    private final Metrics.Counter dropped;
+
+    public static DiscordSendQueue instance() {
+        return INSTANCE;
+    }
+
+    private DiscordSendQueue() {
+        this.retries = Metrics.instance().counter("phantombot_discord_send_retries_total", "Discord sends retried after a rate limit or transient error");
+        this.failures = Metrics.instance().counter("phantombot_discord_send_failures_total", "Discord sends that failed");
+        this.dropped = Metrics.instance().counter("phantombot_discord_send_dropped_total", "Discord sends rejected because their channel lane was full");
+        Metrics.instance().gauge("phantombot_discord_send_queued", "Discord sends waiting in a channel lane", this.queued::get);
+    }
+
+    /**
+     * Queues a request on the lane of a channel
+     *
+     * @param channel The channel the request sends to
+     * @param request Creates the request; called again for each retry
+     * @return A handle that completes with the sent message, or exceptionally if the lane is full or the send failed
+     */
+    public CompletableFuture<Message> submit(MessageChannel channel, Supplier<Mono<Message>> request) {
+        Lane lane = this.lanes.computeIfAbsent(channel.getId().asLong(), k -> new Lane());
+        Job job = new Job(request);
+        boolean start;
+
+        synchronized (lane) {
+            if (lane.jobs.size() >= MAX_PENDING) {
+                this.dropped.inc();
+                com.gmt2001.Console.warn.println("Discord send queue for channel " + channel.getId().asString() + " is full, dropping a message");
+                job.future.completeExceptionally(new RejectedExecutionException("Discord send queue is full"));
+                return job.future;
+            }
+
+            lane.jobs.add(job);
+            this.queued.incrementAndGet();
+            start = !lane.busy;
+            lane.busy = true;
+        }
+
+        if (start) {
+            this.next(lane);
+        }
+
+        return job.future;
+    }
+
+    private void next(Lane lane) {
+        Job job;
+
+        synchronized (lane) {
+            job = lane.jobs.poll();
+
+            if (job == null) {
+                lane.busy = false;
+                return;
+            }
+        }
+
+        this.queued.decrementAndGet();
+        long started = System.nanoTime();
+        WAIT.observe((started - job.queued) / 1000000000.0);
+
+        this.attempt(job, 1).doOnSuccess(m -> {
+            SEND.observe((System.nanoTime() - started) / 1000000000.0);
+            job.future.complete(m);
+        }).doOnError(e -> {
+            this.failures.inc();
+            com.gmt2001.Console.err.printStackTrace(e);
+            job.future.completeExceptionally(e);
+        }).doFinally(s -> this.next(lane)).subscribe(m -> {
+        }, e -> {
+        });
+    }
+
+    private Mono<Message> attempt(Job job, int attempt) {
+        return Mono.defer(job.request).onErrorResume(e -> {
+            if (attempt >= MAX_ATTEMPTS || !isRetryable(e)) {
+                return Mono.error(e);
+            }
+
+            long delay = Math.max(backoff(attempt), retryAfter(e));
+            this.retries.inc();
+            com.gmt2001.Console.debug.println("Discord send failed (" + e.getMessage() + "), retrying in " + delay + "ms");
+            return Mono.delay(Duration.ofMillis(delay)).then(this.attempt(job, attempt + 1));
+        });
+    }
+
+    private static boolean isRetryable(Throwable e) {
+        if (e instanceof ClientException) {
+            int code = ((ClientException) e).getStatus().code();
+            return code == 429 || code >= 500;
+        }
+
+        return !(e instanceof IllegalArgumentException || e instanceof IllegalStateException);
+    }
+
+    /**
+     * Equal jitter: half of an exponentially growing delay, plus a random share of the other half
+     */
+    private static long backoff(int attempt) {
+        long cap = Math.min(MAX_DELAY_MS, BASE_DELAY_MS << (attempt - 1));
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    private static long retryAfter(Throwable e) {
+        if (e instanceof ClientException) {
+            String value = ((ClientException) e).getHeaders().get("Retry-After");
+
+            if (value != null) {
+                try {
+                    return (long) (Double.parseDouble(value) * 1000);
+                } catch (NumberFormatException ex) {
+                }
+            }
+        }
+
+        return 0L;
+    }
+
+    private static final class Lane {
+
+        private final Deque<Job> jobs = new ArrayDeque<>();
+        private boolean busy = false;
+    }
+
+    private static final class Job {
+
+        private final Supplier<Mono<Message>> request;
+        private final CompletableFuture<Message> future = new CompletableFuture<>();
+        private final long queued = System.nanoTime();
+
+        private Job(Supplier<Mono<Message>> request) {
+            this.request = request;
+        }
+    }
+}
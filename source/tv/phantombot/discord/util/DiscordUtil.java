@@ -36,8 +36,11 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import reactor.core.publisher.Flux;
@@ -422,6 +425,110 @@ public class DiscordUtil {
         return sendFileAsync(channelName, "", fileLocation).block();
     }
 
+    /**
+     * Method to queue a message to a channel without waiting for it to be sent.
+     *
+     * @param channel
+     * @param message
+     * @return A handle that completes with the sent message
+     */
+    public CompletableFuture<Message> queueMessage(MessageChannel channel, String message) {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel object was null");
+        }
+
+        String label = channel instanceof GuildMessageChannel ? "#" + ((GuildMessageChannel) channel).getName() : "DM";
+
+        return DiscordSendQueue.instance().submit(channel, () -> channel.createMessage(message)
+                .doOnSuccess(m -> com.gmt2001.Console.out.println("[DISCORD] [" + label + "] [CHAT] " + message)));
+    }
+
+    public CompletableFuture<Message> queueMessage(String channelName, String message) {
+        return queueToChannel(channelName, channel -> queueMessage(channel, message));
+    }
+
+    /**
+     * Method to queue an embed message to a channel without waiting for it to be sent.
+     *
+     * @param channel
+     * @param embed
+     * @return A handle that completes with the sent message
+     */
+    public CompletableFuture<Message> queueMessageEmbed(GuildMessageChannel channel, Consumer<? super EmbedCreateSpec> embed) {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel object was null");
+        }
+
+        return DiscordSendQueue.instance().submit(channel, () -> channel.createMessage(msg -> msg.setEmbed(embed))
+                .doOnSuccess(m -> com.gmt2001.Console.out.println("[DISCORD] [#" + channel.getName() + "] [EMBED] " + m.getEmbeds().get(0).getDescription().orElse(m.getEmbeds().get(0).getTitle().orElse("")))));
+    }
+
+    public CompletableFuture<Message> queueMessageEmbed(String channelName, Consumer<? super EmbedCreateSpec> embed) {
+        return queueToChannel(channelName, channel -> queueMessageEmbed(channel, embed));
+    }
+
+    public CompletableFuture<Message> queueMessageEmbed(GuildMessageChannel channel, String color, String message) {
+        return queueMessageEmbed(channel, ebd -> ebd.setColor(getColor(color)).setDescription(message));
+    }
+
+    public CompletableFuture<Message> queueMessageEmbed(String channelName, String color, String message) {
+        return queueMessageEmbed(channelName, ebd -> ebd.setColor(getColor(color)).setDescription(message));
+    }
+
+    /**
+     * Method to queue a file to a channel without waiting for it to be sent.
+     *
+     * @param channel
+     * @param message
+     * @param fileLocation
+     * @return A handle that completes with the sent message
+     */
+    public CompletableFuture<Message> queueFile(GuildMessageChannel channel, String message, String fileLocation) {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel object was null");
+        }
+
+        if (!this.isValidFilePath(fileLocation)) {
+            com.gmt2001.Console.err.println("[DISCORD] [#" + channel.getName() + "] [UPLOAD] [" + fileLocation + "] Rejecting fileLocation");
+            return CompletableFuture.failedFuture(new IllegalArgumentException("fileLocation is not in an allowed folder"));
+        }
+
+        return DiscordSendQueue.instance().submit(channel, () -> channel.createMessage(msg -> {
+            try {
+                msg.addFile(fileLocation, Files.newInputStream(Paths.get(fileLocation)));
+
+                if (!message.isEmpty()) {
+                    msg.setContent(message);
+                }
+            } catch (IOException ex) {
+                com.gmt2001.Console.err.printStackTrace(ex);
+            }
+        }).doOnSuccess(m -> com.gmt2001.Console.out.println("[DISCORD] [#" + channel.getName() + "] [UPLOAD] [" + fileLocation + "]" + (message.isEmpty() ? "" : " " + message))));
+    }
+
+    public CompletableFuture<Message> queueFile(String channelName, String message, String fileLocation) {
+        return queueToChannel(channelName, channel -> queueFile(channel, message, fileLocation));
+    }
+
+    public CompletableFuture<Message> queueFile(GuildMessageChannel channel, String fileLocation) {
+        return queueFile(channel, "", fileLocation);
+    }
+
+    public CompletableFuture<Message> queueFile(String channelName, String fileLocation) {
+        return queueFile(channelName, "", fileLocation);
+    }
+
+    private CompletableFuture<Message> queueToChannel(String channelName, Function<GuildMessageChannel, CompletableFuture<Message>> send) {
+        CompletableFuture<GuildMessageChannel> channel = getChannelAsync(channelName).toFuture();
+
+        channel.exceptionally(e -> {
+            com.gmt2001.Console.err.println("Unable to find channelName [" + channelName + "]");
+            return null;
+        });
+
+        return channel.thenCompose(send);
+    }
+
     /**
      * Method that adds a reaction to a message.
      *
@@ -520,6 +627,12 @@ public class DiscordUtil {
 
     public Mono<GuildMessageChannel> getChannelAsync(String channelName) {
         String schannelName = sanitizeChannelName(channelName);
+        Optional<GuildMessageChannel> cached = DiscordCache.instance().getChannel(schannelName);
+
+        if (cached.isPresent() || DiscordCache.instance().hasAllChannels()) {
+            return Mono.justOrEmpty(cached).single();
+        }
+
         try {
             return DiscordAPI.getGuild().getChannels().filter(channel -> channel.getName().equalsIgnoreCase(schannelName)
                     || channel.getId().asString().equals(schannelName)).take(1).single().map(c -> (GuildMessageChannel) c);
@@ -541,6 +654,12 @@ public class DiscordUtil {
     }
 
     public Mono<GuildMessageChannel> getChannelByIDAsync(String channelId) {
+        Optional<GuildMessageChannel> cached = DiscordCache.instance().getChannel(channelId);
+
+        if (cached.isPresent() || DiscordCache.instance().hasAllChannels()) {
+            return Mono.justOrEmpty(cached).single();
+        }
+
         try {
             return DiscordAPI.getGuild().getChannels().filter(channel -> channel.getId().asString().equals(channelId)).take(1).single().map(c -> (GuildMessageChannel) c);
         } catch (NoSuchElementException ex) {
@@ -561,18 +680,16 @@ public class DiscordUtil {
      * @return {User}
      */
     public Mono<User> getUserAsync(String userName) {
-        Flux<Member> members = DiscordAPI.getGuild().getMembers();
+        com.gmt2001.Console.debug.println(userName);
+
+        Optional<Member> cached = DiscordCache.instance().getMember(userName);
 
-        if (PhantomBot.getEnableDebugging()) {
-            com.gmt2001.Console.debug.println(userName);
-            com.gmt2001.Console.debug.println(members.count().block());
+        if (cached.isPresent() || DiscordCache.instance().hasAllMembers()) {
+            return Mono.justOrEmpty(cached).single().map(m -> (User) m);
         }
 
-        Flux<Member> filteredMembers = members.filter(user -> user.getDisplayName().equalsIgnoreCase(userName) || user.getUsername().equalsIgnoreCase(userName) || user.getMention().equalsIgnoreCase(userName) || user.getNicknameMention().equalsIgnoreCase(userName));
+        Flux<Member> filteredMembers = DiscordAPI.getGuild().getMembers().filter(user -> user.getDisplayName().equalsIgnoreCase(userName) || user.getUsername().equalsIgnoreCase(userName) || user.getMention().equalsIgnoreCase(userName) || user.getNicknameMention().equalsIgnoreCase(userName));
 
-        if (PhantomBot.getEnableDebugging()) {
-            com.gmt2001.Console.debug.println(filteredMembers.count().block());
-        }
         try {
             return filteredMembers.take(1).single().map(m -> (User) m);
         } catch (NoSuchElementException ex) {
@@ -593,6 +710,12 @@ public class DiscordUtil {
      * @return {User}
      */
     public Mono<User> getUserByIdAsync(long userId) {
+        Optional<Member> cached = DiscordCache.instance().getMember(userId);
+
+        if (cached.isPresent() || DiscordCache.instance().hasAllMembers()) {
+            return Mono.justOrEmpty(cached).single().map(m -> (User) m);
+        }
+
         try {
             return DiscordAPI.getGuild().getMembers().filter(user -> user.getId().asLong() == userId).take(1).single().map(m -> (User) m);
         } catch (NoSuchElementException ex) {
@@ -614,6 +737,12 @@ public class DiscordUtil {
      * @return {User}
      */
     public Mono<User> getUserWithDiscriminatorAsync(String userName, String discriminator) {
+        Optional<Member> cached = DiscordCache.instance().getMember(userName, discriminator);
+
+        if (cached.isPresent() || DiscordCache.instance().hasAllMembers()) {
+            return Mono.justOrEmpty(cached).single().map(m -> (User) m);
+        }
+
         try {
             return DiscordAPI.getGuild().getMembers().filter(user -> user.getDisplayName().equalsIgnoreCase(userName)
                     && user.getDiscriminator().equalsIgnoreCase(discriminator)).take(1).single().map(m -> (User) m);
@@ -635,19 +764,16 @@ public class DiscordUtil {
      * @return {Role}
      */
     public Mono<Role> getRoleAsync(String roleName) {
-        Flux<Role> roles = DiscordAPI.getGuild().getRoles();
+        com.gmt2001.Console.debug.println(roleName);
 
-        if (PhantomBot.getEnableDebugging()) {
-            com.gmt2001.Console.debug.println(roleName);
-            com.gmt2001.Console.debug.println(roles.count().block());
-        }
-
-        Flux<Role> filteredRoles = roles.filter(role -> role.getName().equalsIgnoreCase(roleName) || role.getMention().equalsIgnoreCase(roleName));
+        Optional<Role> cached = DiscordCache.instance().getRole(roleName);
 
-        if (PhantomBot.getEnableDebugging()) {
-            com.gmt2001.Console.debug.println(filteredRoles.count().block());
+        if (cached.isPresent() || DiscordCache.instance().hasAllRoles()) {
+            return Mono.justOrEmpty(cached).single();
         }
 
+        Flux<Role> filteredRoles = DiscordAPI.getGuild().getRoles().filter(role -> role.getName().equalsIgnoreCase(roleName) || role.getMention().equalsIgnoreCase(roleName));
+
         try {
             return filteredRoles.take(1).single();
         } catch (NoSuchElementException ex) {
@@ -668,6 +794,16 @@ public class DiscordUtil {
      * @return {Role}
      */
     public Mono<Role> getRoleByIDAsync(String id) {
+        try {
+            Optional<Role> cached = DiscordCache.instance().getRole(Long.parseUnsignedLong(id));
+
+            if (cached.isPresent() || DiscordCache.instance().hasAllRoles()) {
+                return Mono.justOrEmpty(cached).single();
+            }
+        } catch (NumberFormatException ex) {
+            return Mono.error(new NoSuchElementException("Unable to find roleId [" + id + "]"));
+        }
+
         try {
             return DiscordAPI.getGuild().getRoles().filter(role -> role.getId().asString().equalsIgnoreCase(id)).take(1).single();
         } catch (NoSuchElementException ex) {
@@ -705,6 +841,12 @@ public class DiscordUtil {
     }
 
     public Mono<Role[]> getUserRolesAsync(User user) {
+        Optional<Member> cached = DiscordCache.instance().getMember(user.getId().asLong());
+
+        if (cached.isPresent() && DiscordCache.instance().hasAllRoles()) {
+            return Mono.just(DiscordCache.instance().getRoles(cached.get()).toArray(new Role[0]));
+        }
+
         return user.asMember(DiscordAPI.getGuild().getId()).flatMap(m -> m.getRoles().collectList().map(roles -> roles.isEmpty() ? new Role[0] : roles.toArray(new Role[0]))).onErrorReturn(new Role[0]);
     }
 
@@ -876,6 +1018,10 @@ public class DiscordUtil {
     }
 
     public Mono<List<Role>> getGuildRolesAsync() {
+        if (DiscordCache.instance().hasAllRoles()) {
+            return Mono.just(DiscordCache.instance().getRoles());
+        }
+
         return DiscordAPI.getGuild().getRoles().collectList();
     }
 
@@ -979,6 +1125,23 @@ public class DiscordUtil {
         getChannelAsync(channelName).subscribe(channel -> bulkDeleteMessages(channel, messages));
     }
 
+    /**
+     * Method to delete a queued message once it has been sent.
+     *
+     * @param message
+     */
+    public void deleteMessage(CompletableFuture<Message> message) {
+        if (message == null) {
+            throw new IllegalArgumentException("message object was null");
+        }
+
+        message.thenAccept(m -> {
+            if (m != null) {
+                deleteMessage(m);
+            }
+        });
+    }
+
     /**
      * Method to delete a message.
      *
@@ -1050,6 +1213,10 @@ public class DiscordUtil {
     }
 
     public Mono<List<User>> getUsersAsync() {
+        if (DiscordCache.instance().hasAllMembers()) {
+            return Mono.just(new ArrayList<>(DiscordCache.instance().getMembers()));
+        }
+
         return DiscordAPI.getGuild().getMembers().map(m -> (User) m).collectList();
     }
 
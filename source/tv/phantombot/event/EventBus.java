@@ -16,23 +16,92 @@
  */
 package tv.phantombot.event;
 
-import net.engio.mbassy.bus.config.BusConfiguration;
-import net.engio.mbassy.bus.config.Feature;
-import net.engio.mbassy.bus.SyncMessageBus;
-
-import net.engio.mbassy.bus.MBassador;
+import com.gmt2001.Metrics;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import net.engio.mbassy.listener.Handler;
+import org.json.JSONArray;
+import org.json.JSONObject;
 
 import tv.phantombot.PhantomBot;
+import tv.phantombot.event.command.CommandEvent;
+import tv.phantombot.event.discord.channel.DiscordChannelCommandEvent;
+import tv.phantombot.event.discord.channel.DiscordChannelMessageEvent;
+import tv.phantombot.event.irc.channel.IrcChannelJoinEvent;
+import tv.phantombot.event.irc.channel.IrcChannelLeaveEvent;
+import tv.phantombot.event.irc.message.IrcMessageEvent;
+import tv.phantombot.event.pubsub.moderation.PubSubModerationEvent;
 
+/**
+ * Dispatches events to the {@link Handler} methods of the registered listeners.
+ *
+ * The handlers are found once when a listener registers and indexed by the event class they take, and are called
+ * through a generated lambda (or a method handle when one can't be generated) instead of reflection.
+ *
+ * Async events run in one of two lanes, each a bounded pool with its own queue:
+ * <ul>
+ * <li>chat: chat messages, joins and parts, commands and moderation actions. These come in floods, and when the queue
+ * is full the event is dropped and counted, so a flood can't grow the queue forever or stall the chat reader.</li>
+ * <li>events: everything else, such as follows, subscriptions, donations, stream state and player events. These must
+ * not be lost, so when the queue is full the posting thread waits up to five seconds for room and then runs
+ * the handlers itself. A dispatcher of the lane posting into it runs the handlers at once instead of waiting on
+ * itself.</li>
+ * </ul>
+ */
 public class EventBus {
     private static final EventBus instance = new EventBus();
-    private static final MBassador<Event> bus = new MBassador<Event>(new BusConfiguration().addFeature(Feature.SyncPubSub.Default()).addFeature(Feature.AsynchronousHandlerInvocation.Default()).addFeature(Feature.AsynchronousMessageDispatch.Default().setNumberOfMessageDispatchers(10)).addPublicationErrorHandler(new ExceptionHandler()));
+    private static final int CHAT_DISPATCHERS = 6;
+    private static final int EVENT_DISPATCHERS = 4;
+    private static final int QUEUE_SIZE = 10000;
+    private static final long FULL_WAIT_MS = 5000L;
+    private static final long FULL_LOG_INTERVAL_MS = 60000L;
+    private static final Class<?>[] CHAT_EVENTS = {IrcMessageEvent.class, IrcChannelJoinEvent.class, IrcChannelLeaveEvent.class, CommandEvent.class,
+        DiscordChannelMessageEvent.class, DiscordChannelCommandEvent.class, PubSubModerationEvent.class};
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final Map<Class<?>, Subscriber[]> index = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Lane> laneIndex = new ConcurrentHashMap<>();
+    private final Map<Class<?>, EventStats> stats = new ConcurrentHashMap<>();
+    private final ThreadLocal<Lane> dispatcherLane = new ThreadLocal<>();
+    private final Lane chatLane = new Lane("chat", CHAT_DISPATCHERS, true);
+    private final Lane eventLane = new Lane("events", EVENT_DISPATCHERS, false);
+    private final Lane[] lanes = {chatLane, eventLane};
+    private final AtomicLong lastFullLog = new AtomicLong(0L);
 
     /**
      * Class constructor.
      */
     private EventBus() {
-
+        Metrics.instance().gauges("phantombot_eventbus_queue_events", "Async events waiting for a dispatcher in each lane", "lane",
+                () -> laneValues((l) -> l.executor.getQueue().size()));
+        Metrics.instance().gauges("phantombot_eventbus_active_dispatchers", "Dispatcher threads running an async event in each lane", "lane",
+                () -> laneValues((l) -> l.executor.getActiveCount()));
+        Metrics.instance().counters("phantombot_eventbus_events_total", "Events dispatched of each type", "event", () -> statValues((e) -> e.count.sum()));
+        Metrics.instance().counters("phantombot_eventbus_dispatch_seconds_total", "Time spent in the handlers of each event type", "event",
+                () -> statValues((e) -> e.totalNanos.sum() / 1000000000.0));
+        Metrics.instance().counters("phantombot_eventbus_dropped_events_total", "Async events of each type dropped because the chat lane was full", "event",
+                () -> statValues((e) -> e.dropped.sum()));
+        Metrics.instance().counters("phantombot_eventbus_blocked_events_total", "Async events of each type that made the poster wait because their lane was full", "event",
+                () -> statValues((e) -> e.blocked.sum()));
     }
 
     /**
@@ -50,7 +119,20 @@ public class EventBus {
      * @param {Listener} listener
      */
     public void register(Listener listener) {
-        bus.subscribe(listener);
+        for (Class<?> c = listener.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                if (method.isAnnotationPresent(Handler.class) && !Modifier.isStatic(method.getModifiers()) && method.getParameterCount() == 1
+                        && Event.class.isAssignableFrom(method.getParameterTypes()[0])) {
+                    try {
+                        subscribers.add(new Subscriber(listener, method));
+                    } catch (Throwable ex) {
+                        com.gmt2001.Console.err.println("Failed to register event handler " + c.getName() + "." + method.getName() + ": " + ex.getMessage());
+                    }
+                }
+            }
+        }
+
+        index.clear();
     }
 
     /**
@@ -59,7 +141,8 @@ public class EventBus {
      * @param {Listener} listener
      */
     public void unregister(Listener listener) {
-        bus.unsubscribe(listener);
+        subscribers.removeIf((s) -> s.listener == listener);
+        index.clear();
     }
 
     /**
@@ -72,7 +155,7 @@ public class EventBus {
             return;
         }
 
-        bus.publish(event);
+        dispatch(event);
     }
 
     /**
@@ -85,6 +168,272 @@ public class EventBus {
             return;
         }
 
-        bus.publishAsync(event);
+        laneIndex.computeIfAbsent(event.getClass(), this::resolveLane).execute(event);
+    }
+
+    /**
+     * Method that returns the number of events waiting for an async dispatcher, in all lanes.
+     *
+     * @return {int}
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+
+        for (Lane lane : lanes) {
+            depth += lane.executor.getQueue().size();
+        }
+
+        return depth;
+    }
+
+    /**
+     * Method that returns the dispatch count and time of each event type.
+     *
+     * @return {JSONObject}
+     */
+    public JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        JSONArray laneList = new JSONArray();
+        JSONArray list = new JSONArray();
+
+        for (Lane lane : lanes) {
+            laneList.put(lane.toJSON());
+        }
+
+        stats.forEach((c, s) -> {
+            list.put(s.toJSON(c.getSimpleName()));
+        });
+
+        json.put("queued", getQueueDepth());
+        json.put("lanes", laneList);
+        json.put("events", list);
+        return json;
+    }
+
+    /**
+     * Returns the lane of an event class, chat for the flood prone events and their sub classes.
+     */
+    private Lane resolveLane(Class<?> eventClass) {
+        for (Class<?> chatEvent : CHAT_EVENTS) {
+            if (chatEvent.isAssignableFrom(eventClass)) {
+                return chatLane;
+            }
+        }
+
+        return eventLane;
+    }
+
+    /**
+     * Called when the queue of a lane is full. Drops the event in the chat lane, otherwise waits for room and runs the
+     * handlers on the posting thread if there is none.
+     */
+    private void full(Lane lane, AsyncDispatch dispatch) {
+        EventStats eventStats = stats.computeIfAbsent(dispatch.event.getClass(), (c) -> new EventStats());
+
+        if (lane.dropWhenFull) {
+            eventStats.dropped.increment();
+            logFull(lane, dispatch.event, "dropped", eventStats.dropped.sum());
+            return;
+        }
+
+        eventStats.blocked.increment();
+
+        try {
+            if (dispatcherLane.get() != lane && lane.executor.getQueue().offer(dispatch, FULL_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        logFull(lane, dispatch.event, "ran on the posting thread", eventStats.blocked.sum());
+        dispatch.run();
+    }
+
+    private void logFull(Lane lane, Event event, String action, long total) {
+        long now = System.currentTimeMillis();
+        long last = lastFullLog.get();
+
+        if (now - last >= FULL_LOG_INTERVAL_MS && lastFullLog.compareAndSet(last, now)) {
+            com.gmt2001.Console.err.println("Event lane " + lane.name + " is full, " + action + " " + event.getClass().getSimpleName() + " (" + total + " so far)");
+        }
+    }
+
+    private Map<String, Number> laneValues(Function<Lane, Number> value) {
+        Map<String, Number> values = new HashMap<>();
+
+        for (Lane lane : lanes) {
+            values.put(lane.name, value.apply(lane));
+        }
+
+        return values;
+    }
+
+    private Map<String, Number> statValues(Function<EventStats, Number> value) {
+        Map<String, Number> values = new HashMap<>();
+
+        stats.forEach((c, s) -> {
+            values.put(c.getSimpleName(), value.apply(s));
+        });
+
+        return values;
+    }
+
+    private void dispatch(Event event) {
+        Class<?> eventClass = event.getClass();
+        long start = System.nanoTime();
+
+        for (Subscriber subscriber : index.computeIfAbsent(eventClass, this::resolve)) {
+            try {
+                subscriber.invoker.accept(event);
+            } catch (Throwable ex) {
+                com.gmt2001.Console.err.println("Failed to dispatch event [" + subscriber.name + "] to [" + subscriber.listener.toString() + "] " + ex.getMessage());
+                com.gmt2001.Console.err.printStackTrace(ex);
+            }
+        }
+
+        stats.computeIfAbsent(eventClass, (c) -> new EventStats()).add(System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the subscribers of an event class, including the ones taking one of its super classes.
+     */
+    private Subscriber[] resolve(Class<?> eventClass) {
+        Set<Subscriber> out = new LinkedHashSet<>();
+
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.eventType.isAssignableFrom(eventClass)) {
+                out.add(subscriber);
+            }
+        }
+
+        return out.toArray(new Subscriber[out.size()]);
+    }
+
+    /**
+     * A pool of dispatchers with its own queue.
+     */
+    private class Lane {
+
+        private final String name;
+        private final boolean dropWhenFull;
+        private final ThreadPoolExecutor executor;
+
+        private Lane(String name, int dispatchers, boolean dropWhenFull) {
+            AtomicInteger threadCount = new AtomicInteger(0);
+            this.name = name;
+            this.dropWhenFull = dropWhenFull;
+            this.executor = new ThreadPoolExecutor(dispatchers, dispatchers, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE), (r) -> {
+                Thread thread = new Thread(() -> {
+                    dispatcherLane.set(this);
+                    r.run();
+                }, "tv.phantombot.event.EventBus-" + name + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
+                return thread;
+            }, (r, e) -> full(this, (AsyncDispatch) r));
+        }
+
+        private void execute(Event event) {
+            executor.execute(new AsyncDispatch(event));
+        }
+
+        private JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("name", name);
+            json.put("queued", executor.getQueue().size());
+            json.put("active", executor.getActiveCount());
+            json.put("dropWhenFull", dropWhenFull);
+            return json;
+        }
+    }
+
+    /**
+     * An async event waiting for a dispatcher.
+     */
+    private class AsyncDispatch implements Runnable {
+
+        private final Event event;
+
+        private AsyncDispatch(Event event) {
+            this.event = event;
+        }
+
+        @Override
+        public void run() {
+            dispatch(event);
+        }
+    }
+
+    /**
+     * A handler method bound to its listener.
+     */
+    private static class Subscriber {
+
+        private final Listener listener;
+        private final Class<?> eventType;
+        private final String name;
+        private final Consumer<Event> invoker;
+
+        private Subscriber(Listener listener, Method method) throws Throwable {
+            this.listener = listener;
+            this.eventType = method.getParameterTypes()[0];
+            this.name = method.getDeclaringClass().getName() + "." + method.getName();
+            this.invoker = createInvoker(listener, method);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Consumer<Event> createInvoker(Listener listener, Method method) throws Throwable {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup());
+            MethodHandle handle = lookup.unreflect(method);
+
+            try {
+                CallSite site = LambdaMetafactory.metafactory(lookup, "accept", MethodType.methodType(Consumer.class, method.getDeclaringClass()),
+                        MethodType.methodType(void.class, Object.class), handle, MethodType.methodType(void.class, method.getParameterTypes()[0]));
+                return (Consumer<Event>) site.getTarget().invoke(listener);
+            } catch (Throwable ex) {
+                // Private or hidden handlers can't always be spun into a lambda, call them through the method handle.
+                MethodHandle bound = handle.bindTo(listener).asType(MethodType.methodType(void.class, Event.class));
+                return (event) -> {
+                    try {
+                        bound.invokeExact(event);
+                    } catch (RuntimeException | Error e) {
+                        throw e;
+                    } catch (Throwable e) {
+                        throw new RuntimeException(e);
+                    }
+                };
+            }
+        }
+    }
+
+    /**
+     * Dispatch counters of one event type.
+     */
+    private static class EventStats {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder blocked = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong(0L);
+
+        private void add(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private JSONObject toJSON(String name) {
+            JSONObject json = new JSONObject();
+            long c = count.sum();
+            json.put("name", name);
+            json.put("count", c);
+            json.put("avgMicros", c > 0L ? totalNanos.sum() / c / 1000L : 0L);
+            json.put("maxMicros", maxNanos.get() / 1000L);
+            json.put("dropped", dropped.sum());
+            json.put("blocked", blocked.sum());
+            return json;
+        }
     }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.httpserver;
+
+import com.gmt2001.Metrics;
+import com.gmt2001.httpwsserver.HttpRequestHandler;
+import com.gmt2001.httpwsserver.HttpServerPageHandler;
+import com.gmt2001.httpwsserver.auth.HttpAuthenticationHandler;
+import com.gmt2001.httpwsserver.auth.HttpBearerTokenAuthenticationHandler;
+import com.gmt2001.httpwsserver.auth.HttpNoAuthenticationHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves {@link Metrics} at /metrics for Prometheus and compatible scrapers
+ *
+ * @author agent
+ */
+public class HTTPMetricsHandler implements HttpRequestHandler {
+
+    private final HttpAuthenticationHandler authHandler;
+
+    /**
+     * @param token The token scrapers must send as a bearer token, or empty to allow anyone
+     */
+    public HTTPMetricsHandler(String token) {
+        if (token == null || token.isBlank()) {
+            authHandler = HttpNoAuthenticationHandler.instance();
+        } else {
+            authHandler = new HttpBearerTokenAuthenticationHandler(token);
+        }
+    }
+
+    @Override
+    public HttpRequestHandler register() {
+        HttpServerPageHandler.registerHttpHandler("/metrics", this);
+        return this;
+    }
+
+    @Override
+    public HttpAuthenticationHandler getAuthHandler() {
+        return authHandler;
+    }
+
+    @Override
+    public void handleRequest(ChannelHandlerContext ctx, FullHttpRequest req) {
+        if (!req.method().equals(HttpMethod.GET) && !req.method().equals(HttpMethod.HEAD)) {
+            com.gmt2001.Console.debug.println("403");
+            HttpServerPageHandler.sendHttpResponse(ctx, req, HttpServerPageHandler.prepareHttpResponse(HttpResponseStatus.FORBIDDEN, null, null));
+            return;
+        }
+
+        FullHttpResponse res = HttpServerPageHandler.prepareHttpResponse(HttpResponseStatus.OK,
+                req.method().equals(HttpMethod.HEAD) ? null : Metrics.instance().scrape().getBytes(StandardCharsets.UTF_8), null);
+        res.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain; version=0.0.4; charset=utf-8");
+        HttpServerPageHandler.sendHttpResponse(ctx, req, res);
+    }
+}
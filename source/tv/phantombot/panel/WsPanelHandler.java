@@ -43,6 +43,7 @@ import tv.phantombot.PhantomBot;
 import tv.phantombot.cache.TwitchCache;
 import tv.phantombot.event.EventBus;
 import tv.phantombot.event.webpanel.websocket.WebPanelSocketUpdateEvent;
+import tv.phantombot.script.HookMetrics;
 
 /**
  *
@@ -304,6 +305,16 @@ public class WsPanelHandler implements WsFrameHandler {
                 jsonObject.value(langFile);
             }
             jsonObject.endArray();
+        } else if (query.equalsIgnoreCase("chatQueueStats")) {
+            jsonObject.key("results").array();
+            if (PhantomBot.instance().getSession() != null) {
+                jsonObject.value(PhantomBot.instance().getSession().getStats());
+            }
+            jsonObject.endArray();
+        } else if (query.equalsIgnoreCase("hookStats")) {
+            jsonObject.key("results").array();
+            jsonObject.value(HookMetrics.instance().getStats(jso.has("params") ? jso.getJSONObject("params").optInt("limit", 25) : 25));
+            jsonObject.endArray();
         } else if (query.equalsIgnoreCase("games")) {
             jsonObject.key("results").array();
             try {
@@ -19,9 +19,8 @@ package tv.phantombot.script;
 import com.gmt2001.Reflect;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import net.engio.mbassy.listener.Handler;
 import org.apache.commons.lang3.text.WordUtils;
 import tv.phantombot.event.Event;
@@ -30,7 +29,7 @@ import tv.phantombot.event.Listener;
 public class ScriptEventManager implements Listener {
 
     private static final ScriptEventManager instance = new ScriptEventManager();
-    private final ConcurrentHashMap<String, ScriptEventHandler> events = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<? extends Event>, List<ScriptEventHandler>> events = new ConcurrentHashMap<>();
     private final List<String> classes = new ArrayList<String>();
     private boolean isKilled = false;
 
@@ -68,17 +67,26 @@ public class ScriptEventManager implements Listener {
     @Handler
     public void onEvent(Event event) {
         if (!isKilled) {
-            try {
-                String eventName = event.getClass().getSimpleName();
-                ScriptEventHandler e = events.get(eventName);
+            List<ScriptEventHandler> handlers = events.get(event.getClass());
+
+            if (handlers == null) {
+                return;
+            }
+
+            long start = System.nanoTime();
 
-                e.handle(event);
+            for (ScriptEventHandler handler : handlers) {
+                try {
+                    handler.handle(event);
 
-                com.gmt2001.Console.debug.println("Dispatched event " + eventName);
-            } catch (Exception ex) {
-                com.gmt2001.Console.err.println("Failed to dispatch event " + event.getClass().getName());
-                com.gmt2001.Console.err.printStackTrace(ex);
+                    com.gmt2001.Console.debug.println("Dispatched event " + event.getClass().getSimpleName());
+                } catch (Exception ex) {
+                    com.gmt2001.Console.err.println("Failed to dispatch event " + event.getClass().getName());
+                    com.gmt2001.Console.err.printStackTrace(ex);
+                }
             }
+
+            HookMetrics.instance().recordEvent(event.getClass(), start);
         }
     }
 
@@ -89,7 +97,8 @@ public class ScriptEventManager implements Listener {
      * @return {Boolean}
      */
     public boolean hasEvent(String eventName) {
-        return events.containsKey((WordUtils.capitalize(eventName) + "Event"));
+        String name = WordUtils.capitalize(eventName) + "Event";
+        return events.entrySet().stream().anyMatch((e) -> e.getKey().getSimpleName().equals(name) && !e.getValue().isEmpty());
     }
 
     /**
@@ -116,7 +125,7 @@ public class ScriptEventManager implements Listener {
         }
 
         if (event != null) {
-            events.put(event.getSimpleName(), handler);
+            events.computeIfAbsent(event, (c) -> new CopyOnWriteArrayList<>()).add(handler);
         } else if (recurse) {
             registerClasses();
             register(eventName, handler, false);
@@ -131,11 +140,7 @@ public class ScriptEventManager implements Listener {
      * @param {ScriptEventHandler} handler
      */
     public void unregister(ScriptEventHandler handler) {
-        Set<Entry<String, ScriptEventHandler>> entries = events.entrySet();
-
-        entries.stream().filter((e) -> (e.getValue() == handler)).forEachOrdered((e) -> {
-            events.remove(e.getKey());
-        });
+        events.values().forEach((handlers) -> handlers.removeIf((h) -> h == handler));
     }
 
     /**
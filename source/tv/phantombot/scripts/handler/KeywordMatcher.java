@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.scripts.handler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches chat messages against all keywords of the keyword handler in one pass.
+ *
+ * Plain keywords are compiled into two word-level Aho-Corasick automata, one for case-sensitive and one
+ * for case-insensitive keywords. Regex keywords are joined into one alternation which is used to skip
+ * them all at once when none of them can match. When several keywords match, the one added with the
+ * lowest index wins, which is the order the keywords were checked in before.
+ *
+ * Keywords are added with {@link #add} and take effect once {@link #build} is called, so messages can
+ * be matched while the keywords are being reloaded.
+ */
+public class KeywordMatcher {
+
+    private static final Pattern BACKREFERENCE = Pattern.compile("\\\\([1-9]|k<)");
+    private final List<Keyword> pending = new ArrayList<>();
+    private volatile Compiled compiled = new Compiled(new ArrayList<>());
+
+    /**
+     * Class constructor.
+     */
+    public KeywordMatcher() {
+    }
+
+    /**
+     * Method that removes all pending keywords. The current keywords are kept until {@link #build} is called.
+     */
+    public synchronized void clear() {
+        pending.clear();
+    }
+
+    /**
+     * Method that adds a keyword.
+     *
+     * @param index The value returned by {@link #match} when this keyword matches, lower values win.
+     * @param keyword The keyword, a word, a phrase of words separated by spaces or a regex.
+     * @param isRegex If the keyword is a regex.
+     * @param isCaseSensitive If the keyword is case-sensitive.
+     * @return False if the keyword is an invalid regex.
+     */
+    public synchronized boolean add(int index, String keyword, boolean isRegex, boolean isCaseSensitive) {
+        Pattern pattern = null;
+
+        if (isRegex) {
+            try {
+                pattern = Pattern.compile(keyword, isCaseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            } catch (PatternSyntaxException ex) {
+                com.gmt2001.Console.debug.println("KeywordMatcher.add: Bad regex [" + keyword + "]: " + ex.getMessage());
+                return false;
+            }
+        }
+
+        pending.add(new Keyword(index, keyword, pattern, isCaseSensitive));
+        return true;
+    }
+
+    /**
+     * Method that compiles the added keywords and replaces the current ones.
+     */
+    public synchronized void build() {
+        compiled = new Compiled(new ArrayList<>(pending));
+    }
+
+    /**
+     * Method that returns the number of compiled keywords.
+     *
+     * @return
+     */
+    public int size() {
+        return compiled.size;
+    }
+
+    /**
+     * Method that finds the first keyword that matches the message.
+     *
+     * @param message The chat message.
+     * @return The index of the matching keyword with the lowest index, or -1 if none match.
+     */
+    public int match(String message) {
+        Compiled current = compiled;
+        int best = Integer.MAX_VALUE;
+
+        if (current.caseSensitive.hasKeywords) {
+            best = current.caseSensitive.match(message.split(" ", -1), best);
+        }
+
+        if (current.caseInsensitive.hasKeywords) {
+            best = current.caseInsensitive.match(message.toLowerCase().split(" ", -1), best);
+        }
+
+        if (current.combinedRegex != null && current.combinedRegex.matcher(message).find()) {
+            for (Keyword keyword : current.regexes) {
+                if (keyword.index >= best) {
+                    break;
+                }
+
+                if (keyword.pattern.matcher(message).find()) {
+                    best = keyword.index;
+                    break;
+                }
+            }
+        }
+
+        for (Keyword keyword : current.uncombinedRegexes) {
+            if (keyword.index >= best) {
+                break;
+            }
+
+            if (keyword.pattern.matcher(message).find()) {
+                best = keyword.index;
+                break;
+            }
+        }
+
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+
+    /**
+     * An added keyword.
+     */
+    private static class Keyword {
+
+        private final int index;
+        private final String keyword;
+        private final Pattern pattern;
+        private final boolean isCaseSensitive;
+
+        private Keyword(int index, String keyword, Pattern pattern, boolean isCaseSensitive) {
+            this.index = index;
+            this.keyword = keyword;
+            this.pattern = pattern;
+            this.isCaseSensitive = isCaseSensitive;
+        }
+    }
+
+    /**
+     * An immutable set of compiled keywords.
+     */
+    private static class Compiled {
+
+        private final int size;
+        private final Automaton caseSensitive = new Automaton();
+        private final Automaton caseInsensitive = new Automaton();
+        private final List<Keyword> regexes = new ArrayList<>();
+        private final List<Keyword> uncombinedRegexes = new ArrayList<>();
+        private final Pattern combinedRegex;
+
+        private Compiled(List<Keyword> keywords) {
+            keywords.sort((a, b) -> Integer.compare(a.index, b.index));
+            this.size = keywords.size();
+
+            StringBuilder combined = new StringBuilder();
+
+            for (Keyword keyword : keywords) {
+                if (keyword.pattern == null) {
+                    if (keyword.isCaseSensitive) {
+                        caseSensitive.add(keyword.keyword.split(" ", -1), keyword.index);
+                    } else {
+                        caseInsensitive.add(keyword.keyword.toLowerCase().split(" ", -1), keyword.index);
+                    }
+                } else if (BACKREFERENCE.matcher(keyword.keyword).find()) {
+                    // Group numbers change inside the alternation, so these are always tested on their own.
+                    uncombinedRegexes.add(keyword);
+                } else {
+                    if (combined.length() > 0) {
+                        combined.append('|');
+                    }
+
+                    combined.append(keyword.isCaseSensitive ? "(?:" : "(?iu:").append(keyword.keyword).append(')');
+                    regexes.add(keyword);
+                }
+            }
+
+            Pattern pattern = null;
+            if (combined.length() > 0) {
+                try {
+                    pattern = Pattern.compile(combined.toString());
+                } catch (PatternSyntaxException ex) {
+                    // A keyword that only compiles on its own, test all of them separately.
+                    uncombinedRegexes.addAll(regexes);
+                    uncombinedRegexes.sort((a, b) -> Integer.compare(a.index, b.index));
+                    regexes.clear();
+                }
+            }
+
+            this.combinedRegex = pattern;
+            caseSensitive.link();
+            caseInsensitive.link();
+        }
+    }
+
+    /**
+     * Word-level Aho-Corasick automaton. Every node keeps the lowest keyword index that ends at it or at
+     * any of its suffixes, so one pass over the words finds the best match.
+     */
+    private static class Automaton {
+
+        private final Node root = new Node();
+        private boolean hasKeywords = false;
+
+        private void add(String[] words, int index) {
+            Node node = root;
+
+            for (String word : words) {
+                node = node.children.computeIfAbsent(word, (w) -> new Node());
+            }
+
+            node.best = Math.min(node.best, index);
+            hasKeywords = true;
+        }
+
+        private void link() {
+            Queue<Node> queue = new ArrayDeque<>();
+
+            root.fail = root;
+            for (Node child : root.children.values()) {
+                child.fail = root;
+                queue.add(child);
+            }
+
+            while (!queue.isEmpty()) {
+                Node node = queue.poll();
+                node.best = Math.min(node.best, node.fail.best);
+
+                for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+                    Node fail = node.fail;
+
+                    while (fail != root && !fail.children.containsKey(entry.getKey())) {
+                        fail = fail.fail;
+                    }
+
+                    Node target = fail.children.get(entry.getKey());
+                    entry.getValue().fail = (target == null || target == entry.getValue()) ? root : target;
+                    queue.add(entry.getValue());
+                }
+            }
+        }
+
+        private int match(String[] words, int best) {
+            Node node = root;
+
+            for (String word : words) {
+                while (node != root && !node.children.containsKey(word)) {
+                    node = node.fail;
+                }
+
+                Node next = node.children.get(word);
+                node = next == null ? root : next;
+
+                if (node.best < best) {
+                    best = node.best;
+                }
+            }
+
+            return best;
+        }
+    }
+
+    /**
+     * A node of the automaton.
+     */
+    private static class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        private Node fail;
+        private int best = Integer.MAX_VALUE;
+    }
+}
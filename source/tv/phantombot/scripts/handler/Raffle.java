@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.scripts.handler;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import tv.phantombot.PhantomBot;
+
+/**
+ * Weighted raffle used by raffleSystem.js and ticketraffleSystem.js.
+ *
+ * Every entrant has one slot holding their weight (bonus entries or tickets) in a Fenwick tree, so entering, changing a
+ * weight, drawing and removing a winner are all O(log n). The entrant list and the entrant count are written to the
+ * database in batches a few seconds later instead of once per entry.
+ */
+public class Raffle {
+
+    private static final long FLUSH_DELAY = 5000L;
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "tv.phantombot.scripts.handler.Raffle");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Set<Raffle> PENDING = ConcurrentHashMap.newKeySet();
+    private final SecureRandom random = new SecureRandom();
+    private final Object flushLock = new Object();
+    private final String listTable;
+    private final String countKey;
+    private final boolean persistWeight;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private String[] names = new String[64];
+    private long[] weights = new long[64];
+    private long[] tree = new long[65];
+    private int used = 0;
+    private long totalWeight = 0L;
+    private final Map<String, String> dirty = new HashMap<>();
+    private final Set<String> removed = new HashSet<>();
+    private boolean countDirty = false;
+    private boolean flushScheduled = false;
+
+    /**
+     * Class constructor.
+     *
+     * @param listTable The table the entrants are saved to for the panel.
+     * @param countKey The key of the raffleresults table the number of entrants is saved to.
+     * @param persistWeight Save the weight of the entrants to listTable instead of true.
+     */
+    public Raffle(String listTable, String countKey, boolean persistWeight) {
+        this.listTable = listTable;
+        this.countKey = countKey;
+        this.persistWeight = persistWeight;
+    }
+
+    /**
+     * Method that enters a user with the given weight.
+     *
+     * @param username
+     * @param weight
+     * @return False if the user already entered.
+     */
+    public synchronized boolean enter(String username, long weight) {
+        if (slots.containsKey(username.toLowerCase())) {
+            return false;
+        }
+
+        addWeight(username, weight);
+        return true;
+    }
+
+    /**
+     * Method that adds weight to a user, entering them if needed.
+     *
+     * @param username
+     * @param weight
+     * @return The new weight of the user.
+     */
+    public synchronized long addWeight(String username, long weight) {
+        String key = username.toLowerCase();
+        Integer slot = slots.get(key);
+
+        if (slot == null) {
+            if (used == names.length) {
+                grow();
+            }
+
+            slot = used++;
+            slots.put(key, slot);
+            names[slot] = username;
+            removed.remove(key);
+            countDirty = true;
+        }
+
+        weights[slot] += weight;
+        totalWeight += weight;
+        update(slot, weight);
+
+        dirty.put(key, persistWeight ? Long.toString(weights[slot]) : "true");
+        scheduleFlush();
+        return weights[slot];
+    }
+
+    /**
+     * Method that returns the weight of a user, 0 if they did not enter.
+     *
+     * @param username
+     * @return
+     */
+    public synchronized long getWeight(String username) {
+        Integer slot = slots.get(username.toLowerCase());
+        return slot == null ? 0L : weights[slot];
+    }
+
+    /**
+     * Method that checks if a user entered.
+     *
+     * @param username
+     * @return
+     */
+    public synchronized boolean contains(String username) {
+        return slots.containsKey(username.toLowerCase());
+    }
+
+    /**
+     * Method that returns the number of entrants.
+     *
+     * @return
+     */
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    /**
+     * Method that returns the sum of the weights of all entrants.
+     *
+     * @return
+     */
+    public synchronized long getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * Method that draws an entrant, each entrant having a chance proportional to their weight.
+     *
+     * @return The username as entered, null if nobody entered.
+     */
+    public synchronized String draw() {
+        if (totalWeight <= 0L) {
+            return null;
+        }
+
+        return names[find(nextLong(totalWeight))];
+    }
+
+    /**
+     * Method that removes an entrant.
+     *
+     * @param username
+     * @return False if the user did not enter.
+     */
+    public synchronized boolean remove(String username) {
+        String key = username.toLowerCase();
+        Integer slot = slots.remove(key);
+
+        if (slot == null) {
+            return false;
+        }
+
+        update(slot, -weights[slot]);
+        totalWeight -= weights[slot];
+        weights[slot] = 0L;
+        names[slot] = null;
+
+        dirty.remove(key);
+        removed.add(key);
+        countDirty = true;
+        scheduleFlush();
+        return true;
+    }
+
+    /**
+     * Method that removes all entrants, empties the entrant list table and resets the entrant count.
+     */
+    public void clear() {
+        synchronized (flushLock) {
+            synchronized (this) {
+                slots.clear();
+                names = new String[64];
+                weights = new long[64];
+                tree = new long[65];
+                used = 0;
+                totalWeight = 0L;
+                dirty.clear();
+                removed.clear();
+                countDirty = false;
+            }
+
+            PhantomBot.instance().getDataStore().RemoveFile(listTable);
+            PhantomBot.instance().getDataStore().SetString("raffleresults", "", countKey, "0");
+        }
+    }
+
+    /**
+     * Method that writes the queued changes to the database.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<String, String> toSet;
+            List<String> toRemove;
+            String count = null;
+
+            synchronized (this) {
+                PENDING.remove(this);
+                flushScheduled = false;
+                toSet = new HashMap<>(dirty);
+                toRemove = new ArrayList<>(removed);
+                if (countDirty) {
+                    count = Integer.toString(slots.size());
+                }
+                dirty.clear();
+                removed.clear();
+                countDirty = false;
+            }
+
+            if (!toRemove.isEmpty()) {
+                PhantomBot.instance().getDataStore().RemoveKeysFromFiles(new String[]{listTable}, "", toRemove.toArray(new String[toRemove.size()]));
+            }
+
+            if (!toSet.isEmpty()) {
+                PhantomBot.instance().getDataStore().SetBatchString(listTable, "", toSet.keySet().toArray(new String[toSet.size()]),
+                        toSet.values().toArray(new String[toSet.size()]));
+            }
+
+            if (count != null) {
+                PhantomBot.instance().getDataStore().SetString("raffleresults", "", countKey, count);
+            }
+        }
+    }
+
+    /**
+     * Method that writes the queued changes of all raffles, used on shutdown.
+     */
+    public static void flushAll() {
+        for (Raffle raffle : new ArrayList<>(PENDING)) {
+            try {
+                raffle.flush();
+            } catch (Exception ex) {
+                com.gmt2001.Console.err.printStackTrace(ex);
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            PENDING.add(this);
+            FLUSHER.schedule(() -> {
+                try {
+                    flush();
+                } catch (Exception ex) {
+                    com.gmt2001.Console.err.printStackTrace(ex);
+                }
+            }, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void grow() {
+        int size = names.length * 2;
+        String[] newNames = new String[size];
+        long[] newWeights = new long[size];
+        System.arraycopy(names, 0, newNames, 0, used);
+        System.arraycopy(weights, 0, newWeights, 0, used);
+        names = newNames;
+        weights = newWeights;
+
+        /* Rebuild the tree in O(n) */
+        tree = new long[size + 1];
+        for (int i = 1; i <= used; i++) {
+            tree[i] += weights[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private void update(int slot, long delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Returns the slot whose range of the cumulative weights contains the value.
+     */
+    private int find(long value) {
+        int pos = 0;
+
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            int next = pos + step;
+
+            if (next < tree.length && tree[next] <= value) {
+                pos = next;
+                value -= tree[next];
+            }
+        }
+
+        return pos;
+    }
+
+    /**
+     * Returns a uniformly distributed value between 0 (inclusive) and bound (exclusive).
+     */
+    private long nextLong(long bound) {
+        long bits, value;
+
+        do {
+            bits = random.nextLong() >>> 1;
+            value = bits % bound;
+        } while (bits - value + (bound - 1) < 0L);
+
+        return value;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.scripts.handler;
+
+import com.gmt2001.datastore.DataStore;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import tv.phantombot.PhantomBot;
+
+/**
+ * Counts how often the words in the wordCounter table are said in chat.
+ *
+ * The tracked words are kept in memory and matched with one compiled pattern. Counts are added up in
+ * memory and written to the wordCounter table in one batch every few seconds, so counting a message
+ * never touches the database.
+ */
+public class WordCounter {
+
+    private static final WordCounter INSTANCE = new WordCounter();
+    private static final String TABLE = "wordCounter";
+    private static final long FLUSH_INTERVAL = 5L;
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private volatile Words words = new Words(new String[0]);
+
+    /**
+     * Method that returns this instance.
+     *
+     * @return
+     */
+    public static WordCounter instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Class constructor.
+     */
+    private WordCounter() {
+        this.executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread thread = new Thread(r, "tv.phantombot.scripts.handler.WordCounter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Method that reloads the tracked words from the wordCounter table. Call it after the table changes.
+     */
+    public synchronized void reload() {
+        DataStore dataStore = PhantomBot.instance().getDataStore();
+
+        // Drop the counts of removed words before flushing, writing them would add the words back.
+        words = new Words(dataStore.GetKeyList(TABLE, ""));
+        counts.keySet().retainAll(words.order.keySet());
+        flush();
+    }
+
+    /**
+     * Method that stops tracking a word and deletes it from the wordCounter table, with its pending count.
+     *
+     * @param word
+     */
+    public synchronized void remove(String word) {
+        DataStore dataStore = PhantomBot.instance().getDataStore();
+
+        dataStore.RemoveKey(TABLE, "", word.toLowerCase());
+        words = new Words(dataStore.GetKeyList(TABLE, ""));
+        counts.keySet().retainAll(words.order.keySet());
+    }
+
+    /**
+     * Method that counts a chat message. Only the tracked word that comes first in the table is counted.
+     *
+     * @param message
+     * @return The counted word, or null if the message has no tracked word.
+     */
+    public String count(String message) {
+        Words current = words;
+
+        if (current.pattern == null) {
+            return null;
+        }
+
+        Matcher matcher = current.pattern.matcher(message.toLowerCase());
+        String best = null;
+        int bestOrder = Integer.MAX_VALUE;
+
+        while (matcher.find()) {
+            String word = matcher.group(1);
+            Integer order = current.order.get(word);
+
+            if (order != null && order < bestOrder) {
+                best = word;
+                bestOrder = order;
+
+                if (order == 0) {
+                    break;
+                }
+            }
+        }
+
+        if (best != null) {
+            counts.computeIfAbsent(best, (k) -> new LongAdder()).increment();
+        }
+
+        return best;
+    }
+
+    /**
+     * Method that returns the count of a word, including counts that are not written to the database yet.
+     *
+     * @param word
+     * @return
+     */
+    public long getCount(String word) {
+        word = word.toLowerCase();
+
+        LongAdder pending = counts.get(word);
+        return PhantomBot.instance().getDataStore().GetLong(TABLE, "", word) + (pending == null ? 0L : pending.sum());
+    }
+
+    /**
+     * Method that writes the counted words to the database.
+     */
+    public synchronized void flush() {
+        if (counts.isEmpty() || PhantomBot.instance() == null) {
+            return;
+        }
+
+        // Words with the same count are written together.
+        Map<Long, List<String>> byCount = new HashMap<>();
+        Words current = words;
+
+        counts.forEach((word, adder) -> {
+            long count = adder.sumThenReset();
+
+            // A message counted with the old words while a word was removed must not add it back.
+            if (count > 0 && current.order.containsKey(word)) {
+                byCount.computeIfAbsent(count, (k) -> new ArrayList<>()).add(word);
+            }
+        });
+
+        DataStore dataStore = PhantomBot.instance().getDataStore();
+        byCount.forEach((count, list) -> {
+            try {
+                dataStore.IncreaseBatchString(TABLE, "", list.toArray(new String[0]), Long.toString(count));
+            } catch (Exception ex) {
+                com.gmt2001.Console.err.printStackTrace(ex);
+            }
+        });
+    }
+
+    /**
+     * Method that writes the pending counts and stops the flush timer.
+     */
+    public void kill() {
+        executor.shutdown();
+        flush();
+    }
+
+    /**
+     * The tracked words and their pattern.
+     */
+    private static class Words {
+
+        private final Map<String, Integer> order = new HashMap<>();
+        private final Pattern pattern;
+
+        private Words(String[] keys) {
+            List<String> list = new ArrayList<>();
+
+            for (String key : keys) {
+                String word = key.toLowerCase();
+
+                if (!word.isEmpty() && !order.containsKey(word)) {
+                    order.put(word, order.size());
+                    list.add(word);
+                }
+            }
+
+            // Longer words first, so a word is not hidden by one of its prefixes.
+            list.sort((a, b) -> Integer.compare(b.length(), a.length()));
+
+            StringBuilder sb = new StringBuilder();
+            for (String word : list) {
+                if (sb.length() > 0) {
+                    sb.append('|');
+                }
+
+                sb.append(Pattern.quote(word));
+            }
+
+            pattern = list.isEmpty() ? null : Pattern.compile("\\b(" + sb.toString() + ")\\b");
+        }
+    }
+}
@@ -17,17 +17,12 @@
 
 package tv.phantombot.twitch.api;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
+import com.gmt2001.HttpRequest;
 
-import java.net.MalformedURLException;
-import java.net.SocketTimeoutException;
-import java.net.URL;
-
-import javax.net.ssl.HttpsURLConnection;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -35,6 +30,9 @@ import org.json.JSONObject;
 /**
  * Start of the Helix API. This class will handle the rate limits.
  * 
+ * Requests are queued by {@link HelixScheduler}. Lookups of a single user, stream
+ * or game made close together are sent as one request.
+ * 
  * @author ScaniaTV
  */
 public class Helix {
@@ -46,15 +44,17 @@ public class Helix {
     private static final String USER_AGENT = "PhantomBot/2018";
     // Our content type, should always be JSON.
     private static final String CONTENT_TYPE = "application/json";
-    // Timeout which to wait for a response before killing it (5 seconds).
-    private static final int TIMEOUT_TIME = 5000;
-    // Time when our limit will reset.
-    private long rateLimitResetEpoch = System.currentTimeMillis();
-    // Our current rate limit before making any requests.
-    private int currentRateLimit = 120;
+    // Queues our requests and handles the rate limits.
+    private final HelixScheduler scheduler = new HelixScheduler();
+    // Coalesce single item lookups into batches.
+    private final HelixScheduler.Batcher usersByLogin;
+    private final HelixScheduler.Batcher usersById;
+    private final HelixScheduler.Batcher streamsByLogin;
+    private final HelixScheduler.Batcher streamsById;
+    private final HelixScheduler.Batcher gamesByName;
+    private final HelixScheduler.Batcher gamesById;
     // The user's oauth token -- this is required.
-    private final String oAuthToken;
-    private final String clientid;
+    private volatile String oAuthToken;
     
     /**
      * This class constructor.
@@ -63,12 +63,35 @@ public class Helix {
      */
     public Helix(String oAuthToken) {
         this.oAuthToken = oAuthToken.replace("oauth:", "");
-        this.clientid = TwitchValidate.instance().getAPIClientID();
+        this.usersByLogin = scheduler.newBatcher((keys) -> () -> sendRequest(RequestType.GET, buildQuery("/users", "login", keys), ""), true, "login");
+        this.usersById = scheduler.newBatcher((keys) -> () -> sendRequest(RequestType.GET, buildQuery("/users", "id", keys), ""), false, "id");
+        this.streamsByLogin = scheduler.newBatcher((keys) -> () -> sendRequest(RequestType.GET, buildQuery("/streams", "user_login", keys), ""), true, "user_login", "user_name");
+        this.streamsById = scheduler.newBatcher((keys) -> () -> sendRequest(RequestType.GET, buildQuery("/streams", "user_id", keys), ""), false, "user_id");
+        this.gamesByName = scheduler.newBatcher((keys) -> () -> sendRequest(RequestType.GET, buildQuery("/games", "name", keys), ""), true, "name");
+        this.gamesById = scheduler.newBatcher((keys) -> () -> sendRequest(RequestType.GET, buildQuery("/games", "id", keys), ""), false, "id");
         
         // Set the default exception handler thread.
         Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
     }
     
+    /**
+     * Method that updates the token used for all requests.
+     * 
+     * @param oAuthToken The token used for all requests.
+     */
+    public void setOAuth(String oAuthToken) {
+        this.oAuthToken = oAuthToken.replace("oauth:", "");
+    }
+    
+    /**
+     * Method that returns the scheduler, which holds the rate limit and queue metrics.
+     * 
+     * @return 
+     */
+    public HelixScheduler getScheduler() {
+        return scheduler;
+    }
+    
     /**
      * Method that sets the default instance.
      * 
@@ -98,80 +121,21 @@ public class Helix {
     };
     
     /**
-     * Method that update the rate limits in sync.
-     * 
-     * @param limit The number of requests left.
-     * @param reset The time when our limits will reset.
-     */
-    private synchronized void updateRateLimits(int limit, long reset) {
-        currentRateLimit = limit;
-        rateLimitResetEpoch = reset;
-    }
-    
-    /**
-     * Method that gets the reset time for the rate limit.
-     * 
-     * @return 
-     */
-    private synchronized long getLimitResetTime() {
-        return rateLimitResetEpoch;
-    }
-    
-    /**
-     * Method that gets the current rate limits.
+     * Method that builds a query for a list of items, URL encoding each item.
      * 
+     * @param endPoint
+     * @param type
+     * @param items
      * @return 
      */
-    private synchronized int getCurrentRateLimit() {
-        return currentRateLimit;
-    }
-    
-    /**
-     * Method that checks if we hit the limit.
-     */
-    private void checkRateLimit() {
-        if (getCurrentRateLimit() <= 0) {
-            try {
-                // Sleep for the time remaining for the limit to reset.
-                Thread.sleep(System.currentTimeMillis() - getLimitResetTime());
-            } catch (InterruptedException ex) {
-                com.gmt2001.Console.err.printStackTrace(ex);
-            }
-        }
-    }
-    
-    /**
-     * Method that handles our rate limits.
-     * 
-     * @param limitReturned The limit returned from Helix.
-     * @param limitResetTimeReturned The reset time for our limit returned from Helix.
-     */
-    private void handleUpdateRateLimits(String limitReturned, String limitResetTimeReturned) {
-        try {
-            // Parse the rate limit returned.
-            updateRateLimits(Integer.parseInt(limitReturned), 
-                    Long.parseLong(limitResetTimeReturned));
-        } catch (NumberFormatException ex) {
-            com.gmt2001.Console.err.printStackTrace(ex);
-        }
-    }
-    
-    /**
-     * Method that gets data from an InputStream.
-     * 
-     * @param stream
-     * @return 
-     */
-    private String getStringFromInputStream(InputStream stream) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
-        StringBuilder returnString = new StringBuilder();
-        String line;
+    private static String buildQuery(String endPoint, String type, String[] items) {
+        StringBuilder query = new StringBuilder(endPoint);
         
-        while ((line = reader.readLine()) != null) {
-            returnString.append(line);
+        for (int i = 0; i < items.length; i++) {
+            query.append(i == 0 ? '?' : '&').append(type).append('=').append(URLEncoder.encode(items[i], StandardCharsets.UTF_8));
         }
         
-        return returnString.toString();
+        return query.toString();
     }
     
     /**
@@ -208,105 +172,80 @@ public class Helix {
      * @return 
      */
     private JSONObject handleRequest(RequestType type, String endPoint, String data) throws JSONException {
-        JSONObject returnObject = new JSONObject();
-        InputStream inStream = null;
-        int responseCode = 0;
-        
-        // Check our rate limit.
-        checkRateLimit();
-        
+        return handleRequestAsync(HelixScheduler.Priority.USER, type, endPoint, data).join();
+    }
+    
+    /**
+     * Method that queues a request for Helix without blocking the calling thread.
+     * 
+     * @param priority
+     * @param type
+     * @param endPoint
+     * @param data
+     * @return A future that completes with the returned object.
+     */
+    private CompletableFuture<JSONObject> handleRequestAsync(HelixScheduler.Priority priority, RequestType type, String endPoint, String data) {
+        return scheduler.submit(priority, () -> sendRequest(type, endPoint, data));
+    }
+    
+    /**
+     * Method that sends a request to Helix, this must only be called by the scheduler.
+     * 
+     * @param type
+     * @param endPoint
+     * @param data
+     * @return A future that completes with the returned object.
+     */
+    private CompletableFuture<JSONObject> sendRequest(RequestType type, String endPoint, String data) {
         // Update the end point URL, if it is an endpoint and not full URL.
-        if (endPoint.startsWith("/")) {
-            endPoint = BASE_URL + endPoint;
-        }
+        String url = endPoint.startsWith("/") ? BASE_URL + endPoint : endPoint;
         
-        try {
-            // Generate a new URL.
-            URL url = new URL(endPoint);
-            // Open the connection over HTTPS.
-            HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
-            // Add our headers.
-            connection.addRequestProperty("Content-Type", CONTENT_TYPE);
+        // Add our headers.
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", CONTENT_TYPE);
 
-            if (!clientid.isEmpty()) {
-                connection.addRequestProperty("Client-ID", clientid);
-            }
+        String clientid = TwitchValidate.instance().getAPIClientID();
+        if (!clientid.isEmpty()) {
+            headers.put("Client-ID", clientid);
+        }
 
-            if (!oAuthToken.isEmpty()) {
-                connection.addRequestProperty("Authorization", "Bearer " + oAuthToken);
-            }
+        if (!oAuthToken.isEmpty()) {
+            headers.put("Authorization", "Bearer " + oAuthToken);
+        }
 
-            connection.addRequestProperty("User-Agent", USER_AGENT);
-            // Add our request method.
-            connection.setRequestMethod(type.name());
-            // Set out timeout.
-            connection.setConnectTimeout(TIMEOUT_TIME);
-            // Set if we're doing output.
-            connection.setDoOutput(!data.isEmpty());
-            
-            // Connect!
-            connection.connect();
+        headers.put("User-Agent", USER_AGENT);
+        
+        return HttpRequest.getDataAsync(HttpRequest.RequestType.valueOf(type.name()), url, data, headers).thenApply((response) -> {
+            JSONObject returnObject = new JSONObject();
             
-            // If we're outputting.
-            if (connection.getDoOutput()) {
-                // Get the output stream
-                try (OutputStream outStream = connection.getOutputStream()) {
-                    // Write to it and flush.
-                    outStream.write(data.getBytes("UTF-8"));
-                    outStream.flush();
+            try {
+                if (response.exceptionClass != null) {
+                    // Generate the return object.
+                    generateJSONObject(returnObject, false, type.name(), data, url, 0, response.exceptionClass, response.exception);
+                    return returnObject;
                 }
-            }
-            
-            // Get our response code.
-            responseCode = connection.getResponseCode();
-            
-            // Get the current rate limits.
-            String limit = connection.getHeaderField("Ratelimit-Remaining");
-            String reset = connection.getHeaderField("Ratelimit-Reset");
-            // Handle the current limits.
-            handleUpdateRateLimits(limit, reset);
                 
-            // Get our response stream.
-            if (responseCode == 200) {
-                inStream = connection.getInputStream();
-            } else {
-                inStream = connection.getErrorStream();
-            }
-
-            // Parse the data.
-            returnObject = new JSONObject(getStringFromInputStream(inStream));
-            // Generate the return object,
-            generateJSONObject(returnObject, true, type.name(), data, endPoint, responseCode, "", "");
-        } catch (JSONException ex) {
-            // Generate the return object.
-            generateJSONObject(returnObject, false, type.name(), data, endPoint, responseCode, "JSONException", ex.getMessage());
-        } catch (NullPointerException ex) {
-            // Generate the return object.
-            generateJSONObject(returnObject, false, type.name(), data, endPoint, responseCode, "NullPointerException", ex.getMessage());
-        } catch (MalformedURLException ex) {
-            // Generate the return object.
-            generateJSONObject(returnObject, false, type.name(), data, endPoint, responseCode, "MalformedURLException", ex.getMessage());
-        } catch (SocketTimeoutException ex) {
-            // Generate the return object.
-            generateJSONObject(returnObject, false, type.name(), data, endPoint, responseCode, "SocketTimeoutException", ex.getMessage());
-        } catch (IOException ex) {
-            // Generate the return object.
-            generateJSONObject(returnObject, false, type.name(), data, endPoint, responseCode, "IOException", ex.getMessage());
-        } catch (Exception ex) {
-            // Generate the return object.
-            generateJSONObject(returnObject, false, type.name(), data, endPoint, responseCode, "Exception", ex.getMessage());
-        } finally {
-            if (inStream != null) {
-                try {
-                    inStream.close();
-                } catch (IOException ex) {
-                    // Generate the return object.
-                    generateJSONObject(returnObject, false, type.name(), data, endPoint, responseCode, "IOException", ex.getMessage());
+                // Handle the current limits.
+                String remaining = response.getResponseHeader("Ratelimit-Remaining");
+                String reset = response.getResponseHeader("Ratelimit-Reset");
+                if (remaining != null && reset != null) {
+                    scheduler.updateRateLimits(response.getResponseHeader("Ratelimit-Limit"), remaining, reset);
                 }
+                
+                // Parse the data.
+                returnObject = new JSONObject(response.content);
+                // Generate the return object,
+                generateJSONObject(returnObject, true, type.name(), data, url, response.httpCode, "", "");
+            } catch (JSONException ex) {
+                // Generate the return object.
+                generateJSONObject(returnObject, false, type.name(), data, url, response.httpCode, "JSONException", ex.getMessage());
+            } catch (Exception ex) {
+                // Generate the return object.
+                generateJSONObject(returnObject, false, type.name(), data, url, response.httpCode, "Exception", ex.getMessage());
             }
-        }
-        
-        return returnObject;
+            
+            return returnObject;
+        });
     }
     
     /**
@@ -341,6 +280,17 @@ public class Helix {
         return getUsersByType("login", usernames);
     }
     
+    /**
+     * Method that get users by their names without blocking the calling thread.
+     * 
+     * @param usernames A string array of Twitch usernames. Limit: 100
+     * @param priority The priority of the request.
+     * @return 
+     */
+    public CompletableFuture<JSONObject> getUsersByNamesAsync(String[] usernames, HelixScheduler.Priority priority) {
+        return handleRequestAsync(priority, RequestType.GET, buildQuery("/users", "login", usernames), "");
+    }
+    
     /**
      * Method that gets a user by their name.
      * 
@@ -348,9 +298,18 @@ public class Helix {
      * @return 
      */
     public JSONObject getUserByName(String username) throws JSONException {
-        return getUsersByNames(new String[] { 
-            username 
-        });
+        return getUserByNameAsync(username, HelixScheduler.Priority.USER).join();
+    }
+    
+    /**
+     * Method that gets a user by their name, batched with other lookups made at the same time.
+     * 
+     * @param username The Twitch username.
+     * @param priority The priority of the request.
+     * @return 
+     */
+    public CompletableFuture<JSONObject> getUserByNameAsync(String username, HelixScheduler.Priority priority) {
+        return usersByLogin.lookup(username, priority);
     }
     
     /**
@@ -363,6 +322,17 @@ public class Helix {
         return getUsersByType("id", ids);
     }
     
+    /**
+     * Method that get users by their ID without blocking the calling thread.
+     * 
+     * @param ids A string array of user IDs. Limit: 100
+     * @param priority The priority of the request.
+     * @return 
+     */
+    public CompletableFuture<JSONObject> getUsersByIdsAsync(String[] ids, HelixScheduler.Priority priority) {
+        return handleRequestAsync(priority, RequestType.GET, buildQuery("/users", "id", ids), "");
+    }
+    
     /**
      * Method that gets a user by their ID.
      * 
@@ -370,9 +340,18 @@ public class Helix {
      * @return 
      */
     public JSONObject getUserById(String id) throws JSONException {
-        return getUsersByIds(new String[] { 
-            id 
-        });
+        return getUserByIdAsync(id, HelixScheduler.Priority.USER).join();
+    }
+    
+    /**
+     * Method that gets a user by their ID, batched with other lookups made at the same time.
+     * 
+     * @param id The ID of the user on Twitch.
+     * @param priority The priority of the request.
+     * @return 
+     */
+    public CompletableFuture<JSONObject> getUserByIdAsync(String id, HelixScheduler.Priority priority) {
+        return usersById.lookup(id, priority);
     }
     
     /**
@@ -418,9 +397,18 @@ public class Helix {
      * @return 
      */
     public JSONObject getStreamByName(String stream) throws JSONException {
-        return getStreamsByNames(new String[] { 
-            stream 
-        }, new String[0]);
+        return getStreamByNameAsync(stream, HelixScheduler.Priority.USER).join();
+    }
+    
+    /**
+     * Method that gets a stream by its name, batched with other lookups made at the same time.
+     * 
+     * @param stream The name of the stream to get.
+     * @param priority The priority of the request.
+     * @return 
+     */
+    public CompletableFuture<JSONObject> getStreamByNameAsync(String stream, HelixScheduler.Priority priority) {
+        return streamsByLogin.lookup(stream, priority);
     }
     
     /**
@@ -464,9 +452,18 @@ public class Helix {
      * @return 
      */
     public JSONObject getStreamById(String id) throws JSONException {
-        return getStreamsByIds(new String[] { 
-            id 
-        }, new String[0]);
+        return getStreamByIdAsync(id, HelixScheduler.Priority.USER).join();
+    }
+    
+    /**
+     * Method that gets a stream by its ID, batched with other lookups made at the same time.
+     * 
+     * @param id The id of the stream to get.
+     * @param priority The priority of the request.
+     * @return 
+     */
+    public CompletableFuture<JSONObject> getStreamByIdAsync(String id, HelixScheduler.Priority priority) {
+        return streamsById.lookup(id, priority);
     }
     
     /**
@@ -497,9 +494,18 @@ public class Helix {
      * @return 
      */
     public JSONObject getGameByName(String gameName) throws JSONException {
-        return getGamesByNames(new String[] {
-            gameName
-        });
+        return getGameByNameAsync(gameName, HelixScheduler.Priority.USER).join();
+    }
+    
+    /**
+     * Method that gets a game by its name, batched with other lookups made at the same time.
+     * 
+     * @param gameName The name of the game.
+     * @param priority The priority of the request.
+     * @return 
+     */
+    public CompletableFuture<JSONObject> getGameByNameAsync(String gameName, HelixScheduler.Priority priority) {
+        return gamesByName.lookup(gameName, priority);
     }
     
     /**
@@ -519,9 +525,18 @@ public class Helix {
      * @return 
      */
     public JSONObject getGameById(String gameID) throws JSONException {
-        return getGamesByNames(new String[] {
-            gameID
-        });
+        return getGameByIdAsync(gameID, HelixScheduler.Priority.USER).join();
+    }
+    
+    /**
+     * Method that gets a game by its ID, batched with other lookups made at the same time.
+     * 
+     * @param gameID The Id of the game.
+     * @param priority The priority of the request.
+     * @return 
+     */
+    public CompletableFuture<JSONObject> getGameByIdAsync(String gameID, HelixScheduler.Priority priority) {
+        return gamesById.lookup(gameID, priority);
     }
     
     /**
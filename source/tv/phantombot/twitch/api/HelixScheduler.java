@@ -0,0 +1,484 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.twitch.api;
+
+import com.gmt2001.Metrics;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Queues requests to Helix by priority and sends them as the rate limit allows.
+ * 
+ * The rate limit is a token bucket which is refilled from the Ratelimit headers
+ * returned by Helix, so callers never sleep while waiting for the limit to reset.
+ * Lookups for single users, streams or games can be coalesced into one request
+ * using a {@link Batcher}.
+ * 
+ * @author agent
+ */
+public class HelixScheduler implements Runnable {
+    // Number of milliseconds single lookups wait to be batched with others.
+    private static final int BATCH_WINDOW_MS = 50;
+    // Maximum number of items Helix accepts in one lookup.
+    private static final int BATCH_MAX = 100;
+    // Rate limit bucket size used until Helix tells us otherwise.
+    private static final int DEFAULT_LIMIT = 800;
+    private final PriorityBlockingQueue<Task<?>> queue = new PriorityBlockingQueue<>();
+    private final ScheduledExecutorService timer;
+    private final AtomicLong sequence = new AtomicLong(0);
+    private final Thread thread;
+    private volatile boolean isKilled = false;
+    // Token bucket state, guarded by this.
+    private int rateLimit = DEFAULT_LIMIT;
+    private int rateLimitRemaining = DEFAULT_LIMIT;
+    private long rateLimitReset = 0L;
+    private boolean rateLimitAssumed = true;
+    // Metrics.
+    private static final Metrics.Histograms WAIT_SECONDS = Metrics.instance().histograms("phantombot_helix_queue_wait_seconds", "Time Helix requests spent queued for the rate limit",
+            "priority", 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60, 120);
+    private final AtomicLong requestCount = new AtomicLong(0);
+    private final AtomicLong rateLimitedCount = new AtomicLong(0);
+    private final AtomicLong batchCount = new AtomicLong(0);
+    private final AtomicLong coalescedCount = new AtomicLong(0);
+    private final AtomicLong totalWaitMS = new AtomicLong(0);
+    private final AtomicLong maxWaitMS = new AtomicLong(0);
+    
+    /**
+     * The priority of a request, requests with a lower ordinal are sent first.
+     */
+    public enum Priority {
+        USER,
+        BACKGROUND
+    };
+    
+    /**
+     * This class constructor.
+     */
+    HelixScheduler() {
+        this.timer = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r, "tv.phantombot.twitch.api.HelixScheduler::batch");
+            t.setDaemon(true);
+            return t;
+        });
+        this.thread = new Thread(this, "tv.phantombot.twitch.api.HelixScheduler::run");
+        this.thread.setDaemon(true);
+        this.thread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
+        this.thread.start();
+
+        Metrics.instance().gauge("phantombot_helix_queue_requests", "Helix requests waiting for the rate limit", this::getQueueDepth);
+        Metrics.instance().gauge("phantombot_helix_rate_limit", "Helix requests allowed per minute", this::getRateLimit);
+        Metrics.instance().gauge("phantombot_helix_rate_limit_remaining", "Helix requests left until the rate limit resets", this::getRateLimitRemaining);
+        Metrics.instance().counter("phantombot_helix_requests_total", "Requests sent to Helix", this::getRequestCount);
+        Metrics.instance().counter("phantombot_helix_rate_limited_total", "Helix requests that had to wait for the rate limit", this::getRateLimitedCount);
+
+        for (Priority priority : Priority.values()) {
+            WAIT_SECONDS.labels(priority.name().toLowerCase());
+        }
+    }
+    
+    /**
+     * Method that queues a request.
+     * 
+     * @param priority The priority of the request.
+     * @param request Starts the request once the rate limit allows it.
+     * @return A future that completes with the result of the request.
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, Supplier<CompletableFuture<T>> request) {
+        Task<T> task = new Task<>(priority, sequence.incrementAndGet(), request);
+        queue.add(task);
+        return task.future;
+    }
+    
+    /**
+     * Method that updates the token bucket from the headers returned by Helix.
+     * 
+     * @param limit The Ratelimit-Limit header, may be null.
+     * @param remaining The Ratelimit-Remaining header.
+     * @param reset The Ratelimit-Reset header, in epoch seconds.
+     */
+    public synchronized void updateRateLimits(String limit, String remaining, String reset) {
+        try {
+            if (limit != null) {
+                rateLimit = Integer.parseInt(limit);
+            }
+            
+            long newReset = Long.parseLong(reset) * 1000L;
+            int newRemaining = Integer.parseInt(remaining);
+            
+            if (rateLimitAssumed || newReset > rateLimitReset) {
+                rateLimitReset = newReset;
+                rateLimitRemaining = newRemaining;
+                rateLimitAssumed = false;
+            } else if (newReset == rateLimitReset) {
+                // Responses can arrive out of order, keep the lowest count for the window.
+                rateLimitRemaining = Math.min(rateLimitRemaining, newRemaining);
+            }
+        } catch (NumberFormatException ex) {
+            com.gmt2001.Console.err.printStackTrace(ex);
+        }
+        
+        notifyAll();
+    }
+    
+    /**
+     * Method that waits until a token is available and takes it.
+     */
+    private synchronized void acquireToken() throws InterruptedException {
+        boolean waited = false;
+        
+        while (!isKilled) {
+            long now = System.currentTimeMillis();
+            
+            if (now >= rateLimitReset && rateLimitRemaining <= 0) {
+                // The window has reset, assume a full bucket until Helix tells us otherwise.
+                rateLimitRemaining = rateLimit;
+                rateLimitReset = now + 60000L;
+                rateLimitAssumed = true;
+            }
+            
+            if (rateLimitRemaining > 0) {
+                rateLimitRemaining--;
+                return;
+            }
+            
+            if (!waited) {
+                waited = true;
+                rateLimitedCount.incrementAndGet();
+            }
+            
+            wait(Math.max(1L, rateLimitReset - now));
+        }
+    }
+    
+    @Override
+    public void run() {
+        while (!isKilled) {
+            try {
+                // Wait for the rate limit first, so the task picked is the highest priority one once a token is available.
+                acquireToken();
+                
+                Task<?> task = queue.take();
+                
+                long waitMS = System.currentTimeMillis() - task.queued;
+                totalWaitMS.addAndGet(waitMS);
+                maxWaitMS.accumulateAndGet(waitMS, Math::max);
+                WAIT_SECONDS.labels(task.priority.name().toLowerCase()).observe(waitMS / 1000.0);
+                requestCount.incrementAndGet();
+                
+                task.start();
+            } catch (InterruptedException ex) {
+                com.gmt2001.Console.debug.println("HelixScheduler interrupted");
+            } catch (Exception ex) {
+                com.gmt2001.Console.err.printStackTrace(ex);
+            }
+        }
+    }
+    
+    /**
+     * Method that creates a batcher for single item lookups.
+     * 
+     * @param request Builds the request for a list of keys.
+     * @param ignoreCase If keys are compared without case.
+     * @param matchFields The fields of a returned item that are compared to the keys, in order of preference.
+     * @return 
+     */
+    Batcher newBatcher(Function<String[], Supplier<CompletableFuture<JSONObject>>> request, boolean ignoreCase, String... matchFields) {
+        return new Batcher(request, ignoreCase, matchFields);
+    }
+    
+    /**
+     * Method that stops the scheduler.
+     */
+    public void kill() {
+        isKilled = true;
+        thread.interrupt();
+        timer.shutdownNow();
+    }
+    
+    /**
+     * Method that gets the number of requests waiting to be sent.
+     * 
+     * @return 
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+    
+    /**
+     * Method that gets the number of requests sent.
+     * 
+     * @return 
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+    
+    /**
+     * Method that gets the number of times a request had to wait for the rate limit to reset.
+     * 
+     * @return 
+     */
+    public long getRateLimitedCount() {
+        return rateLimitedCount.get();
+    }
+    
+    /**
+     * Method that gets the number of batched lookups sent.
+     * 
+     * @return 
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+    
+    /**
+     * Method that gets the number of single lookups that were sent as part of a batch.
+     * 
+     * @return 
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+    
+    /**
+     * Method that gets the average time requests waited in the queue.
+     * 
+     * @return 
+     */
+    public long getAverageWaitMS() {
+        long count = requestCount.get();
+        return count == 0 ? 0 : totalWaitMS.get() / count;
+    }
+    
+    /**
+     * Method that gets the longest time a request waited in the queue.
+     * 
+     * @return 
+     */
+    public long getMaxWaitMS() {
+        return maxWaitMS.get();
+    }
+    
+    /**
+     * Method that gets the size of the rate limit bucket.
+     * 
+     * @return 
+     */
+    public synchronized int getRateLimit() {
+        return rateLimit;
+    }
+    
+    /**
+     * Method that gets the number of requests left before the rate limit resets.
+     * 
+     * @return 
+     */
+    public synchronized int getRateLimitRemaining() {
+        return rateLimitRemaining;
+    }
+    
+    /**
+     * Method that gets the time the rate limit resets, in epoch milliseconds.
+     * 
+     * @return 
+     */
+    public synchronized long getRateLimitReset() {
+        return rateLimitReset;
+    }
+    
+    /**
+     * A queued request.
+     */
+    private static class Task<T> implements Comparable<Task<?>> {
+        private final Priority priority;
+        private final long sequence;
+        private final long queued = System.currentTimeMillis();
+        private final Supplier<CompletableFuture<T>> request;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        
+        private Task(Priority priority, long sequence, Supplier<CompletableFuture<T>> request) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.request = request;
+        }
+        
+        private void start() {
+            try {
+                request.get().whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        future.completeExceptionally(ex);
+                    } else {
+                        future.complete(result);
+                    }
+                });
+            } catch (Exception ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+        
+        @Override
+        public int compareTo(Task<?> other) {
+            int result = priority.compareTo(other.priority);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+    
+    /**
+     * Coalesces single item lookups made within a short window into one request of up to 100 items.
+     * 
+     * Each caller receives an object shaped like the response to a lookup of just its item.
+     */
+    class Batcher {
+        private final Function<String[], Supplier<CompletableFuture<JSONObject>>> request;
+        private final String[] matchFields;
+        private final boolean ignoreCase;
+        private final LinkedHashMap<String, List<CompletableFuture<JSONObject>>> pending = new LinkedHashMap<>();
+        private Priority pendingPriority = Priority.BACKGROUND;
+        private boolean flushScheduled = false;
+        
+        /**
+         * This class constructor.
+         * 
+         * @param request Builds the request for a list of keys.
+         * @param ignoreCase If keys are compared without case.
+         * @param matchFields The fields of a returned item that are compared to the keys, in order of preference.
+         */
+        Batcher(Function<String[], Supplier<CompletableFuture<JSONObject>>> request, boolean ignoreCase, String... matchFields) {
+            this.request = request;
+            this.matchFields = matchFields;
+            this.ignoreCase = ignoreCase;
+        }
+        
+        /**
+         * Method that queues a lookup.
+         * 
+         * @param key The item to look up.
+         * @param priority The priority of the lookup.
+         * @return A future that completes with the result for this item.
+         */
+        CompletableFuture<JSONObject> lookup(String key, Priority priority) {
+            CompletableFuture<JSONObject> future = new CompletableFuture<>();
+            String normalized = ignoreCase ? key.toLowerCase() : key;
+            boolean flushNow = false;
+            
+            synchronized (this) {
+                pending.computeIfAbsent(normalized, (k) -> new ArrayList<>()).add(future);
+                
+                if (priority.compareTo(pendingPriority) < 0) {
+                    pendingPriority = priority;
+                }
+                
+                if (pending.size() >= BATCH_MAX) {
+                    flushNow = true;
+                } else if (!flushScheduled) {
+                    flushScheduled = true;
+                    timer.schedule(this::flush, BATCH_WINDOW_MS, TimeUnit.MILLISECONDS);
+                }
+            }
+            
+            if (flushNow) {
+                flush();
+            }
+            
+            return future;
+        }
+        
+        /**
+         * Method that sends the pending lookups.
+         */
+        private void flush() {
+            Map<String, List<CompletableFuture<JSONObject>>> batch;
+            Priority priority;
+            
+            synchronized (this) {
+                flushScheduled = false;
+                
+                if (pending.isEmpty()) {
+                    return;
+                }
+                
+                batch = new LinkedHashMap<>(pending);
+                priority = pendingPriority;
+                pending.clear();
+                pendingPriority = Priority.BACKGROUND;
+            }
+            
+            batchCount.incrementAndGet();
+            coalescedCount.addAndGet(batch.size());
+            
+            submit(priority, request.apply(batch.keySet().toArray(new String[0]))).whenComplete((result, ex) -> {
+                if (ex != null) {
+                    batch.values().forEach((futures) -> futures.forEach((f) -> f.completeExceptionally(ex)));
+                    return;
+                }
+                
+                try {
+                    HashMap<String, JSONObject> items = new HashMap<>();
+                    if (result.has("data")) {
+                        JSONArray data = result.getJSONArray("data");
+                    
+                        for (int i = 0; i < data.length(); i++) {
+                            JSONObject item = data.getJSONObject(i);
+                        
+                            for (String field : matchFields) {
+                                if (item.has(field)) {
+                                    String value = item.get(field).toString();
+                                    items.putIfAbsent(ignoreCase ? value.toLowerCase() : value, item);
+                                }
+                            }
+                        }
+                    }
+                
+                    batch.forEach((key, futures) -> {
+                        JSONObject single = new JSONObject();
+                        JSONArray data = new JSONArray();
+                    
+                        for (String field : JSONObject.getNames(result) == null ? new String[0] : JSONObject.getNames(result)) {
+                            if (field.startsWith("_") || field.equals("error") || field.equals("status") || field.equals("message")) {
+                                single.put(field, result.get(field));
+                            }
+                        }
+                    
+                        if (items.containsKey(key)) {
+                            data.put(items.get(key));
+                        }
+                    
+                        single.put("data", data);
+                        futures.forEach((f) -> f.complete(single));
+                    });
+                } catch (Exception e) {
+                    /* Futures that were already completed ignore this, the rest must not be left waiting */
+                    batch.values().forEach((futures) -> futures.forEach((f) -> f.completeExceptionally(e)));
+                }
+            });
+        }
+    }
+}
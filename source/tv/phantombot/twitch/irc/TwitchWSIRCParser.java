@@ -606,6 +606,7 @@ public class TwitchWSIRCParser implements Runnable {
                         com.gmt2001.Console.out.println();
 
                         // We're not a mod thus we cannot send messages.
+                        session.setModerator(false);
                         session.setAllowSendMessages(false);
                         // Remove the bot from the moderators list.
                         if (moderators.contains(username)) {
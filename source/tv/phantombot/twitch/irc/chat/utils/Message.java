@@ -19,6 +19,7 @@ package tv.phantombot.twitch.irc.chat.utils;
 public class Message {
     private final String message;
     private final boolean hasPriority;
+    private final long queuedAt = System.currentTimeMillis();
 
     /**
      * Class constructor.
@@ -58,4 +59,13 @@ public class Message {
     public boolean hasPriority() {
         return this.hasPriority;
     }
+
+    /**
+     * Method that returns when the message was queued.
+     *
+     * @return {long} queuedAt
+     */
+    public long getQueuedAt() {
+        return this.queuedAt;
+    }
 }
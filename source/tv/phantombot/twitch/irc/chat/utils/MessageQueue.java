@@ -16,21 +16,47 @@
  */
 package tv.phantombot.twitch.irc.chat.utils;
 
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
+import com.gmt2001.Metrics;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.json.JSONArray;
+import org.json.JSONObject;
 
 import tv.phantombot.twitch.irc.TwitchSession;
 import tv.phantombot.PhantomBot;
 
 public class MessageQueue implements Runnable {
-    private final BlockingDeque<Message> queue = new LinkedBlockingDeque<>();
+    /* Twitch allows 100 messages per 30 seconds to moderators and 20 to everyone else */
+    private static final double MOD_LIMIT = 100.0;
+    private static final double USER_LIMIT = 20.0;
+    /* A little more than 30 seconds to stay clear of the Twitch window */
+    private static final long WINDOW = 30200L;
+    private static final int MAX_LENGTH = 500;
+    private static final long MAX_AGE = 300000L;
+    private static final Metrics.Histogram WAIT = Metrics.instance().histogram("phantombot_chat_queue_wait_seconds", "Time chat messages waited in the queue",
+            0.05, 0.1, 0.5, 1, 2, 5, 10, 30, 60, 300);
+    private final Lane[] lanes = new Lane[]{ new Lane("moderation"), new Lane("priority"), new Lane("normal") };
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final SlidingWindow limitWindow;
+    private final SlidingWindow twitchWindow;
     private final String channelName;
     private final Thread thread;
     private TwitchSession session;
     private boolean isAllowedToSend = false;
-    private boolean isKilled = false;
-    private int writes = 0;
+    private boolean isModerator = false;
+    private boolean isThrottled = false;
+    private volatile boolean isKilled = false;
 
     /**
      * Class constructor.
@@ -39,6 +65,8 @@ public class MessageQueue implements Runnable {
      */
     public MessageQueue(String channelName) {
         this.channelName = channelName;
+        this.limitWindow = new SlidingWindow(PhantomBot.getMessageLimit());
+        this.twitchWindow = new SlidingWindow(USER_LIMIT);
 
         // Set the default thread uncaught exception handler.
         Thread.setDefaultUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
@@ -48,6 +76,12 @@ public class MessageQueue implements Runnable {
         this.thread.setUncaughtExceptionHandler(com.gmt2001.UncaughtExceptionHandler.instance());
         this.thread.setPriority(Thread.MAX_PRIORITY);
 
+        // Replaces the metrics of the queue of the previous session, if any.
+        Metrics.instance().gauges("phantombot_chat_queue_messages", "Chat messages waiting in each lane", "lane", () -> laneValues((l) -> l.messages.size()));
+        Metrics.instance().counters("phantombot_chat_messages_sent_total", "Chat messages sent from each lane", "lane", () -> laneValues((l) -> l.sent.get()));
+        Metrics.instance().counters("phantombot_chat_messages_dropped_total", "Chat messages dropped from each lane", "lane", () -> laneValues((l) -> l.dropped.get()));
+        Metrics.instance().gauge("phantombot_chat_rate_limit_used", "Messages sent in the last 30 seconds, as counted by the message limit", this::getWrites);
+        Metrics.instance().gauge("phantombot_chat_rate_limit", "Messages allowed per 30 seconds", () -> limitWindow.getCapacity());
     }
 
     /**
@@ -67,8 +101,14 @@ public class MessageQueue implements Runnable {
      *
      * @param {boolean} isAllowedToSend
      */
-    public synchronized void setAllowSendMessages(boolean isAllowedToSend) {
-        this.isAllowedToSend = isAllowedToSend;
+    public void setAllowSendMessages(boolean isAllowedToSend) {
+        lock.lock();
+        try {
+            this.isAllowedToSend = isAllowedToSend;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -81,12 +121,33 @@ public class MessageQueue implements Runnable {
     }
 
     /**
-     * Method that returns the amount of messages we've sent in 30 seconds.
+     * Method that sets if the bot is a moderator, which raises the Twitch limit from 20 to 100 messages per 30 seconds.
+     *
+     * @param {boolean} isModerator
+     */
+    public void setModerator(boolean isModerator) {
+        lock.lock();
+        try {
+            this.isModerator = isModerator;
+            twitchWindow.setCapacity(isModerator ? MOD_LIMIT : USER_LIMIT);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method that returns the amount of messages we've sent in the last 30 seconds, as counted by the message limit.
      *
      * @return {int} writes
      */
     public int getWrites() {
-        return this.writes;
+        lock.lock();
+        try {
+            return (int) Math.round(limitWindow.getUsed(System.currentTimeMillis()));
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -97,22 +158,78 @@ public class MessageQueue implements Runnable {
     public void say(String message) {
         message = message.replace('\r', ' ');
         String[] spl = message.split("\n");
-        for (String str : spl) {
-            queue.add(new Message(str));
+        lock.lock();
+        try {
+            for (String str : spl) {
+                lanes[2].add(new Message(str));
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
-     * Method that adds a message to the top of the queue.
+     * Method that adds a message to the top of the queue. Moderation commands go before everything else and are not
+     * held back by the message limit, only by the Twitch limit.
      *
      * @param {String} message
      */
     public void sayNow(String message) {
         message = message.replace('\r', ' ');
         String[] spl = message.split("\n");
-        for (int i = spl.length; i > 0; i--) {
-            queue.addFirst(new Message(spl[i - 1], spl[i - 1].startsWith(".")));
+        lock.lock();
+        try {
+            for (String str : spl) {
+                boolean isCommand = str.startsWith(".");
+                lanes[isCommand ? 0 : 1].add(new Message(str, isCommand));
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method that returns the queue depth, sent and dropped counts and latency of each lane.
+     *
+     * @return {JSONObject}
+     */
+    public JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        JSONArray list = new JSONArray();
+
+        lock.lock();
+        try {
+            for (Lane lane : lanes) {
+                list.put(lane.toJSON());
+            }
+
+            stats.put("moderator", isModerator);
+            stats.put("allowed", isAllowedToSend);
+            stats.put("writes", (int) Math.round(limitWindow.getUsed(System.currentTimeMillis())));
+            stats.put("limit", limitWindow.getCapacity());
+        } finally {
+            lock.unlock();
         }
+
+        stats.put("lanes", list);
+        return stats;
+    }
+
+    private Map<String, Number> laneValues(Function<Lane, Number> value) {
+        Map<String, Number> values = new HashMap<>();
+
+        lock.lock();
+        try {
+            for (Lane lane : lanes) {
+                values.put(lane.name, value.apply(lane));
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return values;
     }
 
     /**
@@ -120,50 +237,257 @@ public class MessageQueue implements Runnable {
      */
     @Override
     public void run() {
-        long lastWrite = System.currentTimeMillis();
-        long nextWrite = System.currentTimeMillis();
-        double limit = PhantomBot.getMessageLimit();
-
         while (!isKilled) {
             try {
-                // Get the next message in the queue.
-                Message message = queue.take();
-
-                // Set the time we got the message.
-                long time = System.currentTimeMillis();
-
-                // Make sure we're allowed to send messages and that this one can be sent.
-                if (isAllowedToSend && (nextWrite < time || (message.hasPriority() && writes <= 99))) {
-                    if (lastWrite > time) {
-                        if (writes >= limit && !message.hasPriority()) {
-                            nextWrite = (time + (lastWrite - time));
-                            com.gmt2001.Console.warn.println("Message limit of (" + limit + ") has been reached. Messages will be sent again in " + (nextWrite - time) + "ms");
-                            continue;
-                        }
-                        writes++;
-                    } else {
-                        writes = 1;
-                        lastWrite = (time + 30200);
-                    }
+                String message = next();
 
-                    // Send the message.
-                    session.sendRaw("PRIVMSG #" + this.channelName + " :" + message.getMessage());
-                    com.gmt2001.Console.out.println("[CHAT] " + message.getMessage());
+                if (message != null) {
+                    session.sendRaw("PRIVMSG #" + this.channelName + " :" + message);
+                    com.gmt2001.Console.out.println("[CHAT] " + message);
                 }
             } catch (WebsocketNotConnectedException ex) {
                 com.gmt2001.Console.err.println("Failed to send message due to being disconnected from Twitch IRC.");
                 this.setAllowSendMessages(false);
                 session.reconnect();
             } catch (InterruptedException ex) {
-                com.gmt2001.Console.err.printStackTrace(ex);
+                if (!isKilled) {
+                    com.gmt2001.Console.err.printStackTrace(ex);
+                }
             }
         }
     }
 
+    /**
+     * Waits until a message can be sent without going over the limits and takes it from the queue.
+     */
+    private String next() throws InterruptedException {
+        lock.lock();
+        try {
+            while (!isKilled) {
+                long now = System.currentTimeMillis();
+                Lane lane = null;
+
+                for (Lane l : lanes) {
+                    l.dropStale(now);
+
+                    if (lane == null && !l.isEmpty()) {
+                        lane = l;
+                    }
+                }
+
+                if (lane == null) {
+                    isThrottled = false;
+                    changed.await();
+                    continue;
+                }
+
+                // Same as before, messages queued while we can't talk are not sent later on.
+                if (!isAllowedToSend) {
+                    for (Lane l : lanes) {
+                        l.dropAll();
+                    }
+                    continue;
+                }
+
+                boolean limited = lane != lanes[0];
+                long wait = Math.max(twitchWindow.getWait(now), limited ? limitWindow.getWait(now) : 0L);
+
+                if (wait > 0L) {
+                    if (!isThrottled) {
+                        isThrottled = true;
+                        com.gmt2001.Console.warn.println("Message limit of (" + (long) limitWindow.getCapacity() + ") has been reached. Messages are delayed until it allows them again, the next one in " + wait + "ms");
+                    }
+
+                    // Woken up early when a message is added to a lane that may go first.
+                    changed.await(wait, TimeUnit.MILLISECONDS);
+                    continue;
+                }
+
+                twitchWindow.take(now);
+                if (limited) {
+                    limitWindow.take(now);
+                }
+
+                return lane == lanes[2] && PhantomBot.getMergeMessages() ? lane.pollMerged(now) : lane.poll(now);
+            }
+
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Method that kills this instance.
      */
     public void kill() {
         this.isKilled = true;
+        this.thread.interrupt();
+    }
+
+    /**
+     * A queue of messages with the same priority, with its counters. Guarded by the lock of the queue.
+     */
+    private static class Lane {
+
+        private final String name;
+        private final Deque<Message> messages = new ArrayDeque<>();
+        private final AtomicLong sent = new AtomicLong(0L);
+        private final AtomicLong dropped = new AtomicLong(0L);
+        private final AtomicLong totalLatency = new AtomicLong(0L);
+        private final AtomicLong maxLatency = new AtomicLong(0L);
+
+        private Lane(String name) {
+            this.name = name;
+        }
+
+        private void add(Message message) {
+            messages.add(message);
+        }
+
+        private boolean isEmpty() {
+            return messages.isEmpty();
+        }
+
+        private String poll(long now) {
+            Message message = messages.poll();
+            sent(message, now);
+            return message.getMessage();
+        }
+
+        /**
+         * Takes the next message and appends the following ones to it while they fit in one Twitch message. Commands
+         * are never merged and /me messages only with other /me messages.
+         */
+        private String pollMerged(long now) {
+            Message first = messages.poll();
+            sent(first, now);
+            String text = first.getMessage();
+            String prefix = text.startsWith("/me ") ? "/me " : "";
+
+            if (isCommand(text) && prefix.isEmpty()) {
+                return text;
+            }
+
+            StringBuilder sb = new StringBuilder(text);
+            Message next;
+
+            while ((next = messages.peek()) != null) {
+                String nextText = next.getMessage();
+
+                if (!prefix.isEmpty()) {
+                    if (!nextText.startsWith(prefix)) {
+                        break;
+                    }
+                    nextText = nextText.substring(prefix.length());
+                }
+
+                if (isCommand(nextText) || sb.length() + 3 + nextText.length() > MAX_LENGTH) {
+                    break;
+                }
+
+                sb.append(" | ").append(nextText);
+                sent(messages.poll(), now);
+            }
+
+            return sb.toString();
+        }
+
+        private static boolean isCommand(String text) {
+            return text.startsWith(".") || text.startsWith("/");
+        }
+
+        private void sent(Message message, long now) {
+            long latency = now - message.getQueuedAt();
+            sent.incrementAndGet();
+            totalLatency.addAndGet(latency);
+            maxLatency.accumulateAndGet(latency, Math::max);
+            WAIT.observe(latency / 1000.0);
+        }
+
+        private void dropStale(long now) {
+            while (!messages.isEmpty() && now - messages.peek().getQueuedAt() > MAX_AGE) {
+                messages.poll();
+                dropped.incrementAndGet();
+            }
+        }
+
+        private void dropAll() {
+            dropped.addAndGet(messages.size());
+            messages.clear();
+        }
+
+        private JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            long count = sent.get();
+            json.put("name", name);
+            json.put("queued", messages.size());
+            json.put("sent", count);
+            json.put("dropped", dropped.get());
+            json.put("avgLatency", count > 0L ? totalLatency.get() / count : 0L);
+            json.put("maxLatency", maxLatency.get());
+            return json;
+        }
+    }
+
+    /**
+     * Sliding window limit. Every send is remembered for one window, and a message is only sent while fewer than
+     * capacity were sent in the last window. Unlike a token bucket this can't allow a full burst plus its refill inside
+     * the same window.
+     */
+    private static class SlidingWindow {
+
+        private final Deque<Long> sends = new ArrayDeque<>();
+        private double capacity;
+
+        private SlidingWindow(double capacity) {
+            this.capacity = capacity;
+        }
+
+        private void expire(long now) {
+            while (!sends.isEmpty() && sends.peekFirst() <= now - WINDOW) {
+                sends.pollFirst();
+            }
+        }
+
+        private void setCapacity(double capacity) {
+            this.capacity = capacity;
+        }
+
+        private double getCapacity() {
+            return capacity;
+        }
+
+        private double getUsed(long now) {
+            expire(now);
+            return sends.size();
+        }
+
+        /**
+         * Returns how long to wait until the oldest send that is in the way leaves the window, 0 if a message can go now.
+         */
+        private long getWait(long now) {
+            expire(now);
+            int limit = Math.max(1, (int) capacity);
+
+            if (sends.size() < limit) {
+                return 0L;
+            }
+
+            /* After lowering the capacity more than limit sends can be in the window, wait for the extra ones too */
+            int skip = sends.size() - limit;
+            for (Long sent : sends) {
+                if (skip-- == 0) {
+                    return Math.max(1L, sent + WINDOW - now);
+                }
+            }
+
+            return 1L;
+        }
+
+        private void take(long now) {
+            expire(now);
+            sends.addLast(now);
+        }
     }
 }
@@ -0,0 +1,570 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.ytplayer;
+
+import com.gmt2001.YouTubeCache;
+import com.gmt2001.datastore.DataStore;
+import com.gmt2001.datastore.KeyValue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import tv.phantombot.PhantomBot;
+
+/**
+ * Keeps the YouTube player playlists in memory.
+ *
+ * Each playlist is read from its ytPlaylist_ table once. Entries are kept in play order next to an index from video id
+ * to keys, so appending, deleting a video and picking the next song never scan the table. Changes are written to the
+ * database in one batch every few seconds, and changes to the active playlist are sent to the player as deltas.
+ *
+ * @author agent
+ */
+public final class PlaylistStore {
+
+    private static final PlaylistStore INSTANCE = new PlaylistStore();
+    public static final String PREFIX = "ytPlaylist_";
+    private static final String REGISTRY = "yt_playlists_registry";
+    private static final String PANEL_TABLE = "ytPanelPlaylist";
+    private static final String LASTKEY = "lastkey";
+    private static final long FLUSH_INTERVAL = 2L;
+    private final Map<String, Playlist> playlists = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private volatile String active = null;
+
+    public static PlaylistStore instance() {
+        return INSTANCE;
+    }
+
+    private PlaylistStore() {
+        this.executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread thread = new Thread(r, "tv.phantombot.ytplayer.PlaylistStore");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Gets a playlist, reading it from the database the first time
+     *
+     * @param name
+     * @return
+     */
+    public Playlist get(String name) {
+        return this.playlists.computeIfAbsent(name, Playlist::new);
+    }
+
+    /**
+     * Tells if a playlist is registered
+     *
+     * @param name
+     * @return
+     */
+    public boolean exists(String name) {
+        return PhantomBot.instance().getDataStore().exists(REGISTRY, PREFIX + name);
+    }
+
+    /**
+     * Registers a playlist, if it is not registered yet
+     *
+     * @param name
+     * @return The playlist
+     */
+    public Playlist create(String name) {
+        DataStore db = PhantomBot.instance().getDataStore();
+        String table = PREFIX + name;
+
+        if (!db.exists(REGISTRY, table) || !db.FileExists(table)) {
+            db.SetString(REGISTRY, "", table, "true");
+            db.AddFile(table);
+            this.syncPanelTable();
+        }
+
+        return this.get(name);
+    }
+
+    /**
+     * Unregisters a playlist and deletes its table
+     *
+     * @param name
+     * @return false if the playlist was not registered
+     */
+    public boolean delete(String name) {
+        if (!this.exists(name)) {
+            return false;
+        }
+
+        DataStore db = PhantomBot.instance().getDataStore();
+        Playlist playlist = this.playlists.remove(name);
+
+        if (playlist != null) {
+            playlist.drop();
+        }
+
+        db.RemoveKeysFromFiles(new String[]{REGISTRY}, "", new String[]{PREFIX + name});
+        db.RemoveFile(PREFIX + name);
+        this.syncPanelTable();
+        return true;
+    }
+
+    /**
+     * Sets the playlist that is loaded in the player. Only its changes are sent to the player
+     *
+     * @param name
+     */
+    public void setActive(String name) {
+        this.active = name;
+    }
+
+    /**
+     * Sends the whole active playlist to the player
+     */
+    public void push() {
+        WsYTHandler handler = PhantomBot.instance().getYTHandler();
+        String name = this.active;
+
+        if (handler == null || name == null) {
+            return;
+        }
+
+        List<String> ids = this.get(name).list();
+        Map<String, YouTubeCache.Video> videos = YouTubeCache.instance().getAll(ids);
+        List<YouTubeCache.Video> list = new ArrayList<>();
+
+        for (int i = 0; i < ids.size(); i++) {
+            YouTubeCache.Video video = videos.get(ids.get(i));
+
+            if (video == null) {
+                com.gmt2001.Console.err.println("YouTube API Failed Lookup: Playlist [" + name + "] Index [" + i + "] YT ID [" + ids.get(i)
+                        + "] Error [" + YouTubeCache.NOT_FOUND + "]");
+                continue;
+            }
+
+            list.add(video);
+        }
+
+        handler.playlist(name, list);
+    }
+
+    /**
+     * Writes the playlist names to the ytPanelPlaylist table, changing only the rows that differ
+     */
+    public void syncPanelTable() {
+        DataStore db = PhantomBot.instance().getDataStore();
+        String[] names = db.GetKeyList(REGISTRY, "");
+        Map<String, String> current = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+
+        for (KeyValue kv : db.GetKeyValueList(PANEL_TABLE, "")) {
+            current.put(kv.getKey(), kv.getValue());
+        }
+
+        for (int i = 0; i < names.length; i++) {
+            String key = Integer.toString(i + 1);
+            String value = names[i].replace(PREFIX, "");
+
+            if (!value.equals(current.remove(key))) {
+                keys.add(key);
+                values.add(value);
+            }
+        }
+
+        removed.addAll(current.keySet());
+
+        if (!keys.isEmpty()) {
+            db.SetBatchString(PANEL_TABLE, "", keys.toArray(new String[0]), values.toArray(new String[0]));
+        }
+
+        if (!removed.isEmpty()) {
+            db.RemoveKeysFromFiles(new String[]{PANEL_TABLE}, "", removed.toArray(new String[0]));
+        }
+    }
+
+    /**
+     * Writes the pending changes of every playlist to the database
+     */
+    public void flush() {
+        if (PhantomBot.instance() == null) {
+            return;
+        }
+
+        this.playlists.values().forEach((playlist) -> {
+            try {
+                playlist.flush();
+            } catch (Exception ex) {
+                com.gmt2001.Console.err.printStackTrace(ex);
+            }
+        });
+    }
+
+    /**
+     * Writes the pending changes and stops the flush timer
+     */
+    public void kill() {
+        this.executor.shutdown();
+        this.flush();
+    }
+
+    private void added(Playlist playlist, String id) {
+        WsYTHandler handler = PhantomBot.instance().getYTHandler();
+
+        if (handler != null && playlist.name.equals(this.active)) {
+            YouTubeCache.Video video = YouTubeCache.instance().get(id);
+
+            if (video != null) {
+                handler.playlistAdd(playlist.name, video);
+            }
+        }
+    }
+
+    private void removed(Playlist playlist, String id) {
+        WsYTHandler handler = PhantomBot.instance().getYTHandler();
+
+        if (handler != null && playlist.name.equals(this.active)) {
+            handler.playlistRemove(playlist.name, id);
+        }
+    }
+
+    /**
+     * One playlist
+     *
+     * The play order is a list of keys in which deleted entries are left as null until the list is compacted, so a
+     * delete only has to look its slot up in the position index.
+     */
+    public static final class Playlist {
+
+        private final String name;
+        private final String table;
+        private final Map<Long, String> entries = new HashMap<>();
+        private final Map<String, Set<Long>> index = new HashMap<>();
+        private final List<Long> order = new ArrayList<>();
+        private final Map<Long, Integer> positions = new HashMap<>();
+        private final Map<String, String> pendingSet = new LinkedHashMap<>();
+        private final Set<String> pendingRemove = new LinkedHashSet<>();
+        private long lastKey = -1;
+        private int holes = 0;
+        private int cursor = 0;
+        private boolean shuffle = false;
+        private boolean dropped = false;
+
+        private Playlist(String name) {
+            this.name = name;
+            this.table = PREFIX + name;
+            this.load();
+        }
+
+        private void load() {
+            List<Long> keys = new ArrayList<>();
+
+            for (KeyValue kv : PhantomBot.instance().getDataStore().GetKeyValueList(this.table, "")) {
+                if (kv.getKey().equals(LASTKEY)) {
+                    this.lastKey = Math.max(this.lastKey, parseKey(kv.getValue()));
+                    continue;
+                }
+
+                long key = parseKey(kv.getKey());
+
+                if (key >= 0 && kv.getValue() != null && !kv.getValue().isEmpty()) {
+                    this.entries.put(key, kv.getValue());
+                    this.index.computeIfAbsent(kv.getValue(), (k) -> new LinkedHashSet<>()).add(key);
+                    this.lastKey = Math.max(this.lastKey, key);
+                    keys.add(key);
+                }
+            }
+
+            Collections.sort(keys);
+            keys.forEach(this::append);
+        }
+
+        private static long parseKey(String key) {
+            try {
+                return Long.parseLong(key.trim());
+            } catch (NullPointerException | NumberFormatException ex) {
+                return -1;
+            }
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public synchronized int size() {
+            return this.entries.size();
+        }
+
+        /**
+         * Tells if a video is in the playlist
+         *
+         * @param id
+         * @return
+         */
+        public synchronized boolean contains(String id) {
+            return this.index.containsKey(id);
+        }
+
+        /**
+         * Appends a video at the end of the playlist
+         *
+         * @param id
+         * @return The key of the new entry, or -1 if the video is already in the playlist
+         */
+        public long add(String id) {
+            long key;
+
+            synchronized (this) {
+                if (this.index.containsKey(id)) {
+                    return -1;
+                }
+
+                key = ++this.lastKey;
+                this.entries.put(key, id);
+                this.index.computeIfAbsent(id, (k) -> new LinkedHashSet<>()).add(key);
+                this.append(key);
+                this.pendingRemove.remove(Long.toString(key));
+                this.pendingSet.put(Long.toString(key), id);
+                this.pendingSet.put(LASTKEY, Long.toString(key));
+            }
+
+            INSTANCE.added(this, id);
+            return key;
+        }
+
+        /**
+         * Deletes a video from the playlist
+         *
+         * @param id
+         * @return The number of entries deleted
+         */
+        public int remove(String id) {
+            int count;
+
+            synchronized (this) {
+                Set<Long> keys = this.index.remove(id);
+
+                if (keys == null) {
+                    return 0;
+                }
+
+                for (Long key : keys) {
+                    this.entries.remove(key);
+                    this.order.set(this.positions.remove(key), null);
+                    this.holes++;
+                    this.pendingSet.remove(Long.toString(key));
+                    this.pendingRemove.add(Long.toString(key));
+                }
+
+                count = keys.size();
+
+                if (this.holes > 32 && this.holes > this.order.size() / 2) {
+                    this.compact();
+                }
+            }
+
+            INSTANCE.removed(this, id);
+            return count;
+        }
+
+        /**
+         * Replaces every entry of the playlist and writes it to the database right away. Null and repeated ids are skipped
+         *
+         * @param ids
+         * @return The number of entries written, without the skipped ids
+         */
+        public synchronized int replace(List<String> ids) {
+            DataStore db = PhantomBot.instance().getDataStore();
+            List<String> keys = new ArrayList<>();
+            List<String> values = new ArrayList<>();
+            int written = 0;
+
+            this.entries.clear();
+            this.index.clear();
+            this.order.clear();
+            this.positions.clear();
+            this.pendingSet.clear();
+            this.pendingRemove.clear();
+            this.holes = 0;
+            this.cursor = 0;
+            this.lastKey = -1;
+
+            for (String id : ids) {
+                if (id == null || this.index.containsKey(id)) {
+                    continue;
+                }
+
+                long key = ++this.lastKey;
+                this.entries.put(key, id);
+                this.index.computeIfAbsent(id, (k) -> new LinkedHashSet<>()).add(key);
+                this.append(key);
+                keys.add(Long.toString(key));
+                values.add(id);
+                written++;
+            }
+
+            keys.add(LASTKEY);
+            values.add(Long.toString(this.lastKey));
+
+            db.RemoveFile(this.table);
+            db.AddFile(this.table);
+            db.SetBatchString(this.table, "", keys.toArray(new String[0]), values.toArray(new String[0]));
+
+            if (this.shuffle) {
+                this.reset(true);
+            }
+
+            return written;
+        }
+
+        /**
+         * Rebuilds the play order and starts it over
+         *
+         * @param shuffle true to play the entries in random order
+         * @return The number of entries
+         */
+        public synchronized int reset(boolean shuffle) {
+            List<Long> keys = new ArrayList<>(this.entries.keySet());
+
+            Collections.sort(keys);
+
+            if (shuffle) {
+                Collections.shuffle(keys, ThreadLocalRandom.current());
+            }
+
+            this.shuffle = shuffle;
+            this.order.clear();
+            this.positions.clear();
+            this.holes = 0;
+            this.cursor = 0;
+            keys.forEach(this::append);
+            return keys.size();
+        }
+
+        /**
+         * Gets the next video in play order. At the end of the order, it is started over, reshuffled if needed
+         *
+         * @return The video id, or null if the end of the order was reached
+         */
+        public synchronized String next() {
+            while (this.cursor < this.order.size()) {
+                Long key = this.order.get(this.cursor++);
+
+                if (key != null) {
+                    return this.entries.get(key);
+                }
+            }
+
+            this.reset(this.shuffle);
+            return null;
+        }
+
+        /**
+         * Gets the video at a position of the play order
+         *
+         * @param position
+         * @return The video id, or null if the position is out of range
+         */
+        public synchronized String get(int position) {
+            this.compact();
+
+            if (position < 0 || position >= this.order.size()) {
+                return null;
+            }
+
+            return this.entries.get(this.order.get(position));
+        }
+
+        /**
+         * Gets the videos in play order
+         *
+         * @return
+         */
+        public synchronized List<String> list() {
+            this.compact();
+
+            List<String> ret = new ArrayList<>(this.order.size());
+            this.order.forEach((key) -> ret.add(this.entries.get(key)));
+            return ret;
+        }
+
+        private void append(Long key) {
+            this.positions.put(key, this.order.size());
+            this.order.add(key);
+        }
+
+        private void compact() {
+            if (this.holes == 0) {
+                return;
+            }
+
+            List<Long> keys = new ArrayList<>(this.entries.size());
+            int newCursor = 0;
+
+            for (int i = 0; i < this.order.size(); i++) {
+                Long key = this.order.get(i);
+
+                if (key != null) {
+                    if (i < this.cursor) {
+                        newCursor++;
+                    }
+
+                    keys.add(key);
+                }
+            }
+
+            this.order.clear();
+            this.positions.clear();
+            this.holes = 0;
+            this.cursor = newCursor;
+            keys.forEach(this::append);
+        }
+
+        private synchronized void drop() {
+            this.dropped = true;
+            this.pendingSet.clear();
+            this.pendingRemove.clear();
+        }
+
+        private synchronized void flush() {
+            if (this.dropped || (this.pendingSet.isEmpty() && this.pendingRemove.isEmpty())) {
+                return;
+            }
+
+            DataStore db = PhantomBot.instance().getDataStore();
+
+            if (!this.pendingSet.isEmpty()) {
+                db.SetBatchString(this.table, "", this.pendingSet.keySet().toArray(new String[0]), this.pendingSet.values().toArray(new String[0]));
+                this.pendingSet.clear();
+            }
+
+            if (!this.pendingRemove.isEmpty()) {
+                db.RemoveKeysFromFiles(new String[]{this.table}, "", this.pendingRemove.toArray(new String[0]));
+                this.pendingRemove.clear();
+            }
+        }
+    }
+}
@@ -16,6 +16,8 @@
  */
 package tv.phantombot.ytplayer;
 
+import com.gmt2001.YouTubeCache;
+import com.gmt2001.datastore.KeyValue;
 import com.gmt2001.httpwsserver.WebSocketFrameHandler;
 import com.gmt2001.httpwsserver.WsFrameHandler;
 import com.gmt2001.httpwsserver.auth.WsAuthenticationHandler;
@@ -28,13 +30,16 @@ import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketCloseStatus;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.util.AttributeKey;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
@@ -49,9 +54,6 @@ import tv.phantombot.event.ytplayer.YTPlayerDeleteSREvent;
 import tv.phantombot.event.ytplayer.YTPlayerDisconnectEvent;
 import tv.phantombot.event.ytplayer.YTPlayerLoadPlaylistEvent;
 import tv.phantombot.event.ytplayer.YTPlayerRandomizeEvent;
-import tv.phantombot.event.ytplayer.YTPlayerRequestCurrentSongEvent;
-import tv.phantombot.event.ytplayer.YTPlayerRequestPlaylistEvent;
-import tv.phantombot.event.ytplayer.YTPlayerRequestSonglistEvent;
 import tv.phantombot.event.ytplayer.YTPlayerSkipSongEvent;
 import tv.phantombot.event.ytplayer.YTPlayerSongRequestEvent;
 import tv.phantombot.event.ytplayer.YTPlayerStateEvent;
@@ -66,6 +68,7 @@ public class WsYTHandler implements WsFrameHandler {
 
     private static final AttributeKey<Boolean> ATTR_IS_PLAYER = AttributeKey.valueOf("isPlayer");
     private static final AttributeKey<Date> ATTR_LAST_PONG = AttributeKey.valueOf("lastPong");
+    private static final AttributeKey<Boolean> ATTR_SUBSCRIBED = AttributeKey.valueOf("ytSubscribed");
     private static final String[] ALLOWED_DB_QUERY_TABLES = new String[]{"modules", "ytSettings", "yt_playlists_registry"};
     private static final String[] ALLOWED_DB_UPDATE_TABLES = new String[]{"ytSettings"};
     private final WsAuthenticationHandler authHandler;
@@ -74,6 +77,7 @@ public class WsYTHandler implements WsFrameHandler {
     private boolean clientConnected;
     private int bufferCounter;
     private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final YTPlayerSync sync = new YTPlayerSync(this::sendJSONToSubscribers);
 
     public WsYTHandler(String ytAuthRO, String ytAuth) {
         authHandler = new WsSharedRWTokenAuthenticationHandler(ytAuthRO, ytAuth, 10);
@@ -232,6 +236,7 @@ public class WsYTHandler implements WsFrameHandler {
             } else if (jsonStatus.has("volume")) {
                 dataInt = jsonStatus.getInt("volume");
                 setCurrentVolume(dataInt);
+                sync.setVolume(dataInt);
                 EventBus.instance().postAsync(new YTPlayerVolumeEvent(dataInt));
             } else if (jsonStatus.has("errorcode")) {
                 dataInt = jsonStatus.getInt("errorcode");
@@ -280,21 +285,13 @@ public class WsYTHandler implements WsFrameHandler {
     }
 
     private void handleUnrestrictedCommands(ChannelHandlerContext ctx, WebSocketFrame frame, JSONObject jso) {
-        if (jso.has("query")) {
+        if (jso.has("subscribe")) {
+            ctx.channel().attr(ATTR_SUBSCRIBED).set(Boolean.TRUE);
+            WebSocketFrameHandler.sendWsFrame(ctx, frame, WebSocketFrameHandler.prepareTextWebSocketResponse(
+                    sync.subscribe(jso.optLong("epoch", 0L), jso.optLong("version", -1L))));
+        } else if (jso.has("query")) {
             try {
-                switch (jso.getString("query")) {
-                    case "songlist":
-                        EventBus.instance().postAsync(new YTPlayerRequestSonglistEvent());
-                        break;
-                    case "playlist":
-                        EventBus.instance().postAsync(new YTPlayerRequestPlaylistEvent());
-                        break;
-                    case "currentsong":
-                        EventBus.instance().postAsync(new YTPlayerRequestCurrentSongEvent());
-                        break;
-                    default:
-                        break;
-                }
+                handleQuery(ctx, frame, jso.getString("query"));
             } catch (JSONException ex) {
                 com.gmt2001.Console.err.logStackTrace(ex);
             }
@@ -309,6 +306,45 @@ public class WsYTHandler implements WsFrameHandler {
         }
     }
 
+    /**
+     * Answers the queries of clients that do not subscribe, from the synced state and to the asking client only
+     */
+    private void handleQuery(ChannelHandlerContext ctx, WebSocketFrame frame, String query) throws JSONException {
+        JSONStringer jso = new JSONStringer();
+
+        switch (query) {
+            case "songlist":
+                jso.object().key("songlist").array();
+                for (YTPlayerSync.Song song : sync.getSonglist()) {
+                    writeSong(jso, song);
+                }
+                jso.endArray().endObject();
+                break;
+            case "playlist":
+                jso.object().key("playlistname").value(sync.getPlaylistName()).key("playlist").array();
+                for (YTPlayerSync.Song song : sync.getPlaylist()) {
+                    writeSong(jso, song);
+                }
+                jso.endArray().endObject();
+                break;
+            case "currentsong":
+                YTPlayerSync.Song current = sync.getCurrent();
+
+                if (current == null) {
+                    return;
+                }
+
+                jso.object().key("currentsong");
+                writeSong(jso, current);
+                jso.endObject();
+                break;
+            default:
+                return;
+        }
+
+        WebSocketFrameHandler.sendWsFrame(ctx, frame, WebSocketFrameHandler.prepareTextWebSocketResponse(jso.toString()));
+    }
+
     public void handleDBQuery(ChannelHandlerContext ctx, WebSocketFrame frame, String id, String table) throws JSONException {
         if (!Arrays.stream(ALLOWED_DB_QUERY_TABLES).anyMatch(t -> t.equals(table))) {
             return;
@@ -318,10 +354,8 @@ public class WsYTHandler implements WsFrameHandler {
 
         jsonObject.object().key("query_id").value(id);
 
-        String[] dbKeys = PhantomBot.instance().getDataStore().GetKeyList(table, "");
-        for (String dbKey : dbKeys) {
-            String value = PhantomBot.instance().getDataStore().GetString(table, "", dbKey);
-            jsonObject.key(dbKey).value(value);
+        for (KeyValue kv : PhantomBot.instance().getDataStore().GetKeyValueList(table, "")) {
+            jsonObject.key(kv.getKey()).value(kv.getValue());
         }
 
         jsonObject.endObject();
@@ -361,24 +395,92 @@ public class WsYTHandler implements WsFrameHandler {
         jso.key("requester").value(requester);
         jso.endObject();
         jso.endObject();
-        sendJSONToAll(jso.toString());
+        sendJSONToPlayer(jso.toString());
+        sync.setCurrent(new YTPlayerSync.Song(youtubeID, songTitle, duration, requester));
+    }
+
+    /**
+     * Replaces the playlist shown by the clients
+     *
+     * @param playlistName
+     * @param videos
+     */
+    public void playlist(String playlistName, List<YouTubeCache.Video> videos) {
+        List<YTPlayerSync.Song> songs = new ArrayList<>();
+
+        videos.forEach((video) -> songs.add(new YTPlayerSync.Song(video.getId(), video.getTitle(), duration(video.getLength()), null)));
+        sync.setPlaylist(playlistName, songs);
+    }
+
+    /**
+     * Tells the clients about a song that was appended to a playlist
+     *
+     * @param playlistName
+     * @param video
+     */
+    public void playlistAdd(String playlistName, YouTubeCache.Video video) {
+        sync.add(playlistName, new YTPlayerSync.Song(video.getId(), video.getTitle(), duration(video.getLength()), null));
+    }
+
+    /**
+     * Tells the clients about a song that was deleted from a playlist
+     *
+     * @param playlistName
+     * @param youtubeID
+     */
+    public void playlistRemove(String playlistName, String youtubeID) {
+        sync.remove(playlistName, youtubeID);
+    }
+
+    /**
+     * Replaces the song request queue shown by the clients. The clients are only sent what changed
+     *
+     * @param songlist A JSON array of [id, title, duration, requester] arrays
+     * @throws JSONException
+     */
+    public void songlist(String songlist) throws JSONException {
+        JSONArray jsa = new JSONArray(songlist);
+        List<YTPlayerSync.Song> songs = new ArrayList<>();
+
+        for (int i = 0; i < jsa.length(); i++) {
+            JSONArray song = jsa.getJSONArray(i);
+            songs.add(new YTPlayerSync.Song(song.getString(0), song.getString(1), song.getString(2), song.getString(3)));
+        }
+
+        sync.setSonglist(songs);
+    }
+
+    private static void writeSong(JSONStringer jso, YTPlayerSync.Song song) throws JSONException {
+        jso.object();
+        jso.key("song").value(song.id);
+        jso.key("title").value(song.title);
+        jso.key("duration").value(song.duration);
+        if (song.requester != null) {
+            jso.key("requester").value(song.requester);
+        }
+        jso.endObject();
+    }
+
+    private static String duration(int seconds) {
+        return String.format("%02d:%02d", seconds / 60, seconds % 60);
     }
 
     public void pause() throws JSONException {
         JSONStringer jso = new JSONStringer();
-        sendJSONToAll(jso.object().key("command").value("pause").endObject().toString());
+        sendJSONToPlayer(jso.object().key("command").value("pause").endObject().toString());
     }
 
     public void currentId() throws JSONException {
         JSONStringer jso = new JSONStringer();
-        sendJSONToAll(jso.object().key("command").value("querysong").toString());
+        sendJSONToPlayer(jso.object().key("command").value("querysong").endObject().toString());
     }
 
     public void setVolume(int volume) throws JSONException {
         JSONStringer jso = new JSONStringer();
         if (!(volume > 100 || volume < 0)) {
             setCurrentVolume(volume);
-            sendJSONToAll(jso.object().key("command").object().key("setvolume").value(volume).endObject().endObject().toString());
+            sendJSONToPlayer(jso.object().key("command").object().key("setvolume").value(volume).endObject().endObject().toString());
+            sync.setVolume(volume);
         }
     }
 
@@ -393,4 +495,29 @@ public class WsYTHandler implements WsFrameHandler {
     public void sendJSONToAll(String jsonString) {
         WebSocketFrameHandler.broadcastWsFrame("/ws/ytplayer", WebSocketFrameHandler.prepareTextWebSocketResponse(jsonString));
     }
+
+    private void sendJSONToPlayer(String jsonString) {
+        sendJSONTo(jsonString, ATTR_IS_PLAYER);
+    }
+
+    private void sendJSONToSubscribers(String jsonString) {
+        sendJSONTo(jsonString, ATTR_SUBSCRIBED);
+    }
+
+    /**
+     * Sends a message to the clients that have an attribute set. The frame is encoded once and shared by all of them
+     */
+    private static void sendJSONTo(String jsonString, AttributeKey<Boolean> attr) {
+        WebSocketFrame frame = WebSocketFrameHandler.prepareTextWebSocketResponse(jsonString);
+
+        try {
+            WebSocketFrameHandler.getWsSessions("/ws/ytplayer").forEach((c) -> {
+                if (Boolean.TRUE.equals(c.attr(attr).get())) {
+                    c.writeAndFlush(frame.retainedDuplicate());
+                }
+            });
+        } finally {
+            frame.release();
+        }
+    }
 }
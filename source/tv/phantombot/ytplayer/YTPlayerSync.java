@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.ytplayer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+/**
+ * The state of the YouTube player that the player page and the panels show: the loaded playlist, the song request
+ * queue, the current song and the volume.
+ *
+ * Every change is recorded as an op with a version number. A client subscribes with the last version it has seen and
+ * is sent only the ops it missed, or a snapshot if it comes from an earlier run or the ops are no longer held. Each op
+ * and snapshot is serialized once, however many clients receive it.
+ *
+ * @author agent
+ */
+final class YTPlayerSync {
+
+    static final String PLAYLIST = "playlist";
+    static final String SONGLIST = "songlist";
+    private static final int MAX_OPS = 512;
+    private final long epoch = System.currentTimeMillis();
+    private final Deque<Op> ops = new ArrayDeque<>();
+    private final List<Song> playlist = new ArrayList<>();
+    private final List<Song> songlist = new ArrayList<>();
+    private final Consumer<String> broadcast;
+    private String playlistName = "";
+    private Song current = null;
+    private int volume = -1;
+    private long version = 0;
+    /* The oldest version that can still be caught up from with ops */
+    private long floor = 0;
+    private String snapshot = null;
+
+    YTPlayerSync(Consumer<String> broadcast) {
+        this.broadcast = broadcast;
+    }
+
+    /**
+     * Replaces the playlist. Clients are sent a snapshot, unless the playlist did not change
+     */
+    synchronized void setPlaylist(String name, List<Song> songs) {
+        if (name.equals(this.playlistName) && songs.equals(this.playlist)) {
+            return;
+        }
+
+        this.playlistName = name;
+        this.playlist.clear();
+        this.playlist.addAll(songs);
+        this.ops.clear();
+        this.version++;
+        this.floor = this.version;
+        this.snapshot = null;
+        this.broadcast.accept(this.snapshot());
+    }
+
+    synchronized void add(String playlistName, Song song) {
+        if (!playlistName.equals(this.playlistName) || indexOf(this.playlist, song.id) >= 0) {
+            return;
+        }
+
+        this.playlist.add(song);
+        this.record(addOp(PLAYLIST, this.playlist.size() - 1, song));
+    }
+
+    synchronized void remove(String playlistName, String id) {
+        if (!playlistName.equals(this.playlistName) || indexOf(this.playlist, id) < 0) {
+            return;
+        }
+
+        this.playlist.remove(indexOf(this.playlist, id));
+        this.record(removeOp(PLAYLIST, id));
+    }
+
+    /**
+     * Replaces the song request queue. Clients are sent the adds, removes and moves that turn the old queue into the
+     * new one
+     */
+    synchronized void setSonglist(List<Song> songs) {
+        List<JSONObject> changes = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+
+        songs.forEach((song) -> ids.add(song.id));
+
+        for (int i = this.songlist.size() - 1; i >= 0; i--) {
+            if (!ids.contains(this.songlist.get(i).id)) {
+                changes.add(removeOp(SONGLIST, this.songlist.remove(i).id));
+            }
+        }
+
+        for (int i = 0; i < songs.size(); i++) {
+            Song song = songs.get(i);
+
+            if (i < this.songlist.size() && this.songlist.get(i).equals(song)) {
+                continue;
+            }
+
+            int from = indexOf(this.songlist, song.id);
+
+            if (from >= 0 && this.songlist.get(from).equals(song)) {
+                this.songlist.remove(from);
+                this.songlist.add(i, song);
+                changes.add(new JSONObject().put("op", "move").put("list", SONGLIST).put("song", song.id).put("index", i));
+            } else {
+                if (from >= 0) {
+                    changes.add(removeOp(SONGLIST, this.songlist.remove(from).id));
+                }
+
+                this.songlist.add(i, song);
+                changes.add(addOp(SONGLIST, i, song));
+            }
+        }
+
+        if (!changes.isEmpty()) {
+            this.record(changes.toArray(new JSONObject[0]));
+        }
+    }
+
+    synchronized void setCurrent(Song song) {
+        this.current = song;
+        this.record(new JSONObject().put("op", "current").put("song", song.toJSON()));
+    }
+
+    synchronized void setVolume(int volume) {
+        if (volume != this.volume) {
+            this.volume = volume;
+            this.record(new JSONObject().put("op", "volume").put("volume", volume));
+        }
+    }
+
+    /**
+     * Gets what a client that has seen a version needs to catch up
+     *
+     * @param epoch The run the version comes from
+     * @param version
+     * @return The ops the client missed, or a snapshot
+     */
+    synchronized String subscribe(long epoch, long version) {
+        if (epoch != this.epoch || version < this.floor || version > this.version) {
+            return this.snapshot();
+        }
+
+        List<String> missed = new ArrayList<>();
+
+        this.ops.forEach((op) -> {
+            if (op.version > version) {
+                missed.add(op.json);
+            }
+        });
+
+        return this.message(version, missed);
+    }
+
+    synchronized String getPlaylistName() {
+        return this.playlistName;
+    }
+
+    synchronized List<Song> getPlaylist() {
+        return new ArrayList<>(this.playlist);
+    }
+
+    synchronized List<Song> getSonglist() {
+        return new ArrayList<>(this.songlist);
+    }
+
+    synchronized Song getCurrent() {
+        return this.current;
+    }
+
+    private void record(JSONObject... changes) {
+        long from = this.version;
+        List<String> json = new ArrayList<>();
+
+        for (JSONObject change : changes) {
+            Op op = new Op(++this.version, change.toString());
+            this.ops.addLast(op);
+            json.add(op.json);
+        }
+
+        while (this.ops.size() > MAX_OPS) {
+            this.floor = this.ops.removeFirst().version;
+        }
+
+        this.snapshot = null;
+        this.broadcast.accept(this.message(from, json));
+    }
+
+    private String message(long from, List<String> json) {
+        return "{\"state\":{\"epoch\":" + this.epoch + ",\"from\":" + from + ",\"version\":" + this.version + ",\"ops\":[" + String.join(",", json) + "]}}";
+    }
+
+    private String snapshot() {
+        if (this.snapshot == null) {
+            JSONStringer jso = new JSONStringer();
+
+            jso.object().key("state").object();
+            jso.key("epoch").value(this.epoch);
+            jso.key("version").value(this.version);
+            jso.key("snapshot").object();
+            jso.key("playlistname").value(this.playlistName);
+            jso.key("playlist").array();
+            this.playlist.forEach((song) -> jso.value(song.toJSON()));
+            jso.endArray();
+            jso.key("songlist").array();
+            this.songlist.forEach((song) -> jso.value(song.toJSON()));
+            jso.endArray();
+            jso.key("current").value(this.current == null ? JSONObject.NULL : this.current.toJSON());
+            jso.key("volume").value(this.volume);
+            jso.endObject();
+            jso.endObject().endObject();
+            this.snapshot = jso.toString();
+        }
+
+        return this.snapshot;
+    }
+
+    private static JSONObject addOp(String list, int index, Song song) {
+        return new JSONObject().put("op", "add").put("list", list).put("index", index).put("song", song.toJSON());
+    }
+
+    private static JSONObject removeOp(String list, String id) {
+        return new JSONObject().put("op", "remove").put("list", list).put("song", id);
+    }
+
+    private static int indexOf(List<Song> songs, String id) {
+        for (int i = 0; i < songs.size(); i++) {
+            if (songs.get(i).id.equals(id)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static final class Op {
+
+        private final long version;
+        private final String json;
+
+        private Op(long version, String json) {
+            this.version = version;
+            this.json = json;
+        }
+    }
+
+    /**
+     * One song. It is sent as a compact array: id, title, duration and, for requests and the current song, the requester
+     */
+    static final class Song {
+
+        final String id;
+        final String title;
+        final String duration;
+        final String requester;
+
+        Song(String id, String title, String duration, String requester) {
+            this.id = id;
+            this.title = title;
+            this.duration = duration;
+            this.requester = requester;
+        }
+
+        JSONArray toJSON() {
+            JSONArray ret = new JSONArray().put(this.id).put(this.title).put(this.duration);
+            return this.requester == null ? ret : ret.put(this.requester);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Song)) {
+                return false;
+            }
+
+            Song s = (Song) o;
+            return this.id.equals(s.id) && this.title.equals(s.title) && this.duration.equals(s.duration)
+                    && (this.requester == null ? s.requester == null : this.requester.equals(s.requester));
+        }
+
+        @Override
+        public int hashCode() {
+            return this.id.hashCode();
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001;
+
+import com.gmt2001.HttpRequest.RequestType;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.IOUtils;
+import tv.phantombot.CaselessProperties;
+
+/**
+ * Tests {@link AsyncHttpClient} against a local {@link HttpServer}
+ *
+ * Run by the test target in build.xml. Exits with status 1 when a test fails
+ *
+ * @author agent
+ */
+public final class AsyncHttpClientTest {
+
+    private static final int MAX_PER_HOST = 2;
+    private static final int REQUEST_TIMEOUT = 1000;
+    private static final AtomicInteger active = new AtomicInteger(0);
+    private static final AtomicInteger maxActive = new AtomicInteger(0);
+    private static final Set<Integer> remotePorts = ConcurrentHashMap.newKeySet();
+    private static HttpServer server;
+    private static String base;
+
+    public static void main(String[] args) throws Exception {
+        CaselessProperties properties = new CaselessProperties();
+        properties.setProperty("httprequesttimeout", "" + REQUEST_TIMEOUT);
+        properties.setProperty("httpmaxperhost", "" + MAX_PER_HOST);
+        AsyncHttpClient.configure(properties);
+
+        startServer();
+
+        int failed = 0;
+
+        try {
+            failed += run("get", AsyncHttpClientTest::testGet);
+            failed += run("gzip", AsyncHttpClientTest::testGzip);
+            failed += run("charset", AsyncHttpClientTest::testCharset);
+            failed += run("post", AsyncHttpClientTest::testPost);
+            failed += run("basicAuth", AsyncHttpClientTest::testBasicAuth);
+            failed += run("errorStatus", AsyncHttpClientTest::testErrorStatus);
+            failed += run("badUrl", AsyncHttpClientTest::testBadUrl);
+            failed += run("connectionRefused", AsyncHttpClientTest::testConnectionRefused);
+            failed += run("keepAlive", AsyncHttpClientTest::testKeepAlive);
+            failed += run("perHostCap", AsyncHttpClientTest::testPerHostCap);
+            failed += run("slowHeaders", AsyncHttpClientTest::testSlowHeaders);
+            failed += run("slowBody", AsyncHttpClientTest::testSlowBody);
+        } finally {
+            server.stop(0);
+        }
+
+        System.out.println(failed == 0 ? "AsyncHttpClientTest: all tests passed" : "AsyncHttpClientTest: " + failed + " failed");
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    private static void testGet() throws Exception {
+        HttpResponse r = get("/echo?a=b");
+
+        check(r.success, "success");
+        check(r.httpCode == 200, "status " + r.httpCode);
+        check(r.content.equals("GET /echo?a=b "), "content " + r.content);
+        check(r.getResponseHeader("X-User-Agent").contains("PhantomBotJ"), "default User-Agent " + r.getResponseHeader("X-User-Agent"));
+        check(r.getResponseHeader("X-Accept-Encoding").equals("gzip"), "default Accept-Encoding");
+    }
+
+    private static void testGzip() throws Exception {
+        HttpResponse r = get("/gzip");
+
+        check(r.success, "success");
+        check(r.content.equals("compressed body"), "content " + r.content);
+    }
+
+    private static void testCharset() throws Exception {
+        HttpResponse r = get("/latin1");
+
+        check(r.success, "success");
+        check(r.content.equals("caf\u00e9"), "content " + r.content);
+    }
+
+    private static void testPost() throws Exception {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        headers.put("Content-Length", "99");
+
+        HttpResponse r = AsyncHttpClient.instance().request(RequestType.POST, base + "/echo", "{\"a\":1}", headers).get(5, TimeUnit.SECONDS);
+
+        check(r.success, "success " + r.exception);
+        check(r.content.equals("POST /echo {\"a\":1}"), "content " + r.content);
+    }
+
+    private static void testBasicAuth() throws Exception {
+        HttpResponse r = getUrl(base.replace("http://", "http://user:pass@") + "/echo");
+
+        check(r.success, "success " + r.exception);
+        check(("Basic " + Base64.getEncoder().encodeToString("user:pass".getBytes(StandardCharsets.UTF_8))).equals(r.getResponseHeader("X-Authorization")),
+                "Authorization " + r.getResponseHeader("X-Authorization"));
+    }
+
+    private static void testErrorStatus() throws Exception {
+        HttpResponse r = get("/missing");
+
+        check(!r.success, "not success");
+        check(r.httpCode == 404, "status " + r.httpCode);
+        check(r.content.equals("not found"), "content " + r.content);
+    }
+
+    private static void testBadUrl() throws Exception {
+        HttpResponse r = getUrl("not a url");
+
+        check(!r.success, "not success");
+        check(r.httpCode == 0, "status " + r.httpCode);
+        check(r.exceptionClass != null, "exception class");
+    }
+
+    private static void testConnectionRefused() throws Exception {
+        int port;
+
+        try (java.net.ServerSocket socket = new java.net.ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        HttpResponse r = getUrl("http://127.0.0.1:" + port + "/");
+
+        check(!r.success, "not success");
+        check(r.exceptionClass.equals("ConnectException"), "exception " + r.exceptionClass);
+    }
+
+    private static void testKeepAlive() throws Exception {
+        remotePorts.clear();
+
+        for (int i = 0; i < 5; i++) {
+            check(get("/echo").success, "success");
+        }
+
+        check(remotePorts.size() == 1, "connections " + remotePorts.size());
+    }
+
+    private static void testPerHostCap() throws Exception {
+        List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+        maxActive.set(0);
+
+        for (int i = 0; i < MAX_PER_HOST * 4; i++) {
+            futures.add(AsyncHttpClient.instance().request(RequestType.GET, base + "/sleep?100", "", new HashMap<>()));
+        }
+
+        for (CompletableFuture<HttpResponse> future : futures) {
+            check(future.get(10, TimeUnit.SECONDS).success, "success");
+        }
+
+        check(maxActive.get() == MAX_PER_HOST, "max in flight " + maxActive.get());
+    }
+
+    private static void testSlowHeaders() throws Exception {
+        long start = System.nanoTime();
+        HttpResponse r = get("/sleep?" + (REQUEST_TIMEOUT * 3));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        check(!r.success, "not success");
+        check(r.exceptionClass.equals("HttpTimeoutException"), "exception " + r.exceptionClass);
+        check(elapsed < REQUEST_TIMEOUT * 2, "took " + elapsed + "ms");
+    }
+
+    private static void testSlowBody() throws Exception {
+        long start = System.nanoTime();
+        HttpResponse r = get("/trickle?" + (REQUEST_TIMEOUT * 3));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        check(!r.success, "not success");
+        check(r.exceptionClass.equals("HttpTimeoutException"), "exception " + r.exceptionClass);
+        check(elapsed < REQUEST_TIMEOUT * 2, "took " + elapsed + "ms");
+    }
+
+    private static HttpResponse get(String path) throws Exception {
+        return getUrl(base + path);
+    }
+
+    private static HttpResponse getUrl(String url) throws Exception {
+        return AsyncHttpClient.instance().request(RequestType.GET, url, "", new HashMap<>()).get(10, TimeUnit.SECONDS);
+    }
+
+    private static void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        server.createContext("/echo", (ex) -> {
+            remotePorts.add(ex.getRemoteAddress().getPort());
+            String body = IOUtils.toString(ex.getRequestBody(), StandardCharsets.UTF_8);
+            ex.getResponseHeaders().add("X-User-Agent", "" + ex.getRequestHeaders().getFirst("User-Agent"));
+            ex.getResponseHeaders().add("X-Accept-Encoding", "" + ex.getRequestHeaders().getFirst("Accept-Encoding"));
+            ex.getResponseHeaders().add("X-Authorization", "" + ex.getRequestHeaders().getFirst("Authorization"));
+            send(ex, 200, (ex.getRequestMethod() + " " + ex.getRequestURI() + " " + body).getBytes(StandardCharsets.UTF_8));
+        });
+
+        server.createContext("/gzip", (ex) -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+                gzip.write("compressed body".getBytes(StandardCharsets.UTF_8));
+            }
+            ex.getResponseHeaders().add("Content-Encoding", "gzip");
+            send(ex, 200, bytes.toByteArray());
+        });
+
+        server.createContext("/latin1", (ex) -> {
+            ex.getResponseHeaders().add("Content-Type", "text/plain; charset=\"ISO-8859-1\"");
+            send(ex, 200, "caf\u00e9".getBytes(StandardCharsets.ISO_8859_1));
+        });
+
+        server.createContext("/missing", (ex) -> send(ex, 404, "not found".getBytes(StandardCharsets.UTF_8)));
+
+        server.createContext("/sleep", (ex) -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(Long.parseLong(ex.getRequestURI().getQuery()));
+                send(ex, 200, new byte[0]);
+            } catch (InterruptedException | IOException e) {
+                ex.close();
+            } finally {
+                active.decrementAndGet();
+            }
+        });
+
+        /* Sends the headers right away, then one byte every 100ms */
+        server.createContext("/trickle", (ex) -> {
+            long end = System.currentTimeMillis() + Long.parseLong(ex.getRequestURI().getQuery());
+            ex.sendResponseHeaders(200, 0);
+            try (OutputStream out = ex.getResponseBody()) {
+                while (System.currentTimeMillis() < end) {
+                    out.write('x');
+                    out.flush();
+                    Thread.sleep(100);
+                }
+            } catch (InterruptedException | IOException e) {
+                ex.close();
+            }
+        });
+
+        server.start();
+    }
+
+    private static void send(HttpExchange ex, int status, byte[] body) throws IOException {
+        ex.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static int run(String name, TestCase test) {
+        try {
+            test.run();
+            System.out.println("PASS " + name);
+            return 0;
+        } catch (Throwable ex) {
+            System.out.println("FAIL " + name + ": " + ex);
+            return 1;
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    @FunctionalInterface
+    private interface TestCase {
+
+        void run() throws Exception;
+    }
+}
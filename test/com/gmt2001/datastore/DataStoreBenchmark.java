@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.gmt2001.datastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Measures GetString and SetString through the SQLite and H2 stores, which borrow their connections and prepared
+ * statements from {@link ConnectionPool}
+ *
+ * Each pass reads 200000 or writes 40000 values over 1000 keys, from 1 and then 8 threads. The databases are created in
+ * ./config of the working directory. Run by the benchmark target in build.xml
+ *
+ * @author agent
+ */
+public final class DataStoreBenchmark {
+
+    private static final int KEYS = 1000;
+    private static final int READS = 200000;
+    private static final int WRITES = 40000;
+    private static final int[] THREADS = {1, 8};
+    private static final int ROUNDS = 2;
+
+    public static void main(String[] args) throws Exception {
+        new File("config").mkdirs();
+        FileUtils.deleteQuietly(new File("config/benchmark.db"));
+        FileUtils.deleteQuietly(new File("config/benchmark.h2.mv.db"));
+        FileUtils.writeStringToFile(new File("benchmark-sqlite.txt"), "dbname=config/benchmark.db\n", StandardCharsets.UTF_8);
+
+        run("SQLite", SqliteStore.instance("benchmark-sqlite.txt"));
+        run("H2", H2Store.instance("benchmark.h2"));
+
+        System.exit(0);
+    }
+
+    private static void run(String name, DataStore store) throws InterruptedException {
+        for (int i = 0; i < KEYS; i++) {
+            store.SetString("benchmark", "", "k" + i, "v" + i);
+        }
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            for (int threads : THREADS) {
+                System.out.println(name + " round " + round + " " + threads + " thread(s): GetString "
+                        + measure(threads, READS, (id, i) -> store.GetString("benchmark", "", "k" + (i % KEYS)))
+                        + " ops/s, SetString "
+                        + measure(threads, WRITES, (id, i) -> store.SetString("benchmark", "", "k" + (((i * 7) + id) % KEYS), "v" + i))
+                        + " ops/s");
+            }
+        }
+
+        store.dispose();
+    }
+
+    /**
+     * Splits the operations over the threads and returns the operations per second
+     */
+    private static long measure(int threads, int operations, Operation operation) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        int perThread = operations / threads;
+        long start = System.nanoTime();
+
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    operation.run(id, i);
+                }
+            });
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.MINUTES);
+        return (long) (perThread * threads / ((System.nanoTime() - start) / 1000000000.0));
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+
+        void run(int thread, int i);
+    }
+}
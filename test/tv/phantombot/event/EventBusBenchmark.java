@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016-2020 phantombot.github.io/PhantomBot
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tv.phantombot.event;
+
+import java.util.concurrent.atomic.LongAdder;
+import net.engio.mbassy.bus.MBassador;
+import net.engio.mbassy.bus.config.BusConfiguration;
+import net.engio.mbassy.bus.config.Feature;
+import net.engio.mbassy.listener.Handler;
+
+/**
+ * Compares {@link EventBus} with the MBassador setup it replaced
+ *
+ * Three listeners handle two event types, one through a handler taking {@link Event}. Async events are posted in
+ * bursts smaller than the queue so that none are dropped. Run by the benchmark target in build.xml
+ *
+ * @author agent
+ */
+public final class EventBusBenchmark {
+
+    private static final int SYNC_POSTS = 2000000;
+    private static final int ASYNC_POSTS = 500000;
+    private static final int ASYNC_BURST = 5000;
+    private static final int ROUNDS = 5;
+    private static final LongAdder hits = new LongAdder();
+
+    public static void main(String[] args) {
+        MBassador<Event> mbassador = new MBassador<>(new BusConfiguration()
+                .addFeature(Feature.SyncPubSub.Default())
+                .addFeature(Feature.AsynchronousHandlerInvocation.Default())
+                .addFeature(Feature.AsynchronousMessageDispatch.Default().setNumberOfMessageDispatchers(10))
+                .addPublicationErrorHandler((error) -> {
+                }));
+        EventBus eventBus = EventBus.instance();
+
+        for (Listener listener : new Listener[]{new FirstListener(), new AnyListener(), new PrivateListener()}) {
+            mbassador.subscribe(listener);
+            eventBus.register(listener);
+        }
+
+        Event[] events = {new FirstEvent(), new SecondEvent()};
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            long mbassadorSync = time(SYNC_POSTS, () -> {
+                for (int i = 0; i < SYNC_POSTS; i++) {
+                    mbassador.publish(events[i & 1]);
+                }
+            });
+            long eventBusSync = time(SYNC_POSTS, () -> {
+                for (int i = 0; i < SYNC_POSTS; i++) {
+                    eventBus.post(events[i & 1]);
+                }
+            });
+            long mbassadorAsync = time(ASYNC_POSTS, () -> {
+                for (int i = 0; i < ASYNC_POSTS; i++) {
+                    mbassador.publishAsync(events[i & 1]);
+                    waitBurst(i);
+                }
+            });
+            long eventBusAsync = time(ASYNC_POSTS, () -> {
+                for (int i = 0; i < ASYNC_POSTS; i++) {
+                    eventBus.postAsync(events[i & 1]);
+                    waitBurst(i);
+                }
+            });
+
+            System.out.println("round " + round + ": sync post MBassador " + mbassadorSync + "ns EventBus " + eventBusSync
+                    + "ns, async post MBassador " + mbassadorAsync + "ns EventBus " + eventBusAsync + "ns");
+        }
+
+        System.out.println(eventBus.getStats());
+        System.exit(0);
+    }
+
+    /**
+     * Runs the posts and returns the time per post, after every handler has run
+     */
+    private static long time(int posts, Runnable run) {
+        hits.reset();
+        long start = System.nanoTime();
+        run.run();
+        waitHits(expectedHits(posts));
+        return (System.nanoTime() - start) / posts;
+    }
+
+    private static void waitBurst(int i) {
+        if ((i + 1) % ASYNC_BURST == 0) {
+            waitHits(expectedHits(i + 1));
+        }
+    }
+
+    /**
+     * FirstEvent has 3 handlers and SecondEvent has 2, and they are posted in turn
+     */
+    private static long expectedHits(int posts) {
+        return ((posts + 1) / 2 * 3L) + (posts / 2 * 2L);
+    }
+
+    private static void waitHits(long expected) {
+        while (hits.sum() < expected) {
+            Thread.onSpinWait();
+        }
+    }
+
+    public static final class FirstEvent extends Event {
+    }
+
+    public static final class SecondEvent extends Event {
+    }
+
+    public static final class FirstListener implements Listener {
+
+        @Handler
+        public void onFirst(FirstEvent event) {
+            hits.increment();
+        }
+    }
+
+    public static final class AnyListener implements Listener {
+
+        @Handler
+        public void onEvent(Event event) {
+            hits.increment();
+        }
+    }
+
+    public static final class PrivateListener implements Listener {
+
+        @Handler
+        private void onSecond(SecondEvent event) {
+            hits.increment();
+        }
+
+        @Handler
+        public void onFirst(FirstEvent event) {
+            hits.increment();
+        }
+    }
+}